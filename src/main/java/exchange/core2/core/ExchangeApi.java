@@ -15,6 +15,7 @@
  */
 package exchange.core2.core;
 
+import com.lmax.disruptor.EventTranslator;
 import com.lmax.disruptor.EventTranslatorOneArg;
 import com.lmax.disruptor.RingBuffer;
 import exchange.core2.core.common.BalanceAdjustmentType;
@@ -31,17 +32,15 @@ import exchange.core2.core.common.cmd.OrderCommand;
 import exchange.core2.core.common.cmd.OrderCommandType;
 import exchange.core2.core.orderbook.OrderBookEventsHelper;
 import exchange.core2.core.processors.BinaryCommandsProcessor;
+import exchange.core2.core.processors.IngressSequencer;
 import exchange.core2.core.utils.SerializationUtils;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import net.jpountz.lz4.LZ4Compressor;
 import net.openhft.chronicle.bytes.WriteBytesMarshallable;
 import net.openhft.chronicle.wire.Wire;
 import org.agrona.collections.LongLongConsumer;
-import org.eclipse.collections.impl.map.mutable.ConcurrentHashMap;
 
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -49,51 +48,100 @@ import java.util.function.LongConsumer;
 import java.util.stream.Stream;
 
 @Slf4j
-@RequiredArgsConstructor
 public final class ExchangeApi {
 
     // ring buffer được khởi tạo từ bên exchange-core
     private final RingBuffer<OrderCommand> ringBuffer;
     private final LZ4Compressor lz4Compressor;
 
-    // promises cache (TODO can be changed to queue)
+    // promises cache, one slot per ring buffer entry (index is seq & promisesMask)
     // chứa các callback để sau khi xử lý hoàn tất 1 task, sẽ callback về cho bên ngoài biết
-    private final Map<Long, Consumer<OrderCommand>> promises = new ConcurrentHashMap<>();
+    // slot is written by producer before sequence is published and cleared by results handler before sequence is released,
+    // so disruptor barriers provide visibility, and ring buffer gating guarantees slot is empty when sequence is claimed again
+    private final Consumer<OrderCommand>[] promises;
+    private final long promisesMask;
+
+    // SEQUENCED_SINGLE_PRODUCER mode: commands are published into staging queue of current thread (null for MULTI_PRODUCER)
+    private final IngressSequencer ingressSequencer;
 
     // số lượng biến long cần thiết để lưu trữ 1 msg. 1 long = 8 byte. 1 byte = 8 bit
     // 5 biến long --> 5 * 8 * 8 = 320 bit
     public static final int LONGS_PER_MESSAGE = 5;
 
+    public ExchangeApi(final RingBuffer<OrderCommand> ringBuffer, final LZ4Compressor lz4Compressor) {
+        this(ringBuffer, lz4Compressor, null);
+    }
+
+    public ExchangeApi(final RingBuffer<OrderCommand> ringBuffer, final LZ4Compressor lz4Compressor, final IngressSequencer ingressSequencer) {
+        this.ringBuffer = ringBuffer;
+        this.lz4Compressor = lz4Compressor;
+        this.promises = IngressSequencer.newPromisesArray(ringBuffer.getBufferSize());
+        this.promisesMask = ringBuffer.getBufferSize() - 1;
+        this.ingressSequencer = ingressSequencer;
+        if (ingressSequencer != null) {
+            ingressSequencer.attachPromises(promises);
+        }
+    }
 
     // nếu có callback của task này thì call về
     public void processResult(final long seq, final OrderCommand cmd) {
-        final Consumer<OrderCommand> consumer = promises.remove(seq);
+        final int idx = (int) (seq & promisesMask);
+        final Consumer<OrderCommand> consumer = promises[idx];
         if (consumer != null) {
+            promises[idx] = null;
             consumer.accept(cmd);
         }
     }
 
+    // should be called only for claimed but not yet published sequence
+    private void registerPromise(final long seq, final Consumer<OrderCommand> consumer) {
+        if (ingressSequencer == null) {
+            promises[(int) (seq & promisesMask)] = consumer;
+        } else {
+            // staging sequence, sequencer will move promise to ring buffer sequence
+            ingressSequencer.gatewayQueue().registerPromise(seq, consumer);
+        }
+    }
+
+    // ring buffer to publish commands from current thread
+    private RingBuffer<OrderCommand> ring() {
+        return ingressSequencer == null ? ringBuffer : ingressSequencer.gatewayQueue().getRing();
+    }
+
+    // should be called before publishing range of commands that must stay contiguous in ring buffer
+    private void markAtomicRange(final long lowSeq, final long highSeq) {
+        if (ingressSequencer != null) {
+            // sequencer will move whole range by one claim
+            ingressSequencer.gatewayQueue().markAtomicRange(lowSeq, highSeq);
+        }
+    }
+
+    // publish service event (e.g. shutdown signal) from current thread
+    void publishEvent(final EventTranslator<OrderCommand> translator) {
+        ring().publishEvent(translator);
+    }
+
 
     // convert ApiCommand --> OrderCommand và đẩy vào ring_buffer
     public void submitCommand(ApiCommand cmd) {
         if (cmd instanceof ApiMoveOrder) {
-            ringBuffer.publishEvent(MOVE_ORDER_TRANSLATOR, (ApiMoveOrder) cmd);
+            ring().publishEvent(MOVE_ORDER_TRANSLATOR, (ApiMoveOrder) cmd);
         } else if (cmd instanceof ApiPlaceOrder) {
-            ringBuffer.publishEvent(NEW_ORDER_TRANSLATOR, (ApiPlaceOrder) cmd);
+            ring().publishEvent(NEW_ORDER_TRANSLATOR, (ApiPlaceOrder) cmd);
         } else if (cmd instanceof ApiCancelOrder) {
-            ringBuffer.publishEvent(CANCEL_ORDER_TRANSLATOR, (ApiCancelOrder) cmd);
+            ring().publishEvent(CANCEL_ORDER_TRANSLATOR, (ApiCancelOrder) cmd);
         } else if (cmd instanceof ApiReduceOrder) {
-            ringBuffer.publishEvent(REDUCE_ORDER_TRANSLATOR, (ApiReduceOrder) cmd);
+            ring().publishEvent(REDUCE_ORDER_TRANSLATOR, (ApiReduceOrder) cmd);
         } else if (cmd instanceof ApiOrderBookRequest) {
-            ringBuffer.publishEvent(ORDER_BOOK_REQUEST_TRANSLATOR, (ApiOrderBookRequest) cmd);
+            ring().publishEvent(ORDER_BOOK_REQUEST_TRANSLATOR, (ApiOrderBookRequest) cmd);
         } else if (cmd instanceof ApiAddUser) {
-            ringBuffer.publishEvent(ADD_USER_TRANSLATOR, (ApiAddUser) cmd);
+            ring().publishEvent(ADD_USER_TRANSLATOR, (ApiAddUser) cmd);
         } else if (cmd instanceof ApiAdjustUserBalance) {
-            ringBuffer.publishEvent(ADJUST_USER_BALANCE_TRANSLATOR, (ApiAdjustUserBalance) cmd);
+            ring().publishEvent(ADJUST_USER_BALANCE_TRANSLATOR, (ApiAdjustUserBalance) cmd);
         } else if (cmd instanceof ApiResumeUser) {
-            ringBuffer.publishEvent(RESUME_USER_TRANSLATOR, (ApiResumeUser) cmd);
+            ring().publishEvent(RESUME_USER_TRANSLATOR, (ApiResumeUser) cmd);
         } else if (cmd instanceof ApiSuspendUser) {
-            ringBuffer.publishEvent(SUSPEND_USER_TRANSLATOR, (ApiSuspendUser) cmd);
+            ring().publishEvent(SUSPEND_USER_TRANSLATOR, (ApiSuspendUser) cmd);
         } else if (cmd instanceof ApiBinaryDataCommand) {
             publishBinaryData((ApiBinaryDataCommand) cmd, seq -> {
             });
@@ -101,15 +149,150 @@ public final class ExchangeApi {
             publishPersistCmd((ApiPersistState) cmd, (seq1, seq2) -> {
             });
         } else if (cmd instanceof ApiReset) {
-            ringBuffer.publishEvent(RESET_TRANSLATOR, (ApiReset) cmd);
+            ring().publishEvent(RESET_TRANSLATOR, (ApiReset) cmd);
         } else if (cmd instanceof ApiNop) {
-            ringBuffer.publishEvent(NOP_TRANSLATOR, (ApiNop) cmd);
+            ring().publishEvent(NOP_TRANSLATOR, (ApiNop) cmd);
         } else {
             throw new IllegalArgumentException("Unsupported command type: " + cmd.getClass().getSimpleName());
         }
     }
 
 
+    /**
+     * Submit batch of commands without waiting for results.
+     * Claims contiguous range of sequences, translates commands in place and publishes whole range at once,
+     * so producer pays sequencer CAS once per batch instead of once per command.
+     * Binary data and persist commands are not supported (they claim ranges by themselves).
+     *
+     * @param cmds - commands array
+     * @param from - first command index (inclusive)
+     * @param to   - last command index (exclusive)
+     */
+    public void submitCommandsBatch(final ApiCommand[] cmds, final int from, final int to) {
+
+        // validate before claiming, because claimed sequences must be published anyway
+        for (int i = from; i < to; i++) {
+            final ApiCommand cmd = cmds[i];
+            if (cmd == null) {
+                throw new IllegalArgumentException("Null command in batch at index " + i);
+            }
+            if (!isBatchCommand(cmd)) {
+                throw new IllegalArgumentException("Unsupported command type for batch: " + cmd.getClass().getSimpleName());
+            }
+        }
+
+        final RingBuffer<OrderCommand> ring = ring();
+
+        // max batch size is quarter of ring buffer (same as binary data fragments)
+        final int maxBatchSize = ring.getBufferSize() / 4;
+
+        int idx = from;
+        while (idx < to) {
+            final int batchSize = Math.min(maxBatchSize, to - idx);
+            final long highSeq = ring.next(batchSize);
+            final long lowSeq = highSeq - batchSize + 1;
+            long seq = lowSeq;
+            try {
+                for (; seq <= highSeq; seq++) {
+                    translateCommand(ring.get(seq), seq, cmds[idx++]);
+                }
+            } finally {
+                publishClaimedRange(ring, lowSeq, highSeq, seq);
+            }
+        }
+    }
+
+    /**
+     * Submit batch of trading commands stored in primitive arrays without waiting for results.
+     * Does not allocate any objects.
+     *
+     * @param batch - batch of commands (can be cleared and reused after this method returns)
+     */
+    public void submitOrdersBatch(final ApiOrdersBatch batch) {
+
+        final RingBuffer<OrderCommand> ring = ring();
+        final int maxBatchSize = ring.getBufferSize() / 4;
+        final int total = batch.size();
+
+        int idx = 0;
+        while (idx < total) {
+            final int batchSize = Math.min(maxBatchSize, total - idx);
+            final long highSeq = ring.next(batchSize);
+            final long lowSeq = highSeq - batchSize + 1;
+            long seq = lowSeq;
+            try {
+                for (; seq <= highSeq; seq++) {
+                    batch.translateTo(ring.get(seq), idx++);
+                }
+            } finally {
+                publishClaimedRange(ring, lowSeq, highSeq, seq);
+            }
+        }
+    }
+
+    /**
+     * Publish claimed range of sequences.
+     * If producer failed in the middle of the range, not filled sequences are replaced with NOP
+     * (claimed sequences can not be returned, and slots still contain previously processed commands).
+     *
+     * @param firstNotFilledSeq - first sequence not filled by producer (highSeq + 1 if whole range is filled)
+     */
+    private static void publishClaimedRange(final RingBuffer<OrderCommand> ring,
+                                            final long lowSeq,
+                                            final long highSeq,
+                                            final long firstNotFilledSeq) {
+        for (long seq = firstNotFilledSeq; seq <= highSeq; seq++) {
+            final OrderCommand cmd = ring.get(seq);
+            cmd.command = OrderCommandType.NOP;
+            cmd.resultCode = CommandResultCode.NEW;
+        }
+        ring.publish(lowSeq, highSeq);
+    }
+
+    private static boolean isBatchCommand(final ApiCommand cmd) {
+        return cmd instanceof ApiMoveOrder
+                || cmd instanceof ApiPlaceOrder
+                || cmd instanceof ApiCancelOrder
+                || cmd instanceof ApiReduceOrder
+                || cmd instanceof ApiOrderBookRequest
+                || cmd instanceof ApiAddUser
+                || cmd instanceof ApiAdjustUserBalance
+                || cmd instanceof ApiResumeUser
+                || cmd instanceof ApiSuspendUser
+                || cmd instanceof ApiReset
+                || cmd instanceof ApiNop;
+    }
+
+    private static void translateCommand(final OrderCommand cmd, final long seq, final ApiCommand apiCmd) {
+        if (apiCmd instanceof ApiMoveOrder) {
+            MOVE_ORDER_TRANSLATOR.translateTo(cmd, seq, (ApiMoveOrder) apiCmd);
+        } else if (apiCmd instanceof ApiPlaceOrder) {
+            NEW_ORDER_TRANSLATOR.translateTo(cmd, seq, (ApiPlaceOrder) apiCmd);
+        } else if (apiCmd instanceof ApiCancelOrder) {
+            CANCEL_ORDER_TRANSLATOR.translateTo(cmd, seq, (ApiCancelOrder) apiCmd);
+        } else if (apiCmd instanceof ApiReduceOrder) {
+            REDUCE_ORDER_TRANSLATOR.translateTo(cmd, seq, (ApiReduceOrder) apiCmd);
+        } else if (apiCmd instanceof ApiOrderBookRequest) {
+            ORDER_BOOK_REQUEST_TRANSLATOR.translateTo(cmd, seq, (ApiOrderBookRequest) apiCmd);
+        } else if (apiCmd instanceof ApiAddUser) {
+            ADD_USER_TRANSLATOR.translateTo(cmd, seq, (ApiAddUser) apiCmd);
+        } else if (apiCmd instanceof ApiAdjustUserBalance) {
+            ADJUST_USER_BALANCE_TRANSLATOR.translateTo(cmd, seq, (ApiAdjustUserBalance) apiCmd);
+        } else if (apiCmd instanceof ApiResumeUser) {
+            RESUME_USER_TRANSLATOR.translateTo(cmd, seq, (ApiResumeUser) apiCmd);
+        } else if (apiCmd instanceof ApiSuspendUser) {
+            SUSPEND_USER_TRANSLATOR.translateTo(cmd, seq, (ApiSuspendUser) apiCmd);
+        } else if (apiCmd instanceof ApiReset) {
+            RESET_TRANSLATOR.translateTo(cmd, seq, (ApiReset) apiCmd);
+        } else if (apiCmd instanceof ApiNop) {
+            NOP_TRANSLATOR.translateTo(cmd, seq, (ApiNop) apiCmd);
+        } else {
+            // batch is validated before claiming sequences
+            throw new IllegalArgumentException("Unsupported command type for batch: " + apiCmd.getClass().getSimpleName());
+        }
+    }
+
+
     // convert ApiCommand --> OrderCommand và đẩy vào Ring_Buffer
     // response CommandResultCode
     public CompletableFuture<CommandResultCode> submitCommandAsync(ApiCommand cmd) {
@@ -146,7 +329,7 @@ public final class ExchangeApi {
 
 
     // convert ApiCommand --> OrderCommand và đẩy vào Ring_Buffer
-    // response OrderCommand
+    // response OrderCommand (bản copy cùng với events và market data, có thể giữ lại sau khi callback kết thúc)
     public CompletableFuture<OrderCommand> submitCommandAsyncFullResponse(ApiCommand cmd) {
         if (cmd instanceof ApiMoveOrder) {
             return submitCommandAsyncFullResponse(MOVE_ORDER_TRANSLATOR, (ApiMoveOrder) cmd);
@@ -200,8 +383,9 @@ public final class ExchangeApi {
 
 
     // submit ApiCommand vào Ring Buffer -> chờ đợi response trả về --> return tất cả giá trị
+    // trả về bản copy: slot của ring buffer được dùng lại và events được trả về pool (eventsPooling)
     private <T extends ApiCommand> CompletableFuture<OrderCommand> submitCommandAsyncFullResponse(EventTranslatorOneArg<OrderCommand, T> translator, final T apiCommand) {
-        return submitCommandAsync(translator, apiCommand, Function.identity());
+        return submitCommandAsync(translator, apiCommand, OrderCommand::copy);
     }
 
 
@@ -211,10 +395,10 @@ public final class ExchangeApi {
                                                                               final Function<OrderCommand, R> responseTranslator) {
         final CompletableFuture<R> future = new CompletableFuture<>();
 
-        ringBuffer.publishEvent(
+        ring().publishEvent(
                 (cmd, seq, apiCmd) -> {
                     translator.translateTo(cmd, seq, apiCmd);
-                    promises.put(seq, orderCommand -> future.complete(responseTranslator.apply(orderCommand)));
+                    registerPromise(seq, orderCommand -> future.complete(responseTranslator.apply(orderCommand)));
                 },
                 apiCommand);
 
@@ -227,8 +411,8 @@ public final class ExchangeApi {
         final CompletableFuture<CommandResultCode> future2 = new CompletableFuture<>();
 
         publishPersistCmd(apiCommand, (seq1, seq2) -> {
-            promises.put(seq1, cmd -> future1.complete(cmd.resultCode));
-            promises.put(seq2, cmd -> future2.complete(cmd.resultCode));
+            registerPromise(seq1, cmd -> future1.complete(cmd.resultCode));
+            registerPromise(seq2, cmd -> future2.complete(cmd.resultCode));
         });
 
         return future1.thenCombineAsync(future2, CommandResultCode::mergeToFirstFailed);
@@ -247,7 +431,7 @@ public final class ExchangeApi {
                 (int) System.nanoTime(), // can be any value because sequence is used for result identification, not transferId
                 0L,
                 seq -> {
-                    promises.put(seq, orderCommand -> future.complete(orderCommand.resultCode));
+                    registerPromise(seq, orderCommand -> future.complete(orderCommand.resultCode));
                 });
 
         return future;
@@ -262,7 +446,7 @@ public final class ExchangeApi {
 
         publishBinaryData(
                 ApiBinaryDataCommand.builder().data(data).transferId(transferId).build(),
-                seq -> promises.put(seq, orderCommand -> future.complete(translator.apply(orderCommand))));
+                seq -> registerPromise(seq, orderCommand -> future.complete(translator.apply(orderCommand))));
 
         return future;
     }
@@ -276,7 +460,7 @@ public final class ExchangeApi {
 
         publishQuery(
                 ApiReportQuery.builder().query(data).transferId(transferId).build(),
-                seq -> promises.put(seq, orderCommand -> future.complete(translator.apply(orderCommand))));
+                seq -> registerPromise(seq, orderCommand -> future.complete(translator.apply(orderCommand))));
 
         return future;
     }
@@ -332,7 +516,7 @@ public final class ExchangeApi {
         final int totalNumMessagesToClaim = longsArrayData.length / LONGS_PER_MESSAGE;
 
         // max fragment size is quarter of ring buffer
-        final int batchSize = ringBuffer.getBufferSize() / 4;
+        final int batchSize = ring().getBufferSize() / 4;
 
         int offset = 0;
         boolean isLastFragment = false;
@@ -362,14 +546,15 @@ public final class ExchangeApi {
                                               int offset,
                                               boolean isLastFragment) {
 
-        final long highSeq = ringBuffer.next(fragmentSize);
+        final RingBuffer<OrderCommand> ring = ring();
+        final long highSeq = ring.next(fragmentSize);
         final long lowSeq = highSeq - fragmentSize + 1;
 
         try {
             int ptr = offset * LONGS_PER_MESSAGE;
             for (long seq = lowSeq; seq <= highSeq; seq++) {
 
-                OrderCommand cmd = ringBuffer.get(seq);
+                OrderCommand cmd = ring.get(seq);
                 cmd.command = cmdType;
                 cmd.userCookie = transferId;
                 cmd.symbol = (isLastFragment && seq == highSeq) ? -1 : 0;
@@ -393,19 +578,21 @@ public final class ExchangeApi {
                 // report last sequence before actually publishing data
                 endSeqConsumer.accept(highSeq);
             }
-            ringBuffer.publish(lowSeq, highSeq);
+            markAtomicRange(lowSeq, highSeq);
+            ring.publish(lowSeq, highSeq);
         }
     }
 
     private void publishPersistCmd(final ApiPersistState api,
                                    final LongLongConsumer seqConsumer) {
 
-        long secondSeq = ringBuffer.next(2);
+        final RingBuffer<OrderCommand> ring = ring();
+        long secondSeq = ring.next(2);
         long firstSeq = secondSeq - 1;
 
         try {
             // will be ignored by risk handlers, but processed by matching engine
-            final OrderCommand cmdMatching = ringBuffer.get(firstSeq);
+            final OrderCommand cmdMatching = ring.get(firstSeq);
             cmdMatching.command = OrderCommandType.PERSIST_STATE_MATCHING;
             cmdMatching.orderId = api.dumpId;
             cmdMatching.symbol = -1;
@@ -417,7 +604,7 @@ public final class ExchangeApi {
             //log.debug("seq={} cmd.command={} data={}", firstSeq, cmdMatching.command, cmdMatching.price);
 
             // sequential command will make risk handler to create snapshot
-            final OrderCommand cmdRisk = ringBuffer.get(secondSeq);
+            final OrderCommand cmdRisk = ring.get(secondSeq);
             cmdRisk.command = OrderCommandType.PERSIST_STATE_RISK;
             cmdRisk.orderId = api.dumpId;
             cmdRisk.symbol = -1;
@@ -431,7 +618,8 @@ public final class ExchangeApi {
             // short delay to reduce probability of batching both commands together in R1
         } finally {
             seqConsumer.accept(firstSeq, secondSeq);
-            ringBuffer.publish(firstSeq, secondSeq);
+            markAtomicRange(firstSeq, secondSeq);
+            ring.publish(firstSeq, secondSeq);
         }
     }
 
@@ -536,7 +724,7 @@ public final class ExchangeApi {
 
 
     public void binaryData(int serviceFlags, long eventsGroup, long timestampNs, byte lastFlag, long word0, long word1, long word2, long word3, long word4) {
-        ringBuffer.publishEvent(((cmd, seq) -> {
+        ring().publishEvent(((cmd, seq) -> {
 
             cmd.serviceFlags = serviceFlags;
             cmd.eventsGroup = eventsGroup;
@@ -556,7 +744,7 @@ public final class ExchangeApi {
     }
 
     public void createUser(long userId, Consumer<OrderCommand> callback) {
-        ringBuffer.publishEvent(((cmd, seq) -> {
+        ring().publishEvent(((cmd, seq) -> {
             cmd.command = OrderCommandType.ADD_USER;
             cmd.orderId = -1;
             cmd.symbol = -1;
@@ -564,12 +752,12 @@ public final class ExchangeApi {
             cmd.timestamp = System.currentTimeMillis();
             cmd.resultCode = CommandResultCode.NEW;
 
-            promises.put(seq, callback);
+            registerPromise(seq, callback);
         }));
     }
 
     public void suspendUser(long userId, Consumer<OrderCommand> callback) {
-        ringBuffer.publishEvent(((cmd, seq) -> {
+        ring().publishEvent(((cmd, seq) -> {
             cmd.command = OrderCommandType.SUSPEND_USER;
             cmd.orderId = -1;
             cmd.symbol = -1;
@@ -577,12 +765,12 @@ public final class ExchangeApi {
             cmd.timestamp = System.currentTimeMillis();
             cmd.resultCode = CommandResultCode.NEW;
 
-            promises.put(seq, callback);
+            registerPromise(seq, callback);
         }));
     }
 
     public void resumeUser(long userId, Consumer<OrderCommand> callback) {
-        ringBuffer.publishEvent(((cmd, seq) -> {
+        ring().publishEvent(((cmd, seq) -> {
             cmd.command = OrderCommandType.RESUME_USER;
             cmd.orderId = -1;
             cmd.symbol = -1;
@@ -590,12 +778,12 @@ public final class ExchangeApi {
             cmd.timestamp = System.currentTimeMillis();
             cmd.resultCode = CommandResultCode.NEW;
 
-            promises.put(seq, callback);
+            registerPromise(seq, callback);
         }));
     }
 
     public void createUser(int serviceFlags, long eventsGroup, long timestampNs, long userId) {
-        ringBuffer.publishEvent(((cmd, seq) -> {
+        ring().publishEvent(((cmd, seq) -> {
 
             cmd.serviceFlags = serviceFlags;
             cmd.eventsGroup = eventsGroup;
@@ -611,7 +799,7 @@ public final class ExchangeApi {
     }
 
     public void suspendUser(int serviceFlags, long eventsGroup, long timestampNs, long userId) {
-        ringBuffer.publishEvent(((cmd, seq) -> {
+        ring().publishEvent(((cmd, seq) -> {
 
             cmd.serviceFlags = serviceFlags;
             cmd.eventsGroup = eventsGroup;
@@ -627,7 +815,7 @@ public final class ExchangeApi {
     }
 
     public void resumeUser(int serviceFlags, long eventsGroup, long timestampNs, long userId) {
-        ringBuffer.publishEvent(((cmd, seq) -> {
+        ring().publishEvent(((cmd, seq) -> {
 
             cmd.serviceFlags = serviceFlags;
             cmd.eventsGroup = eventsGroup;
@@ -649,7 +837,7 @@ public final class ExchangeApi {
                                   BalanceAdjustmentType adjustmentType,
                                   Consumer<OrderCommand> callback) {
 
-        ringBuffer.publishEvent(((cmd, seq) -> {
+        ring().publishEvent(((cmd, seq) -> {
             cmd.command = OrderCommandType.BALANCE_ADJUSTMENT;
             cmd.orderId = transactionId;
             cmd.symbol = currency;
@@ -660,7 +848,7 @@ public final class ExchangeApi {
             cmd.timestamp = System.currentTimeMillis();
             cmd.resultCode = CommandResultCode.NEW;
 
-            promises.put(seq, callback);
+            registerPromise(seq, callback);
         }));
 
     }
@@ -674,7 +862,7 @@ public final class ExchangeApi {
                                   long longAmount,
                                   BalanceAdjustmentType adjustmentType) {
 
-        ringBuffer.publishEvent(((cmd, seq) -> {
+        ring().publishEvent(((cmd, seq) -> {
             cmd.serviceFlags = serviceFlags;
             cmd.eventsGroup = eventsGroup;
             cmd.command = OrderCommandType.BALANCE_ADJUSTMENT;
@@ -692,7 +880,7 @@ public final class ExchangeApi {
 
     public void orderBookRequest(int symbolId, int depth, Consumer<OrderCommand> callback) {
 
-        ringBuffer.publishEvent(((cmd, seq) -> {
+        ring().publishEvent(((cmd, seq) -> {
             cmd.command = OrderCommandType.ORDER_BOOK_REQUEST;
             cmd.orderId = -1;
             cmd.symbol = symbolId;
@@ -701,7 +889,7 @@ public final class ExchangeApi {
             cmd.timestamp = System.currentTimeMillis();
             cmd.resultCode = CommandResultCode.NEW;
 
-            promises.put(seq, callback);
+            registerPromise(seq, callback);
         }));
 
     }
@@ -710,7 +898,7 @@ public final class ExchangeApi {
 
         final CompletableFuture<L2MarketData> future = new CompletableFuture<>();
 
-        ringBuffer.publishEvent(((cmd, seq) -> {
+        ring().publishEvent(((cmd, seq) -> {
             cmd.command = OrderCommandType.ORDER_BOOK_REQUEST;
             cmd.orderId = -1;
             cmd.symbol = symbolId;
@@ -719,7 +907,7 @@ public final class ExchangeApi {
             cmd.timestamp = System.currentTimeMillis();
             cmd.resultCode = CommandResultCode.NEW;
 
-            promises.put(seq, cmd1 -> future.complete(cmd1.marketData));
+            registerPromise(seq, cmd1 -> future.complete(cmd1.marketData));
         }));
 
         return future;
@@ -736,6 +924,11 @@ public final class ExchangeApi {
             long uid,
             Consumer<OrderCommand> callback) {
 
+        if (ingressSequencer != null) {
+            // staging sequences are not unique across gateway threads
+            throw new IllegalStateException("Sequence based orderId is not supported in SEQUENCED_SINGLE_PRODUCER mode");
+        }
+
         final long seq = ringBuffer.next();
         try {
             OrderCommand cmd = ringBuffer.get(seq);
@@ -752,7 +945,7 @@ public final class ExchangeApi {
             cmd.symbol = symbol;
             cmd.uid = uid;
             cmd.userCookie = userCookie;
-            promises.put(seq, callback);
+            registerPromise(seq, callback);
 
         } finally {
             ringBuffer.publish(seq);
@@ -774,7 +967,7 @@ public final class ExchangeApi {
                               int symbol,
                               long uid) {
 
-        ringBuffer.publishEvent((cmd, seq) -> {
+        ring().publishEvent((cmd, seq) -> {
             cmd.serviceFlags = serviceFlags;
             cmd.eventsGroup = eventsGroup;
 
@@ -801,7 +994,7 @@ public final class ExchangeApi {
             long uid,
             Consumer<OrderCommand> callback) {
 
-        ringBuffer.publishEvent((cmd, seq) -> {
+        ring().publishEvent((cmd, seq) -> {
             cmd.command = OrderCommandType.MOVE_ORDER;
             cmd.resultCode = CommandResultCode.NEW;
 
@@ -811,7 +1004,7 @@ public final class ExchangeApi {
             cmd.symbol = symbol;
             cmd.uid = uid;
 
-            promises.put(seq, callback);
+            registerPromise(seq, callback);
         });
     }
 
@@ -823,7 +1016,7 @@ public final class ExchangeApi {
                           int symbol,
                           long uid) {
 
-        ringBuffer.publishEvent((cmd, seq) -> {
+        ring().publishEvent((cmd, seq) -> {
 
             cmd.serviceFlags = serviceFlags;
             cmd.eventsGroup = eventsGroup;
@@ -845,7 +1038,7 @@ public final class ExchangeApi {
             long uid,
             Consumer<OrderCommand> callback) {
 
-        ringBuffer.publishEvent((cmd, seq) -> {
+        ring().publishEvent((cmd, seq) -> {
             cmd.command = OrderCommandType.CANCEL_ORDER;
             cmd.resultCode = CommandResultCode.NEW;
 
@@ -854,7 +1047,7 @@ public final class ExchangeApi {
             cmd.symbol = symbol;
             cmd.uid = uid;
 
-            promises.put(seq, callback);
+            registerPromise(seq, callback);
         });
 
     }
@@ -866,7 +1059,7 @@ public final class ExchangeApi {
                             int symbol,
                             long uid) {
 
-        ringBuffer.publishEvent((cmd, seq) -> {
+        ring().publishEvent((cmd, seq) -> {
 
             cmd.serviceFlags = serviceFlags;
             cmd.eventsGroup = eventsGroup;
@@ -888,7 +1081,7 @@ public final class ExchangeApi {
             long uid,
             Consumer<OrderCommand> callback) {
 
-        ringBuffer.publishEvent((cmd, seq) -> {
+        ring().publishEvent((cmd, seq) -> {
             cmd.command = OrderCommandType.REDUCE_ORDER;
             cmd.resultCode = CommandResultCode.NEW;
 
@@ -898,7 +1091,7 @@ public final class ExchangeApi {
             cmd.symbol = symbol;
             cmd.uid = uid;
 
-            promises.put(seq, callback);
+            registerPromise(seq, callback);
         });
     }
 
@@ -910,7 +1103,7 @@ public final class ExchangeApi {
                             int symbol,
                             long uid) {
 
-        ringBuffer.publishEvent((cmd, seq) -> {
+        ring().publishEvent((cmd, seq) -> {
 
             cmd.serviceFlags = serviceFlags;
             cmd.eventsGroup = eventsGroup;
@@ -926,9 +1119,37 @@ public final class ExchangeApi {
         });
     }
 
+    /**
+     * Publish batch of commands (journal replay) - claims ring buffer sequences once per batch.
+     * Reader should set same fields as corresponding single-command replay methods.
+     *
+     * @param num           - number of commands to publish
+     * @param commandReader - fills next command (called sequentially)
+     */
+    public void publishCommandsBatch(final int num, final Consumer<OrderCommand> commandReader) {
+        final RingBuffer<OrderCommand> ring = ring();
+        final int maxBatch = ring.getBufferSize() / 2;
+        int remaining = num;
+        while (remaining > 0) {
+            final int n = Math.min(remaining, maxBatch);
+            final long highSeq = ring.next(n);
+            final long lowSeq = highSeq - n + 1;
+            long seq = lowSeq;
+            try {
+                for (; seq <= highSeq; seq++) {
+                    commandReader.accept(ring.get(seq));
+                }
+            } finally {
+                // reader failure is rethrown after remaining claimed sequences are published as NOP
+                publishClaimedRange(ring, lowSeq, highSeq, seq);
+            }
+            remaining -= n;
+        }
+    }
+
     public void groupingControl(long timestampNs, long mode) {
 
-        ringBuffer.publishEvent((cmd, seq) -> {
+        ring().publishEvent((cmd, seq) -> {
             cmd.command = OrderCommandType.GROUPING_CONTROL;
             cmd.resultCode = CommandResultCode.NEW;
 
@@ -940,7 +1161,7 @@ public final class ExchangeApi {
 
     public void reset(long timestampNs) {
 
-        ringBuffer.publishEvent((cmd, seq) -> {
+        ring().publishEvent((cmd, seq) -> {
             cmd.command = OrderCommandType.RESET;
             cmd.resultCode = CommandResultCode.NEW;
             cmd.timestamp = timestampNs;
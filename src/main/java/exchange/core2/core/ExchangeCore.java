@@ -15,27 +15,35 @@
  */
 package exchange.core2.core;
 
+import com.lmax.disruptor.BatchEventProcessor;
 import com.lmax.disruptor.EventHandler;
 import com.lmax.disruptor.EventTranslator;
 import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.Sequence;
 import com.lmax.disruptor.TimeoutException;
 import com.lmax.disruptor.dsl.Disruptor;
 import com.lmax.disruptor.dsl.EventHandlerGroup;
 import com.lmax.disruptor.dsl.ProducerType;
 import exchange.core2.core.common.CoreWaitStrategy;
+import exchange.core2.core.common.IngressMode;
 import exchange.core2.core.common.cmd.CommandResultCode;
 import exchange.core2.core.common.cmd.OrderCommand;
 import exchange.core2.core.common.cmd.OrderCommandType;
 import exchange.core2.core.common.config.ExchangeConfiguration;
+import exchange.core2.core.common.config.IpcConfiguration;
+import exchange.core2.core.common.config.LoggingConfiguration;
 import exchange.core2.core.common.config.PerformanceConfiguration;
 import exchange.core2.core.common.config.SerializationConfiguration;
 import exchange.core2.core.orderbook.IOrderBook;
 import exchange.core2.core.processors.*;
+import exchange.core2.core.processors.audit.AuditLogHandler;
+import exchange.core2.core.processors.ipc.IpcIngress;
+import exchange.core2.core.processors.ipc.IpcResultsEgress;
 import exchange.core2.core.processors.journaling.ISerializationProcessor;
+import exchange.core2.core.processors.sharding.SymbolMigrationHandoff;
 import lombok.Builder;
 import lombok.extern.slf4j.Slf4j;
 
-import java.text.MessageFormat;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.function.ObjLongConsumer;
@@ -59,13 +67,20 @@ public final class ExchangeCore {
 
     private final ExchangeConfiguration exchangeConfiguration;
 
+    // null if audit log is disabled
+    private final AuditLogHandler auditLogHandler;
+
+    // null for MULTI_PRODUCER ingress mode
+    private final IngressSequencer ingressSequencer;
+
+    // null if shared memory ingress/egress is disabled
+    private final IpcIngress ipcIngress;
+    private final IpcResultsEgress ipcResultsEgress;
+
     // core can be started and stopped only once
     private boolean started = false;
     private boolean stopped = false;
 
-    // enable MatcherTradeEvent pooling
-    public static final boolean EVENTS_POOLING = false;
-
     /**
      * Exchange core constructor.
      *
@@ -88,17 +103,34 @@ public final class ExchangeCore {
 
         final CoreWaitStrategy coreWaitStrategy = perfCfg.getWaitStrategy();
 
-        // khởi tạo disruptor cho phép nhiều producer ghi cùng lúc
+        // MULTI_PRODUCER: các gateway thread ghi trực tiếp vào ring buffer
+        // SEQUENCED_SINGLE_PRODUCER: chỉ có sequencer thread ghi vào ring buffer
+        final boolean sequencedIngress = perfCfg.getIngressMode() == IngressMode.SEQUENCED_SINGLE_PRODUCER;
+
         this.disruptor = new Disruptor<>(
                 OrderCommand::new,  // tạo ra sẵn các Obj OrderCommand với số lượng bằng "ringBufferSize", nhằm tránh phải tạo Obj mới khi publish data và giảm tải cho GC
                 ringBufferSize,     // kích thước của ring_buffer, phải đảm bảo là lũy thừa của 2 để có thể dùng phép chia lấy dư bitwise tăng hiệu suất
                 threadFactory,      // tạo ra các thread để consumer xử lý msg. Có bao nhiêu consumer thì từng đó thread
-                ProducerType.MULTI, // config cho phép nhiều producer có thể gửi msg cùng lúc. Tuy nhiên hiệu năng sẽ kém hơn Single do phải sử dụng cơ chế lock
+                sequencedIngress ? ProducerType.SINGLE : ProducerType.MULTI, // MULTI cho phép nhiều producer có thể gửi msg cùng lúc. Tuy nhiên hiệu năng sẽ kém hơn Single do phải sử dụng CAS
                 coreWaitStrategy.getDisruptorWaitStrategyFactory().get());  // chiến lược chờ đợi event mới của consumer
 
         this.ringBuffer = disruptor.getRingBuffer();
 
-        this.api = new ExchangeApi(ringBuffer, perfCfg.getBinaryCommandsLz4CompressorFactory().get());
+        this.ingressSequencer = sequencedIngress
+                ? new IngressSequencer(ringBuffer, perfCfg.getIngressQueueSize(), threadFactory, coreWaitStrategy)
+                : null;
+
+        this.api = new ExchangeApi(ringBuffer, perfCfg.getBinaryCommandsLz4CompressorFactory().get(), ingressSequencer);
+
+        // shared memory ingress: gateway processes write commands into mapped ring, ingress thread moves them into ring buffer
+        final IpcConfiguration ipcCfg = exchangeConfiguration.getIpcCfg();
+        if (ipcCfg != null) {
+            this.ipcIngress = new IpcIngress(ipcCfg, api, threadFactory, coreWaitStrategy);
+            this.ipcResultsEgress = new IpcResultsEgress(ipcCfg);
+        } else {
+            this.ipcIngress = null;
+            this.ipcResultsEgress = null;
+        }
 
         // OrderBookNaiveImpl || OrderBookDirectImpl
         final IOrderBook.OrderBookFactory orderBookFactory = perfCfg.getOrderBookFactory();
@@ -112,14 +144,16 @@ public final class ExchangeCore {
         serializationProcessor = serializationCfg.getSerializationProcessorFactory().apply(exchangeConfiguration);
 
         // creating shared objects pool
+        // pooling disabled - chains of single event, never returned back by grouping processor
         final int poolInitialSize = (matchingEnginesNum + riskEnginesNum) * 8;
-        final int chainLength = EVENTS_POOLING ? 1024 : 1;
-        final SharedPool sharedPool = new SharedPool(poolInitialSize * 4, poolInitialSize, chainLength);
+        final SharedPool sharedPool = perfCfg.isEventsPooling()
+                ? new SharedPool(Math.max(perfCfg.getEventsPoolSize(), poolInitialSize), poolInitialSize, perfCfg.getEventsPoolChainLength())
+                : new SharedPool(poolInitialSize * 4, poolInitialSize, 1);
 
         // handler exception cua disruptor
         final DisruptorExceptionHandler<OrderCommand> exceptionHandler = new DisruptorExceptionHandler<>("main", (ex, seq) -> {
             log.error("Exception thrown on sequence={}", seq, ex);
-            ringBuffer.publishEvent(SHUTDOWN_SIGNAL_TRANSLATOR);
+            api.publishEvent(SHUTDOWN_SIGNAL_TRANSLATOR);
             disruptor.shutdown();
         });
         disruptor.setDefaultExceptionHandler(exceptionHandler);
@@ -131,12 +165,14 @@ public final class ExchangeCore {
 
         // start creating matching engines
         // tạo các matching_engine với số lượng "matchingEnginesNum", shardId bắt đầu từ 0 --> matchingEnginesNum - 1
+        // order books migration between matching engines (see BatchMigrateSymbolsCommand)
+        final SymbolMigrationHandoff migrationHandoff = new SymbolMigrationHandoff();
         final Map<Integer, CompletableFuture<MatchingEngineRouter>> matchingEngineFutures = IntStream.range(0, matchingEnginesNum)
                 .boxed()
                 .collect(Collectors.toMap(
                         shardId -> shardId,
                         shardId -> CompletableFuture.supplyAsync(
-                                () -> new MatchingEngineRouter(shardId, matchingEnginesNum, serializationProcessor, orderBookFactory, sharedPool, exchangeConfiguration),
+                                () -> new MatchingEngineRouter(shardId, matchingEnginesNum, serializationProcessor, orderBookFactory, sharedPool, migrationHandoff, exchangeConfiguration),
                                 loaderExecutor)));
 
         // TODO create processors in same thread we will execute it??
@@ -181,7 +217,6 @@ public final class ExchangeCore {
             // hàm này sẽ add 'journalingHandler' thực hiện sau khi 'GroupingProcessor' hoàn thành
             afterGrouping.handleEventsWith(journalingHandler);
         }
-        afterGrouping.handleEventsWith(this::writelog);
 
         // chạy sau khi GroupingProcessor hoàn thành và song song với việc ghi log
         // nó sử dụng thằng "riskEngine::preProcessCommand" để check xem user có đủ số dư ko, hoặc nếu có margin thì có đang bị quá hạn mức ko
@@ -209,6 +244,14 @@ public final class ExchangeCore {
                     return r2;
                 }));
 
+        // [audit log (A)] after matching engine (ME) - result codes and trade events are final at this point
+        final LoggingConfiguration loggingCfg = exchangeConfiguration.getLoggingCfg();
+        if (loggingCfg.isAuditLogEnabled()) {
+            auditLogHandler = new AuditLogHandler(exchangeConfiguration.getInitStateCfg().getExchangeId(), loggingCfg.getAuditLogCfg());
+            afterMatchingEngine.handleEventsWith(auditLogHandler);
+        } else {
+            auditLogHandler = null;
+        }
 
         // 4. results handler (E) after matching engine (ME) + [journaling (J)]
         final EventHandlerGroup<OrderCommand> mainHandlerGroup = enableJournaling
@@ -217,10 +260,35 @@ public final class ExchangeCore {
 
         final ResultsHandler resultsHandler = new ResultsHandler(resultsConsumer);
 
-        mainHandlerGroup.handleEventsWith((cmd, seq, eob) -> {
+        final EventHandler<OrderCommand> resultsEventHandler = (cmd, seq, eob) -> {
             resultsHandler.onEvent(cmd, seq, eob);
-            api.processResult(seq, cmd); // TODO SLOW ?(volatile operations)
-        });
+            api.processResult(seq, cmd);
+        };
+
+        // 5. IPC egress (E2) in parallel with results handler (E) - slow results consumer does not delay broadcast
+        final EventHandler<OrderCommand>[] resultsStageHandlers = newEventHandlersArray(ipcResultsEgress == null ? 1 : 2);
+        resultsStageHandlers[0] = resultsEventHandler;
+        if (ipcResultsEgress != null) {
+            // same grouping control as results handler (no results broadcast during journal replay)
+            resultsStageHandlers[1] = new ResultsHandler(new FlyweightEventsProcessor(ipcResultsEgress));
+        }
+
+        // group commit journal: results are released only after journal is fsync-ed (durable sequence)
+        final Sequence durableSequence = enableJournaling ? serializationProcessor.getDurableSequence() : null;
+        if (durableSequence == null) {
+            mainHandlerGroup.handleEventsWith(resultsStageHandlers);
+        } else {
+            for (final EventHandler<OrderCommand> handler : resultsStageHandlers) {
+                mainHandlerGroup.handleEventsWith(
+                        (_ringBuffer, _sequences) -> {
+                            final Sequence[] barrierSequences = Arrays.copyOf(_sequences, _sequences.length + 1);
+                            barrierSequences[_sequences.length] = durableSequence;
+                            final BatchEventProcessor<OrderCommand> processor = new BatchEventProcessor<>(_ringBuffer, _ringBuffer.newBarrier(barrierSequences), handler);
+                            processor.setExceptionHandler(exceptionHandler);
+                            return processor;
+                        });
+            }
+        }
 
         // attach slave processors to master processor
         IntStream.range(0, riskEnginesNum).forEach(i -> procR1.get(i).setSlaveProcessor(procR2.get(i)));
@@ -233,20 +301,24 @@ public final class ExchangeCore {
         }
     }
 
-    public void writelog(OrderCommand cmd, long dSeq, boolean eob){
-        try{
-//            Thread.sleep(500);
-            log.info(MessageFormat.format("Writelog - cmd: {0}, dSeq: {1}, eob: {2}",  cmd.toString(), dSeq, eob));
-        }catch (Exception ex){}
-    }
-
     public synchronized void startup() {
         if (!started) {
             log.debug("Starting disruptor...");
+            if (auditLogHandler != null) {
+                auditLogHandler.start();
+            }
             disruptor.start();
+            if (ingressSequencer != null) {
+                ingressSequencer.start();
+            }
             started = true;
 
             serializationProcessor.replayJournalFullAndThenEnableJouraling(exchangeConfiguration.getInitStateCfg(), api);
+
+            // accepting IPC commands only after journal is replayed
+            if (ipcIngress != null) {
+                ipcIngress.start();
+            }
         }
     }
 
@@ -259,6 +331,11 @@ public final class ExchangeCore {
         return api;
     }
 
+    // last ring buffer sequence processed by all handlers
+    long getProcessedSequence() {
+        return ringBuffer.getMinimumGatingSequence();
+    }
+
     private static final EventTranslator<OrderCommand> SHUTDOWN_SIGNAL_TRANSLATOR = (cmd, seq) -> {
         cmd.command = OrderCommandType.SHUTDOWN_SIGNAL;
         cmd.resultCode = CommandResultCode.NEW;
@@ -283,9 +360,24 @@ public final class ExchangeCore {
             // TODO stop accepting new events first
             try {
                 log.info("Shutdown disruptor...");
-                ringBuffer.publishEvent(SHUTDOWN_SIGNAL_TRANSLATOR);
+                if (ipcIngress != null) {
+                    // moves all committed IPC commands into ring buffer
+                    ipcIngress.stop();
+                }
+                api.publishEvent(SHUTDOWN_SIGNAL_TRANSLATOR);
+                if (ingressSequencer != null) {
+                    // moves all pending commands (including shutdown signal) into ring buffer
+                    ingressSequencer.stop();
+                }
                 disruptor.shutdown(timeout, timeUnit);
                 log.info("Disruptor stopped");
+                serializationProcessor.shutdown();
+                if (ipcResultsEgress != null) {
+                    ipcResultsEgress.close();
+                }
+                if (auditLogHandler != null) {
+                    auditLogHandler.stop();
+                }
             } catch (TimeoutException e) {
                 throw new IllegalStateException("could not stop a disruptor gracefully. Not all events may be executed.");
             }
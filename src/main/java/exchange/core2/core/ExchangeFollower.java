@@ -0,0 +1,345 @@
+package exchange.core2.core;
+
+import com.lmax.disruptor.EventTranslator;
+import exchange.core2.core.common.IngressMode;
+import exchange.core2.core.common.api.reports.StateHashReportQuery;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.cmd.OrderCommandType;
+import exchange.core2.core.common.config.ExchangeConfiguration;
+import exchange.core2.core.processors.journaling.JournalTailer;
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongFunction;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Warm standby exchange core (follower) - continuously applies journal of the leader instance,
+ * so order books and risk state are always hot and failover is a promotion instead of full journal replay.<p>
+ * Leader journal is read by {@link JournalTailer} from local (or shared) disk.
+ * At every leader snapshot point follower state hash is requested and compared to leader state hash (if known).<p>
+ * Follower is read-only until promoted: only queries (reports, order books) can be submitted into its API.
+ * Same as for journal replay, results consumer is not receiving replicated commands (events grouping is disabled).<p>
+ * If journal can not be read (e.g. corrupted data), follower stops following and can not be promoted (see {@link #getFollowingFailure()}).<p>
+ * Requires MULTI_PRODUCER ingress mode (follower thread publishes directly into ring buffer).
+ */
+@Slf4j
+public final class ExchangeFollower implements AutoCloseable {
+
+    private static final int POLL_LIMIT = 4096;
+    private static final long IDLE_PARK_NS = 100_000;
+
+    private final ExchangeCore exchangeCore;
+    private final ExchangeApi api;
+    private final JournalTailer tailer;
+
+    // snapshotId -> leader state hash at snapshot point (null - unknown)
+    private final LongFunction<Integer> leaderStateHashes;
+
+    private final Thread followerThread;
+    private volatile boolean promoting = false;
+    private boolean promoted = false;
+
+    // journal following failed - follower state is incomplete, it can not be promoted
+    private volatile Exception followingFailure = null;
+
+    // published but not yet applied commands: ring buffer sequence, leader sequence and time when record was read
+    private final long[] publishedRingSeqs;
+    private final long[] publishedSeqs;
+    private final long[] receivedNanos;
+    private final int publishedMask;
+
+    // updated by follower thread only (or by promoting thread after follower thread is stopped)
+    private volatile long publishedCount = 0;
+    private volatile long appliedCount = 0;
+    private volatile long receivedSeq;
+    private volatile long appliedSeq;
+
+    // updated by results thread
+    private volatile long lastVerifiedSnapshotId = -1;
+    private volatile int stateHashMismatches = 0;
+
+    // follower thread only
+    private OrderCommand publishingCmd;
+    private long publishingRingSeq;
+    private long pollNanos;
+    private final EventTranslator<OrderCommand> journalRecordTranslator = (slot, ringSeq) -> {
+        copyJournalRecord(publishingCmd, slot);
+        publishingRingSeq = ringSeq;
+    };
+
+    /**
+     * Exchange follower constructor.
+     *
+     * @param resultsConsumer       - custom consumer of processed commands
+     * @param exchangeConfiguration - follower exchange configuration (initial state should match leader journal start)
+     * @param leaderStorageFolder   - leader journal folder
+     * @param leaderExchangeId      - leader exchange id
+     * @param leaderSnapshotId      - leader snapshot id to start following from (0 - clean start)
+     * @param leaderBaseSeq         - leader snapshot sequence (0 - clean start)
+     * @param leaderStateHashes     - provides leader state hash at snapshot point (optional)
+     */
+    @Builder
+    public ExchangeFollower(final ObjLongConsumer<OrderCommand> resultsConsumer,
+                            final ExchangeConfiguration exchangeConfiguration,
+                            final String leaderStorageFolder,
+                            final String leaderExchangeId,
+                            final long leaderSnapshotId,
+                            final long leaderBaseSeq,
+                            final LongFunction<Integer> leaderStateHashes) {
+
+        if (exchangeConfiguration.getPerformanceCfg().getIngressMode() != IngressMode.MULTI_PRODUCER) {
+            throw new IllegalArgumentException("Follower requires MULTI_PRODUCER ingress mode");
+        }
+
+        this.leaderStateHashes = leaderStateHashes;
+        this.receivedSeq = leaderBaseSeq;
+        this.appliedSeq = leaderBaseSeq;
+
+        // commands in flight are limited by ring buffer size
+        final int capacity = exchangeConfiguration.getPerformanceCfg().getRingBufferSize();
+        this.publishedRingSeqs = new long[capacity];
+        this.publishedSeqs = new long[capacity];
+        this.receivedNanos = new long[capacity];
+        this.publishedMask = capacity - 1;
+
+        this.exchangeCore = ExchangeCore.builder()
+                .resultsConsumer(resultsConsumer)
+                .exchangeConfiguration(exchangeConfiguration)
+                .build();
+
+        this.api = exchangeCore.getApi();
+        this.tailer = new JournalTailer(leaderStorageFolder, leaderExchangeId, leaderSnapshotId, leaderBaseSeq);
+
+        this.followerThread = new Thread(this::followJournal, "Thread-JournalFollower");
+        this.followerThread.setDaemon(true);
+    }
+
+    /**
+     * Start follower exchange core and journal following
+     */
+    public synchronized void startup() {
+        exchangeCore.startup();
+        // journal records already contain events groups
+        api.groupingControl(0, 0);
+        followerThread.start();
+    }
+
+    /**
+     * Apply all journal records available at the moment, stop following and enable events grouping.
+     * After promotion returned API can be used for processing new commands.
+     *
+     * @return exchange API of promoted instance
+     * @throws IllegalStateException if journal following failed (follower state is not complete)
+     */
+    public synchronized ExchangeApi promote() throws InterruptedException {
+        if (promoted) {
+            return api;
+        }
+
+        promoting = true;
+        followerThread.join();
+
+        final Exception failure = followingFailure;
+        if (failure != null) {
+            throw new IllegalStateException("Can not promote - journal following failed at seq=" + receivedSeq, failure);
+        }
+
+        while (!updateApplied()) {
+            LockSupport.parkNanos(IDLE_PARK_NS);
+        }
+
+        promoted = true;
+        api.groupingControl(0, 1);
+        log.info("Promoted at leader seq={} (last verified snapshot {}, state hash mismatches: {})",
+                appliedSeq, lastVerifiedSnapshotId, stateHashMismatches);
+        return api;
+    }
+
+    public ExchangeApi getApi() {
+        return api;
+    }
+
+    /**
+     * @return exception which stopped journal following (null - no failures)
+     */
+    public Exception getFollowingFailure() {
+        return followingFailure;
+    }
+
+    /**
+     * @return last leader sequence read from journal and published into follower
+     */
+    public long getReceivedSeq() {
+        return receivedSeq;
+    }
+
+    /**
+     * @return last leader sequence processed by follower
+     */
+    public long getAppliedSeq() {
+        return appliedSeq;
+    }
+
+    /**
+     * @return replication lag in sequences (read from journal, but not processed by follower yet)
+     */
+    public long getLagSeq() {
+        return receivedSeq - appliedSeq;
+    }
+
+    /**
+     * Time since oldest not applied command was read from journal (approximate, updated by follower thread).
+     *
+     * @return replication lag in nanoseconds (0 - all available journal records are applied)
+     */
+    public long getLagNs() {
+        final long applied = appliedCount;
+        if (applied >= publishedCount) {
+            return 0;
+        }
+        return Math.max(0, System.nanoTime() - receivedNanos[(int) applied & publishedMask]);
+    }
+
+    /**
+     * @return last leader snapshot id where follower state was verified (-1 - no verified snapshots yet)
+     */
+    public long getLastVerifiedSnapshotId() {
+        return lastVerifiedSnapshotId;
+    }
+
+    /**
+     * @return number of snapshot points where follower state hash was different from leader state hash
+     */
+    public int getStateHashMismatches() {
+        return stateHashMismatches;
+    }
+
+    @Override
+    public synchronized void close() {
+        promoting = true;
+        try {
+            followerThread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        exchangeCore.shutdown();
+    }
+
+    private void followJournal() {
+        try {
+            log.info("Following journal from seq={}", tailer.getLastSeq());
+            while (true) {
+                pollNanos = System.nanoTime();
+                final int polled = tailer.poll(this::publishJournalRecord, POLL_LIMIT);
+                updateApplied();
+                if (polled == 0) {
+                    if (promoting) {
+                        log.info("Stopped following journal at seq={}", tailer.getLastSeq());
+                        return;
+                    }
+                    LockSupport.parkNanos(IDLE_PARK_NS);
+                }
+            }
+        } catch (Exception ex) {
+            log.error("Journal following failed at seq={}", tailer.getLastSeq(), ex);
+            followingFailure = ex;
+        } finally {
+            closeTailer();
+        }
+    }
+
+    private void closeTailer() {
+        try {
+            tailer.close();
+        } catch (IOException ex) {
+            log.warn("Can not close journal tailer", ex);
+        }
+    }
+
+    private void publishJournalRecord(final OrderCommand cmd, final long seq) {
+
+        if (cmd.command == OrderCommandType.PERSIST_STATE_MATCHING) {
+            return;
+        } else if (cmd.command == OrderCommandType.PERSIST_STATE_RISK) {
+            verifySnapshotState(cmd.orderId);
+            return;
+        }
+
+        final long published = publishedCount;
+        while (published - appliedCount > publishedMask) {
+            // ring buffer is full of not processed commands
+            if (updateApplied()) {
+                break;
+            }
+            Thread.yield();
+        }
+
+        publishingCmd = cmd;
+        api.publishEvent(journalRecordTranslator);
+
+        final int idx = (int) published & publishedMask;
+        publishedRingSeqs[idx] = publishingRingSeq;
+        publishedSeqs[idx] = seq;
+        receivedNanos[idx] = pollNanos;
+        publishedCount = published + 1;
+        receivedSeq = seq;
+    }
+
+    /**
+     * Move applied position up to last processed ring buffer sequence
+     *
+     * @return true if all published commands are applied
+     */
+    private boolean updateApplied() {
+        final long published = publishedCount;
+        long applied = appliedCount;
+        if (applied == published) {
+            return true;
+        }
+
+        final long processedSequence = exchangeCore.getProcessedSequence();
+        while (applied < published && publishedRingSeqs[(int) applied & publishedMask] <= processedSequence) {
+            applied++;
+        }
+
+        if (applied != appliedCount) {
+            appliedSeq = publishedSeqs[(int) (applied - 1) & publishedMask];
+            appliedCount = applied;
+        }
+        return applied == published;
+    }
+
+    private void verifySnapshotState(final long snapshotId) {
+
+        if (snapshotId == -1 || leaderStateHashes == null) {
+            return;
+        }
+
+        // query is processed exactly after all commands preceding snapshot point, result is handled by results thread
+        api.processReport(new StateHashReportQuery(), 0).thenAccept(result -> {
+            final Integer leaderStateHash = leaderStateHashes.apply(snapshotId);
+            if (leaderStateHash == null) {
+                log.debug("Leader state hash is unknown for snapshot {}", snapshotId);
+            } else if (leaderStateHash == result.getStateHash()) {
+                log.info("Follower state verified at snapshot {}", snapshotId);
+                lastVerifiedSnapshotId = snapshotId;
+            } else {
+                log.error("Follower state hash {} is different from leader state hash {} at snapshot {}",
+                        result.getStateHash(), leaderStateHash, snapshotId);
+                stateHashMismatches++;
+            }
+        });
+    }
+
+    private static void copyJournalRecord(final OrderCommand cmd, final OrderCommand slot) {
+        cmd.writeTo(slot);
+        slot.serviceFlags = cmd.serviceFlags;
+        slot.eventsGroup = cmd.eventsGroup;
+        slot.userCookie = cmd.userCookie;
+        slot.resultCode = CommandResultCode.NEW;
+    }
+}
@@ -0,0 +1,106 @@
+package exchange.core2.core;
+
+import exchange.core2.core.common.L2MarketData;
+import exchange.core2.core.common.L2MarketDataDelta;
+import exchange.core2.core.common.MatcherEventType;
+import exchange.core2.core.common.MatcherTradeEvent;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.cmd.OrderCommandType;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Results consumer dispatching events into {@link IFlyweightEventsHandler}.
+ * Does not produce any garbage: same view objects are re-wrapped for every command.
+ */
+@RequiredArgsConstructor
+@Slf4j
+public final class FlyweightEventsProcessor implements ObjLongConsumer<OrderCommand> {
+
+    @Getter
+    private final IFlyweightEventsHandler eventsHandler;
+
+    private final IFlyweightEventsHandler.CommandResultView commandResultView = new IFlyweightEventsHandler.CommandResultView();
+    private final IFlyweightEventsHandler.TradeEventView tradeEventView = new IFlyweightEventsHandler.TradeEventView();
+    private final IFlyweightEventsHandler.ReduceEventView reduceEventView = new IFlyweightEventsHandler.ReduceEventView();
+    private final IFlyweightEventsHandler.RejectEventView rejectEventView = new IFlyweightEventsHandler.RejectEventView();
+    private final IFlyweightEventsHandler.OrderBookView orderBookView = new IFlyweightEventsHandler.OrderBookView();
+    private final IFlyweightEventsHandler.OrderBookUpdateView orderBookUpdateView = new IFlyweightEventsHandler.OrderBookUpdateView();
+
+    @Override
+    public void accept(OrderCommand cmd, long seq) {
+        try {
+            sendCommandResult(cmd, seq);
+            sendTradeEvents(cmd);
+            sendMarketData(cmd);
+            sendMarketDataUpdate(cmd);
+        } catch (Exception ex) {
+            log.error("Exception when handling command result data", ex);
+        }
+    }
+
+    private void sendCommandResult(OrderCommand cmd, long seq) {
+        // intermediate frames of binary command
+        if (cmd.command == OrderCommandType.BINARY_DATA_COMMAND && cmd.resultCode == CommandResultCode.ACCEPTED) {
+            return;
+        }
+        commandResultView.wrap(cmd, seq);
+        eventsHandler.commandResult(commandResultView);
+    }
+
+    private void sendTradeEvents(OrderCommand cmd) {
+        final MatcherTradeEvent firstEvent = cmd.matcherEvent;
+        if (firstEvent == null) {
+            return;
+        }
+
+        if (firstEvent.eventType == MatcherEventType.REDUCE) {
+
+            reduceEventView.wrap(cmd, firstEvent);
+            eventsHandler.reduceEvent(reduceEventView);
+
+            if (firstEvent.nextEvent != null) {
+                throw new IllegalStateException("Only single REDUCE event is expected");
+            }
+
+            return;
+        }
+
+        if (tradeEventView.wrap(cmd)) {
+            eventsHandler.tradeEvent(tradeEventView);
+        }
+
+        // last reject event (if any)
+        MatcherTradeEvent rejectEvent = null;
+        for (MatcherTradeEvent evt = firstEvent; evt != null; evt = evt.nextEvent) {
+            if (evt.eventType == MatcherEventType.REJECT) {
+                rejectEvent = evt;
+            }
+        }
+
+        if (rejectEvent != null) {
+            rejectEventView.wrap(cmd, rejectEvent);
+            eventsHandler.rejectEvent(rejectEventView);
+        }
+    }
+
+    private void sendMarketData(OrderCommand cmd) {
+        final L2MarketData marketData = cmd.marketData;
+        if (marketData != null) {
+            orderBookView.wrap(cmd, marketData);
+            eventsHandler.orderBook(orderBookView);
+        }
+    }
+
+    private void sendMarketDataUpdate(OrderCommand cmd) {
+        final L2MarketDataDelta delta = cmd.marketDataDelta;
+        if (delta != null && delta.size != 0) {
+            orderBookUpdateView.wrap(cmd, delta);
+            eventsHandler.orderBookUpdate(orderBookUpdateView);
+        }
+    }
+}
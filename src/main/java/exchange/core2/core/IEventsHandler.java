@@ -10,12 +10,14 @@ import java.util.List;
 /**
  * Convenient events handler interface for non latency-critical applications.<br>
  * Custom handler implementation should be attached to SimpleEventProcessor.<br>
+ * See {@link IFlyweightEventsHandler} for garbage-free alternative.<br>
  * Handler method are invoked from single thread in following order:
  * <table summary="execution order">
  * <tr><td>1. </td><td> commandResult</td></tr>
  * <tr><td>2A.  </td><td> optional reduceEvent <td> optional tradeEvent</td></tr>
  * <tr><td>2B. </td><td> <td>optional rejectEvent</td></tr>
  * <tr><td>3. </td><td> orderBook - mandatory for ApiOrderBookRequest, optional for other commands</td></tr>
+ * <tr><td>4. </td><td> optional orderBookUpdate (incremental L2 mode)</td></tr>
  * </table>
  * Events processing will stop immediately if any handler throws an exception - you should consider wrapping logic into try-catch block if necessary.
  */
@@ -57,6 +59,16 @@ public interface IEventsHandler {
      */
     void orderBook(OrderBook orderBook);
 
+    /**
+     * Method is called when changed price levels (L2MarketDataDelta) were attached to command by matching engine.
+     * That happens for successful order commands when incremental L2 mode is enabled (PerformanceConfiguration.sendL2DeltasForEveryCmd).
+     * Local order book (snapshot + updates) can be maintained by SimpleEventsProcessor.
+     *
+     * @param orderBookUpdate - immutable object containing changed levels (absolute state, zero volume - level removed)
+     */
+    default void orderBookUpdate(OrderBookUpdate orderBookUpdate) {
+    }
+
     @Data
     class ApiCommandResult {
         public final ApiCommand command;
@@ -124,6 +136,14 @@ public interface IEventsHandler {
         public final long timestamp;
     }
 
+    @Data
+    class OrderBookUpdate {
+        public final int symbol;
+        public final List<OrderBookRecord> asks;
+        public final List<OrderBookRecord> bids;
+        public final long timestamp;
+    }
+
     @Data
     class OrderBookRecord {
         public final long price;
@@ -0,0 +1,411 @@
+package exchange.core2.core;
+
+import exchange.core2.core.common.L2MarketData;
+import exchange.core2.core.common.L2MarketDataDelta;
+import exchange.core2.core.common.MatcherEventType;
+import exchange.core2.core.common.MatcherTradeEvent;
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.cmd.OrderCommandType;
+
+/**
+ * Zero-allocation events handler interface for latency-critical applications (garbage-free alternative to {@link IEventsHandler}).<br>
+ * Custom handler implementation should be attached to FlyweightEventsProcessor.<br>
+ * All views are re-used mutable flyweights over OrderCommand and its matcher events chain:
+ * they are valid only during the callback - don't keep references, copy required data instead.<br>
+ * Handler methods are invoked from single thread in the same order as {@link IEventsHandler} methods.
+ */
+public interface IFlyweightEventsHandler {
+
+    /**
+     * Method is called after each commands execution (except intermediate binary command frames).
+     *
+     * @param commandResult - view of the original command, result code, and assigned sequence number.
+     */
+    void commandResult(CommandResultView commandResult);
+
+    /**
+     * Method is called if order execution was resulted to one or more trades.
+     * Trades are iterated with cursor: {@link TradeEventView#nextTrade()}.
+     *
+     * @param tradeEvent - view of the event
+     */
+    void tradeEvent(TradeEventView tradeEvent);
+
+    /**
+     * Method is called if IoC order was not possible to match with provided price limit.
+     *
+     * @param rejectEvent - view of the event
+     */
+    void rejectEvent(RejectEventView rejectEvent);
+
+    /**
+     * Method is called if Cancel or Reduce command was successfully executed.
+     *
+     * @param reduceEvent - view of the event
+     */
+    void reduceEvent(ReduceEventView reduceEvent);
+
+    /**
+     * Method is called when order book snapshot (L2MarketData) was attached to commands by matching engine.
+     *
+     * @param orderBook - view of L2 OrderBook snapshot
+     */
+    void orderBook(OrderBookView orderBook);
+
+    /**
+     * Method is called when changed price levels (incremental L2 mode) were attached to command by matching engine.
+     *
+     * @param orderBookUpdate - view of changed levels (zero volume - level removed)
+     */
+    default void orderBookUpdate(OrderBookUpdateView orderBookUpdate) {
+    }
+
+
+    final class CommandResultView {
+
+        private OrderCommand cmd;
+        private long seq;
+
+        void wrap(final OrderCommand cmd, final long seq) {
+            this.cmd = cmd;
+            this.seq = seq;
+        }
+
+        public OrderCommandType getCommandType() {
+            return cmd.command;
+        }
+
+        public CommandResultCode getResultCode() {
+            return cmd.resultCode;
+        }
+
+        public long getSeq() {
+            return seq;
+        }
+
+        public int getSymbol() {
+            return cmd.symbol;
+        }
+
+        public long getOrderId() {
+            return cmd.orderId;
+        }
+
+        public long getUid() {
+            return cmd.uid;
+        }
+
+        public long getPrice() {
+            return cmd.price;
+        }
+
+        public long getReserveBidPrice() {
+            return cmd.reserveBidPrice;
+        }
+
+        public long getSize() {
+            return cmd.size;
+        }
+
+        public OrderAction getAction() {
+            return cmd.action;
+        }
+
+        public OrderType getOrderType() {
+            return cmd.orderType;
+        }
+
+        public int getUserCookie() {
+            return cmd.userCookie;
+        }
+
+        public long getTimestamp() {
+            return cmd.timestamp;
+        }
+    }
+
+    final class TradeEventView {
+
+        private OrderCommand cmd;
+        private long totalVolume;
+        private boolean takerOrderCompleted;
+        private int tradesNum;
+
+        // cursor
+        private MatcherTradeEvent trade;
+        private MatcherTradeEvent nextCandidate;
+
+        /**
+         * @return true if command has at least one trade
+         */
+        boolean wrap(final OrderCommand cmd) {
+            this.cmd = cmd;
+            long volume = 0L;
+            boolean completed = false;
+            int num = 0;
+            for (MatcherTradeEvent evt = cmd.matcherEvent; evt != null; evt = evt.nextEvent) {
+                if (evt.eventType == MatcherEventType.TRADE) {
+                    volume += evt.size;
+                    completed |= evt.activeOrderCompleted;
+                    num++;
+                }
+            }
+            this.totalVolume = volume;
+            this.takerOrderCompleted = completed;
+            this.tradesNum = num;
+            resetTrades();
+            return num != 0;
+        }
+
+        /**
+         * Move cursor to the next trade
+         *
+         * @return false if there are no more trades
+         */
+        public boolean nextTrade() {
+            MatcherTradeEvent evt = nextCandidate;
+            while (evt != null && evt.eventType != MatcherEventType.TRADE) {
+                evt = evt.nextEvent;
+            }
+            trade = evt;
+            nextCandidate = evt != null ? evt.nextEvent : null;
+            return evt != null;
+        }
+
+        /**
+         * Rewind cursor to the position before the first trade
+         */
+        public void resetTrades() {
+            trade = null;
+            nextCandidate = cmd.matcherEvent;
+        }
+
+        public int getSymbol() {
+            return cmd.symbol;
+        }
+
+        public long getTotalVolume() {
+            return totalVolume;
+        }
+
+        public long getTakerOrderId() {
+            return cmd.orderId;
+        }
+
+        public long getTakerUid() {
+            return cmd.uid;
+        }
+
+        public OrderAction getTakerAction() {
+            return cmd.action;
+        }
+
+        public boolean isTakerOrderCompleted() {
+            return takerOrderCompleted;
+        }
+
+        public long getTimestamp() {
+            return cmd.timestamp;
+        }
+
+        public int getTradesNum() {
+            return tradesNum;
+        }
+
+        // ----- current trade (after nextTrade returned true) -----
+
+        public long getMakerOrderId() {
+            return trade.matchedOrderId;
+        }
+
+        public long getMakerUid() {
+            return trade.matchedOrderUid;
+        }
+
+        public boolean isMakerOrderCompleted() {
+            return trade.matchedOrderCompleted;
+        }
+
+        public long getPrice() {
+            return trade.price;
+        }
+
+        public long getVolume() {
+            return trade.size;
+        }
+    }
+
+    final class ReduceEventView {
+
+        private OrderCommand cmd;
+        private MatcherTradeEvent evt;
+
+        void wrap(final OrderCommand cmd, final MatcherTradeEvent evt) {
+            this.cmd = cmd;
+            this.evt = evt;
+        }
+
+        public int getSymbol() {
+            return cmd.symbol;
+        }
+
+        public long getReducedVolume() {
+            return evt.size;
+        }
+
+        public boolean isOrderCompleted() {
+            return evt.activeOrderCompleted;
+        }
+
+        public long getPrice() {
+            return evt.price;
+        }
+
+        public long getOrderId() {
+            return cmd.orderId;
+        }
+
+        public long getUid() {
+            return cmd.uid;
+        }
+
+        public long getTimestamp() {
+            return cmd.timestamp;
+        }
+    }
+
+    final class RejectEventView {
+
+        private OrderCommand cmd;
+        private MatcherTradeEvent evt;
+
+        void wrap(final OrderCommand cmd, final MatcherTradeEvent evt) {
+            this.cmd = cmd;
+            this.evt = evt;
+        }
+
+        public int getSymbol() {
+            return cmd.symbol;
+        }
+
+        public long getRejectedVolume() {
+            return evt.size;
+        }
+
+        public long getPrice() {
+            return evt.price;
+        }
+
+        public long getOrderId() {
+            return cmd.orderId;
+        }
+
+        public long getUid() {
+            return cmd.uid;
+        }
+
+        public long getTimestamp() {
+            return cmd.timestamp;
+        }
+    }
+
+    final class OrderBookView {
+
+        private OrderCommand cmd;
+        private L2MarketData data;
+
+        void wrap(final OrderCommand cmd, final L2MarketData data) {
+            this.cmd = cmd;
+            this.data = data;
+        }
+
+        public int getSymbol() {
+            return cmd.symbol;
+        }
+
+        public long getTimestamp() {
+            return cmd.timestamp;
+        }
+
+        /**
+         * @return true if snapshot was explicitly requested (successful ApiOrderBookRequest), false for regular L2 updates
+         */
+        public boolean isRequested() {
+            return cmd.command == OrderCommandType.ORDER_BOOK_REQUEST && cmd.resultCode == CommandResultCode.SUCCESS;
+        }
+
+        public int getAskSize() {
+            return data.askSize;
+        }
+
+        public long getAskPrice(int i) {
+            return data.askPrices[i];
+        }
+
+        public long getAskVolume(int i) {
+            return data.askVolumes[i];
+        }
+
+        public int getAskOrders(int i) {
+            return (int) data.askOrders[i];
+        }
+
+        public int getBidSize() {
+            return data.bidSize;
+        }
+
+        public long getBidPrice(int i) {
+            return data.bidPrices[i];
+        }
+
+        public long getBidVolume(int i) {
+            return data.bidVolumes[i];
+        }
+
+        public int getBidOrders(int i) {
+            return (int) data.bidOrders[i];
+        }
+    }
+
+    final class OrderBookUpdateView {
+
+        private OrderCommand cmd;
+        private L2MarketDataDelta delta;
+
+        void wrap(final OrderCommand cmd, final L2MarketDataDelta delta) {
+            this.cmd = cmd;
+            this.delta = delta;
+        }
+
+        public int getSymbol() {
+            return cmd.symbol;
+        }
+
+        public long getTimestamp() {
+            return cmd.timestamp;
+        }
+
+        public int getSize() {
+            return delta.size;
+        }
+
+        public boolean isAsk(int i) {
+            return delta.isAsk[i];
+        }
+
+        public long getPrice(int i) {
+            return delta.prices[i];
+        }
+
+        public long getVolume(int i) {
+            return delta.volumes[i];
+        }
+
+        public int getOrders(int i) {
+            return delta.orders[i];
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core;
+
+import exchange.core2.core.common.MarginLevel;
+
+/**
+ * Margin monitor events handler (margin trading mode).
+ * <p>
+ * Methods are called synchronously from risk engine thread right after position, balance or last price change was applied,
+ * so implementation should not block (for example, just publish event into a queue).
+ * Risk release stage is running in parallel with results handler, so event can arrive after result of the command caused it.
+ * Same handler instance is shared by all risk engines, implementation must be thread-safe if riskEnginesNum greater than 1.
+ * Events are also emitted while replaying journal and after loading snapshot (initial margin level of accounts).
+ */
+public interface IMarginEventsHandler {
+
+    /**
+     * Method is called when margin level of account was changed.
+     *
+     * @param uid            - user id
+     * @param currency       - currency of positions and account
+     * @param level          - new margin level (NORMAL - margin call is resolved or all positions were closed)
+     * @param equity         - account balance plus estimated profit of all positions in this currency
+     * @param requiredMargin - margin required for open positions and pending orders in this currency
+     */
+    void marginLevelChanged(long uid, int currency, MarginLevel level, long equity, long requiredMargin);
+}
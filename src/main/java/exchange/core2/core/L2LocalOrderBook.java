@@ -0,0 +1,84 @@
+package exchange.core2.core;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Local L2 order book maintained by consumer: initialized from full snapshot (ApiOrderBookRequest)
+ * and updated by incremental changes of price levels.
+ * <p>
+ * Snapshot and updates are coming from the same sequenced stream, so local order book is always consistent.
+ * Levels deeper than initial snapshot depth are unknown, request full order book (size=-1) to initialize it.
+ * <p>
+ * Not thread safe, should be accessed from events handler thread.
+ */
+public final class L2LocalOrderBook {
+
+    @Getter
+    private final int symbol;
+
+    private final NavigableMap<Long, IEventsHandler.OrderBookRecord> asks = new TreeMap<>();
+    private final NavigableMap<Long, IEventsHandler.OrderBookRecord> bids = new TreeMap<>(Collections.reverseOrder());
+
+    @Getter
+    private long timestamp;
+
+    public L2LocalOrderBook(final IEventsHandler.OrderBook snapshot) {
+        this.symbol = snapshot.symbol;
+        this.timestamp = snapshot.timestamp;
+        snapshot.asks.forEach(rec -> asks.put(rec.price, rec));
+        snapshot.bids.forEach(rec -> bids.put(rec.price, rec));
+    }
+
+    public void applyUpdate(final IEventsHandler.OrderBookUpdate update) {
+        update.asks.forEach(rec -> applyRecord(asks, rec));
+        update.bids.forEach(rec -> applyRecord(bids, rec));
+        this.timestamp = update.timestamp;
+    }
+
+    private static void applyRecord(final NavigableMap<Long, IEventsHandler.OrderBookRecord> levels,
+                                    final IEventsHandler.OrderBookRecord rec) {
+        if (rec.volume == 0) {
+            levels.remove(rec.price);
+        } else {
+            levels.put(rec.price, rec);
+        }
+    }
+
+    public int getAskLevelsNum() {
+        return asks.size();
+    }
+
+    public int getBidLevelsNum() {
+        return bids.size();
+    }
+
+    /**
+     * @param depth max number of levels for each side
+     * @return immutable order book snapshot (same format as received for ApiOrderBookRequest)
+     */
+    public IEventsHandler.OrderBook getOrderBook(final int depth) {
+        return new IEventsHandler.OrderBook(symbol, topLevels(asks, depth), topLevels(bids, depth), timestamp);
+    }
+
+    public IEventsHandler.OrderBook getOrderBook() {
+        return getOrderBook(Integer.MAX_VALUE);
+    }
+
+    private static List<IEventsHandler.OrderBookRecord> topLevels(final NavigableMap<Long, IEventsHandler.OrderBookRecord> levels,
+                                                                final int depth) {
+        final List<IEventsHandler.OrderBookRecord> result = new ArrayList<>(Math.min(depth, levels.size()));
+        for (IEventsHandler.OrderBookRecord rec : levels.values()) {
+            if (result.size() == depth) {
+                break;
+            }
+            result.add(rec);
+        }
+        return result;
+    }
+}
@@ -1,203 +1,217 @@
 package exchange.core2.core;
 
-import exchange.core2.core.common.L2MarketData;
-import exchange.core2.core.common.MatcherEventType;
-import exchange.core2.core.common.MatcherTradeEvent;
 import exchange.core2.core.common.api.*;
 import exchange.core2.core.common.cmd.CommandResultCode;
 import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.cmd.OrderCommandType;
+import lombok.AccessLevel;
 import lombok.Getter;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.agrona.collections.MutableBoolean;
-import org.agrona.collections.MutableLong;
-import org.agrona.collections.MutableReference;
+import org.eclipse.collections.impl.map.mutable.primitive.IntObjectHashMap;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.function.ObjLongConsumer;
 
-@RequiredArgsConstructor
+/**
+ * Converts results into immutable objects for {@link IEventsHandler}.
+ * Adapter on top of {@link FlyweightEventsProcessor} - produces garbage, use flyweight API for latency-critical applications.
+ */
 @Getter
 @Slf4j
 public class SimpleEventsProcessor implements ObjLongConsumer<OrderCommand> {
 
     private final IEventsHandler eventsHandler;
 
-    @Override
-    public void accept(OrderCommand cmd, long seq) {
-        try {
-            sendCommandResult(cmd, seq);
-            sendTradeEvents(cmd);
-            sendMarketData(cmd);
-        } catch (Exception ex) {
-            log.error("Exception when handling command result data", ex);
-        }
-    }
+    // maintain local order books from ApiOrderBookRequest snapshots and incremental updates
+    private final boolean localOrderBooksEnabled;
 
-    private void sendTradeEvents(OrderCommand cmd) {
-        final MatcherTradeEvent firstEvent = cmd.matcherEvent;
-        if (firstEvent == null) {
-            return;
-        }
+    @Getter(AccessLevel.NONE)
+    private final IntObjectHashMap<L2LocalOrderBook> localOrderBooks = new IntObjectHashMap<>();
 
-        if (firstEvent.eventType == MatcherEventType.REDUCE) {
+    @Getter(AccessLevel.NONE)
+    private final FlyweightEventsProcessor flyweightEventsProcessor;
 
-            final IEventsHandler.ReduceEvent evt = new IEventsHandler.ReduceEvent(
-                    cmd.symbol,
-                    firstEvent.size,
-                    firstEvent.activeOrderCompleted,
-                    firstEvent.price,
-                    cmd.orderId,
-                    cmd.uid,
-                    cmd.timestamp);
-
-            eventsHandler.reduceEvent(evt);
-
-            if (firstEvent.nextEvent != null) {
-                throw new IllegalStateException("Only single REDUCE event is expected");
-            }
+    public SimpleEventsProcessor(IEventsHandler eventsHandler, boolean localOrderBooksEnabled) {
+        this.eventsHandler = eventsHandler;
+        this.localOrderBooksEnabled = localOrderBooksEnabled;
+        this.flyweightEventsProcessor = new FlyweightEventsProcessor(new ImmutableEventsAdapter());
+    }
 
-            return;
-        }
+    public SimpleEventsProcessor(IEventsHandler eventsHandler) {
+        this(eventsHandler, false);
+    }
 
-        sendTradeEvent(cmd);
+    /**
+     * Local order book for the symbol (incremental L2 mode).
+     * Should be accessed from events handler methods only.
+     *
+     * @param symbol symbol id
+     * @return local order book or null if it was not initialized by ApiOrderBookRequest yet
+     */
+    public L2LocalOrderBook getLocalOrderBook(int symbol) {
+        return localOrderBooks.get(symbol);
     }
 
-    private void sendTradeEvent(OrderCommand cmd) {
+    @Override
+    public void accept(OrderCommand cmd, long seq) {
+        flyweightEventsProcessor.accept(cmd, seq);
+    }
 
-        final MutableBoolean takerOrderCompleted = new MutableBoolean(false);
-        final MutableLong mutableLong = new MutableLong(0L);
-        final List<IEventsHandler.Trade> trades = new ArrayList<>();
+    private final class ImmutableEventsAdapter implements IFlyweightEventsHandler {
+
+        @Override
+        public void commandResult(CommandResultView view) {
+
+            switch (view.getCommandType()) {
+                case PLACE_ORDER:
+                    sendApiCommandResult(new ApiPlaceOrder(
+                            view.getPrice(),
+                            view.getSize(),
+                            view.getOrderId(),
+                            view.getAction(),
+                            view.getOrderType(),
+                            view.getUid(),
+                            view.getSymbol(),
+                            view.getUserCookie(),
+                            view.getReserveBidPrice()), view);
+                    break;
+
+                case MOVE_ORDER:
+                    sendApiCommandResult(new ApiMoveOrder(view.getOrderId(), view.getPrice(), view.getUid(), view.getSymbol()), view);
+                    break;
+
+                case CANCEL_ORDER:
+                    sendApiCommandResult(new ApiCancelOrder(view.getOrderId(), view.getUid(), view.getSymbol()), view);
+                    break;
+
+                case REDUCE_ORDER:
+                    sendApiCommandResult(new ApiReduceOrder(view.getOrderId(), view.getUid(), view.getSymbol(), view.getSize()), view);
+                    break;
+
+                case ADD_USER:
+                    sendApiCommandResult(new ApiAddUser(view.getUid()), view);
+                    break;
+
+                case BALANCE_ADJUSTMENT:
+                    sendApiCommandResult(new ApiAdjustUserBalance(view.getUid(), view.getSymbol(), view.getPrice(), view.getOrderId()), view);
+                    break;
+
+                case BINARY_DATA_COMMAND:
+                    sendApiCommandResult(new ApiBinaryDataCommand(view.getUserCookie(), null), view);
+                    break;
+
+                case ORDER_BOOK_REQUEST:
+                    sendApiCommandResult(new ApiOrderBookRequest(view.getSymbol(), (int) view.getSize()), view);
+                    break;
+
+                case RESET:
+                    if (view.getResultCode() == CommandResultCode.SUCCESS) {
+                        localOrderBooks.clear();
+                    }
+                    break;
+
+                // TODO add rest of commands
 
-        final MutableReference<IEventsHandler.RejectEvent> rejectEvent = new MutableReference<>(null);
+            }
+        }
 
-        cmd.processMatcherEvents(evt -> {
+        private void sendApiCommandResult(ApiCommand cmd, CommandResultView view) {
+            cmd.timestamp = view.getTimestamp();
+            final IEventsHandler.ApiCommandResult commandResult = new IEventsHandler.ApiCommandResult(cmd, view.getResultCode(), view.getSeq());
+            eventsHandler.commandResult(commandResult);
+        }
 
-            if (evt.eventType == MatcherEventType.TRADE) {
+        @Override
+        public void tradeEvent(TradeEventView view) {
+
+            final List<IEventsHandler.Trade> trades = new ArrayList<>(view.getTradesNum());
+            while (view.nextTrade()) {
+                trades.add(new IEventsHandler.Trade(
+                        view.getMakerOrderId(),
+                        view.getMakerUid(),
+                        view.isMakerOrderCompleted(),
+                        view.getPrice(),
+                        view.getVolume()));
+            }
 
-                final IEventsHandler.Trade trade = new IEventsHandler.Trade(
-                        evt.matchedOrderId,
-                        evt.matchedOrderUid,
-                        evt.matchedOrderCompleted,
-                        evt.price,
-                        evt.size);
+            eventsHandler.tradeEvent(new IEventsHandler.TradeEvent(
+                    view.getSymbol(),
+                    view.getTotalVolume(),
+                    view.getTakerOrderId(),
+                    view.getTakerUid(),
+                    view.getTakerAction(),
+                    view.isTakerOrderCompleted(),
+                    view.getTimestamp(),
+                    trades));
+        }
 
-                trades.add(trade);
-                mutableLong.value += evt.size;
+        @Override
+        public void rejectEvent(RejectEventView view) {
+            eventsHandler.rejectEvent(new IEventsHandler.RejectEvent(
+                    view.getSymbol(),
+                    view.getRejectedVolume(),
+                    view.getPrice(),
+                    view.getOrderId(),
+                    view.getUid(),
+                    view.getTimestamp()));
+        }
 
-                if (evt.activeOrderCompleted) {
-                    takerOrderCompleted.value = true;
-                }
+        @Override
+        public void reduceEvent(ReduceEventView view) {
+            eventsHandler.reduceEvent(new IEventsHandler.ReduceEvent(
+                    view.getSymbol(),
+                    view.getReducedVolume(),
+                    view.isOrderCompleted(),
+                    view.getPrice(),
+                    view.getOrderId(),
+                    view.getUid(),
+                    view.getTimestamp()));
+        }
 
-            } else if (evt.eventType == MatcherEventType.REJECT) {
+        @Override
+        public void orderBook(OrderBookView view) {
 
-                rejectEvent.set(new IEventsHandler.RejectEvent(
-                        cmd.symbol,
-                        evt.size,
-                        evt.price,
-                        cmd.orderId,
-                        cmd.uid,
-                        cmd.timestamp));
+            final List<IEventsHandler.OrderBookRecord> asks = new ArrayList<>(view.getAskSize());
+            for (int i = 0; i < view.getAskSize(); i++) {
+                asks.add(new IEventsHandler.OrderBookRecord(view.getAskPrice(i), view.getAskVolume(i), view.getAskOrders(i)));
             }
-        });
 
-        if (!trades.isEmpty()) {
+            final List<IEventsHandler.OrderBookRecord> bids = new ArrayList<>(view.getBidSize());
+            for (int i = 0; i < view.getBidSize(); i++) {
+                bids.add(new IEventsHandler.OrderBookRecord(view.getBidPrice(i), view.getBidVolume(i), view.getBidOrders(i)));
+            }
 
-            final IEventsHandler.TradeEvent evt = new IEventsHandler.TradeEvent(
-                    cmd.symbol,
-                    mutableLong.value,
-                    cmd.orderId,
-                    cmd.uid,
-                    cmd.action,
-                    takerOrderCompleted.value,
-                    cmd.timestamp,
-                    trades);
+            final IEventsHandler.OrderBook orderBook = new IEventsHandler.OrderBook(view.getSymbol(), asks, bids, view.getTimestamp());
 
-            eventsHandler.tradeEvent(evt);
-        }
+            // only explicitly requested snapshot can be used as a base for updates
+            if (localOrderBooksEnabled && view.isRequested()) {
+                localOrderBooks.put(view.getSymbol(), new L2LocalOrderBook(orderBook));
+            }
 
-        if (rejectEvent.ref != null) {
-            eventsHandler.rejectEvent(rejectEvent.ref);
+            eventsHandler.orderBook(orderBook);
         }
-    }
 
-    private void sendMarketData(OrderCommand cmd) {
-        final L2MarketData marketData = cmd.marketData;
-        if (marketData != null) {
-            final List<IEventsHandler.OrderBookRecord> asks = new ArrayList<>(marketData.askSize);
-            for (int i = 0; i < marketData.askSize; i++) {
-                asks.add(new IEventsHandler.OrderBookRecord(marketData.askPrices[i], marketData.askVolumes[i], (int) marketData.askOrders[i]));
-            }
+        @Override
+        public void orderBookUpdate(OrderBookUpdateView view) {
 
-            final List<IEventsHandler.OrderBookRecord> bids = new ArrayList<>(marketData.bidSize);
-            for (int i = 0; i < marketData.bidSize; i++) {
-                bids.add(new IEventsHandler.OrderBookRecord(marketData.bidPrices[i], marketData.bidVolumes[i], (int) marketData.bidOrders[i]));
+            final List<IEventsHandler.OrderBookRecord> asks = new ArrayList<>();
+            final List<IEventsHandler.OrderBookRecord> bids = new ArrayList<>();
+            for (int i = 0; i < view.getSize(); i++) {
+                final IEventsHandler.OrderBookRecord rec = new IEventsHandler.OrderBookRecord(view.getPrice(i), view.getVolume(i), view.getOrders(i));
+                (view.isAsk(i) ? asks : bids).add(rec);
             }
 
-            eventsHandler.orderBook(new IEventsHandler.OrderBook(cmd.symbol, asks, bids, cmd.timestamp));
-        }
-    }
-
+            final IEventsHandler.OrderBookUpdate update = new IEventsHandler.OrderBookUpdate(view.getSymbol(), asks, bids, view.getTimestamp());
 
-    private void sendCommandResult(OrderCommand cmd, long seq) {
-
-        switch (cmd.command) {
-            case PLACE_ORDER:
-                sendApiCommandResult(new ApiPlaceOrder(
-                                cmd.price,
-                                cmd.size,
-                                cmd.orderId,
-                                cmd.action,
-                                cmd.orderType,
-                                cmd.uid,
-                                cmd.symbol,
-                                cmd.userCookie,
-                                cmd.reserveBidPrice),
-                        cmd.resultCode,
-                        cmd.timestamp,
-                        seq);
-                break;
-
-            case MOVE_ORDER:
-                sendApiCommandResult(new ApiMoveOrder(cmd.orderId, cmd.price, cmd.uid, cmd.symbol), cmd.resultCode, cmd.timestamp, seq);
-                break;
-
-            case CANCEL_ORDER:
-                sendApiCommandResult(new ApiCancelOrder(cmd.orderId, cmd.uid, cmd.symbol), cmd.resultCode, cmd.timestamp, seq);
-                break;
-
-            case REDUCE_ORDER:
-                sendApiCommandResult(new ApiReduceOrder(cmd.orderId, cmd.uid, cmd.symbol, cmd.size), cmd.resultCode, cmd.timestamp, seq);
-                break;
-
-            case ADD_USER:
-                sendApiCommandResult(new ApiAddUser(cmd.uid), cmd.resultCode, cmd.timestamp, seq);
-                break;
-
-            case BALANCE_ADJUSTMENT:
-                sendApiCommandResult(new ApiAdjustUserBalance(cmd.uid, cmd.symbol, cmd.price, cmd.orderId), cmd.resultCode, cmd.timestamp, seq);
-                break;
-
-            case BINARY_DATA_COMMAND:
-                if (cmd.resultCode != CommandResultCode.ACCEPTED) {
-                    sendApiCommandResult(new ApiBinaryDataCommand(cmd.userCookie, null), cmd.resultCode, cmd.timestamp, seq);
+            if (localOrderBooksEnabled) {
+                final L2LocalOrderBook localOrderBook = localOrderBooks.get(view.getSymbol());
+                if (localOrderBook != null) {
+                    localOrderBook.applyUpdate(update);
                 }
-                break;
-
-            case ORDER_BOOK_REQUEST:
-                sendApiCommandResult(new ApiOrderBookRequest(cmd.symbol, (int) cmd.size), cmd.resultCode, cmd.timestamp, seq);
-                break;
-
-            // TODO add rest of commands
+            }
 
+            eventsHandler.orderBookUpdate(update);
         }
-
-    }
-
-    private void sendApiCommandResult(ApiCommand cmd, CommandResultCode resultCode, long timestamp, long seq) {
-        cmd.timestamp = timestamp;
-        final IEventsHandler.ApiCommandResult commandResult = new IEventsHandler.ApiCommandResult(cmd, resultCode, seq);
-        eventsHandler.commandResult(commandResult);
     }
 }
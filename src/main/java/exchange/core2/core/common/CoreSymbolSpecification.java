@@ -16,6 +16,7 @@
 package exchange.core2.core.common;
 
 
+import exchange.core2.core.orderbook.IOrderBook;
 import lombok.*;
 import net.openhft.chronicle.bytes.BytesIn;
 import net.openhft.chronicle.bytes.BytesOut;
@@ -51,9 +52,20 @@ public final class CoreSymbolSpecification implements WriteBytesMarshallable, St
     public final long marginBuy;   // buy margin (quote currency)
     public final long marginSell;  // sell margin (quote currency)
 
+    // order book implementation for this symbol (null - default one from PerformanceConfiguration)
+    public final IOrderBook.OrderBookImplType orderBookType;
+
+    // minimal price increment, used for price ladder order book (0 - any price)
+    public final long priceTick;
+
+    // flag in the type byte: order book settings follow margin settings
+    // (not set for default settings - same layout as before, old snapshots and journals are readable)
+    private static final byte EXTENDED_FORMAT_FLAG = (byte) 0x80;
+
     public CoreSymbolSpecification(BytesIn bytes) {
         this.symbolId = bytes.readInt();
-        this.type = SymbolType.of(bytes.readByte());
+        final byte typeCode = bytes.readByte();
+        this.type = SymbolType.of(typeCode & ~EXTENDED_FORMAT_FLAG);
         this.baseCurrency = bytes.readInt();
         this.quoteCurrency = bytes.readInt();
         this.baseScaleK = bytes.readLong();
@@ -62,6 +74,14 @@ public final class CoreSymbolSpecification implements WriteBytesMarshallable, St
         this.makerFee = bytes.readLong();
         this.marginBuy = bytes.readLong();
         this.marginSell = bytes.readLong();
+        if ((typeCode & EXTENDED_FORMAT_FLAG) != 0) {
+            final byte orderBookTypeCode = bytes.readByte();
+            this.orderBookType = orderBookTypeCode == -1 ? null : IOrderBook.OrderBookImplType.of(orderBookTypeCode);
+            this.priceTick = bytes.readLong();
+        } else {
+            this.orderBookType = null;
+            this.priceTick = 0L;
+        }
     }
 
 /* NOT SUPPORTED YET:
@@ -80,8 +100,9 @@ public final class CoreSymbolSpecification implements WriteBytesMarshallable, St
 
     @Override
     public void writeMarshallable(BytesOut bytes) {
+        final boolean extendedFormat = orderBookType != null || priceTick != 0;
         bytes.writeInt(symbolId);
-        bytes.writeByte(type.getCode());
+        bytes.writeByte(extendedFormat ? (byte) (type.getCode() | EXTENDED_FORMAT_FLAG) : type.getCode());
         bytes.writeInt(baseCurrency);
         bytes.writeInt(quoteCurrency);
         bytes.writeLong(baseScaleK);
@@ -90,6 +111,10 @@ public final class CoreSymbolSpecification implements WriteBytesMarshallable, St
         bytes.writeLong(makerFee);
         bytes.writeLong(marginBuy);
         bytes.writeLong(marginSell);
+        if (extendedFormat) {
+            bytes.writeByte(orderBookType == null ? -1 : orderBookType.getCode());
+            bytes.writeLong(priceTick);
+        }
     }
 
     @Override
@@ -104,7 +129,9 @@ public final class CoreSymbolSpecification implements WriteBytesMarshallable, St
                 takerFee,
                 makerFee,
                 marginBuy,
-                marginSell);
+                marginSell,
+                orderBookType == null ? -1 : orderBookType.getCode(),
+                priceTick);
     }
 
     @Override
@@ -121,6 +148,8 @@ public final class CoreSymbolSpecification implements WriteBytesMarshallable, St
                 makerFee == that.makerFee &&
                 marginBuy == that.marginBuy &&
                 marginSell == that.marginSell &&
-                type == that.type;
+                priceTick == that.priceTick &&
+                type == that.type &&
+                orderBookType == that.orderBookType;
     }
 }
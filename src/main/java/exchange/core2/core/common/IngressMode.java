@@ -0,0 +1,29 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.common;
+
+/**
+ * How commands from gateway threads get into disruptor ring buffer
+ */
+public enum IngressMode {
+
+    // every gateway thread publishes directly into ring buffer (ProducerType.MULTI, CAS on ring cursor)
+    MULTI_PRODUCER,
+
+    // every gateway thread publishes into its own SPSC queue,
+    // single sequencer thread drains queues into ring buffer (ProducerType.SINGLE)
+    SEQUENCED_SINGLE_PRODUCER
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.common;
+
+import java.util.Arrays;
+
+/**
+ * L2 Market Data delta carrier object (incremental mode)
+ * <p>
+ * Contains price levels changed by the command: absolute state of each level (new total volume and number of orders).
+ * Zero volume means that level was removed.
+ * <p>
+ * Object is attached to ring buffer slot and re-used, only first size records are valid.
+ */
+public final class L2MarketDataDelta {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    public int size;
+
+    public boolean[] isAsk;
+    public long[] prices;
+    public long[] volumes;
+    public int[] orders;
+
+    public L2MarketDataDelta() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public L2MarketDataDelta(final int capacity) {
+        this.isAsk = new boolean[capacity];
+        this.prices = new long[capacity];
+        this.volumes = new long[capacity];
+        this.orders = new int[capacity];
+    }
+
+    public void reset() {
+        size = 0;
+    }
+
+    public void add(final boolean ask, final long price, final long volume, final int numOrders) {
+        if (size == prices.length) {
+            final int newCapacity = size * 2;
+            isAsk = Arrays.copyOf(isAsk, newCapacity);
+            prices = Arrays.copyOf(prices, newCapacity);
+            volumes = Arrays.copyOf(volumes, newCapacity);
+            orders = Arrays.copyOf(orders, newCapacity);
+        }
+        isAsk[size] = ask;
+        prices[size] = price;
+        volumes[size] = volume;
+        orders[size] = numOrders;
+        size++;
+    }
+
+    public L2MarketDataDelta copy() {
+        final L2MarketDataDelta copy = new L2MarketDataDelta(Math.max(size, 1));
+        System.arraycopy(isAsk, 0, copy.isAsk, 0, size);
+        System.arraycopy(prices, 0, copy.prices, 0, size);
+        System.arraycopy(volumes, 0, copy.volumes, 0, size);
+        System.arraycopy(orders, 0, copy.orders, 0, size);
+        copy.size = size;
+        return copy;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof L2MarketDataDelta)) {
+            return false;
+        }
+        final L2MarketDataDelta o = (L2MarketDataDelta) obj;
+        if (size != o.size) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (isAsk[i] != o.isAsk[i] || prices[i] != o.prices[i] || volumes[i] != o.volumes[i] || orders[i] != o.orders[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = size;
+        for (int i = 0; i < size; i++) {
+            result = 31 * result + Long.hashCode(prices[i]);
+            result = 31 * result + Long.hashCode(volumes[i]);
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("L2MarketDataDelta{");
+        for (int i = 0; i < size; i++) {
+            sb.append(isAsk[i] ? " A" : " B").append(prices[i]).append(':').append(volumes[i]).append('/').append(orders[i]);
+        }
+        return sb.append('}').toString();
+    }
+}
@@ -0,0 +1,25 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.common;
+
+/**
+ * Margin level of user account (all margin positions quoted in the same currency)
+ */
+public enum MarginLevel {
+    NORMAL, // equity covers required margin
+    MARGIN_CALL, // margin ratio is below margin call threshold - user should add funds or reduce positions
+    LIQUIDATION // margin ratio is below liquidation threshold - positions are candidates for liquidation
+}
@@ -46,6 +46,11 @@ public final class SymbolPositionRecord implements WriteBytesMarshallable, State
     public long pendingSellSize = 0;
     public long pendingBuySize = 0;
 
+    // cached contribution into user free margin: estimated profit minus required margin
+    // derived from position state and last price, maintained by risk engine (not serialized)
+    public long freeMargin = 0;
+    public long requiredMargin = 0;
+
     public void initialize(long uid, int symbol, int currency) {
         this.uid = uid;
 
@@ -59,6 +64,9 @@ public final class SymbolPositionRecord implements WriteBytesMarshallable, State
 
         this.pendingSellSize = 0;
         this.pendingBuySize = 0;
+
+        this.freeMargin = 0;
+        this.requiredMargin = 0;
     }
 
     public SymbolPositionRecord(long uid, BytesIn bytes) {
@@ -47,6 +47,12 @@ public final class UserProfile implements WriteBytesMarshallable, StateHash {
 
     public UserStatus userStatus;
 
+    // currency -> free margin of all positions quoted in this currency (sum of SymbolPositionRecord.freeMargin)
+    // derived from positions, maintained incrementally by risk engine (not serialized)
+    public final IntLongHashMap freeMargin;
+    // currency -> required margin of all positions quoted in this currency (sum of SymbolPositionRecord.requiredMargin)
+    public final IntLongHashMap requiredMargin;
+
     public UserProfile(long uid, UserStatus userStatus) {
         //log.debug("New {}", uid);
         this.uid = uid;
@@ -54,6 +60,8 @@ public final class UserProfile implements WriteBytesMarshallable, StateHash {
         this.adjustmentsCounter = 0L;
         this.accounts = new IntLongHashMap();
         this.userStatus = userStatus;
+        this.freeMargin = new IntLongHashMap();
+        this.requiredMargin = new IntLongHashMap();
     }
 
     public UserProfile(BytesIn bytesIn) {
@@ -71,6 +79,10 @@ public final class UserProfile implements WriteBytesMarshallable, StateHash {
 
         // suspended
         this.userStatus = UserStatus.of(bytesIn.readByte());
+
+        // restored by risk engine
+        this.freeMargin = new IntLongHashMap();
+        this.requiredMargin = new IntLongHashMap();
     }
 
     public SymbolPositionRecord getPositionRecordOrThrowEx(int symbol) {
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.common.api;
+
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.cmd.OrderCommandType;
+
+/**
+ * Reusable batch of trading commands (place/move/cancel/reduce) stored in primitive arrays.
+ * <p>
+ * Gateway fills the batch, submits it with ExchangeApi.submitOrdersBatch and then clears it for the next burst.
+ * Adding commands does not allocate any objects. Not thread-safe.
+ */
+public final class ApiOrdersBatch {
+
+    private final OrderCommandType[] commands;
+    private final long[] orderIds;
+    private final long[] prices;
+    private final long[] reservePrices;
+    private final long[] sizes;
+    private final long[] uids;
+    private final long[] timestamps;
+    private final int[] symbols;
+    private final int[] userCookies;
+    private final byte[] actions;
+    private final byte[] orderTypes;
+
+    private int size = 0;
+
+    public ApiOrdersBatch(final int capacity) {
+        this.commands = new OrderCommandType[capacity];
+        this.orderIds = new long[capacity];
+        this.prices = new long[capacity];
+        this.reservePrices = new long[capacity];
+        this.sizes = new long[capacity];
+        this.uids = new long[capacity];
+        this.timestamps = new long[capacity];
+        this.symbols = new int[capacity];
+        this.userCookies = new int[capacity];
+        this.actions = new byte[capacity];
+        this.orderTypes = new byte[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return commands.length;
+    }
+
+    public boolean isFull() {
+        return size == commands.length;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public void addPlaceOrder(final long orderId, final long uid, final int symbol, final long price, final long reservePrice, final long orderSize,
+                              final OrderAction action, final OrderType orderType, final int userCookie, final long timestamp) {
+        final int i = nextIndex(OrderCommandType.PLACE_ORDER, orderId, uid, symbol, timestamp);
+        prices[i] = price;
+        reservePrices[i] = reservePrice;
+        sizes[i] = orderSize;
+        actions[i] = action.getCode();
+        orderTypes[i] = orderType.getCode();
+        userCookies[i] = userCookie;
+    }
+
+    public void addMoveOrder(final long orderId, final long uid, final int symbol, final long newPrice, final long timestamp) {
+        final int i = nextIndex(OrderCommandType.MOVE_ORDER, orderId, uid, symbol, timestamp);
+        prices[i] = newPrice;
+    }
+
+    public void addCancelOrder(final long orderId, final long uid, final int symbol, final long timestamp) {
+        nextIndex(OrderCommandType.CANCEL_ORDER, orderId, uid, symbol, timestamp);
+    }
+
+    public void addReduceOrder(final long orderId, final long uid, final int symbol, final long reduceSize, final long timestamp) {
+        final int i = nextIndex(OrderCommandType.REDUCE_ORDER, orderId, uid, symbol, timestamp);
+        sizes[i] = reduceSize;
+    }
+
+    /**
+     * Fill ring buffer event from batch entry (same fields as corresponding ExchangeApi translators)
+     *
+     * @param cmd   - ring buffer event
+     * @param index - batch entry index
+     */
+    public void translateTo(final OrderCommand cmd, final int index) {
+        final OrderCommandType command = commands[index];
+        cmd.command = command;
+        cmd.orderId = orderIds[index];
+        cmd.uid = uids[index];
+        cmd.symbol = symbols[index];
+        cmd.timestamp = timestamps[index];
+        cmd.resultCode = CommandResultCode.NEW;
+
+        switch (command) {
+            case PLACE_ORDER:
+                cmd.price = prices[index];
+                cmd.reserveBidPrice = reservePrices[index];
+                cmd.size = sizes[index];
+                cmd.action = OrderAction.of(actions[index]);
+                cmd.orderType = OrderType.of(orderTypes[index]);
+                cmd.userCookie = userCookies[index];
+                break;
+            case MOVE_ORDER:
+                cmd.price = prices[index];
+                break;
+            case REDUCE_ORDER:
+                cmd.size = sizes[index];
+                break;
+            default:
+                break;
+        }
+    }
+
+    private int nextIndex(final OrderCommandType command, final long orderId, final long uid, final int symbol, final long timestamp) {
+        if (size == commands.length) {
+            throw new IllegalStateException("Batch is full, capacity=" + commands.length);
+        }
+        final int i = size++;
+        commands[i] = command;
+        orderIds[i] = orderId;
+        uids[i] = uid;
+        symbols[i] = symbol;
+        timestamps[i] = timestamp;
+        return i;
+    }
+}
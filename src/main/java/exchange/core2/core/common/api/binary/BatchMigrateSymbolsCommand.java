@@ -0,0 +1,51 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.common.api.binary;
+
+import exchange.core2.core.utils.SerializationUtils;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import net.openhft.chronicle.bytes.BytesIn;
+import net.openhft.chronicle.bytes.BytesOut;
+import org.eclipse.collections.impl.map.mutable.primitive.IntIntHashMap;
+
+/**
+ * Online migration of order books to another matching engine shard (requires SymbolShardsTable sharding policy).
+ * Order book is moved from current shard to target shard at the same sequence, routing is switched for all shards.
+ */
+@AllArgsConstructor
+@EqualsAndHashCode
+@Getter
+public final class BatchMigrateSymbolsCommand implements BinaryDataCommand {
+
+    // symbolId -> target shardId
+    private final IntIntHashMap symbolShards;
+
+    public BatchMigrateSymbolsCommand(final BytesIn bytes) {
+        symbolShards = SerializationUtils.readIntIntHashMap(bytes);
+    }
+
+    @Override
+    public void writeMarshallable(BytesOut bytes) {
+        SerializationUtils.marshallIntIntHashMap(symbolShards, bytes);
+    }
+
+    @Override
+    public int getBinaryCommandTypeCode() {
+        return BinaryCommandType.MIGRATE_SYMBOLS.getCode();
+    }
+}
@@ -21,7 +21,9 @@ import lombok.Getter;
 public enum BinaryCommandType {
 
     ADD_ACCOUNTS(1002),
-    ADD_SYMBOLS(1003);
+    ADD_SYMBOLS(1003),
+    ASSIGN_SYMBOL_SHARDS(1004),
+    MIGRATE_SYMBOLS(1005);
 
     private final int code;
 
@@ -36,6 +38,10 @@ public enum BinaryCommandType {
                 return ADD_ACCOUNTS;
             case 1003:
                 return ADD_SYMBOLS;
+            case 1004:
+                return ASSIGN_SYMBOL_SHARDS;
+            case 1005:
+                return MIGRATE_SYMBOLS;
             default:
                 throw new IllegalArgumentException("unknown BinaryCommandType:" + code);
         }
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.common.api.reports;
+
+import exchange.core2.core.processors.MatchingEngineRouter;
+import exchange.core2.core.processors.RiskEngine;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import net.openhft.chronicle.bytes.BytesIn;
+import net.openhft.chronicle.bytes.BytesOut;
+import org.eclipse.collections.impl.map.mutable.primitive.IntLongHashMap;
+import org.eclipse.collections.impl.map.mutable.primitive.IntObjectHashMap;
+
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Matching engines utilisation: number of matching commands processed by every shard for every symbol
+ * (since start or reset). Can be used for choosing symbols to migrate (BatchMigrateSymbolsCommand).
+ */
+@NoArgsConstructor
+@EqualsAndHashCode
+@ToString
+public final class ShardsLoadReportQuery implements ReportQuery<ShardsLoadReportResult> {
+
+    public ShardsLoadReportQuery(BytesIn bytesIn) {
+        // do nothing
+    }
+
+    @Override
+    public int getReportTypeCode() {
+        return ReportType.SHARDS_LOAD.getCode();
+    }
+
+    @Override
+    public ShardsLoadReportResult createResult(final Stream<BytesIn> sections) {
+        return ShardsLoadReportResult.merge(sections);
+    }
+
+    @Override
+    public Optional<ShardsLoadReportResult> process(final MatchingEngineRouter matchingEngine) {
+        final IntObjectHashMap<IntLongHashMap> shardsSymbolCommands = new IntObjectHashMap<>();
+        shardsSymbolCommands.put(matchingEngine.getShardId(), new IntLongHashMap(matchingEngine.getSymbolCommandsCounters()));
+        return Optional.of(new ShardsLoadReportResult(shardsSymbolCommands));
+    }
+
+    @Override
+    public Optional<ShardsLoadReportResult> process(final RiskEngine riskEngine) {
+        return Optional.empty();
+    }
+
+    @Override
+    public void writeMarshallable(BytesOut bytes) {
+        // do nothing
+    }
+}
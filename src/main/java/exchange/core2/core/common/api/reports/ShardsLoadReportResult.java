@@ -0,0 +1,110 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.common.api.reports;
+
+import exchange.core2.core.utils.SerializationUtils;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import net.openhft.chronicle.bytes.BytesIn;
+import net.openhft.chronicle.bytes.BytesOut;
+import org.eclipse.collections.impl.map.mutable.primitive.IntLongHashMap;
+import org.eclipse.collections.impl.map.mutable.primitive.IntObjectHashMap;
+
+import java.util.stream.Stream;
+
+@AllArgsConstructor
+@EqualsAndHashCode
+@Getter
+@ToString
+public final class ShardsLoadReportResult implements ReportResult {
+
+    // shardId -> symbol -> matching commands processed
+    private final IntObjectHashMap<IntLongHashMap> shardsSymbolCommands;
+
+    private ShardsLoadReportResult(final BytesIn bytesIn) {
+        this.shardsSymbolCommands = SerializationUtils.readIntHashMap(bytesIn, SerializationUtils::readIntLongHashMap);
+    }
+
+    @Override
+    public void writeMarshallable(final BytesOut bytes) {
+        SerializationUtils.marshallIntHashMap(shardsSymbolCommands, bytes, symbolCommands -> SerializationUtils.marshallIntLongHashMap(symbolCommands, bytes));
+    }
+
+    public long getShardCommands(final int shardId) {
+        final IntLongHashMap symbolCommands = shardsSymbolCommands.get(shardId);
+        return symbolCommands == null ? 0L : symbolCommands.sum();
+    }
+
+    public long getTotalCommands() {
+        return shardsSymbolCommands.sumOfLong(IntLongHashMap::sum);
+    }
+
+    /**
+     * @param shardId shard
+     * @return share of all matching commands processed by the shard (0..1)
+     */
+    public double getShardUtilisation(final int shardId) {
+        final long total = getTotalCommands();
+        return total == 0 ? 0.0 : (double) getShardCommands(shardId) / total;
+    }
+
+    /**
+     * @return most loaded shard (-1 if no commands processed yet)
+     */
+    public int getMostLoadedShard() {
+        int shard = -1;
+        long maxCommands = 0;
+        for (final int shardId : shardsSymbolCommands.keySet().toSortedArray()) {
+            final long commands = getShardCommands(shardId);
+            if (commands > maxCommands) {
+                maxCommands = commands;
+                shard = shardId;
+            }
+        }
+        return shard;
+    }
+
+    /**
+     * @param shardId shard
+     * @return symbol with most commands on the shard (-1 if no commands processed yet)
+     */
+    public int getHottestSymbol(final int shardId) {
+        final IntLongHashMap symbolCommands = shardsSymbolCommands.get(shardId);
+        if (symbolCommands == null || symbolCommands.isEmpty()) {
+            return -1;
+        }
+        int symbol = -1;
+        long maxCommands = -1;
+        for (final int symbolId : symbolCommands.keySet().toSortedArray()) {
+            final long commands = symbolCommands.get(symbolId);
+            if (commands > maxCommands) {
+                maxCommands = commands;
+                symbol = symbolId;
+            }
+        }
+        return symbol;
+    }
+
+    public static ShardsLoadReportResult merge(final Stream<BytesIn> pieces) {
+        return pieces
+                .map(ShardsLoadReportResult::new)
+                .reduce(
+                        new ShardsLoadReportResult(new IntObjectHashMap<>()),
+                        (a, b) -> new ShardsLoadReportResult(SerializationUtils.mergeOverride(a.shardsSymbolCommands, b.shardsSymbolCommands)));
+    }
+}
@@ -25,6 +25,7 @@ import lombok.extern.slf4j.Slf4j;
 import net.openhft.chronicle.bytes.BytesIn;
 import net.openhft.chronicle.bytes.BytesOut;
 
+import java.util.Objects;
 import java.util.Optional;
 import java.util.SortedMap;
 import java.util.TreeMap;
@@ -67,7 +68,9 @@ public final class StateHashReportQuery implements ReportQuery<StateHashReportRe
 
         hashCodes.put(
                 StateHashReportResult.createKey(moduleId, StateHashReportResult.SubmoduleType.MATCHING_SHARD_MASK),
-                Long.hashCode(matchingEngine.getShardMask()));
+                matchingEngine.getSymbolShardsTable() == null
+                        ? Integer.hashCode(matchingEngine.getShardsNum())
+                        : Objects.hash(matchingEngine.getShardsNum(), matchingEngine.getSymbolShardsTable().stateHash()));
 
         return Optional.of(
                 new StateHashReportResult(hashCodes));
@@ -110,7 +113,7 @@ public final class StateHashReportQuery implements ReportQuery<StateHashReportRe
 
         hashCodes.put(
                 StateHashReportResult.createKey(moduleId, StateHashReportResult.SubmoduleType.RISK_SHARD_MASK),
-                Long.hashCode(riskEngine.getShardMask()));
+                Integer.hashCode(riskEngine.getShardsNum()));
 
         return Optional.of(
                 new StateHashReportResult(hashCodes));
@@ -88,7 +88,7 @@ public final class TotalCurrencyBalanceReportQuery implements ReportQuery<TotalC
 
         final SymbolSpecificationProvider symbolSpecificationProvider = riskEngine.getSymbolSpecificationProvider();
 
-        riskEngine.getUserProfileService().getUserProfiles().forEach(userProfile -> {
+        riskEngine.getUserProfileService().forEachUserProfile(userProfile -> {
             userProfile.accounts.forEachKeyValue(currencyBalance::addToValue);
             userProfile.positions.forEachKeyValue((symbolId, positionRecord) -> {
                 final CoreSymbolSpecification spec = symbolSpecificationProvider.getSymbolSpecification(symbolId);
@@ -76,6 +76,14 @@ public final class OrderCommand implements IOrder {
     // optional market data
     public L2MarketData marketData;
 
+    // optional market data changes (incremental mode), object is re-used - check size
+    public L2MarketDataDelta marketDataDelta;
+
+    // top of book after successful order command (futures contracts in margin trading mode), filled by matching engine
+    // used by risk engine as last price; topAskPrice=0 - not filled; Long.MAX_VALUE / 0 - no asks / no bids
+    public long topAskPrice;
+    public long topBidPrice;
+
     // sequence of last available for this command
     //public long matcherEventSequence;
     // ---- potential false sharing section ------
@@ -180,27 +188,32 @@ public final class OrderCommand implements IOrder {
         cmd2.orderType = this.orderType;
     }
 
-    // slow - testing only
+    // slow - detached copy including events chain (same order) and market data, used for full responses and testing
     public OrderCommand copy() {
 
         OrderCommand newCmd = new OrderCommand();
         writeTo(newCmd);
         newCmd.resultCode = this.resultCode;
 
-        List<MatcherTradeEvent> events = extractEvents();
-
-//        System.out.println(">>> events: " + events);
-        for (MatcherTradeEvent event : events) {
-            MatcherTradeEvent copy = event.copy();
-            copy.nextEvent = newCmd.matcherEvent;
-            newCmd.matcherEvent = copy;
-//            System.out.println(">>> newCmd.matcherEvent: " + newCmd.matcherEvent);
+        MatcherTradeEvent tail = null;
+        for (MatcherTradeEvent event = matcherEvent; event != null; event = event.nextEvent) {
+            final MatcherTradeEvent copy = event.copy();
+            if (tail == null) {
+                newCmd.matcherEvent = copy;
+            } else {
+                tail.nextEvent = copy;
+            }
+            tail = copy;
         }
 
         if (marketData != null) {
             newCmd.marketData = marketData.copy();
         }
 
+        if (marketDataDelta != null) {
+            newCmd.marketDataDelta = marketDataDelta.copy();
+        }
+
 //        System.out.println(">>> newCmd: " + newCmd);
         return newCmd;
     }
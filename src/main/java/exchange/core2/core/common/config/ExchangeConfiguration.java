@@ -45,6 +45,16 @@ public final class ExchangeConfiguration {
      */
     private final SerializationConfiguration serializationCfg;
 
+    /*
+     * Shared memory ingress/egress configuration (null - disabled)
+     */
+    private final IpcConfiguration ipcCfg;
+
+    /*
+     * Margin monitor configuration (null - disabled)
+     */
+    private final MarginMonitorConfiguration marginMonitorCfg;
+
     @Override
     public String toString() {
         return "ExchangeConfiguration{" +
@@ -54,6 +64,8 @@ public final class ExchangeConfiguration {
                 "\n  reportsQueriesCfg=" + reportsQueriesCfg +
                 "\n  loggingCfg=" + loggingCfg +
                 "\n  serializationCfg=" + serializationCfg +
+                "\n  ipcCfg=" + ipcCfg +
+                "\n  marginMonitorCfg=" + marginMonitorCfg +
                 '}';
     }
 
@@ -0,0 +1,48 @@
+package exchange.core2.core.common.config;
+
+
+import exchange.core2.core.processors.journaling.DiskSerializationProcessorConfiguration;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.nio.file.Paths;
+
+@AllArgsConstructor
+@Getter
+@Builder
+@ToString
+public class IpcConfiguration {
+
+    // memory-mapped many-to-one ring, gateway processes write commands into it (file is created by exchange core)
+    private final String ingressFile;
+
+    // capacity of ingress ring (bytes), must be power of 2
+    private final int ingressBufferSize;
+
+    // max number of commands moved into ring buffer by single batch claim
+    private final int ingressMaxBatchSize;
+
+    // if gateway claimed message but did not commit it within timeout (e.g. gateway process died), ingress unblocks the ring
+    private final long ingressUnblockTimeoutMs;
+
+    // memory-mapped broadcast buffer with results (file is created by exchange core)
+    private final String egressFile;
+
+    // capacity of egress broadcast buffer (bytes), must be power of 2
+    // slow subscribers are lapped by transmitter instead of back-pressuring exchange core
+    private final int egressBufferSize;
+
+    public static IpcConfiguration createDefaultConfig(final String exchangeId) {
+
+        return IpcConfiguration.builder()
+                .ingressFile(Paths.get(DiskSerializationProcessorConfiguration.DEFAULT_FOLDER, exchangeId + "_ingress.ipc").toString())
+                .ingressBufferSize(4 * 1024 * 1024) // 4 MB - about 58K commands
+                .ingressMaxBatchSize(256)
+                .ingressUnblockTimeoutMs(1000)
+                .egressFile(Paths.get(DiskSerializationProcessorConfiguration.DEFAULT_FOLDER, exchangeId + "_egress.ipc").toString())
+                .egressBufferSize(16 * 1024 * 1024)
+                .build();
+    }
+}
@@ -1,6 +1,7 @@
 package exchange.core2.core.common.config;
 
 
+import exchange.core2.core.processors.audit.AuditLogConfiguration;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Getter;
@@ -25,6 +26,13 @@ public final class LoggingConfiguration {
 
     private final EnumSet<LoggingLevel> loggingLevels;
 
+    // binary audit log of all processed commands (null - disabled)
+    private final AuditLogConfiguration auditLogCfg;
+
+    public boolean isAuditLogEnabled() {
+        return auditLogCfg != null;
+    }
+
     public enum LoggingLevel {
         LOGGING_WARNINGS,
         LOGGING_RISK_DEBUG,
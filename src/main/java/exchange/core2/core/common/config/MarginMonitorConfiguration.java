@@ -0,0 +1,33 @@
+package exchange.core2.core.common.config;
+
+
+import exchange.core2.core.IMarginEventsHandler;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+@AllArgsConstructor
+@Getter
+@Builder
+@ToString
+public class MarginMonitorConfiguration {
+
+    // margin ratio (equity / required margin, basis points: 10000 = 100%) below which account gets margin call
+    private final long marginCallRatio;
+
+    // margin ratio (basis points) below which account becomes liquidation candidate
+    private final long liquidationRatio;
+
+    // receives margin level changes (called from risk engine threads)
+    private final IMarginEventsHandler eventsHandler;
+
+    public static MarginMonitorConfiguration createDefaultConfig(final IMarginEventsHandler eventsHandler) {
+
+        return MarginMonitorConfiguration.builder()
+                .marginCallRatio(10_000) // equity is below required margin
+                .liquidationRatio(5_000) // equity is below half of required margin
+                .eventsHandler(eventsHandler)
+                .build();
+    }
+}
@@ -2,9 +2,14 @@ package exchange.core2.core.common.config;
 
 
 import exchange.core2.core.common.CoreWaitStrategy;
+import exchange.core2.core.common.IngressMode;
 import exchange.core2.core.orderbook.IOrderBook;
 import exchange.core2.core.orderbook.OrderBookDirectImpl;
 import exchange.core2.core.orderbook.OrderBookNaiveImpl;
+import exchange.core2.core.processors.IUserProfileService;
+import exchange.core2.core.processors.UserProfileService;
+import exchange.core2.core.processors.sharding.IShardingPolicy;
+import exchange.core2.core.processors.sharding.ModuloShardingPolicy;
 import exchange.core2.core.utils.AffinityThreadFactory;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -40,6 +45,19 @@ public final class PerformanceConfiguration {
      */
     private final int riskEnginesNum;
 
+    /*
+     * Symbol to matching engine mapping (one instance per matching engine shard).
+     * ModuloShardingPolicy - symbolId modulo matchingEnginesNum (same as bit mask for power of 2);
+     * ConsistentHashShardingPolicy - spreads symbols with colliding low bits;
+     * SymbolShardsTable.factory(...) - explicit table loaded by BatchAssignSymbolShardsCommand (e.g. pin hot symbols to dedicated engines).
+     */
+    private final IShardingPolicy.ShardingPolicyFactory symbolShardingPolicyFactory;
+
+    /*
+     * Uid to risk engine mapping (one instance per risk engine shard).
+     */
+    private final IShardingPolicy.ShardingPolicyFactory uidShardingPolicyFactory;
+
     /*
      * max number of messages not processed by R2 stage. Must be less than quarter of ringBufferSize.
      * Lower values, like 100, provide better mean latency.
@@ -74,6 +92,14 @@ public final class PerformanceConfiguration {
      */
     private final int l2RefreshDepth;
 
+    /*
+     * Incremental L2 mode: send changed price levels (L2MarketDataDelta) for every successfully executed order command.
+     * Each record is absolute state of the level (new volume and number of orders, 0 - level removed), full depth.
+     * Consumer keeps local order book: snapshot from ApiOrderBookRequest + deltas (see SimpleEventsProcessor).
+     * Independent of sendL2ForEveryCmd (Risk Processor still receives regular L2 snapshots).
+     */
+    private final boolean sendL2DeltasForEveryCmd;
+
     /*
      * Disruptor threads factory
      */
@@ -89,25 +115,71 @@ public final class PerformanceConfiguration {
      */
     private final IOrderBook.OrderBookFactory orderBookFactory;
 
+    /*
+     * User profiles store factory (one instance per risk engine shard).
+     * OffHeapUserProfileService can be used for large number of users (tens of millions).
+     */
+    private final IUserProfileService.UserProfileServiceFactory userProfileServiceFactory;
+
     /*
      * LZ4 compressor factory for binary commands and reports
      */
     private final Supplier<LZ4Compressor> binaryCommandsLz4CompressorFactory;
 
+    /*
+     * How gateway threads publish commands into ring buffer.
+     * SEQUENCED_SINGLE_PRODUCER removes CAS contention on ring cursor and gives deterministic interleaving,
+     * but requires extra thread (sequencer).
+     */
+    private final IngressMode ingressMode;
+
+    /*
+     * Size of per-gateway SPSC queue (number of commands) for SEQUENCED_SINGLE_PRODUCER mode. Must be power of 2.
+     */
+    private final int ingressQueueSize;
+
+    /*
+     * Enable MatcherTradeEvent pooling.
+     * Grouping Processor returns events of processed commands into shared pool,
+     * Matching Engines and Risk Engines take new events from the pool instead of allocating them.
+     */
+    private final boolean eventsPooling;
+
+    /*
+     * Target length of pooled events chain. Longer chain means rare requests to the shared pool,
+     * but can cause events starvation for other engines.
+     */
+    private final int eventsPoolChainLength;
+
+    /*
+     * Max number of chains kept in the shared pool. Should cover events attached to all commands in the ring buffer,
+     * otherwise returned chains are dropped and new events allocated later.
+     */
+    private final int eventsPoolSize;
+
     @Override
     public String toString() {
         return "PerformanceConfiguration{" +
                 "ringBufferSize=" + ringBufferSize +
                 ", matchingEnginesNum=" + matchingEnginesNum +
                 ", riskEnginesNum=" + riskEnginesNum +
+                ", symbolShardingPolicyFactory=" + (symbolShardingPolicyFactory == null ? null : symbolShardingPolicyFactory.getClass().getSimpleName()) +
+                ", uidShardingPolicyFactory=" + (uidShardingPolicyFactory == null ? null : uidShardingPolicyFactory.getClass().getSimpleName()) +
                 ", msgsInGroupLimit=" + msgsInGroupLimit +
                 ", maxGroupDurationNs=" + maxGroupDurationNs +
                 ", sendL2ForEveryCmd=" + sendL2ForEveryCmd +
                 ", l2RefreshDepth=" + l2RefreshDepth +
+                ", sendL2DeltasForEveryCmd=" + sendL2DeltasForEveryCmd +
                 ", threadFactory=" + (threadFactory == null ? null : threadFactory.getClass().getSimpleName()) +
                 ", waitStrategy=" + waitStrategy +
                 ", orderBookFactory=" + (orderBookFactory == null ? null : orderBookFactory.getClass().getSimpleName()) +
+                ", userProfileServiceFactory=" + (userProfileServiceFactory == null ? null : userProfileServiceFactory.getClass().getSimpleName()) +
                 ", binaryCommandsLz4CompressorFactory=" + (binaryCommandsLz4CompressorFactory == null ? null : binaryCommandsLz4CompressorFactory.getClass().getSimpleName()) +
+                ", ingressMode=" + ingressMode +
+                ", ingressQueueSize=" + ingressQueueSize +
+                ", eventsPooling=" + eventsPooling +
+                ", eventsPoolChainLength=" + eventsPoolChainLength +
+                ", eventsPoolSize=" + eventsPoolSize +
                 '}';
     }
 
@@ -119,14 +191,23 @@ public final class PerformanceConfiguration {
                 .ringBufferSize(16 * 1024)
                 .matchingEnginesNum(1)
                 .riskEnginesNum(1)
+                .symbolShardingPolicyFactory(ModuloShardingPolicy::new)
+                .uidShardingPolicyFactory(ModuloShardingPolicy::new)
                 .msgsInGroupLimit(256)
                 .maxGroupDurationNs(10_000)
                 .sendL2ForEveryCmd(false)
                 .l2RefreshDepth(8)
+                .sendL2DeltasForEveryCmd(false)
                 .threadFactory(Thread::new)
                 .waitStrategy(CoreWaitStrategy.BLOCKING)
                 .binaryCommandsLz4CompressorFactory(() -> LZ4Factory.fastestInstance().highCompressor())
-                .orderBookFactory(OrderBookNaiveImpl::new);
+                .orderBookFactory(OrderBookNaiveImpl::new)
+                .userProfileServiceFactory(UserProfileService::new)
+                .ingressMode(IngressMode.MULTI_PRODUCER)
+                .ingressQueueSize(1024)
+                .eventsPooling(true)
+                .eventsPoolChainLength(1024)
+                .eventsPoolSize(64);
     }
 
     public static PerformanceConfiguration.PerformanceConfigurationBuilder latencyPerformanceBuilder() {
@@ -135,14 +216,23 @@ public final class PerformanceConfiguration {
                 .ringBufferSize(2 * 1024)
                 .matchingEnginesNum(1)
                 .riskEnginesNum(1)
+                .symbolShardingPolicyFactory(ModuloShardingPolicy::new)
+                .uidShardingPolicyFactory(ModuloShardingPolicy::new)
                 .msgsInGroupLimit(256)
                 .maxGroupDurationNs(10_000)
                 .sendL2ForEveryCmd(false)
                 .l2RefreshDepth(8)
+                .sendL2DeltasForEveryCmd(false)
                 .threadFactory(new AffinityThreadFactory(AffinityThreadFactory.ThreadAffinityMode.THREAD_AFFINITY_ENABLE_PER_LOGICAL_CORE))
                 .waitStrategy(CoreWaitStrategy.BUSY_SPIN)
                 .binaryCommandsLz4CompressorFactory(() -> LZ4Factory.fastestInstance().highCompressor())
-                .orderBookFactory(OrderBookDirectImpl::new);
+                .orderBookFactory(OrderBookDirectImpl::new)
+                .userProfileServiceFactory(UserProfileService::new)
+                .ingressMode(IngressMode.MULTI_PRODUCER)
+                .ingressQueueSize(1024)
+                .eventsPooling(true)
+                .eventsPoolChainLength(1024)
+                .eventsPoolSize(16);
     }
 
     public static PerformanceConfiguration.PerformanceConfigurationBuilder throughputPerformanceBuilder() {
@@ -151,13 +241,22 @@ public final class PerformanceConfiguration {
                 .ringBufferSize(64 * 1024)
                 .matchingEnginesNum(4)
                 .riskEnginesNum(2)
+                .symbolShardingPolicyFactory(ModuloShardingPolicy::new)
+                .uidShardingPolicyFactory(ModuloShardingPolicy::new)
                 .msgsInGroupLimit(4_096)
                 .maxGroupDurationNs(4_000_000)
                 .sendL2ForEveryCmd(false)
                 .l2RefreshDepth(8)
+                .sendL2DeltasForEveryCmd(false)
                 .threadFactory(new AffinityThreadFactory(AffinityThreadFactory.ThreadAffinityMode.THREAD_AFFINITY_ENABLE_PER_LOGICAL_CORE))
                 .waitStrategy(CoreWaitStrategy.BUSY_SPIN)
                 .binaryCommandsLz4CompressorFactory(() -> LZ4Factory.fastestInstance().highCompressor())
-                .orderBookFactory(OrderBookDirectImpl::new);
+                .orderBookFactory(OrderBookDirectImpl::new)
+                .userProfileServiceFactory(UserProfileService::new)
+                .ingressMode(IngressMode.MULTI_PRODUCER)
+                .ingressQueueSize(1024)
+                .eventsPooling(true)
+                .eventsPoolChainLength(1024)
+                .eventsPoolSize(256);
     }
 }
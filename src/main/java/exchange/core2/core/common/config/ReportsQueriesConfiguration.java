@@ -3,6 +3,8 @@ package exchange.core2.core.common.config;
 
 import exchange.core2.core.common.api.binary.BatchAddAccountsCommand;
 import exchange.core2.core.common.api.binary.BatchAddSymbolsCommand;
+import exchange.core2.core.common.api.binary.BatchAssignSymbolShardsCommand;
+import exchange.core2.core.common.api.binary.BatchMigrateSymbolsCommand;
 import exchange.core2.core.common.api.binary.BinaryCommandType;
 import exchange.core2.core.common.api.binary.BinaryDataCommand;
 import exchange.core2.core.common.api.reports.*;
@@ -49,11 +51,14 @@ public final class ReportsQueriesConfiguration {
         // binary commands (not extendable)
         addBinaryCommandClass(binaryCommandConstructors, BinaryCommandType.ADD_ACCOUNTS, BatchAddAccountsCommand.class);
         addBinaryCommandClass(binaryCommandConstructors, BinaryCommandType.ADD_SYMBOLS, BatchAddSymbolsCommand.class);
+        addBinaryCommandClass(binaryCommandConstructors, BinaryCommandType.ASSIGN_SYMBOL_SHARDS, BatchAssignSymbolShardsCommand.class);
+        addBinaryCommandClass(binaryCommandConstructors, BinaryCommandType.MIGRATE_SYMBOLS, BatchMigrateSymbolsCommand.class);
 
         // predefined queries (extendable)
         addQueryClass(reportConstructors, ReportType.STATE_HASH.getCode(), StateHashReportQuery.class);
         addQueryClass(reportConstructors, ReportType.SINGLE_USER_REPORT.getCode(), SingleUserReportQuery.class);
         addQueryClass(reportConstructors, ReportType.TOTAL_CURRENCY_BALANCE.getCode(), TotalCurrencyBalanceReportQuery.class);
+        addQueryClass(reportConstructors, ReportType.SHARDS_LOAD.getCode(), ShardsLoadReportQuery.class);
 
         customReports.forEach((code, customReport) -> addQueryClass(reportConstructors, code, customReport));
 
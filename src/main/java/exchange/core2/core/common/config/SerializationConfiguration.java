@@ -29,12 +29,92 @@ public class SerializationConfiguration {
             .serializationProcessorFactory(exchangeCfg -> new DiskSerializationProcessor(exchangeCfg, DiskSerializationProcessorConfiguration.createDefaultConfig()))
             .build();
 
-    // snapshots and journaling
+    // no journaling, only snapshots (written asynchronously by background thread)
+    public static final SerializationConfiguration DISK_SNAPSHOT_ONLY_ASYNC = SerializationConfiguration.builder()
+            .enableJournaling(false)
+            .serializationProcessorFactory(exchangeCfg -> new DiskSerializationProcessor(exchangeCfg, DiskSerializationProcessorConfiguration.createAsyncSnapshotsConfig()))
+            .build();
+
+    // no journaling, only snapshots (chunked format, parallel loading)
+    public static final SerializationConfiguration DISK_SNAPSHOT_ONLY_CHUNKED = SerializationConfiguration.builder()
+            .enableJournaling(false)
+            .serializationProcessorFactory(exchangeCfg -> new DiskSerializationProcessor(
+                    exchangeCfg,
+                    DiskSerializationProcessorConfiguration.createChunkedSnapshotsConfig(Runtime.getRuntime().availableProcessors())))
+            .build();
+
+    // snapshots and journaling (fsync at the end of every batch)
     public static final SerializationConfiguration DISK_JOURNALING = SerializationConfiguration.builder()
             .enableJournaling(true)
             .serializationProcessorFactory(exchangeCfg -> new DiskSerializationProcessor(exchangeCfg, DiskSerializationProcessorConfiguration.createDefaultConfig()))
             .build();
 
+    // snapshots and journaling, fixed size journal records (format v1)
+    public static final SerializationConfiguration DISK_JOURNALING_V1 = SerializationConfiguration.builder()
+            .enableJournaling(true)
+            .serializationProcessorFactory(exchangeCfg -> new DiskSerializationProcessor(
+                    exchangeCfg,
+                    DiskSerializationProcessorConfiguration.createDefaultConfig(
+                            DiskSerializationProcessorConfiguration.JournalDurability.SYNC_PER_BATCH,
+                            DiskSerializationProcessorConfiguration.JournalFormat.V1)))
+            .build();
+
+    // snapshots and journaling, fast recovery (parallel decompression of memory-mapped journal, batched publishing)
+    public static final SerializationConfiguration DISK_JOURNALING_FAST_REPLAY = SerializationConfiguration.builder()
+            .enableJournaling(true)
+            .serializationProcessorFactory(exchangeCfg -> new DiskSerializationProcessor(
+                    exchangeCfg,
+                    DiskSerializationProcessorConfiguration.createFastReplayConfig(Math.max(1, Runtime.getRuntime().availableProcessors() / 2))))
+            .build();
+
+    // snapshots and journaling without fsync (data can be lost on power failure)
+    public static final SerializationConfiguration DISK_JOURNALING_NO_SYNC = SerializationConfiguration.builder()
+            .enableJournaling(true)
+            .serializationProcessorFactory(exchangeCfg -> new DiskSerializationProcessor(
+                    exchangeCfg,
+                    DiskSerializationProcessorConfiguration.createDefaultConfig(DiskSerializationProcessorConfiguration.JournalDurability.NONE)))
+            .build();
+
+    // snapshots and journaling with group commit (background fsync, results are released after durable sequence)
+    public static final SerializationConfiguration DISK_JOURNALING_GROUP_COMMIT = SerializationConfiguration.builder()
+            .enableJournaling(true)
+            .serializationProcessorFactory(exchangeCfg -> new DiskSerializationProcessor(
+                    exchangeCfg,
+                    DiskSerializationProcessorConfiguration.createDefaultConfig(DiskSerializationProcessorConfiguration.JournalDurability.GROUP_COMMIT)))
+            .build();
+
+    // snapshots and journaling, small journal files (64MB), next file is created on rollover
+    public static final SerializationConfiguration DISK_JOURNALING_SMALL_FILES = SerializationConfiguration.builder()
+            .enableJournaling(true)
+            .serializationProcessorFactory(exchangeCfg -> new DiskSerializationProcessor(
+                    exchangeCfg,
+                    DiskSerializationProcessorConfiguration.createJournalSegmentsConfig(64 * 1024 * 1024, 0)))
+            .build();
+
+    // snapshots and journaling, small journal files (64MB), next 4 files are pre-allocated by background thread
+    public static final SerializationConfiguration DISK_JOURNALING_PREALLOCATED = SerializationConfiguration.builder()
+            .enableJournaling(true)
+            .serializationProcessorFactory(exchangeCfg -> new DiskSerializationProcessor(
+                    exchangeCfg,
+                    DiskSerializationProcessorConfiguration.createJournalSegmentsConfig(64 * 1024 * 1024, 4)))
+            .build();
+
+    // snapshots and journaling into memory-mapped segments (msync at the end of every batch)
+    public static final SerializationConfiguration DISK_JOURNALING_MAPPED = SerializationConfiguration.builder()
+            .enableJournaling(true)
+            .serializationProcessorFactory(exchangeCfg -> new DiskSerializationProcessor(
+                    exchangeCfg,
+                    DiskSerializationProcessorConfiguration.createMappedConfig(DiskSerializationProcessorConfiguration.MappedSyncPolicy.PER_BATCH)))
+            .build();
+
+    // snapshots and journaling into memory-mapped segments (msync by background flusher)
+    public static final SerializationConfiguration DISK_JOURNALING_MAPPED_ASYNC = SerializationConfiguration.builder()
+            .enableJournaling(true)
+            .serializationProcessorFactory(exchangeCfg -> new DiskSerializationProcessor(
+                    exchangeCfg,
+                    DiskSerializationProcessorConfiguration.createMappedConfig(DiskSerializationProcessorConfiguration.MappedSyncPolicy.ASYNC)))
+            .build();
+
     /*
      * Enables journaling.
      * Set to false for analytics instances.
@@ -172,6 +172,79 @@ public interface IOrderBook extends WriteBytesMarshallable, StateHash {
 
     int getTotalBidBuckets(int limit);
 
+    /**
+     * Append current state of the price level into delta (zero volume and orders if level does not exist)
+     *
+     * @param action - side of the order book
+     * @param price  - price level
+     * @param delta  - delta to append record to
+     */
+    void fillL2Level(OrderAction action, long price, L2MarketDataDelta delta);
+
+    /**
+     * Fill price levels changed by processed command (incremental L2 mode).
+     * <p>
+     * Changed levels are found from matcher events, so any implementation does not need to track them:
+     * TRADE - maker side levels, REDUCE - cancelled/reduced order level,
+     * placed remaining GTC volume or moved order - taker side levels.
+     *
+     * @param orderBook       - order book (command is already processed)
+     * @param cmd             - successfully processed command
+     * @param movedOrderPrice - original price of moved order (MOVE_ORDER only), -1 if unknown
+     * @param delta           - pre-allocated object from ring buffer
+     */
+    static void fillL2MarketDataDelta(final IOrderBook orderBook,
+                                      final OrderCommand cmd,
+                                      final long movedOrderPrice,
+                                      final L2MarketDataDelta delta) {
+
+        delta.reset();
+
+        final OrderCommandType commandType = cmd.command;
+        final OrderAction takerAction = cmd.action;
+        final OrderAction makerAction = takerAction == OrderAction.ASK ? OrderAction.BID : OrderAction.ASK;
+
+        long lastTradePrice = -1L;
+        long tradedVolume = 0L;
+        boolean rejected = false;
+
+        for (MatcherTradeEvent evt = cmd.matcherEvent; evt != null; evt = evt.nextEvent) {
+            if (evt.eventType == MatcherEventType.TRADE) {
+                tradedVolume += evt.size;
+                // events are ordered by price - same level comes in a row
+                if (evt.price != lastTradePrice) {
+                    orderBook.fillL2Level(makerAction, evt.price, delta);
+                    lastTradePrice = evt.price;
+                }
+            } else if (evt.eventType == MatcherEventType.REDUCE) {
+                orderBook.fillL2Level(takerAction, evt.price, delta);
+            } else if (evt.eventType == MatcherEventType.REJECT) {
+                rejected = true;
+            }
+        }
+
+        if (commandType == OrderCommandType.PLACE_ORDER) {
+            if (cmd.orderType == OrderType.GTC && !rejected && tradedVolume < cmd.size) {
+                orderBook.fillL2Level(takerAction, cmd.price, delta);
+            }
+        } else if (commandType == OrderCommandType.MOVE_ORDER) {
+            if (movedOrderPrice != -1L && movedOrderPrice != cmd.price) {
+                orderBook.fillL2Level(takerAction, movedOrderPrice, delta);
+            }
+            orderBook.fillL2Level(takerAction, cmd.price, delta);
+        }
+    }
+
+    /**
+     * @param orderBook - order book
+     * @param orderId   - order id
+     * @return price of the order, or -1 if not found
+     */
+    static long findOrderPrice(final IOrderBook orderBook, final long orderId) {
+        final IOrder order = orderBook.getOrderById(orderId);
+        return order != null ? order.getPrice() : -1L;
+    }
+
 
     static CommandResultCode processCommand(final IOrderBook orderBook, final OrderCommand cmd) {
 
@@ -215,11 +288,34 @@ public interface IOrderBook extends WriteBytesMarshallable, StateHash {
                 return new OrderBookNaiveImpl(bytes, loggingCfg);
             case DIRECT:
                 return new OrderBookDirectImpl(bytes, objectsPool, eventsHelper, loggingCfg);
+            case OFF_HEAP:
+                return new OrderBookOffHeapImpl(bytes, objectsPool, eventsHelper, loggingCfg);
+            case PRICE_LADDER:
+                return new OrderBookPriceLadderImpl(bytes, objectsPool, eventsHelper, loggingCfg);
             default:
                 throw new IllegalArgumentException();
         }
     }
 
+    /**
+     * @param type order book implementation type
+     * @return factory for the implementation
+     */
+    static OrderBookFactory factoryOf(final OrderBookImplType type) {
+        switch (type) {
+            case NAIVE:
+                return OrderBookNaiveImpl::new;
+            case DIRECT:
+                return OrderBookDirectImpl::new;
+            case OFF_HEAP:
+                return OrderBookOffHeapImpl::new;
+            case PRICE_LADDER:
+                return OrderBookPriceLadderImpl::new;
+            default:
+                throw new IllegalArgumentException("unknown OrderBookImplType:" + type);
+        }
+    }
+
     @FunctionalInterface
     interface OrderBookFactory {
 
@@ -229,7 +325,9 @@ public interface IOrderBook extends WriteBytesMarshallable, StateHash {
     @Getter
     enum OrderBookImplType {
         NAIVE(0),
-        DIRECT(2);
+        DIRECT(2),
+        OFF_HEAP(3),
+        PRICE_LADDER(4);
 
         private byte code;
 
@@ -243,6 +341,10 @@ public interface IOrderBook extends WriteBytesMarshallable, StateHash {
                     return NAIVE;
                 case 2:
                     return DIRECT;
+                case 3:
+                    return OFF_HEAP;
+                case 4:
+                    return PRICE_LADDER;
                 default:
                     throw new IllegalArgumentException("unknown OrderBookImplType:" + code);
             }
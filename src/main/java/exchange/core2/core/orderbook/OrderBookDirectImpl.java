@@ -777,6 +777,16 @@ public final class OrderBookDirectImpl implements IOrderBook {
         }, size);
     }
 
+    @Override
+    public void fillL2Level(final OrderAction action, final long price, final L2MarketDataDelta delta) {
+        final Bucket bucket = (action == OrderAction.ASK ? askPriceBuckets : bidPriceBuckets).get(price);
+        if (bucket != null) {
+            delta.add(action == OrderAction.ASK, price, bucket.volume, bucket.numOrders);
+        } else {
+            delta.add(action == OrderAction.ASK, price, 0L, 0);
+        }
+    }
+
     @Override
     public int getTotalAskBuckets(final int limit) {
         return askPriceBuckets.size(limit);
@@ -29,14 +29,14 @@ import java.util.*;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
 
-import static exchange.core2.core.ExchangeCore.EVENTS_POOLING;
-
 @Slf4j
 @RequiredArgsConstructor
 public final class OrderBookEventsHelper {
 
-    public static final OrderBookEventsHelper NON_POOLED_EVENTS_HELPER = new OrderBookEventsHelper(MatcherTradeEvent::new);
+    // no supplier - every event is allocated (helper is shared between threads, so it should not keep any state)
+    public static final OrderBookEventsHelper NON_POOLED_EVENTS_HELPER = new OrderBookEventsHelper(null);
 
+    // null means pooling disabled
     private final Supplier<MatcherTradeEvent> eventChainsSupplier;
 
     private MatcherTradeEvent eventsChainHead;
@@ -80,6 +80,7 @@ public final class OrderBookEventsHelper {
         event.activeOrderCompleted = completed;
 //        event.activeOrderSeq = order.seq;
         event.matchedOrderId = 0;
+        event.matchedOrderUid = 0;
         event.matchedOrderCompleted = false;
         event.price = order.getPrice();
 //        event.size = order.getSize() - order.getFilled();
@@ -106,6 +107,7 @@ public final class OrderBookEventsHelper {
 //        event.activeOrderSeq = cmd.seq;
 
         event.matchedOrderId = 0;
+        event.matchedOrderUid = 0;
         event.matchedOrderCompleted = false;
 
         event.price = cmd.price;
@@ -133,6 +135,8 @@ public final class OrderBookEventsHelper {
             event.eventType = MatcherEventType.BINARY_EVENT;
 
             event.section = section;
+            event.activeOrderCompleted = false;
+            event.matchedOrderCompleted = false;
             event.matchedOrderId = dataArray[i];
             event.matchedOrderUid = dataArray[i + 1];
             event.price = dataArray[i + 2];
@@ -186,7 +190,7 @@ public final class OrderBookEventsHelper {
 
     // lấy
     private MatcherTradeEvent newMatcherEvent() {
-        if (EVENTS_POOLING) {
+        if (eventChainsSupplier != null) {
             // nếu event chưa có thì lấy từ trong pool ra
             if (eventsChainHead == null) {
                 eventsChainHead = eventChainsSupplier.get();
@@ -195,6 +199,9 @@ public final class OrderBookEventsHelper {
             // trả ra event hiện tại, gán "eventsChainHead" bằng event ngay sau nó
             final MatcherTradeEvent res = eventsChainHead;
             eventsChainHead = eventsChainHead.nextEvent;
+
+            // detach from the pool chain, otherwise last event of the command chain would point to the rest of the pool
+            res.nextEvent = null;
             return res;
         } else {
             // nếu ko bật chế độ pooling thì đơn giản khởi tạo 1 event mới và trả về
@@ -488,6 +488,16 @@ public final class OrderBookNaiveImpl implements IOrderBook {
         data.bidSize = i;
     }
 
+    @Override
+    public void fillL2Level(final OrderAction action, final long price, final L2MarketDataDelta delta) {
+        final OrdersBucketNaive bucket = (action == OrderAction.ASK ? askBuckets : bidBuckets).get(price);
+        if (bucket != null) {
+            delta.add(action == OrderAction.ASK, price, bucket.getTotalVolume(), bucket.getNumOrders());
+        } else {
+            delta.add(action == OrderAction.ASK, price, 0L, 0);
+        }
+    }
+
     @Override
     public int getTotalAskBuckets(final int limit) {
         return Math.min(limit, askBuckets.size());
@@ -0,0 +1,1145 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.orderbook;
+
+import exchange.core2.collections.art.LongAdaptiveRadixTreeMap;
+import exchange.core2.collections.objpool.ObjectsPool;
+import exchange.core2.core.common.*;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.cmd.OrderCommandType;
+import exchange.core2.core.common.config.LoggingConfiguration;
+import lombok.extern.slf4j.Slf4j;
+import net.openhft.chronicle.bytes.BytesIn;
+import net.openhft.chronicle.bytes.BytesOut;
+import org.agrona.BufferUtil;
+import org.agrona.collections.Long2LongHashMap;
+import org.agrona.collections.MutableInteger;
+import org.agrona.collections.MutableLong;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.eclipse.collections.impl.map.mutable.primitive.IntIntHashMap;
+import org.eclipse.collections.impl.map.mutable.primitive.LongIntHashMap;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Order book with the same structure as {@link OrderBookDirectImpl}, but orders and price buckets are stored
+ * as fixed-size records in off-heap slabs and linked by int slot indices (no object per order, no references for GC to trace).
+ * Freed slots are recycled through free-list.
+ * <p>
+ * Heap is used only for orderId index (primitive hash map) and price index (ART map, value is a cached Integer slot).
+ */
+@Slf4j
+public final class OrderBookOffHeapImpl implements IOrderBook {
+
+    static final int NIL = -1;
+
+    // order record layout
+    private static final int ORDER_ID_OFFSET = 0;
+    private static final int PRICE_OFFSET = 8;
+    private static final int SIZE_OFFSET = 16;
+    private static final int FILLED_OFFSET = 24;
+    private static final int RESERVE_BID_PRICE_OFFSET = 32;
+    private static final int UID_OFFSET = 40;
+    private static final int TIMESTAMP_OFFSET = 48;
+    // next order (towards the matching direction), also free-list link
+    private static final int NEXT_OFFSET = 56;
+    // previous order (to the tail of the queue)
+    private static final int PREV_OFFSET = 60;
+    private static final int BUCKET_OFFSET = 64;
+    private static final int ACTION_OFFSET = 68;
+    static final int ORDER_RECORD_SIZE = 72;
+
+    // bucket record layout
+    private static final int BUCKET_VOLUME_OFFSET = 0;
+    private static final int BUCKET_PRICE_OFFSET = 8;
+    private static final int BUCKET_NUM_ORDERS_OFFSET = 16;
+    // tail order, also free-list link
+    private static final int BUCKET_TAIL_OFFSET = 20;
+    static final int BUCKET_RECORD_SIZE = 24;
+
+    private static final int INITIAL_ORDERS_CAPACITY = 64;
+    private static final int INITIAL_BUCKETS_CAPACITY = 16;
+
+    private final Slab orders = new Slab(ORDER_RECORD_SIZE, NEXT_OFFSET, INITIAL_ORDERS_CAPACITY);
+    private final Slab buckets = new Slab(BUCKET_RECORD_SIZE, BUCKET_TAIL_OFFSET, INITIAL_BUCKETS_CAPACITY);
+
+    // price -> bucket slot
+    private final LongAdaptiveRadixTreeMap<Integer> askPriceBuckets;
+    private final LongAdaptiveRadixTreeMap<Integer> bidPriceBuckets;
+
+    // cached boxed bucket slots (ART map requires objects as values)
+    private Integer[] bucketRefs = new Integer[0];
+
+    // index: orderId -> order slot
+    private final Long2LongHashMap orderIdIndex = new Long2LongHashMap(1024, 0.65f, NIL);
+
+    private final CoreSymbolSpecification symbolSpec;
+
+    // heads (NIL if empty)
+    private int bestAskOrder = NIL;
+    private int bestBidOrder = NIL;
+
+    private final ObjectsPool objectsPool;
+
+    private final OrderBookEventsHelper eventsHelper;
+
+    // reusable view for events helper (reads order fields immediately)
+    private final OrderView eventsOrderView = new OrderView();
+
+    private final boolean logDebug;
+
+    public OrderBookOffHeapImpl(final CoreSymbolSpecification symbolSpec,
+                                final ObjectsPool objectsPool,
+                                final OrderBookEventsHelper eventsHelper,
+                                final LoggingConfiguration loggingCfg) {
+
+        this.symbolSpec = symbolSpec;
+        this.objectsPool = objectsPool;
+        this.askPriceBuckets = new LongAdaptiveRadixTreeMap<>(objectsPool);
+        this.bidPriceBuckets = new LongAdaptiveRadixTreeMap<>(objectsPool);
+        this.eventsHelper = eventsHelper;
+        this.logDebug = loggingCfg.getLoggingLevels().contains(LoggingConfiguration.LoggingLevel.LOGGING_MATCHING_DEBUG);
+    }
+
+    public OrderBookOffHeapImpl(final BytesIn bytes,
+                                final ObjectsPool objectsPool,
+                                final OrderBookEventsHelper eventsHelper,
+                                final LoggingConfiguration loggingCfg) {
+
+        this(new CoreSymbolSpecification(bytes), objectsPool, eventsHelper, loggingCfg);
+
+        final int size = bytes.readInt();
+        for (int i = 0; i < size; i++) {
+            final int slot = orders.allocate();
+            final UnsafeBuffer b = orders.buffer;
+            final int o = orders.offset(slot);
+            b.putLong(o + ORDER_ID_OFFSET, bytes.readLong());
+            b.putLong(o + PRICE_OFFSET, bytes.readLong());
+            b.putLong(o + SIZE_OFFSET, bytes.readLong());
+            b.putLong(o + FILLED_OFFSET, bytes.readLong());
+            b.putLong(o + RESERVE_BID_PRICE_OFFSET, bytes.readLong());
+            b.putByte(o + ACTION_OFFSET, bytes.readByte());
+            b.putLong(o + UID_OFFSET, bytes.readLong());
+            b.putLong(o + TIMESTAMP_OFFSET, bytes.readLong());
+            insertOrder(slot, NIL);
+            orderIdIndex.put(orderId(slot), slot);
+        }
+    }
+
+    @Override
+    public void newOrder(final OrderCommand cmd) {
+
+        switch (cmd.orderType) {
+            case GTC:
+                newOrderPlaceGtc(cmd);
+                break;
+            case IOC:
+                newOrderMatchIoc(cmd);
+                break;
+            case FOK_BUDGET:
+                newOrderMatchFokBudget(cmd);
+                break;
+            // TODO IOC_BUDGET and FOK support
+            default:
+                log.warn("Unsupported order type: {}", cmd);
+                eventsHelper.attachRejectEvent(cmd, cmd.size);
+        }
+    }
+
+    private void newOrderPlaceGtc(final OrderCommand cmd) {
+        final long size = cmd.size;
+
+        // check if order is marketable there are matching orders
+        final long filledSize = tryMatchInstantly(cmd.action, cmd.price, size, 0L, cmd.reserveBidPrice, cmd);
+        if (filledSize == size) {
+            // completed before being placed - can just return
+            return;
+        }
+
+        final long orderId = cmd.orderId;
+        if (orderIdIndex.containsKey(orderId)) {
+            // duplicate order id - can match, but can not place
+            eventsHelper.attachRejectEvent(cmd, size - filledSize);
+            log.warn("duplicate order id: {}", cmd);
+            return;
+        }
+
+        // normally placing regular GTC order
+        final int slot = orders.allocate();
+        final UnsafeBuffer b = orders.buffer;
+        final int o = orders.offset(slot);
+        b.putLong(o + ORDER_ID_OFFSET, orderId);
+        b.putLong(o + PRICE_OFFSET, cmd.price);
+        b.putLong(o + SIZE_OFFSET, size);
+        b.putLong(o + FILLED_OFFSET, filledSize);
+        b.putLong(o + RESERVE_BID_PRICE_OFFSET, cmd.reserveBidPrice);
+        b.putLong(o + UID_OFFSET, cmd.uid);
+        b.putLong(o + TIMESTAMP_OFFSET, cmd.timestamp);
+        b.putByte(o + ACTION_OFFSET, cmd.action.getCode());
+
+        orderIdIndex.put(orderId, slot);
+        insertOrder(slot, NIL);
+    }
+
+    private void newOrderMatchIoc(final OrderCommand cmd) {
+
+        final long filledSize = tryMatchInstantly(cmd.action, cmd.price, cmd.size, 0L, cmd.reserveBidPrice, cmd);
+
+        final long rejectedSize = cmd.size - filledSize;
+
+        if (rejectedSize != 0) {
+            // was not matched completely - send reject for not-completed IoC order
+            eventsHelper.attachRejectEvent(cmd, rejectedSize);
+        }
+    }
+
+    private void newOrderMatchFokBudget(final OrderCommand cmd) {
+
+        final long budget = checkBudgetToFill(cmd.action, cmd.size);
+
+        if (logDebug) log.debug("Budget calc: {} requested: {}", budget, cmd.price);
+
+        if (isBudgetLimitSatisfied(cmd.action, budget, cmd.price)) {
+            tryMatchInstantly(cmd.action, cmd.price, cmd.size, 0L, cmd.reserveBidPrice, cmd);
+        } else {
+            eventsHelper.attachRejectEvent(cmd, cmd.size);
+        }
+    }
+
+    private boolean isBudgetLimitSatisfied(final OrderAction orderAction, final long calculated, final long limit) {
+        return calculated != Long.MAX_VALUE
+                && (calculated == limit || (orderAction == OrderAction.BID ^ calculated > limit));
+    }
+
+    private long checkBudgetToFill(final OrderAction action,
+                                   long size) {
+
+        int makerOrder = (action == OrderAction.BID) ? bestAskOrder : bestBidOrder;
+
+        long budget = 0L;
+
+        // iterate through all buckets
+        while (makerOrder != NIL) {
+            final int bucket = orderBucket(makerOrder);
+
+            final long availableSize = bucketVolume(bucket);
+            final long price = bucketPrice(bucket);
+
+            if (size > availableSize) {
+                size -= availableSize;
+                budget += availableSize * price;
+                if (logDebug) log.debug("add    {} * {} -> {}", price, availableSize, budget);
+            } else {
+                if (logDebug) log.debug("return {} * {} -> {}", price, size, budget + size * price);
+                return budget + size * price;
+            }
+
+            // switch to next order (can be NIL)
+            makerOrder = orderPrev(bucketTail(bucket));
+        }
+        if (logDebug) log.debug("not enough liquidity to fill size={}", size);
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Match taker order (new or moved) with resting orders
+     *
+     * @return total filled size of the taker order
+     */
+    private long tryMatchInstantly(final OrderAction takerAction,
+                                   final long takerPrice,
+                                   final long takerSize,
+                                   final long takerFilled,
+                                   final long takerReserveBidPrice,
+                                   final OrderCommand triggerCmd) {
+
+        final boolean isBidAction = takerAction == OrderAction.BID;
+
+        final long limitPrice = (triggerCmd.command == OrderCommandType.PLACE_ORDER && triggerCmd.orderType == OrderType.FOK_BUDGET && !isBidAction)
+                ? 0L
+                : takerPrice;
+
+        int makerOrder;
+        if (isBidAction) {
+            makerOrder = bestAskOrder;
+            if (makerOrder == NIL || orderPrice(makerOrder) > limitPrice) {
+                return takerFilled;
+            }
+        } else {
+            makerOrder = bestBidOrder;
+            if (makerOrder == NIL || orderPrice(makerOrder) < limitPrice) {
+                return takerFilled;
+            }
+        }
+
+        long remainingSize = takerSize - takerFilled;
+
+        if (remainingSize == 0) {
+            return takerFilled;
+        }
+
+        int priceBucketTail = bucketTail(orderBucket(makerOrder));
+
+        MatcherTradeEvent eventsTail = null;
+
+        // iterate through all orders
+        do {
+            final UnsafeBuffer b = orders.buffer;
+            final int o = orders.offset(makerOrder);
+            final long makerSize = b.getLong(o + SIZE_OFFSET);
+            final long makerFilled = b.getLong(o + FILLED_OFFSET);
+            final int bucket = b.getInt(o + BUCKET_OFFSET);
+
+            // calculate exact volume can fill for this order
+            final long tradeSize = Math.min(remainingSize, makerSize - makerFilled);
+
+            b.putLong(o + FILLED_OFFSET, makerFilled + tradeSize);
+            addBucketVolume(bucket, -tradeSize);
+            remainingSize -= tradeSize;
+
+            // remove from order book filled orders
+            final boolean makerCompleted = makerSize == makerFilled + tradeSize;
+            if (makerCompleted) {
+                addBucketNumOrders(bucket, -1);
+            }
+
+            eventsOrderView.slot = makerOrder;
+            final MatcherTradeEvent tradeEvent = eventsHelper.sendTradeEvent(eventsOrderView, makerCompleted, remainingSize == 0, tradeSize,
+                    isBidAction ? takerReserveBidPrice : b.getLong(o + RESERVE_BID_PRICE_OFFSET));
+
+            if (eventsTail == null) {
+                triggerCmd.matcherEvent = tradeEvent;
+            } else {
+                eventsTail.nextEvent = tradeEvent;
+            }
+            eventsTail = tradeEvent;
+
+            if (!makerCompleted) {
+                // maker not completed -> no unmatched volume left, can exit matching loop
+                break;
+            }
+
+            // if completed can remove maker order
+            final int prevOrder = b.getInt(o + PREV_OFFSET);
+            orderIdIndex.remove(b.getLong(o + ORDER_ID_OFFSET));
+
+            if (makerOrder == priceBucketTail) {
+                // reached current price tail -> remove bucket reference
+                final LongAdaptiveRadixTreeMap<Integer> priceBuckets = isBidAction ? askPriceBuckets : bidPriceBuckets;
+                priceBuckets.remove(bucketPrice(bucket));
+                buckets.free(bucket);
+
+                // set next price tail (if there is next price)
+                if (prevOrder != NIL) {
+                    priceBucketTail = bucketTail(orderBucket(prevOrder));
+                }
+            }
+
+            orders.free(makerOrder);
+
+            // switch to next order
+            makerOrder = prevOrder; // can be NIL
+
+        } while (makerOrder != NIL
+                && remainingSize > 0
+                && (isBidAction ? orderPrice(makerOrder) <= limitPrice : orderPrice(makerOrder) >= limitPrice));
+
+        // break chain after last order
+        if (makerOrder != NIL) {
+            setOrderNext(makerOrder, NIL);
+        }
+
+        // update best orders reference
+        if (isBidAction) {
+            bestAskOrder = makerOrder;
+        } else {
+            bestBidOrder = makerOrder;
+        }
+
+        // return filled amount
+        return takerSize - remainingSize;
+    }
+
+    @Override
+    public CommandResultCode cancelOrder(OrderCommand cmd) {
+
+        final int slot = (int) orderIdIndex.get(cmd.orderId);
+        if (slot == NIL || orderUid(slot) != cmd.uid) {
+            return CommandResultCode.MATCHING_UNKNOWN_ORDER_ID;
+        }
+        orderIdIndex.remove(cmd.orderId);
+
+        final int freeBucket = removeOrder(slot);
+        if (freeBucket != NIL) {
+            buckets.free(freeBucket);
+        }
+
+        // fill action fields (for events handling)
+        cmd.action = orderAction(slot);
+
+        eventsOrderView.slot = slot;
+        cmd.matcherEvent = eventsHelper.sendReduceEvent(eventsOrderView, orderSize(slot) - orderFilled(slot), true);
+
+        orders.free(slot);
+
+        return CommandResultCode.SUCCESS;
+    }
+
+    @Override
+    public CommandResultCode reduceOrder(OrderCommand cmd) {
+
+        final long orderId = cmd.orderId;
+        final long requestedReduceSize = cmd.size;
+        if (requestedReduceSize <= 0) {
+            return CommandResultCode.MATCHING_REDUCE_FAILED_WRONG_SIZE;
+        }
+
+        final int slot = (int) orderIdIndex.get(orderId);
+        if (slot == NIL || orderUid(slot) != cmd.uid) {
+            return CommandResultCode.MATCHING_UNKNOWN_ORDER_ID;
+        }
+
+        final long size = orderSize(slot);
+        final long remainingSize = size - orderFilled(slot);
+        final long reduceBy = Math.min(remainingSize, requestedReduceSize);
+        final boolean canRemove = reduceBy == remainingSize;
+
+        if (canRemove) {
+
+            orderIdIndex.remove(orderId);
+
+            final int freeBucket = removeOrder(slot);
+            if (freeBucket != NIL) {
+                buckets.free(freeBucket);
+            }
+
+        } else {
+            orders.buffer.putLong(orders.offset(slot) + SIZE_OFFSET, size - reduceBy);
+            addBucketVolume(orderBucket(slot), -reduceBy);
+        }
+
+        eventsOrderView.slot = slot;
+        cmd.matcherEvent = eventsHelper.sendReduceEvent(eventsOrderView, reduceBy, canRemove);
+
+        // fill action fields (for events handling)
+        cmd.action = orderAction(slot);
+
+        if (canRemove) {
+            orders.free(slot);
+        }
+
+        return CommandResultCode.SUCCESS;
+    }
+
+    @Override
+    public CommandResultCode moveOrder(OrderCommand cmd) {
+
+        // order lookup
+        final int slot = (int) orderIdIndex.get(cmd.orderId);
+        if (slot == NIL || orderUid(slot) != cmd.uid) {
+            return CommandResultCode.MATCHING_UNKNOWN_ORDER_ID;
+        }
+
+        final OrderAction action = orderAction(slot);
+        final long reserveBidPrice = orderReserveBidPrice(slot);
+
+        // risk check for exchange bids
+        if (symbolSpec.type == SymbolType.CURRENCY_EXCHANGE_PAIR && action == OrderAction.BID && cmd.price > reserveBidPrice) {
+            return CommandResultCode.MATCHING_MOVE_FAILED_PRICE_OVER_RISK_LIMIT;
+        }
+
+        // remove order
+        final int freeBucket = removeOrder(slot);
+
+        // update price
+        orders.buffer.putLong(orders.offset(slot) + PRICE_OFFSET, cmd.price);
+
+        // fill action fields (for events handling)
+        cmd.action = action;
+
+        // try match with new price as a taker order
+        final long size = orderSize(slot);
+        final long filled = tryMatchInstantly(action, cmd.price, size, orderFilled(slot), reserveBidPrice, cmd);
+        if (filled == size) {
+            // order was fully matched - removing
+            orderIdIndex.remove(cmd.orderId);
+            orders.free(slot);
+            if (freeBucket != NIL) {
+                buckets.free(freeBucket);
+            }
+            return CommandResultCode.SUCCESS;
+        }
+
+        // not filled completely, inserting into new position
+        orders.buffer.putLong(orders.offset(slot) + FILLED_OFFSET, filled);
+
+        // insert into a new place
+        insertOrder(slot, freeBucket);
+
+        return CommandResultCode.SUCCESS;
+    }
+
+    /**
+     * Unlink order from the chain and its bucket
+     *
+     * @return slot of removed bucket (if it was the last order with that price), otherwise NIL
+     */
+    private int removeOrder(final int slot) {
+
+        final UnsafeBuffer b = orders.buffer;
+        final int o = orders.offset(slot);
+        final int bucket = b.getInt(o + BUCKET_OFFSET);
+        final int next = b.getInt(o + NEXT_OFFSET);
+        final int prev = b.getInt(o + PREV_OFFSET);
+
+        addBucketVolume(bucket, -(b.getLong(o + SIZE_OFFSET) - b.getLong(o + FILLED_OFFSET)));
+        addBucketNumOrders(bucket, -1);
+        int bucketRemoved = NIL;
+
+        if (bucketTail(bucket) == slot) {
+            // if we removing tail order -> change bucket tail reference
+            if (next == NIL || orderBucket(next) != bucket) {
+                // if no next or next order has different parent -> then it was the last bucket -> remove record
+                final LongAdaptiveRadixTreeMap<Integer> priceBuckets = orderAction(slot) == OrderAction.ASK ? askPriceBuckets : bidPriceBuckets;
+                priceBuckets.remove(bucketPrice(bucket));
+                bucketRemoved = bucket;
+            } else {
+                // otherwise at least one order always having the same parent left -> update tail reference to it
+                setBucketTail(bucket, next);
+            }
+        }
+
+        // update neighbor orders
+        if (next != NIL) {
+            setOrderPrev(next, prev);
+        }
+        if (prev != NIL) {
+            setOrderNext(prev, next);
+        }
+
+        // check if best ask/bid were referring to the order we just removed
+        if (slot == bestAskOrder) {
+            bestAskOrder = prev;
+        } else if (slot == bestBidOrder) {
+            bestBidOrder = prev;
+        }
+
+        return bucketRemoved;
+    }
+
+    private void insertOrder(final int slot, final int freeBucket) {
+
+        final boolean isAsk = orderAction(slot) == OrderAction.ASK;
+        final LongAdaptiveRadixTreeMap<Integer> priceBuckets = isAsk ? askPriceBuckets : bidPriceBuckets;
+        final long price = orderPrice(slot);
+        final long volume = orderSize(slot) - orderFilled(slot);
+        final Integer toBucket = priceBuckets.get(price);
+
+        if (toBucket != null) {
+            // update tail if bucket already exists
+
+            // can put bucket back to the slab (because target bucket already exists)
+            if (freeBucket != NIL) {
+                buckets.free(freeBucket);
+            }
+
+            addBucketVolume(toBucket, volume);
+            addBucketNumOrders(toBucket, 1);
+            final int oldTail = bucketTail(toBucket); // always exists
+            final int prevOrder = orderPrev(oldTail); // can be NIL
+            // update neighbors
+            setBucketTail(toBucket, slot);
+            setOrderPrev(oldTail, slot);
+            if (prevOrder != NIL) {
+                setOrderNext(prevOrder, slot);
+            }
+            // update self
+            setOrderLinks(slot, oldTail, prevOrder, toBucket);
+
+        } else {
+
+            // insert a new bucket (reuse existing)
+            final int newBucket = freeBucket != NIL ? freeBucket : buckets.allocate();
+
+            final UnsafeBuffer bb = buckets.buffer;
+            final int bo = buckets.offset(newBucket);
+            bb.putLong(bo + BUCKET_VOLUME_OFFSET, volume);
+            bb.putLong(bo + BUCKET_PRICE_OFFSET, price);
+            bb.putInt(bo + BUCKET_NUM_ORDERS_OFFSET, 1);
+            bb.putInt(bo + BUCKET_TAIL_OFFSET, slot);
+
+            priceBuckets.put(price, bucketRef(newBucket));
+            final Integer lowerBucket = isAsk ? priceBuckets.getLowerValue(price) : priceBuckets.getHigherValue(price);
+            if (lowerBucket != null) {
+                // attache new bucket and event to the lower entry
+                final int lowerTail = bucketTail(lowerBucket);
+                final int prevOrder = orderPrev(lowerTail); // can be NIL
+                // update neighbors
+                setOrderPrev(lowerTail, slot);
+                if (prevOrder != NIL) {
+                    setOrderNext(prevOrder, slot);
+                }
+                // update self
+                setOrderLinks(slot, lowerTail, prevOrder, newBucket);
+            } else {
+
+                // if no floor entry, then update best order
+                final int oldBestOrder = isAsk ? bestAskOrder : bestBidOrder; // can be NIL
+
+                if (oldBestOrder != NIL) {
+                    setOrderNext(oldBestOrder, slot);
+                }
+
+                if (isAsk) {
+                    bestAskOrder = slot;
+                } else {
+                    bestBidOrder = slot;
+                }
+
+                // update self
+                setOrderLinks(slot, NIL, oldBestOrder, newBucket);
+            }
+        }
+    }
+
+    @Override
+    public int getOrdersNum(OrderAction action) {
+        final LongAdaptiveRadixTreeMap<Integer> priceBuckets = action == OrderAction.ASK ? askPriceBuckets : bidPriceBuckets;
+        final MutableInteger accum = new MutableInteger();
+        priceBuckets.forEach((p, bucket) -> accum.value += bucketNumOrders(bucket), Integer.MAX_VALUE);
+        return accum.value;
+    }
+
+    @Override
+    public long getTotalOrdersVolume(OrderAction action) {
+        final LongAdaptiveRadixTreeMap<Integer> priceBuckets = action == OrderAction.ASK ? askPriceBuckets : bidPriceBuckets;
+        final MutableLong accum = new MutableLong();
+        priceBuckets.forEach((p, bucket) -> accum.value += bucketVolume(bucket), Integer.MAX_VALUE);
+        return accum.value;
+    }
+
+    @Override
+    public IOrder getOrderById(final long orderId) {
+        final int slot = (int) orderIdIndex.get(orderId);
+        return slot == NIL ? null : toOrder(slot);
+    }
+
+    @Override
+    public void validateInternalState() {
+        final LongIntHashMap ordersInChain = new LongIntHashMap(orderIdIndex.size());
+        final IntIntHashMap bucketsInChain = new IntIntHashMap();
+        validateChain(true, ordersInChain, bucketsInChain);
+        validateChain(false, ordersInChain, bucketsInChain);
+
+        orderIdIndex.longForEach((orderId, slot) -> {
+            if (!ordersInChain.containsKey(orderId) || ordersInChain.removeKeyIfAbsent(orderId, NIL) != slot) {
+                thrw("chained orders does not contain orderId=" + orderId);
+            }
+        });
+
+        if (ordersInChain.size() != 0) {
+            thrw("orderIdIndex does not contain each order from chains");
+        }
+
+        if (orders.used != orderIdIndex.size()) {
+            thrw("orders slab used records " + orders.used + " does not match orders number " + orderIdIndex.size());
+        }
+        if (buckets.used != bucketsInChain.size()) {
+            thrw("buckets slab used records " + buckets.used + " does not match buckets number " + bucketsInChain.size());
+        }
+        orders.validateFreeList();
+        buckets.validateFreeList();
+    }
+
+    private void validateChain(final boolean asksChain, final LongIntHashMap ordersInChain, final IntIntHashMap bucketsInChain) {
+
+        // buckets index
+        final LongAdaptiveRadixTreeMap<Integer> priceBuckets = asksChain ? askPriceBuckets : bidPriceBuckets;
+        final LongIntHashMap bucketsFoundInChain = new LongIntHashMap();
+        priceBuckets.validateInternalState();
+
+        int order = asksChain ? bestAskOrder : bestBidOrder;
+
+        if (order != NIL && orderNext(order) != NIL) {
+            thrw("best order has not-null next reference");
+        }
+
+        long lastPrice = -1;
+        long expectedBucketVolume = 0;
+        int expectedBucketOrders = 0;
+        int lastOrder = NIL;
+
+        while (order != NIL) {
+
+            final long orderId = orderId(order);
+            if (ordersInChain.containsKey(orderId)) {
+                thrw("duplicate orderid in the chain");
+            }
+            ordersInChain.put(orderId, order);
+
+            final long price = orderPrice(order);
+            final int bucket = orderBucket(order);
+
+            expectedBucketVolume += orderSize(order) - orderFilled(order);
+            expectedBucketOrders++;
+
+            if (lastOrder != NIL && orderNext(order) != lastOrder) {
+                thrw("incorrect next reference");
+            }
+            if (bucketPrice(bucket) != price || orderPrice(bucketTail(bucket)) != price) {
+                thrw("price of parent.tail differs");
+            }
+            if (lastPrice != -1 && price != lastPrice) {
+                if (asksChain ^ price > lastPrice) {
+                    thrw("unexpected price change direction");
+                }
+                if (orderBucket(orderNext(order)) == bucket) {
+                    thrw("unexpected price change within same bucket");
+                }
+            }
+
+            if (bucketTail(bucket) == order) {
+                if (bucketVolume(bucket) != expectedBucketVolume) {
+                    thrw("bucket volume does not match orders chain sizes");
+                }
+                if (bucketNumOrders(bucket) != expectedBucketOrders) {
+                    thrw("bucket numOrders does not match orders chain length");
+                }
+                final int prev = orderPrev(order);
+                if (prev != NIL && orderPrice(prev) == price) {
+                    thrw("previous bucket has the same price");
+                }
+                expectedBucketVolume = 0;
+                expectedBucketOrders = 0;
+            }
+
+            if (!bucketsFoundInChain.containsKey(price)) {
+                bucketsFoundInChain.put(price, bucket);
+                bucketsInChain.put(bucket, bucket);
+            } else if (bucketsFoundInChain.get(price) != bucket) {
+                thrw("found two different buckets having same price");
+            }
+
+            if (asksChain ^ orderAction(order) == OrderAction.ASK) {
+                thrw("not expected order action");
+            }
+
+            lastPrice = price;
+            lastOrder = order;
+            order = orderPrev(order);
+        }
+
+        // validate last order
+        if (lastOrder != NIL && bucketTail(orderBucket(lastOrder)) != lastOrder) {
+            thrw("last order is not a tail");
+        }
+
+        priceBuckets.forEach((price, bucket) -> {
+            if (!bucketsFoundInChain.containsKey(price) || bucketsFoundInChain.removeKeyIfAbsent(price, NIL) != bucket) {
+                thrw("bucket in the price-tree not found in the chain");
+            }
+        }, Integer.MAX_VALUE);
+
+        if (!bucketsFoundInChain.isEmpty()) {
+            thrw("found buckets in the chain that not discoverable from the price-tree");
+        }
+    }
+
+    private void thrw(final String msg) {
+        throw new IllegalStateException(msg);
+    }
+
+    @Override
+    public OrderBookImplType getImplementationType() {
+        return OrderBookImplType.OFF_HEAP;
+    }
+
+    @Override
+    public List<Order> findUserOrders(long uid) {
+        final List<Order> list = new ArrayList<>();
+        collectUserOrders(bestAskOrder, uid, list);
+        collectUserOrders(bestBidOrder, uid, list);
+        return list;
+    }
+
+    private void collectUserOrders(int slot, final long uid, final List<Order> list) {
+        while (slot != NIL) {
+            if (orderUid(slot) == uid) {
+                list.add(toOrder(slot));
+            }
+            slot = orderPrev(slot);
+        }
+    }
+
+    @Override
+    public CoreSymbolSpecification getSymbolSpec() {
+        return symbolSpec;
+    }
+
+    /**
+     * Produces garbage - orders are copied into new objects
+     */
+    @Override
+    public Stream<Order> askOrdersStream(boolean sortedIgnore) {
+        return ordersStream(bestAskOrder);
+    }
+
+    /**
+     * Produces garbage - orders are copied into new objects
+     */
+    @Override
+    public Stream<Order> bidOrdersStream(boolean sortedIgnore) {
+        return ordersStream(bestBidOrder);
+    }
+
+    private Stream<Order> ordersStream(int slot) {
+        final List<Order> list = new ArrayList<>();
+        while (slot != NIL) {
+            list.add(toOrder(slot));
+            slot = orderPrev(slot);
+        }
+        return list.stream();
+    }
+
+    @Override
+    public void fillAsks(final int size, L2MarketData data) {
+        data.askSize = 0;
+        askPriceBuckets.forEach((p, bucket) -> {
+            final int i = data.askSize++;
+            data.askPrices[i] = p;
+            data.askVolumes[i] = bucketVolume(bucket);
+            data.askOrders[i] = bucketNumOrders(bucket);
+        }, size);
+    }
+
+    @Override
+    public void fillBids(final int size, L2MarketData data) {
+        data.bidSize = 0;
+        bidPriceBuckets.forEachDesc((p, bucket) -> {
+            final int i = data.bidSize++;
+            data.bidPrices[i] = p;
+            data.bidVolumes[i] = bucketVolume(bucket);
+            data.bidOrders[i] = bucketNumOrders(bucket);
+        }, size);
+    }
+
+    @Override
+    public void fillL2Level(final OrderAction action, final long price, final L2MarketDataDelta delta) {
+        final Integer bucket = (action == OrderAction.ASK ? askPriceBuckets : bidPriceBuckets).get(price);
+        if (bucket != null) {
+            delta.add(action == OrderAction.ASK, price, bucketVolume(bucket), bucketNumOrders(bucket));
+        } else {
+            delta.add(action == OrderAction.ASK, price, 0L, 0);
+        }
+    }
+
+    @Override
+    public int getTotalAskBuckets(final int limit) {
+        return askPriceBuckets.size(limit);
+    }
+
+    @Override
+    public int getTotalBidBuckets(final int limit) {
+        return bidPriceBuckets.size(limit);
+    }
+
+    /**
+     * Same format as {@link OrderBookDirectImpl}
+     */
+    @Override
+    public void writeMarshallable(BytesOut bytes) {
+        bytes.writeByte(getImplementationType().getCode());
+        symbolSpec.writeMarshallable(bytes);
+        bytes.writeInt(orderIdIndex.size());
+        writeOrders(bestAskOrder, bytes);
+        writeOrders(bestBidOrder, bytes);
+    }
+
+    private void writeOrders(int slot, final BytesOut bytes) {
+        while (slot != NIL) {
+            final UnsafeBuffer b = orders.buffer;
+            final int o = orders.offset(slot);
+            bytes.writeLong(b.getLong(o + ORDER_ID_OFFSET));
+            bytes.writeLong(b.getLong(o + PRICE_OFFSET));
+            bytes.writeLong(b.getLong(o + SIZE_OFFSET));
+            bytes.writeLong(b.getLong(o + FILLED_OFFSET));
+            bytes.writeLong(b.getLong(o + RESERVE_BID_PRICE_OFFSET));
+            bytes.writeByte(b.getByte(o + ACTION_OFFSET));
+            bytes.writeLong(b.getLong(o + UID_OFFSET));
+            bytes.writeLong(b.getLong(o + TIMESTAMP_OFFSET));
+            slot = b.getInt(o + PREV_OFFSET);
+        }
+    }
+
+    /**
+     * @return off-heap memory allocated for orders and buckets slabs (bytes)
+     */
+    public long getOffHeapMemorySize() {
+        return (long) orders.capacity * ORDER_RECORD_SIZE + (long) buckets.capacity * BUCKET_RECORD_SIZE;
+    }
+
+    private Order toOrder(final int slot) {
+        return Order.builder()
+                .orderId(orderId(slot))
+                .price(orderPrice(slot))
+                .size(orderSize(slot))
+                .filled(orderFilled(slot))
+                .reserveBidPrice(orderReserveBidPrice(slot))
+                .action(orderAction(slot))
+                .uid(orderUid(slot))
+                .timestamp(orderTimestamp(slot))
+                .build();
+    }
+
+    private Integer bucketRef(final int bucket) {
+        if (bucket >= bucketRefs.length) {
+            final int oldLength = bucketRefs.length;
+            bucketRefs = Arrays.copyOf(bucketRefs, buckets.capacity);
+            for (int i = oldLength; i < bucketRefs.length; i++) {
+                bucketRefs[i] = i;
+            }
+        }
+        return bucketRefs[bucket];
+    }
+
+    // ------------------ order record accessors ------------------
+
+    private long orderId(final int slot) {
+        return orders.buffer.getLong(orders.offset(slot) + ORDER_ID_OFFSET);
+    }
+
+    private long orderPrice(final int slot) {
+        return orders.buffer.getLong(orders.offset(slot) + PRICE_OFFSET);
+    }
+
+    private long orderSize(final int slot) {
+        return orders.buffer.getLong(orders.offset(slot) + SIZE_OFFSET);
+    }
+
+    private long orderFilled(final int slot) {
+        return orders.buffer.getLong(orders.offset(slot) + FILLED_OFFSET);
+    }
+
+    private long orderReserveBidPrice(final int slot) {
+        return orders.buffer.getLong(orders.offset(slot) + RESERVE_BID_PRICE_OFFSET);
+    }
+
+    private long orderUid(final int slot) {
+        return orders.buffer.getLong(orders.offset(slot) + UID_OFFSET);
+    }
+
+    private long orderTimestamp(final int slot) {
+        return orders.buffer.getLong(orders.offset(slot) + TIMESTAMP_OFFSET);
+    }
+
+    private OrderAction orderAction(final int slot) {
+        return OrderAction.of(orders.buffer.getByte(orders.offset(slot) + ACTION_OFFSET));
+    }
+
+    private int orderNext(final int slot) {
+        return orders.buffer.getInt(orders.offset(slot) + NEXT_OFFSET);
+    }
+
+    private int orderPrev(final int slot) {
+        return orders.buffer.getInt(orders.offset(slot) + PREV_OFFSET);
+    }
+
+    private int orderBucket(final int slot) {
+        return orders.buffer.getInt(orders.offset(slot) + BUCKET_OFFSET);
+    }
+
+    private void setOrderNext(final int slot, final int next) {
+        orders.buffer.putInt(orders.offset(slot) + NEXT_OFFSET, next);
+    }
+
+    private void setOrderPrev(final int slot, final int prev) {
+        orders.buffer.putInt(orders.offset(slot) + PREV_OFFSET, prev);
+    }
+
+    private void setOrderLinks(final int slot, final int next, final int prev, final int bucket) {
+        final int o = orders.offset(slot);
+        orders.buffer.putInt(o + NEXT_OFFSET, next);
+        orders.buffer.putInt(o + PREV_OFFSET, prev);
+        orders.buffer.putInt(o + BUCKET_OFFSET, bucket);
+    }
+
+    // ------------------ bucket record accessors ------------------
+
+    private long bucketVolume(final int bucket) {
+        return buckets.buffer.getLong(buckets.offset(bucket) + BUCKET_VOLUME_OFFSET);
+    }
+
+    private long bucketPrice(final int bucket) {
+        return buckets.buffer.getLong(buckets.offset(bucket) + BUCKET_PRICE_OFFSET);
+    }
+
+    private int bucketNumOrders(final int bucket) {
+        return buckets.buffer.getInt(buckets.offset(bucket) + BUCKET_NUM_ORDERS_OFFSET);
+    }
+
+    private int bucketTail(final int bucket) {
+        return buckets.buffer.getInt(buckets.offset(bucket) + BUCKET_TAIL_OFFSET);
+    }
+
+    private void addBucketVolume(final int bucket, final long delta) {
+        final int o = buckets.offset(bucket) + BUCKET_VOLUME_OFFSET;
+        buckets.buffer.putLong(o, buckets.buffer.getLong(o) + delta);
+    }
+
+    private void addBucketNumOrders(final int bucket, final int delta) {
+        final int o = buckets.offset(bucket) + BUCKET_NUM_ORDERS_OFFSET;
+        buckets.buffer.putInt(o, buckets.buffer.getInt(o) + delta);
+    }
+
+    private void setBucketTail(final int bucket, final int tail) {
+        buckets.buffer.putInt(buckets.offset(bucket) + BUCKET_TAIL_OFFSET, tail);
+    }
+
+    /**
+     * Read-only view of order record, used for events generation
+     */
+    private final class OrderView implements IOrder {
+
+        private int slot;
+
+        @Override
+        public long getPrice() {
+            return orderPrice(slot);
+        }
+
+        @Override
+        public long getSize() {
+            return orderSize(slot);
+        }
+
+        @Override
+        public long getFilled() {
+            return orderFilled(slot);
+        }
+
+        @Override
+        public long getUid() {
+            return orderUid(slot);
+        }
+
+        @Override
+        public OrderAction getAction() {
+            return orderAction(slot);
+        }
+
+        @Override
+        public long getOrderId() {
+            return orderId(slot);
+        }
+
+        @Override
+        public long getTimestamp() {
+            return orderTimestamp(slot);
+        }
+
+        @Override
+        public long getReserveBidPrice() {
+            return orderReserveBidPrice(slot);
+        }
+
+        @Override
+        public int stateHash() {
+            return toOrder(slot).stateHash();
+        }
+    }
+
+    /**
+     * Fixed-size records in off-heap memory with free-list.
+     * Grows twice when full (records are copied, slot indices do not change).
+     */
+    private static final class Slab {
+
+        private final int recordSize;
+        private final int freeLinkOffset;
+
+        private ByteBuffer byteBuffer;
+        private UnsafeBuffer buffer;
+
+        private int capacity;
+        // records ever allocated (next never used slot)
+        private int allocated = 0;
+        // records in use
+        private int used = 0;
+        private int freeHead = NIL;
+
+        private Slab(final int recordSize, final int freeLinkOffset, final int initialCapacity) {
+            this.recordSize = recordSize;
+            this.freeLinkOffset = freeLinkOffset;
+            this.capacity = initialCapacity;
+            this.byteBuffer = ByteBuffer.allocateDirect(initialCapacity * recordSize);
+            this.buffer = new UnsafeBuffer(byteBuffer);
+        }
+
+        private int offset(final int slot) {
+            return slot * recordSize;
+        }
+
+        private int allocate() {
+            used++;
+            if (freeHead != NIL) {
+                final int slot = freeHead;
+                freeHead = buffer.getInt(offset(slot) + freeLinkOffset);
+                return slot;
+            }
+            if (allocated == capacity) {
+                grow();
+            }
+            return allocated++;
+        }
+
+        private void free(final int slot) {
+            used--;
+            buffer.putInt(offset(slot) + freeLinkOffset, freeHead);
+            freeHead = slot;
+        }
+
+        private void grow() {
+            final long newCapacity = (long) capacity * 2;
+            if (newCapacity * recordSize > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Slab capacity exceeded: " + capacity + " records of " + recordSize + " bytes");
+            }
+            final ByteBuffer newByteBuffer = ByteBuffer.allocateDirect((int) newCapacity * recordSize);
+            final UnsafeBuffer newBuffer = new UnsafeBuffer(newByteBuffer);
+            newBuffer.putBytes(0, buffer, 0, allocated * recordSize);
+            BufferUtil.free(byteBuffer);
+            byteBuffer = newByteBuffer;
+            buffer = newBuffer;
+            capacity = (int) newCapacity;
+        }
+
+        private void validateFreeList() {
+            int free = 0;
+            for (int slot = freeHead; slot != NIL; slot = buffer.getInt(offset(slot) + freeLinkOffset)) {
+                if (slot < 0 || slot >= allocated || ++free > allocated) {
+                    throw new IllegalStateException("corrupted free list");
+                }
+            }
+            if (free + used != allocated) {
+                throw new IllegalStateException("free list size " + free + " does not match used records " + used);
+            }
+        }
+    }
+}
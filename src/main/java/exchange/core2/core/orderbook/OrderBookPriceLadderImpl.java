@@ -0,0 +1,1106 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.orderbook;
+
+import exchange.core2.collections.objpool.ObjectsPool;
+import exchange.core2.core.common.*;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.cmd.OrderCommandType;
+import exchange.core2.core.common.config.LoggingConfiguration;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import net.openhft.chronicle.bytes.BytesIn;
+import net.openhft.chronicle.bytes.BytesOut;
+import net.openhft.chronicle.bytes.WriteBytesMarshallable;
+import org.eclipse.collections.impl.map.mutable.primitive.LongObjectHashMap;
+
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Order book for instruments trading within a bounded range of ticks.
+ * <p>
+ * Price levels are kept in a dense array (window), level index is (price - basePrice) / tick.
+ * Best ask/bid are tracked as indices and re-scanned through bitsets when the best level is emptied,
+ * so best price lookup and level insert do not need any tree traversal.
+ * <p>
+ * When a new price does not fit into the window, the window is re-centred (if all existing levels and the new one fit into it),
+ * otherwise the level falls back into a sorted overflow map. Prices not aligned to the symbol tick always go to overflow.
+ */
+@Slf4j
+public final class OrderBookPriceLadderImpl implements IOrderBook {
+
+    public static final int DEFAULT_LADDER_SIZE = 4096;
+
+    private static final int NONE = -1;
+
+    // limits for recycled objects
+    private static final int MAX_FREE_ORDERS = 65536;
+    private static final int MAX_FREE_LEVELS = 4096;
+
+    private final CoreSymbolSpecification symbolSpec;
+
+    private final long tick;
+    private final int ladderSize;
+
+    // window: ladder[i] contains level with price (baseTick + i) * tick, or null
+    private final Level[] ladder;
+    private long baseTick;
+    private long basePrice;
+    private int ladderLevelsNum = 0;
+
+    private final BitSet askLevels;
+    private final BitSet bidLevels;
+
+    // lowest ask index and highest bid index in the window (NONE if no levels)
+    private int bestAskIdx = NONE;
+    private int bestBidIdx = NONE;
+
+    // levels outside of the window (or not aligned to tick)
+    private final TreeMap<Long, Level> askOverflow = new TreeMap<>();
+    private final TreeMap<Long, Level> bidOverflow = new TreeMap<>(Collections.reverseOrder());
+
+    private final LongObjectHashMap<LadderOrder> idMap = new LongObjectHashMap<>();
+
+    // recycled objects, linked through next references
+    private LadderOrder freeOrders;
+    private int freeOrdersNum = 0;
+    private Level freeLevels;
+    private int freeLevelsNum = 0;
+
+    private final LevelsCursor levelsCursor = new LevelsCursor();
+
+    @Getter
+    private long recentersNum = 0;
+
+    private final OrderBookEventsHelper eventsHelper;
+
+    private final boolean logDebug;
+
+    public OrderBookPriceLadderImpl(final CoreSymbolSpecification symbolSpec,
+                                    final ObjectsPool objectsPool,
+                                    final OrderBookEventsHelper eventsHelper,
+                                    final LoggingConfiguration loggingCfg) {
+
+        this(symbolSpec, DEFAULT_LADDER_SIZE, eventsHelper, loggingCfg);
+    }
+
+    public OrderBookPriceLadderImpl(final CoreSymbolSpecification symbolSpec,
+                                    final int ladderSize,
+                                    final OrderBookEventsHelper eventsHelper,
+                                    final LoggingConfiguration loggingCfg) {
+
+        if (ladderSize <= 0) {
+            throw new IllegalArgumentException("ladderSize should be positive: " + ladderSize);
+        }
+
+        this.symbolSpec = symbolSpec;
+        this.tick = symbolSpec.priceTick > 0 ? symbolSpec.priceTick : 1L;
+        this.ladderSize = ladderSize;
+        this.ladder = new Level[ladderSize];
+        this.askLevels = new BitSet(ladderSize);
+        this.bidLevels = new BitSet(ladderSize);
+        this.eventsHelper = eventsHelper;
+        this.logDebug = loggingCfg.getLoggingLevels().contains(LoggingConfiguration.LoggingLevel.LOGGING_MATCHING_DEBUG);
+    }
+
+    public OrderBookPriceLadderImpl(final BytesIn bytes,
+                                    final ObjectsPool objectsPool,
+                                    final OrderBookEventsHelper eventsHelper,
+                                    final LoggingConfiguration loggingCfg) {
+
+        this(new CoreSymbolSpecification(bytes), bytes.readInt(), eventsHelper, loggingCfg);
+
+        // orders are written in matching priority, so inserting them one by one restores queues
+        final int size = bytes.readInt();
+        for (int i = 0; i < size; i++) {
+            final LadderOrder order = newLadderOrder();
+            order.readMarshallable(bytes);
+            idMap.put(order.orderId, order);
+            insertOrder(order);
+        }
+    }
+
+    @Override
+    public void newOrder(final OrderCommand cmd) {
+
+        switch (cmd.orderType) {
+            case GTC:
+                newOrderPlaceGtc(cmd);
+                break;
+            case IOC:
+                newOrderMatchIoc(cmd);
+                break;
+            case FOK_BUDGET:
+                newOrderMatchFokBudget(cmd);
+                break;
+            // TODO IOC_BUDGET and FOK support
+            default:
+                log.warn("Unsupported order type: {}", cmd);
+                eventsHelper.attachRejectEvent(cmd, cmd.size);
+        }
+    }
+
+    private void newOrderPlaceGtc(final OrderCommand cmd) {
+        final long size = cmd.size;
+
+        // check if order is marketable there are matching orders
+        final long filledSize = tryMatchInstantly(cmd.action, cmd.price, size, 0L, cmd.reserveBidPrice, cmd);
+        if (filledSize == size) {
+            // completed before being placed - can just return
+            return;
+        }
+
+        final long orderId = cmd.orderId;
+        if (idMap.containsKey(orderId)) {
+            // duplicate order id - can match, but can not place
+            eventsHelper.attachRejectEvent(cmd, size - filledSize);
+            log.warn("duplicate order id: {}", cmd);
+            return;
+        }
+
+        // normally placing regular GTC order
+        final LadderOrder order = newLadderOrder();
+        order.orderId = orderId;
+        order.price = cmd.price;
+        order.size = size;
+        order.filled = filledSize;
+        order.reserveBidPrice = cmd.reserveBidPrice;
+        order.action = cmd.action;
+        order.uid = cmd.uid;
+        order.timestamp = cmd.timestamp;
+
+        idMap.put(orderId, order);
+        insertOrder(order);
+    }
+
+    private void newOrderMatchIoc(final OrderCommand cmd) {
+
+        final long filledSize = tryMatchInstantly(cmd.action, cmd.price, cmd.size, 0L, cmd.reserveBidPrice, cmd);
+
+        final long rejectedSize = cmd.size - filledSize;
+
+        if (rejectedSize != 0) {
+            // was not matched completely - send reject for not-completed IoC order
+            eventsHelper.attachRejectEvent(cmd, rejectedSize);
+        }
+    }
+
+    private void newOrderMatchFokBudget(final OrderCommand cmd) {
+
+        final long budget = checkBudgetToFill(cmd.action, cmd.size);
+
+        if (logDebug) log.debug("Budget calc: {} requested: {}", budget, cmd.price);
+
+        if (isBudgetLimitSatisfied(cmd.action, budget, cmd.price)) {
+            tryMatchInstantly(cmd.action, cmd.price, cmd.size, 0L, cmd.reserveBidPrice, cmd);
+        } else {
+            eventsHelper.attachRejectEvent(cmd, cmd.size);
+        }
+    }
+
+    private boolean isBudgetLimitSatisfied(final OrderAction orderAction, final long calculated, final long limit) {
+        return calculated != Long.MAX_VALUE
+                && (calculated == limit || (orderAction == OrderAction.BID ^ calculated > limit));
+    }
+
+    private long checkBudgetToFill(final OrderAction action, long size) {
+
+        long budget = 0L;
+
+        levelsCursor.reset(action == OrderAction.BID);
+        Level level;
+        while ((level = levelsCursor.next()) != null) {
+
+            final long availableSize = level.volume;
+            final long price = level.price;
+
+            if (size > availableSize) {
+                size -= availableSize;
+                budget += availableSize * price;
+                if (logDebug) log.debug("add    {} * {} -> {}", price, availableSize, budget);
+            } else {
+                if (logDebug) log.debug("return {} * {} -> {}", price, size, budget + size * price);
+                return budget + size * price;
+            }
+        }
+        if (logDebug) log.debug("not enough liquidity to fill size={}", size);
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Match taker order (new or moved) with resting orders, best levels first
+     *
+     * @return total filled size of the taker order
+     */
+    private long tryMatchInstantly(final OrderAction takerAction,
+                                   final long takerPrice,
+                                   final long takerSize,
+                                   final long takerFilled,
+                                   final long takerReserveBidPrice,
+                                   final OrderCommand triggerCmd) {
+
+        final boolean isBidAction = takerAction == OrderAction.BID;
+
+        final long limitPrice = (triggerCmd.command == OrderCommandType.PLACE_ORDER && triggerCmd.orderType == OrderType.FOK_BUDGET && !isBidAction)
+                ? 0L
+                : takerPrice;
+
+        long remainingSize = takerSize - takerFilled;
+
+        MatcherTradeEvent eventsTail = null;
+
+        while (remainingSize > 0) {
+
+            final Level level = bestLevel(isBidAction);
+            if (level == null || (isBidAction ? level.price > limitPrice : level.price < limitPrice)) {
+                break;
+            }
+
+            // iterate through level orders (oldest first)
+            LadderOrder maker = level.head;
+            while (maker != null && remainingSize > 0) {
+
+                // calculate exact volume can fill for this order
+                final long tradeSize = Math.min(remainingSize, maker.size - maker.filled);
+
+                maker.filled += tradeSize;
+                level.volume -= tradeSize;
+                remainingSize -= tradeSize;
+
+                final boolean makerCompleted = maker.size == maker.filled;
+                if (makerCompleted) {
+                    level.numOrders--;
+                }
+
+                final MatcherTradeEvent tradeEvent = eventsHelper.sendTradeEvent(maker, makerCompleted, remainingSize == 0, tradeSize,
+                        isBidAction ? takerReserveBidPrice : maker.reserveBidPrice);
+
+                if (eventsTail == null) {
+                    triggerCmd.matcherEvent = tradeEvent;
+                } else {
+                    eventsTail.nextEvent = tradeEvent;
+                }
+                eventsTail = tradeEvent;
+
+                if (!makerCompleted) {
+                    // maker not completed -> no unmatched volume left, can exit matching loop
+                    break;
+                }
+
+                // if completed can remove maker order
+                final LadderOrder next = maker.next;
+                idMap.remove(maker.orderId);
+                recycleOrder(maker);
+                maker = next;
+            }
+
+            level.head = maker;
+            if (maker != null) {
+                maker.prev = null;
+                // level is not empty - taker is completed
+                break;
+            }
+
+            level.tail = null;
+            removeLevel(level);
+        }
+
+        // return filled amount
+        return takerSize - remainingSize;
+    }
+
+    @Override
+    public CommandResultCode cancelOrder(OrderCommand cmd) {
+
+        final LadderOrder order = idMap.get(cmd.orderId);
+        if (order == null || order.uid != cmd.uid) {
+            return CommandResultCode.MATCHING_UNKNOWN_ORDER_ID;
+        }
+        idMap.remove(cmd.orderId);
+
+        removeOrder(order);
+
+        // fill action fields (for events handling)
+        cmd.action = order.action;
+
+        cmd.matcherEvent = eventsHelper.sendReduceEvent(order, order.size - order.filled, true);
+
+        recycleOrder(order);
+
+        return CommandResultCode.SUCCESS;
+    }
+
+    @Override
+    public CommandResultCode reduceOrder(OrderCommand cmd) {
+
+        final long orderId = cmd.orderId;
+        final long requestedReduceSize = cmd.size;
+        if (requestedReduceSize <= 0) {
+            return CommandResultCode.MATCHING_REDUCE_FAILED_WRONG_SIZE;
+        }
+
+        final LadderOrder order = idMap.get(orderId);
+        if (order == null || order.uid != cmd.uid) {
+            return CommandResultCode.MATCHING_UNKNOWN_ORDER_ID;
+        }
+
+        final long remainingSize = order.size - order.filled;
+        final long reduceBy = Math.min(remainingSize, requestedReduceSize);
+        final boolean canRemove = reduceBy == remainingSize;
+
+        if (canRemove) {
+            idMap.remove(orderId);
+            removeOrder(order);
+        } else {
+            order.size -= reduceBy;
+            order.level.volume -= reduceBy;
+        }
+
+        cmd.matcherEvent = eventsHelper.sendReduceEvent(order, reduceBy, canRemove);
+
+        // fill action fields (for events handling)
+        cmd.action = order.action;
+
+        if (canRemove) {
+            recycleOrder(order);
+        }
+
+        return CommandResultCode.SUCCESS;
+    }
+
+    @Override
+    public CommandResultCode moveOrder(OrderCommand cmd) {
+
+        // order lookup
+        final LadderOrder order = idMap.get(cmd.orderId);
+        if (order == null || order.uid != cmd.uid) {
+            return CommandResultCode.MATCHING_UNKNOWN_ORDER_ID;
+        }
+
+        // risk check for exchange bids
+        if (symbolSpec.type == SymbolType.CURRENCY_EXCHANGE_PAIR && order.action == OrderAction.BID && cmd.price > order.reserveBidPrice) {
+            return CommandResultCode.MATCHING_MOVE_FAILED_PRICE_OVER_RISK_LIMIT;
+        }
+
+        // take order out of its level
+        removeOrder(order);
+
+        order.price = cmd.price;
+
+        // fill action fields (for events handling)
+        cmd.action = order.action;
+
+        // try match with new price as a taker order
+        final long filled = tryMatchInstantly(order.action, cmd.price, order.size, order.filled, order.reserveBidPrice, cmd);
+        if (filled == order.size) {
+            // order was fully matched - removing
+            idMap.remove(cmd.orderId);
+            recycleOrder(order);
+            return CommandResultCode.SUCCESS;
+        }
+
+        // not filled completely, inserting into new position
+        order.filled = filled;
+        insertOrder(order);
+
+        return CommandResultCode.SUCCESS;
+    }
+
+    /**
+     * Append order to the tail of its price level (level is created if not exists)
+     */
+    private void insertOrder(final LadderOrder order) {
+
+        final boolean isAsk = order.action == OrderAction.ASK;
+        final long price = order.price;
+
+        Level level = findLevel(isAsk, price);
+        if (level == null) {
+            level = createLevel(isAsk, price);
+        }
+
+        final LadderOrder tail = level.tail;
+        order.prev = tail;
+        order.next = null;
+        if (tail == null) {
+            level.head = order;
+        } else {
+            tail.next = order;
+        }
+        level.tail = order;
+        level.volume += order.size - order.filled;
+        level.numOrders++;
+        order.level = level;
+    }
+
+    /**
+     * Unlink order from its level, removes level if it becomes empty
+     */
+    private void removeOrder(final LadderOrder order) {
+
+        final Level level = order.level;
+        level.volume -= order.size - order.filled;
+        level.numOrders--;
+
+        final LadderOrder next = order.next;
+        final LadderOrder prev = order.prev;
+        if (prev == null) {
+            level.head = next;
+        } else {
+            prev.next = next;
+        }
+        if (next == null) {
+            level.tail = prev;
+        } else {
+            next.prev = prev;
+        }
+
+        if (level.numOrders == 0) {
+            removeLevel(level);
+        }
+        order.level = null;
+        order.next = null;
+        order.prev = null;
+    }
+
+    private Level findLevel(final boolean isAsk, final long price) {
+        final int idx = ladderIndex(price);
+        if (idx != NONE) {
+            final Level level = ladder[idx];
+            return (level != null && level.isAsk == isAsk) ? level : null;
+        } else {
+            return (isAsk ? askOverflow : bidOverflow).get(price);
+        }
+    }
+
+    private Level createLevel(final boolean isAsk, final long price) {
+
+        final Level level = newLevel(isAsk, price);
+
+        int idx = ladderIndex(price);
+        if (idx == NONE && price % tick == 0 && recenter(price)) {
+            idx = ladderIndex(price);
+        }
+
+        if (idx != NONE) {
+            placeIntoLadder(level, idx);
+        } else {
+            (isAsk ? askOverflow : bidOverflow).put(price, level);
+        }
+        return level;
+    }
+
+    private void placeIntoLadder(final Level level, final int idx) {
+        ladder[idx] = level;
+        level.inLadder = true;
+        ladderLevelsNum++;
+        if (level.isAsk) {
+            askLevels.set(idx);
+            if (bestAskIdx == NONE || idx < bestAskIdx) {
+                bestAskIdx = idx;
+            }
+        } else {
+            bidLevels.set(idx);
+            if (idx > bestBidIdx) {
+                bestBidIdx = idx;
+            }
+        }
+    }
+
+    private void removeLevel(final Level level) {
+        if (level.inLadder) {
+            final int idx = ladderIndex(level.price);
+            ladder[idx] = null;
+            ladderLevelsNum--;
+            if (level.isAsk) {
+                askLevels.clear(idx);
+                if (idx == bestAskIdx) {
+                    bestAskIdx = askLevels.nextSetBit(idx + 1);
+                }
+            } else {
+                bidLevels.clear(idx);
+                if (idx == bestBidIdx) {
+                    bestBidIdx = bidLevels.previousSetBit(idx - 1);
+                }
+            }
+        } else {
+            (level.isAsk ? askOverflow : bidOverflow).remove(level.price);
+        }
+        recycleLevel(level);
+    }
+
+    /**
+     * @return best level to match with (lowest ask for bid taker, highest bid for ask taker), or null
+     */
+    private Level bestLevel(final boolean asks) {
+        if (asks) {
+            final Level level = bestAskIdx == NONE ? null : ladder[bestAskIdx];
+            if (askOverflow.isEmpty()) {
+                return level;
+            }
+            final Level overflowLevel = askOverflow.get(askOverflow.firstKey());
+            return (level == null || overflowLevel.price < level.price) ? overflowLevel : level;
+        } else {
+            final Level level = bestBidIdx == NONE ? null : ladder[bestBidIdx];
+            if (bidOverflow.isEmpty()) {
+                return level;
+            }
+            final Level overflowLevel = bidOverflow.get(bidOverflow.firstKey());
+            return (level == null || overflowLevel.price > level.price) ? overflowLevel : level;
+        }
+    }
+
+    /**
+     * @return index in the window, or NONE if price is out of window or not aligned to tick
+     */
+    private int ladderIndex(final long price) {
+        final long offset = price - basePrice;
+        if (offset < 0 || offset % tick != 0) {
+            return NONE;
+        }
+        final long idx = offset / tick;
+        return idx < ladderSize ? (int) idx : NONE;
+    }
+
+    /**
+     * Move window so that all existing levels and the new price fit into it (new price must be aligned to tick).
+     *
+     * @return false if impossible (range is wider than the window)
+     */
+    private boolean recenter(final long price) {
+
+        final long priceTick = price / tick;
+        final long newBaseTick;
+
+        if (ladderLevelsNum == 0) {
+            newBaseTick = priceTick - ladderSize / 2;
+        } else {
+            final int lowestAsk = bestAskIdx;
+            final int lowestBid = bidLevels.nextSetBit(0);
+            final int highestAsk = askLevels.length() - 1;
+            final int highestBid = bestBidIdx;
+
+            final int lowIdx = lowestBid == NONE ? lowestAsk : (lowestAsk == NONE ? lowestBid : Math.min(lowestAsk, lowestBid));
+            final int highIdx = Math.max(highestAsk, highestBid);
+
+            final long minTick = Math.min(baseTick + lowIdx, priceTick);
+            final long maxTick = Math.max(baseTick + highIdx, priceTick);
+            final long span = maxTick - minTick;
+            if (span >= ladderSize) {
+                return false;
+            }
+            newBaseTick = minTick - (ladderSize - 1 - span) / 2;
+        }
+
+        if (logDebug) log.debug("Recenter ladder {}: base {} -> {}", symbolSpec.symbolId, baseTick * tick, newBaseTick * tick);
+        shiftWindow(newBaseTick);
+        recentersNum++;
+        return true;
+    }
+
+    private void shiftWindow(final long newBaseTick) {
+
+        if (ladderLevelsNum != 0) {
+            // all levels fit, so shift is less than window size
+            final int delta = (int) (newBaseTick - baseTick);
+            if (delta > 0) {
+                System.arraycopy(ladder, delta, ladder, 0, ladderSize - delta);
+                Arrays.fill(ladder, ladderSize - delta, ladderSize, null);
+            } else if (delta < 0) {
+                System.arraycopy(ladder, 0, ladder, -delta, ladderSize + delta);
+                Arrays.fill(ladder, 0, -delta, null);
+            }
+        }
+
+        baseTick = newBaseTick;
+        basePrice = newBaseTick * tick;
+
+        askLevels.clear();
+        bidLevels.clear();
+        for (int i = 0; i < ladderSize; i++) {
+            final Level level = ladder[i];
+            if (level != null) {
+                (level.isAsk ? askLevels : bidLevels).set(i);
+            }
+        }
+        bestAskIdx = askLevels.nextSetBit(0);
+        bestBidIdx = bidLevels.previousSetBit(ladderSize - 1);
+
+        // overflow levels which are inside of the window now
+        pullFromOverflow(askOverflow);
+        pullFromOverflow(bidOverflow);
+    }
+
+    private void pullFromOverflow(final TreeMap<Long, Level> overflow) {
+        if (overflow.isEmpty()) {
+            return;
+        }
+        final Iterator<Level> iterator = overflow.values().iterator();
+        while (iterator.hasNext()) {
+            final Level level = iterator.next();
+            final int idx = ladderIndex(level.price);
+            if (idx != NONE) {
+                iterator.remove();
+                placeIntoLadder(level, idx);
+            }
+        }
+    }
+
+    private LadderOrder newLadderOrder() {
+        final LadderOrder order = freeOrders;
+        if (order == null) {
+            return new LadderOrder();
+        }
+        freeOrders = order.next;
+        freeOrdersNum--;
+        order.next = null;
+        return order;
+    }
+
+    private void recycleOrder(final LadderOrder order) {
+        order.level = null;
+        order.prev = null;
+        if (freeOrdersNum < MAX_FREE_ORDERS) {
+            order.next = freeOrders;
+            freeOrders = order;
+            freeOrdersNum++;
+        } else {
+            order.next = null;
+        }
+    }
+
+    private Level newLevel(final boolean isAsk, final long price) {
+        Level level = freeLevels;
+        if (level == null) {
+            level = new Level();
+        } else {
+            freeLevels = level.nextFree;
+            freeLevelsNum--;
+            level.nextFree = null;
+        }
+        level.isAsk = isAsk;
+        level.price = price;
+        level.volume = 0;
+        level.numOrders = 0;
+        level.head = null;
+        level.tail = null;
+        level.inLadder = false;
+        return level;
+    }
+
+    private void recycleLevel(final Level level) {
+        level.head = null;
+        level.tail = null;
+        if (freeLevelsNum < MAX_FREE_LEVELS) {
+            level.nextFree = freeLevels;
+            freeLevels = level;
+            freeLevelsNum++;
+        }
+    }
+
+    @Override
+    public int getOrdersNum(OrderAction action) {
+        int num = 0;
+        levelsCursor.reset(action == OrderAction.ASK);
+        Level level;
+        while ((level = levelsCursor.next()) != null) {
+            num += level.numOrders;
+        }
+        return num;
+    }
+
+    @Override
+    public long getTotalOrdersVolume(OrderAction action) {
+        long volume = 0;
+        levelsCursor.reset(action == OrderAction.ASK);
+        Level level;
+        while ((level = levelsCursor.next()) != null) {
+            volume += level.volume;
+        }
+        return volume;
+    }
+
+    @Override
+    public IOrder getOrderById(final long orderId) {
+        return idMap.get(orderId);
+    }
+
+    @Override
+    public void validateInternalState() {
+
+        int levelsInLadder = 0;
+        for (int i = 0; i < ladderSize; i++) {
+            final Level level = ladder[i];
+            if (level == null) {
+                if (askLevels.get(i) || bidLevels.get(i)) {
+                    thrw("bitset contains empty level idx=" + i);
+                }
+                continue;
+            }
+            levelsInLadder++;
+            if (!level.inLadder || level.price != basePrice + i * tick) {
+                thrw("unexpected level in the ladder idx=" + i + " price=" + level.price);
+            }
+            if (askLevels.get(i) != level.isAsk || bidLevels.get(i) == level.isAsk) {
+                thrw("bitsets do not match level idx=" + i);
+            }
+        }
+        if (levelsInLadder != ladderLevelsNum) {
+            thrw("ladderLevelsNum=" + ladderLevelsNum + " but found " + levelsInLadder);
+        }
+        if (bestAskIdx != askLevels.nextSetBit(0) || bestBidIdx != bidLevels.previousSetBit(ladderSize - 1)) {
+            thrw("best level index is not valid");
+        }
+
+        validateOverflow(askOverflow, true);
+        validateOverflow(bidOverflow, false);
+
+        final int ordersNum = validateLevels(true) + validateLevels(false);
+        if (ordersNum != idMap.size()) {
+            thrw("idMap size " + idMap.size() + " does not match orders number " + ordersNum);
+        }
+
+        final Level bestAsk = bestLevel(true);
+        final Level bestBid = bestLevel(false);
+        if (bestAsk != null && bestBid != null && bestAsk.price <= bestBid.price) {
+            thrw("crossed order book: ask " + bestAsk.price + " bid " + bestBid.price);
+        }
+    }
+
+    private void validateOverflow(final TreeMap<Long, Level> overflow, final boolean isAsk) {
+        overflow.forEach((price, level) -> {
+            if (level.inLadder || level.isAsk != isAsk || level.price != price) {
+                thrw("unexpected overflow level price=" + price);
+            }
+            if (ladderIndex(price) != NONE) {
+                thrw("overflow level price=" + price + " belongs to the ladder");
+            }
+        });
+    }
+
+    private int validateLevels(final boolean isAsk) {
+        int ordersNum = 0;
+        long lastPrice = 0;
+        boolean first = true;
+        levelsCursor.reset(isAsk);
+        Level level;
+        while ((level = levelsCursor.next()) != null) {
+
+            if (!first && (isAsk ? level.price <= lastPrice : level.price >= lastPrice)) {
+                thrw("unexpected price order " + lastPrice + " -> " + level.price);
+            }
+            first = false;
+            lastPrice = level.price;
+
+            long volume = 0;
+            int num = 0;
+            LadderOrder prev = null;
+            for (LadderOrder order = level.head; order != null; order = order.next) {
+                if (order.prev != prev || order.level != level || order.price != level.price) {
+                    thrw("broken order links orderId=" + order.orderId);
+                }
+                if ((order.action == OrderAction.ASK) != isAsk) {
+                    thrw("not expected order action orderId=" + order.orderId);
+                }
+                if (idMap.get(order.orderId) != order) {
+                    thrw("idMap does not contain orderId=" + order.orderId);
+                }
+                volume += order.size - order.filled;
+                num++;
+                prev = order;
+            }
+            if (level.tail != prev || num == 0) {
+                thrw("broken level tail price=" + level.price);
+            }
+            if (level.volume != volume || level.numOrders != num) {
+                thrw("level volume/numOrders does not match orders price=" + level.price);
+            }
+            ordersNum += num;
+        }
+        return ordersNum;
+    }
+
+    private void thrw(final String msg) {
+        throw new IllegalStateException(msg);
+    }
+
+    @Override
+    public OrderBookImplType getImplementationType() {
+        return OrderBookImplType.PRICE_LADDER;
+    }
+
+    @Override
+    public List<Order> findUserOrders(long uid) {
+        final List<Order> list = new ArrayList<>();
+        forEachOrder(true, order -> {
+            if (order.uid == uid) {
+                list.add(order.toOrder());
+            }
+        });
+        forEachOrder(false, order -> {
+            if (order.uid == uid) {
+                list.add(order.toOrder());
+            }
+        });
+        return list;
+    }
+
+    @Override
+    public CoreSymbolSpecification getSymbolSpec() {
+        return symbolSpec;
+    }
+
+    @Override
+    public Stream<IOrder> askOrdersStream(final boolean sortedIgnore) {
+        final List<IOrder> list = new ArrayList<>();
+        forEachOrder(true, list::add);
+        return list.stream();
+    }
+
+    @Override
+    public Stream<IOrder> bidOrdersStream(final boolean sortedIgnore) {
+        final List<IOrder> list = new ArrayList<>();
+        forEachOrder(false, list::add);
+        return list.stream();
+    }
+
+    /**
+     * Iterate orders in matching priority (best price first, then time)
+     */
+    private void forEachOrder(final boolean isAsk, final Consumer<LadderOrder> consumer) {
+        levelsCursor.reset(isAsk);
+        Level level;
+        while ((level = levelsCursor.next()) != null) {
+            for (LadderOrder order = level.head; order != null; order = order.next) {
+                consumer.accept(order);
+            }
+        }
+    }
+
+    @Override
+    public void fillAsks(final int size, L2MarketData data) {
+        int i = 0;
+        levelsCursor.reset(true);
+        Level level;
+        while (i < size && (level = levelsCursor.next()) != null) {
+            data.askPrices[i] = level.price;
+            data.askVolumes[i] = level.volume;
+            data.askOrders[i] = level.numOrders;
+            i++;
+        }
+        data.askSize = i;
+    }
+
+    @Override
+    public void fillBids(final int size, L2MarketData data) {
+        int i = 0;
+        levelsCursor.reset(false);
+        Level level;
+        while (i < size && (level = levelsCursor.next()) != null) {
+            data.bidPrices[i] = level.price;
+            data.bidVolumes[i] = level.volume;
+            data.bidOrders[i] = level.numOrders;
+            i++;
+        }
+        data.bidSize = i;
+    }
+
+    @Override
+    public void fillL2Level(final OrderAction action, final long price, final L2MarketDataDelta delta) {
+        final boolean isAsk = action == OrderAction.ASK;
+        final Level level = findLevel(isAsk, price);
+        if (level != null) {
+            delta.add(isAsk, price, level.volume, level.numOrders);
+        } else {
+            delta.add(isAsk, price, 0L, 0);
+        }
+    }
+
+    @Override
+    public int getTotalAskBuckets(final int limit) {
+        return Math.min(limit, askLevels.cardinality() + askOverflow.size());
+    }
+
+    @Override
+    public int getTotalBidBuckets(final int limit) {
+        return Math.min(limit, bidLevels.cardinality() + bidOverflow.size());
+    }
+
+    @Override
+    public void writeMarshallable(BytesOut bytes) {
+        bytes.writeByte(getImplementationType().getCode());
+        symbolSpec.writeMarshallable(bytes);
+        bytes.writeInt(ladderSize);
+        bytes.writeInt(idMap.size());
+        forEachOrder(true, order -> order.writeMarshallable(bytes));
+        forEachOrder(false, order -> order.writeMarshallable(bytes));
+    }
+
+    /**
+     * Iterates levels of one side in price priority, merging window and overflow levels.
+     * Book should not be modified during iteration.
+     */
+    private final class LevelsCursor {
+
+        private boolean isAsk;
+        private int idx;
+        private Iterator<Level> overflowIterator;
+        private Level overflowNext;
+
+        private void reset(final boolean isAsk) {
+            this.isAsk = isAsk;
+            this.idx = isAsk ? bestAskIdx : bestBidIdx;
+            final TreeMap<Long, Level> overflow = isAsk ? askOverflow : bidOverflow;
+            if (overflow.isEmpty()) {
+                overflowIterator = null;
+                overflowNext = null;
+            } else {
+                overflowIterator = overflow.values().iterator();
+                overflowNext = overflowIterator.next();
+            }
+        }
+
+        private Level next() {
+            final Level level = idx == NONE ? null : ladder[idx];
+            if (level != null && (overflowNext == null || (isAsk ? level.price < overflowNext.price : level.price > overflowNext.price))) {
+                idx = isAsk ? askLevels.nextSetBit(idx + 1) : bidLevels.previousSetBit(idx - 1);
+                return level;
+            }
+            final Level res = overflowNext;
+            overflowNext = (res != null && overflowIterator.hasNext()) ? overflowIterator.next() : null;
+            return res;
+        }
+    }
+
+    private static final class Level {
+        boolean isAsk;
+        long price;
+        long volume;
+        int numOrders;
+        // oldest order (matched first)
+        LadderOrder head;
+        LadderOrder tail;
+        // false if level is in overflow map
+        boolean inLadder;
+        Level nextFree;
+
+        @Override
+        public String toString() {
+            return "[" + (isAsk ? 'A' : 'B') + price + " v" + volume + " n" + numOrders + (inLadder ? "" : " overflow") + "]";
+        }
+    }
+
+    public static final class LadderOrder implements WriteBytesMarshallable, IOrder {
+
+        @Getter
+        public long orderId;
+
+        @Getter
+        public long price;
+
+        @Getter
+        public long size;
+
+        @Getter
+        public long filled;
+
+        // new orders - reserved price for fast moves of GTC bid orders in exchange mode
+        @Getter
+        public long reserveBidPrice;
+
+        @Getter
+        public OrderAction action;
+
+        @Getter
+        public long uid;
+
+        @Getter
+        public long timestamp;
+
+        Level level;
+
+        // next order in the same level (newer, lower priority)
+        LadderOrder next;
+
+        // previous order in the same level (older, higher priority)
+        LadderOrder prev;
+
+        private void readMarshallable(BytesIn bytes) {
+            this.orderId = bytes.readLong();
+            this.price = bytes.readLong();
+            this.size = bytes.readLong();
+            this.filled = bytes.readLong();
+            this.reserveBidPrice = bytes.readLong();
+            this.action = OrderAction.of(bytes.readByte());
+            this.uid = bytes.readLong();
+            this.timestamp = bytes.readLong();
+        }
+
+        @Override
+        public void writeMarshallable(BytesOut bytes) {
+            bytes.writeLong(orderId);
+            bytes.writeLong(price);
+            bytes.writeLong(size);
+            bytes.writeLong(filled);
+            bytes.writeLong(reserveBidPrice);
+            bytes.writeByte(action.getCode());
+            bytes.writeLong(uid);
+            bytes.writeLong(timestamp);
+        }
+
+        private Order toOrder() {
+            return new Order(orderId, price, size, filled, reserveBidPrice, action, uid, timestamp);
+        }
+
+        @Override
+        public String toString() {
+            return "[" + orderId + " " + (action == OrderAction.ASK ? 'A' : 'B')
+                    + price + ":" + size + "F" + filled
+                    + " U" + uid + "]";
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(orderId, action, price, size, reserveBidPrice, filled, uid);
+        }
+
+        /**
+         * timestamp is not included into hashCode() and equals() for repeatable results
+         */
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) return true;
+            if (!(o instanceof LadderOrder)) return false;
+
+            final LadderOrder other = (LadderOrder) o;
+            return orderId == other.orderId
+                    && action == other.action
+                    && price == other.price
+                    && size == other.size
+                    && reserveBidPrice == other.reserveBidPrice
+                    && filled == other.filled
+                    && uid == other.uid;
+        }
+
+        @Override
+        public int stateHash() {
+            return Objects.hash(orderId, action, price, size, reserveBidPrice, filled, uid);
+        }
+    }
+}
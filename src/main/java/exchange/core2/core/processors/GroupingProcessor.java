@@ -27,8 +27,6 @@ import lombok.extern.slf4j.Slf4j;
 import java.util.Date;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import static exchange.core2.core.ExchangeCore.EVENTS_POOLING;
-
 
 /**
  * Các processor sẽ tự quản lý sequence (là số thứ tự của event trong ring_buffer)
@@ -53,6 +51,12 @@ public final class GroupingProcessor implements EventProcessor {
     private final Sequence sequence = new Sequence(Sequencer.INITIAL_CURSOR_VALUE);
 
     private final SharedPool sharedPool;
+    private final boolean eventsPooling;
+
+    // events collected from processed commands, returned into shared pool when chain is long enough
+    private MatcherTradeEvent tradeEventHead = null;
+    private MatcherTradeEvent tradeEventTail = null;
+    private int tradeEventCounter = 0;
 
     private final int msgsInGroupLimit;
     private final long maxGroupDurationNs;
@@ -73,6 +77,7 @@ public final class GroupingProcessor implements EventProcessor {
         this.msgsInGroupLimit = perfCfg.getMsgsInGroupLimit();
         this.maxGroupDurationNs = perfCfg.getMaxGroupDurationNs();
         this.sharedPool = sharedPool;
+        this.eventsPooling = perfCfg.isEventsPooling();
     }
 
 
@@ -140,11 +145,6 @@ public final class GroupingProcessor implements EventProcessor {
         long l2dataLastNs = 0;
         boolean triggerL2DataRequest = false;
 
-        final int tradeEventChainLengthTarget = sharedPool.getChainLength();
-        MatcherTradeEvent tradeEventHead = null;
-        MatcherTradeEvent tradeEventTail = null;
-        int tradeEventCounter = 0; // counter
-
         boolean groupingEnabled = true;
 
         while (true) {
@@ -169,9 +169,10 @@ public final class GroupingProcessor implements EventProcessor {
                         }
 
                         if (!groupingEnabled) {
-                            // TODO pooling
+                            recycleEvents(cmd);
                             cmd.matcherEvent = null;
                             cmd.marketData = null;
+                            resetMarketData(cmd);
                             continue;
                         }
 
@@ -200,37 +201,12 @@ public final class GroupingProcessor implements EventProcessor {
                         }
 
                         // cleaning attached events
-                        if (EVENTS_POOLING && cmd.matcherEvent != null) {
-
-                            // update tail
-                            if (tradeEventTail == null) {
-                                tradeEventHead = cmd.matcherEvent; //?
-                            } else {
-                                tradeEventTail.nextEvent = cmd.matcherEvent;
-                            }
-
-                            tradeEventTail = cmd.matcherEvent;
-                            tradeEventCounter++;
-
-                            // find last element in the chain and update tail accordingly
-                            while (tradeEventTail.nextEvent != null) {
-                                tradeEventTail = tradeEventTail.nextEvent;
-                                tradeEventCounter++;
-                            }
-
-                            if (tradeEventCounter >= tradeEventChainLengthTarget) {
-                                // chain is big enough -> send to the shared pool
-                                tradeEventCounter = 0;
-                                sharedPool.putChain(tradeEventHead);
-                                tradeEventTail = null;
-                                tradeEventHead = null;
-                            }
-
-                        }
+                        recycleEvents(cmd);
                         cmd.matcherEvent = null;
 
                         // TODO collect to shared buffer
                         cmd.marketData = null;
+                        resetMarketData(cmd);
 
                         msgsInGroup++;
 
@@ -275,6 +251,52 @@ public final class GroupingProcessor implements EventProcessor {
         }
     }
 
+    /**
+     * Attach events of processed command to collected chain.
+     * When chain is long enough - return it into shared pool.
+     */
+    private void recycleEvents(final OrderCommand cmd) {
+
+        if (!eventsPooling || cmd.matcherEvent == null) {
+            return;
+        }
+
+        // update tail
+        if (tradeEventTail == null) {
+            tradeEventHead = cmd.matcherEvent;
+        } else {
+            tradeEventTail.nextEvent = cmd.matcherEvent;
+        }
+
+        tradeEventTail = cmd.matcherEvent;
+        tradeEventCounter++;
+
+        // find last element in the chain and update tail accordingly
+        while (tradeEventTail.nextEvent != null) {
+            tradeEventTail = tradeEventTail.nextEvent;
+            tradeEventCounter++;
+        }
+
+        if (tradeEventCounter >= sharedPool.getChainLength()) {
+            // chain is big enough -> send to the shared pool
+            sharedPool.putChain(tradeEventHead);
+            tradeEventCounter = 0;
+            tradeEventTail = null;
+            tradeEventHead = null;
+        }
+    }
+
+    /**
+     * Clear market data attached to ring buffer slot before it is re-used.
+     * Delta object is allocated once per slot and re-used by matching engine.
+     */
+    private static void resetMarketData(final OrderCommand cmd) {
+        if (cmd.marketDataDelta != null) {
+            cmd.marketDataDelta.reset();
+        }
+        cmd.topAskPrice = 0;
+    }
+
     @Override
     public String toString() {
         return "GroupingProcessor{" +
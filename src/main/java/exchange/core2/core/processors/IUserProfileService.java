@@ -0,0 +1,153 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors;
+
+import exchange.core2.core.common.StateHash;
+import exchange.core2.core.common.UserProfile;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import net.openhft.chronicle.bytes.BytesIn;
+import net.openhft.chronicle.bytes.WriteBytesMarshallable;
+import org.eclipse.collections.impl.map.mutable.primitive.LongObjectHashMap;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Stateful (!) user profiles store of risk engine shard.
+ * <p>
+ * Returned UserProfile objects can be modified by risk engine directly,
+ * but references must not be kept after command is processed, except profiles having margin positions
+ * (implementation can move other profiles out of heap in {@link #releaseProfiles()}).
+ * <p>
+ * Risk engine thread only.
+ */
+public interface IUserProfileService extends WriteBytesMarshallable, StateHash {
+
+    /**
+     * Find user profile
+     *
+     * @param uid uid
+     * @return user profile or null if not found
+     */
+    UserProfile getUserProfile(long uid);
+
+    /**
+     * Find user profile, create suspended profile if not found (maker of the trade was suspended)
+     *
+     * @param uid uid
+     * @return user profile
+     */
+    UserProfile getUserProfileOrAddSuspended(long uid);
+
+    /**
+     * Perform balance adjustment for specific user
+     *
+     * @param uid                  uid
+     * @param currency             account currency
+     * @param amount               balance difference
+     * @param fundingTransactionId transaction id (should increment only)
+     * @return result code
+     */
+    CommandResultCode balanceAdjustment(long uid, int currency, long amount, long fundingTransactionId);
+
+    /**
+     * Create a new user profile with known unique uid
+     *
+     * @param uid uid
+     * @return true if user was added
+     */
+    boolean addEmptyUserProfile(long uid);
+
+    /**
+     * Remove inactive profile (accounts should be adjusted to zero first, no open margin positions allowed)
+     *
+     * @param uid client id
+     * @return result code
+     */
+    CommandResultCode suspendUserProfile(long uid);
+
+    /**
+     * Resume suspended profile or create new empty one
+     *
+     * @param uid client id
+     * @return result code
+     */
+    CommandResultCode resumeUserProfile(long uid);
+
+    /**
+     * Visit all user profiles (reports).
+     * Profile object is valid only during the callback and should not be modified.
+     *
+     * @param consumer - profile consumer
+     */
+    void forEachUserProfile(Consumer<UserProfile> consumer);
+
+    /**
+     * Visit profiles having margin positions (position records can be empty).
+     * Such profiles are always kept on heap, references can be retained by risk engine.
+     *
+     * @param consumer - profile consumer
+     */
+    void forEachUserProfileWithPositions(Consumer<UserProfile> consumer);
+
+    /**
+     * Called by risk engine before processing next command, when no profile references are held
+     * (except profiles having positions). Implementation can move not recently used profiles out of heap.
+     */
+    void releaseProfiles();
+
+    /**
+     * Split state into independent snapshot chunks (called from risk engine thread, chunks are written immediately).
+     *
+     * @param maxChunks - max number of chunks
+     * @return chunks
+     */
+    List<WriteBytesMarshallable> snapshotChunks(int maxChunks);
+
+    /**
+     * Read chunk written by {@link #snapshotChunks(int)}.
+     * Can be called concurrently for different chunks - it should not modify state of the service.
+     *
+     * @param bytes - chunk data
+     * @return chunk object
+     */
+    Object readSnapshotChunk(BytesIn bytes);
+
+    /**
+     * Apply chunk object returned by {@link #readSnapshotChunk(BytesIn)} (risk engine constructor thread).
+     *
+     * @param chunk - chunk object
+     */
+    void loadSnapshotChunk(Object chunk);
+
+    /**
+     * Add profiles read from snapshot of previous format (whole risk engine state, map of user profiles) - risk engine constructor thread.
+     *
+     * @param userProfiles - uid to user profile
+     */
+    void addUserProfiles(LongObjectHashMap<UserProfile> userProfiles);
+
+    /**
+     * Reset module - for testing only
+     */
+    void reset();
+
+    @FunctionalInterface
+    interface UserProfileServiceFactory {
+
+        IUserProfileService create();
+    }
+}
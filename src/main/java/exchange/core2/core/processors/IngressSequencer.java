@@ -0,0 +1,293 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors;
+
+import com.lmax.disruptor.BusySpinWaitStrategy;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.Sequence;
+import exchange.core2.core.common.CoreWaitStrategy;
+import exchange.core2.core.common.cmd.OrderCommand;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.agrona.concurrent.BackoffIdleStrategy;
+import org.agrona.concurrent.BusySpinIdleStrategy;
+import org.agrona.concurrent.IdleStrategy;
+import org.agrona.concurrent.YieldingIdleStrategy;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Consumer;
+
+/**
+ * Sequencer for SEQUENCED_SINGLE_PRODUCER ingress mode.
+ * <p>
+ * Every gateway thread gets its own single-producer staging ring (SPSC queue) with the same OrderCommand layout,
+ * so ExchangeApi publishes into it exactly the same way as into main ring buffer.
+ * Sequencer thread is the only producer of the main ring buffer (ProducerType.SINGLE):
+ * it drains staging rings round-robin, copies commands into main ring buffer and moves result promises
+ * from staging sequence to main sequence.
+ * <p>
+ * Commands of one gateway thread keep their order, commands of different gateways are interleaved by sequencer.
+ * Ranges claimed atomically by gateway (persist state pair, binary data fragment) are never split between batches,
+ * so they stay contiguous in main ring buffer (same as in MULTI_PRODUCER mode).
+ */
+@Slf4j
+public final class IngressSequencer {
+
+    private final RingBuffer<OrderCommand> ringBuffer;
+    private final int queueSize;
+    private final int maxBatchSize;
+    private final Thread thread;
+    private final IdleStrategy idleStrategy;
+
+    private final ThreadLocal<GatewayQueue> gatewayQueues = ThreadLocal.withInitial(this::registerQueue);
+
+    private volatile GatewayQueue[] queues = new GatewayQueue[0];
+
+    // main ring buffer promises (owned by ExchangeApi)
+    private Consumer<OrderCommand>[] promises;
+    private int promisesMask;
+
+    private volatile boolean running = false;
+
+    public IngressSequencer(final RingBuffer<OrderCommand> ringBuffer,
+                            final int queueSize,
+                            final ThreadFactory threadFactory,
+                            final CoreWaitStrategy waitStrategy) {
+
+        this.ringBuffer = ringBuffer;
+        this.queueSize = queueSize;
+        // same limit as for binary data fragments
+        this.maxBatchSize = Math.max(1, Math.min(queueSize, ringBuffer.getBufferSize() / 4));
+
+        this.idleStrategy = waitStrategy == CoreWaitStrategy.BUSY_SPIN
+                ? new BusySpinIdleStrategy()
+                : waitStrategy.isYield() ? new YieldingIdleStrategy() : new BackoffIdleStrategy(100, 10, 1_000, 100_000);
+
+        this.thread = threadFactory.newThread(this::run);
+        this.thread.setName("Thread-IngressSequencer");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Attach main ring buffer promises array (should be called before start)
+     *
+     * @param promises - promises indexed by (sequence & (size - 1))
+     */
+    public void attachPromises(final Consumer<OrderCommand>[] promises) {
+        this.promises = promises;
+        this.promisesMask = promises.length - 1;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static Consumer<OrderCommand>[] newPromisesArray(final int size) {
+        return new Consumer[size];
+    }
+
+    /**
+     * @return staging queue of current thread (created on first call)
+     */
+    public GatewayQueue gatewayQueue() {
+        return gatewayQueues.get();
+    }
+
+    public void start() {
+        running = true;
+        thread.start();
+    }
+
+    /**
+     * Stop sequencer thread. All commands already published into staging queues are moved to ring buffer before returning.
+     */
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            thread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized GatewayQueue registerQueue() {
+        final GatewayQueue queue = new GatewayQueue(Thread.currentThread(), queueSize);
+        final GatewayQueue[] newQueues = Arrays.copyOf(queues, queues.length + 1);
+        newQueues[queues.length] = queue;
+        queues = newQueues;
+        log.debug("Registered ingress queue for thread {} (total {})", queue.owner.getName(), newQueues.length);
+        return queue;
+    }
+
+    private synchronized void removeDeadQueues() {
+        final GatewayQueue[] current = queues;
+        final GatewayQueue[] alive = Arrays.stream(current)
+                .filter(q -> q.owner.isAlive() || q.hasPendingCommands())
+                .toArray(GatewayQueue[]::new);
+        if (alive.length != current.length) {
+            queues = alive;
+            log.debug("Removed {} ingress queues of terminated threads", current.length - alive.length);
+        }
+    }
+
+    private void run() {
+
+        int idleCounter = 0;
+
+        while (running) {
+            final int moved = drainQueues();
+            if (moved == 0) {
+                // check for terminated gateway threads from time to time
+                if (++idleCounter == 100_000) {
+                    idleCounter = 0;
+                    removeDeadQueues();
+                }
+            }
+            idleStrategy.idle(moved);
+        }
+
+        // move remaining commands
+        while (drainQueues() != 0) ;
+
+        log.debug("Ingress sequencer stopped");
+    }
+
+    private int drainQueues() {
+        int moved = 0;
+        for (final GatewayQueue queue : queues) {
+            moved += drainQueue(queue);
+        }
+        return moved;
+    }
+
+    private int drainQueue(final GatewayQueue queue) {
+
+        final long nextSeq = queue.sequence.get() + 1;
+        final long availableSeq = queue.ring.getCursor();
+        if (availableSeq < nextSeq) {
+            return 0;
+        }
+
+        int n = (int) Math.min(availableSeq - nextSeq + 1, maxBatchSize);
+
+        // never split atomic range: move it into next batch, or move it whole if it is bigger than max batch size
+        // (whole range is always available because gateway publishes it at once)
+        while (n > 0 && queue.isAtomicRangeContinued(nextSeq + n - 1)) {
+            n--;
+        }
+        if (n == 0) {
+            n = 1;
+            while (queue.isAtomicRangeContinued(nextSeq + n - 1)) {
+                n++;
+            }
+        }
+
+        final long highSeq = ringBuffer.next(n);
+        final long lowSeq = highSeq - n + 1;
+
+        long srcSeq = nextSeq;
+        for (long seq = lowSeq; seq <= highSeq; seq++, srcSeq++) {
+            copyCommand(queue.ring.get(srcSeq), ringBuffer.get(seq));
+
+            final int srcIdx = (int) (srcSeq & queue.promisesMask);
+            queue.atomicRangeContinued[srcIdx] = false;
+            final Consumer<OrderCommand> promise = queue.promises[srcIdx];
+            if (promise != null) {
+                queue.promises[srcIdx] = null;
+                promises[(int) (seq & promisesMask)] = promise;
+            }
+        }
+
+        ringBuffer.publish(lowSeq, highSeq);
+
+        // release staging slots
+        queue.sequence.set(srcSeq - 1);
+
+        return n;
+    }
+
+    private static void copyCommand(final OrderCommand src, final OrderCommand dst) {
+        dst.command = src.command;
+        dst.orderId = src.orderId;
+        dst.symbol = src.symbol;
+        dst.price = src.price;
+        dst.size = src.size;
+        dst.reserveBidPrice = src.reserveBidPrice;
+        dst.action = src.action;
+        dst.orderType = src.orderType;
+        dst.uid = src.uid;
+        dst.timestamp = src.timestamp;
+        dst.userCookie = src.userCookie;
+        dst.eventsGroup = src.eventsGroup;
+        dst.serviceFlags = src.serviceFlags;
+        dst.resultCode = src.resultCode;
+    }
+
+    /**
+     * Staging queue of one gateway thread
+     */
+    public static final class GatewayQueue {
+
+        private final Thread owner;
+
+        @Getter
+        private final RingBuffer<OrderCommand> ring;
+
+        // last sequence moved into main ring buffer
+        private final Sequence sequence = new Sequence();
+
+        private final Consumer<OrderCommand>[] promises;
+        private final int promisesMask;
+
+        // true if command is followed by next command of the same atomic range
+        private final boolean[] atomicRangeContinued;
+
+        private GatewayQueue(final Thread owner, final int size) {
+            this.owner = owner;
+            // busy spin - publisher never signals sequencer, it only polls ring cursor
+            this.ring = RingBuffer.createSingleProducer(OrderCommand::new, size, new BusySpinWaitStrategy());
+            this.ring.addGatingSequences(sequence);
+            this.promises = newPromisesArray(size);
+            this.promisesMask = size - 1;
+            this.atomicRangeContinued = new boolean[size];
+        }
+
+        /**
+         * Mark claimed but not yet published staging range, which should be moved into main ring buffer by one claim
+         */
+        public void markAtomicRange(final long lowSeq, final long highSeq) {
+            for (long seq = lowSeq; seq < highSeq; seq++) {
+                atomicRangeContinued[(int) (seq & promisesMask)] = true;
+            }
+        }
+
+        private boolean isAtomicRangeContinued(final long seq) {
+            return atomicRangeContinued[(int) (seq & promisesMask)];
+        }
+
+        /**
+         * Register promise for claimed but not yet published staging sequence
+         */
+        public void registerPromise(final long seq, final Consumer<OrderCommand> consumer) {
+            promises[(int) (seq & promisesMask)] = consumer;
+        }
+
+        private boolean hasPendingCommands() {
+            return ring.getCursor() != sequence.get();
+        }
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors;
+
+import exchange.core2.core.IMarginEventsHandler;
+import exchange.core2.core.common.MarginLevel;
+import exchange.core2.core.common.UserProfile;
+import exchange.core2.core.common.config.MarginMonitorConfiguration;
+import org.eclipse.collections.api.block.procedure.primitive.LongLongProcedure;
+import org.eclipse.collections.impl.map.mutable.primitive.IntObjectHashMap;
+import org.eclipse.collections.impl.map.mutable.primitive.LongIntHashMap;
+
+import java.util.Arrays;
+
+/**
+ * Margin monitor of risk engine shard (margin trading mode).
+ * <p>
+ * Accounts having margin requirement (user + currency) are kept in indexed min-heap ordered by margin ratio,
+ * so liquidation candidates can be found without scanning all user profiles.
+ * Risk engine re-evaluates account after every change of its positions or balance,
+ * and after every last price change of the symbol (for users holding position in that symbol only).
+ * Margin level changes are reported to events handler immediately.
+ * <p>
+ * Margin ratio = equity / required margin (basis points), where equity is balance plus estimated profit of all positions in the currency.
+ * State is derived from user profiles - it is not serialized and rebuilt after loading snapshot.
+ * <p>
+ * Risk engine thread only.
+ */
+public final class MarginMonitor {
+
+    public static final long RATIO_SCALE = 10_000L;
+
+    private final long marginCallRatio;
+    private final long liquidationRatio;
+    private final IMarginEventsHandler eventsHandler;
+
+    // currency -> accounts ordered by margin ratio
+    private final IntObjectHashMap<RatioHeap> heaps = new IntObjectHashMap<>();
+
+    public MarginMonitor(final MarginMonitorConfiguration cfg) {
+        if (cfg.getLiquidationRatio() > cfg.getMarginCallRatio()) {
+            throw new IllegalArgumentException("Liquidation ratio " + cfg.getLiquidationRatio()
+                    + " is greater than margin call ratio " + cfg.getMarginCallRatio());
+        }
+        this.marginCallRatio = cfg.getMarginCallRatio();
+        this.liquidationRatio = cfg.getLiquidationRatio();
+        this.eventsHandler = cfg.getEventsHandler();
+    }
+
+    /**
+     * Re-evaluate margin ratio of users account, emit event if margin level was changed.
+     * Should be called after free margin and required margin aggregates of user profile were updated.
+     *
+     * @param userProfile - user profile
+     * @param currency    - account currency
+     */
+    public void update(final UserProfile userProfile, final int currency) {
+
+        final long uid = userProfile.uid;
+        final long requiredMargin = userProfile.requiredMargin.get(currency);
+        final long equity = userProfile.accounts.get(currency) + userProfile.freeMargin.get(currency) + requiredMargin;
+
+        RatioHeap heap = heaps.get(currency);
+
+        if (requiredMargin <= 0) {
+            // nothing at risk - stop monitoring account
+            final int idx = (heap != null) ? heap.indexOf(uid) : -1;
+            if (idx != -1) {
+                final MarginLevel prevLevel = heap.levels[idx];
+                heap.remove(idx);
+                if (prevLevel != MarginLevel.NORMAL) {
+                    eventsHandler.marginLevelChanged(uid, currency, MarginLevel.NORMAL, equity, requiredMargin);
+                }
+            }
+            return;
+        }
+
+        final long ratio = marginRatio(equity, requiredMargin);
+        final MarginLevel level = ratio < liquidationRatio
+                ? MarginLevel.LIQUIDATION
+                : (ratio < marginCallRatio ? MarginLevel.MARGIN_CALL : MarginLevel.NORMAL);
+
+        if (heap == null) {
+            heap = new RatioHeap();
+            heaps.put(currency, heap);
+        }
+
+        final int idx = heap.indexOf(uid);
+        final MarginLevel prevLevel;
+        if (idx == -1) {
+            prevLevel = MarginLevel.NORMAL;
+            heap.add(uid, ratio, level);
+        } else {
+            prevLevel = heap.levels[idx];
+            heap.update(idx, ratio, level);
+        }
+
+        if (level != prevLevel) {
+            eventsHandler.marginLevelChanged(uid, currency, level, equity, requiredMargin);
+        }
+    }
+
+    /**
+     * @param currency - account currency
+     * @return number of monitored accounts (having non-zero margin requirement)
+     */
+    public int getAccountsNum(final int currency) {
+        final RatioHeap heap = heaps.get(currency);
+        return heap != null ? heap.size : 0;
+    }
+
+    /**
+     * @param currency - account currency
+     * @return lowest margin ratio (basis points), Long.MAX_VALUE if there are no monitored accounts
+     */
+    public long getLowestRatio(final int currency) {
+        final RatioHeap heap = heaps.get(currency);
+        return (heap != null && heap.size != 0) ? heap.ratios[0] : Long.MAX_VALUE;
+    }
+
+    /**
+     * @param currency - account currency
+     * @return uid of account having lowest margin ratio, -1 if there are no monitored accounts
+     */
+    public long getLowestRatioUid(final int currency) {
+        final RatioHeap heap = heaps.get(currency);
+        return (heap != null && heap.size != 0) ? heap.uids[0] : -1L;
+    }
+
+    /**
+     * Visit all accounts having margin ratio below threshold (in heap order, not sorted).
+     * Only heap entries below threshold and their direct children are visited.
+     *
+     * @param currency  - account currency
+     * @param ratio     - margin ratio threshold (basis points)
+     * @param procedure - receives uid and margin ratio
+     */
+    public void forEachBelow(final int currency, final long ratio, final LongLongProcedure procedure) {
+        final RatioHeap heap = heaps.get(currency);
+        if (heap != null) {
+            heap.forEachBelow(0, ratio, procedure);
+        }
+    }
+
+    /**
+     * Liquidation candidates - accounts having margin ratio below liquidation ratio
+     *
+     * @param currency  - account currency
+     * @param procedure - receives uid and margin ratio
+     */
+    public void forEachLiquidationCandidate(final int currency, final LongLongProcedure procedure) {
+        forEachBelow(currency, liquidationRatio, procedure);
+    }
+
+    public void reset() {
+        heaps.clear();
+    }
+
+    static long marginRatio(final long equity, final long requiredMargin) {
+        // saturate instead of overflow - large balances are always safe
+        if (equity >= Long.MAX_VALUE / RATIO_SCALE) {
+            return Long.MAX_VALUE;
+        } else if (equity <= Long.MIN_VALUE / RATIO_SCALE) {
+            return Long.MIN_VALUE;
+        }
+        return equity * RATIO_SCALE / requiredMargin;
+    }
+
+    /**
+     * Indexed binary min-heap: ratio -> uid, uid -> position in heap
+     */
+    private static final class RatioHeap {
+
+        private long[] ratios = new long[64];
+        private long[] uids = new long[64];
+        private MarginLevel[] levels = new MarginLevel[64];
+        private int size = 0;
+
+        private final LongIntHashMap index = new LongIntHashMap();
+
+        private int indexOf(final long uid) {
+            return index.getIfAbsent(uid, -1);
+        }
+
+        private void add(final long uid, final long ratio, final MarginLevel level) {
+            if (size == ratios.length) {
+                final int newCapacity = size << 1;
+                ratios = Arrays.copyOf(ratios, newCapacity);
+                uids = Arrays.copyOf(uids, newCapacity);
+                levels = Arrays.copyOf(levels, newCapacity);
+            }
+            final int idx = size++;
+            set(idx, uid, ratio, level);
+            siftUp(idx);
+        }
+
+        private void update(final int idx, final long ratio, final MarginLevel level) {
+            final long prevRatio = ratios[idx];
+            ratios[idx] = ratio;
+            levels[idx] = level;
+            if (ratio < prevRatio) {
+                siftUp(idx);
+            } else if (ratio > prevRatio) {
+                siftDown(idx);
+            }
+        }
+
+        private void remove(final int idx) {
+            index.remove(uids[idx]);
+            final int last = --size;
+            if (idx != last) {
+                final long ratio = ratios[last];
+                set(idx, uids[last], ratio, levels[last]);
+                levels[last] = null;
+                siftDown(idx);
+                siftUp(idx);
+            } else {
+                levels[last] = null;
+            }
+        }
+
+        private void forEachBelow(final int idx, final long ratio, final LongLongProcedure procedure) {
+            if (idx < size && ratios[idx] < ratio) {
+                procedure.value(uids[idx], ratios[idx]);
+                forEachBelow(2 * idx + 1, ratio, procedure);
+                forEachBelow(2 * idx + 2, ratio, procedure);
+            }
+        }
+
+        private void siftUp(int idx) {
+            final long uid = uids[idx];
+            final long ratio = ratios[idx];
+            final MarginLevel level = levels[idx];
+            while (idx > 0) {
+                final int parent = (idx - 1) >>> 1;
+                if (ratios[parent] <= ratio) {
+                    break;
+                }
+                set(idx, uids[parent], ratios[parent], levels[parent]);
+                idx = parent;
+            }
+            set(idx, uid, ratio, level);
+        }
+
+        private void siftDown(int idx) {
+            final long uid = uids[idx];
+            final long ratio = ratios[idx];
+            final MarginLevel level = levels[idx];
+            final int half = size >>> 1;
+            while (idx < half) {
+                int child = 2 * idx + 1;
+                final int right = child + 1;
+                if (right < size && ratios[right] < ratios[child]) {
+                    child = right;
+                }
+                if (ratio <= ratios[child]) {
+                    break;
+                }
+                set(idx, uids[child], ratios[child], levels[child]);
+                idx = child;
+            }
+            set(idx, uid, ratio, level);
+        }
+
+        private void set(final int idx, final long uid, final long ratio, final MarginLevel level) {
+            uids[idx] = uid;
+            ratios[idx] = ratio;
+            levels[idx] = level;
+            index.put(uid, idx);
+        }
+    }
+}
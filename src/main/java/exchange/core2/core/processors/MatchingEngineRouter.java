@@ -17,9 +17,13 @@ package exchange.core2.core.processors;
 
 import exchange.core2.collections.objpool.ObjectsPool;
 import exchange.core2.core.common.CoreSymbolSpecification;
+import exchange.core2.core.common.L2MarketData;
+import exchange.core2.core.common.L2MarketDataDelta;
 import exchange.core2.core.common.SymbolType;
 import exchange.core2.core.common.api.binary.BatchAddAccountsCommand;
 import exchange.core2.core.common.api.binary.BatchAddSymbolsCommand;
+import exchange.core2.core.common.api.binary.BatchAssignSymbolShardsCommand;
+import exchange.core2.core.common.api.binary.BatchMigrateSymbolsCommand;
 import exchange.core2.core.common.api.reports.ReportQuery;
 import exchange.core2.core.common.api.reports.ReportResult;
 import exchange.core2.core.common.cmd.CommandResultCode;
@@ -30,20 +34,28 @@ import exchange.core2.core.orderbook.IOrderBook;
 import exchange.core2.core.orderbook.OrderBookEventsHelper;
 import exchange.core2.core.processors.journaling.DiskSerializationProcessorConfiguration;
 import exchange.core2.core.processors.journaling.ISerializationProcessor;
+import exchange.core2.core.processors.sharding.IShardingPolicy;
+import exchange.core2.core.processors.sharding.SymbolMigrationHandoff;
+import exchange.core2.core.processors.sharding.SymbolShardsTable;
 import exchange.core2.core.utils.SerializationUtils;
 import exchange.core2.core.utils.UnsafeUtils;
-import lombok.Builder;
 import lombok.Getter;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import net.openhft.chronicle.bytes.Bytes;
 import net.openhft.chronicle.bytes.BytesOut;
 import net.openhft.chronicle.bytes.WriteBytesMarshallable;
+import org.eclipse.collections.impl.map.mutable.primitive.IntIntHashMap;
+import org.eclipse.collections.impl.map.mutable.primitive.IntLongHashMap;
 import org.eclipse.collections.impl.map.mutable.primitive.IntObjectHashMap;
+import org.eclipse.collections.impl.set.mutable.primitive.IntHashSet;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Optional;
 
 @Slf4j
@@ -53,6 +65,9 @@ public final class MatchingEngineRouter implements WriteBytesMarshallable {
     public static final ISerializationProcessor.SerializedModuleType MODULE_ME =
             ISerializationProcessor.SerializedModuleType.MATCHING_ENGINE_ROUTER;
 
+    // objects pools for order books loaded from snapshot chunks are 64 times smaller
+    private static final int CHUNK_OBJECTS_POOL_SHIFT = 6;
+
     // state
     private final BinaryCommandsProcessor binaryCommandsProcessor;
 
@@ -69,10 +84,18 @@ public final class MatchingEngineRouter implements WriteBytesMarshallable {
     // sharding by symbolId
     // hệ thống có nhiều symbol và các symbol sẽ được gom vào từng shard, mỗi shard sẽ được xử lý bởi 1 matching engine
     private final int shardId;
-    // là 1 mặt nạ có dạng 1111..(n số '1') có tác dụng để tìm shard_id từ id của symbol.
-    // Ví dụ ta chia các symbol làm 8 shard, thì shardMask = 7 (111). Muốn tìm shardId ta lấy (symbol_id & shardMask)
-    // bản chất là phép modulo thôi nhưng performance tốt hơn
-    private final long shardMask;
+    // tổng số shard (không bắt buộc là lũy thừa của 2)
+    private final int shardsNum;
+    // policy xác định symbol thuộc shard nào (modulo, consistent hash hoặc bảng symbol -> shard)
+    // mỗi matching engine có instance riêng, nhưng tất cả đều trả về cùng kết quả
+    private final IShardingPolicy shardingPolicy;
+    // != null nếu policy là bảng symbol -> shard (state, được lưu vào snapshot)
+    private final SymbolShardsTable symbolShardsTable;
+    // chuyển order book giữa các matching engine khi migrate symbol (dùng chung cho tất cả các shard)
+    private final SymbolMigrationHandoff migrationHandoff;
+
+    // utilisation metric: số lệnh matching đã xử lý cho từng symbol của shard này (không thuộc state, reset khi restart)
+    private final IntLongHashMap symbolCommandsCounters = new IntLongHashMap();
 
     private final String exchangeId; // TODO validate
     private final Path folder;
@@ -85,20 +108,25 @@ public final class MatchingEngineRouter implements WriteBytesMarshallable {
     // độ sâu của market deep gửi kèm sau mỗi giao dịch thành công
     private final int cfgL2RefreshDepth;
 
+    private final boolean cfgSendL2DeltasForEveryCmd;
+
+    // re-used for reading top of book
+    private final L2MarketData topOfBook = new L2MarketData(1, 1);
+
     private final ISerializationProcessor serializationProcessor;
 
     private final LoggingConfiguration loggingCfg;
     private final boolean logDebug;
 
     public MatchingEngineRouter(final int shardId,      // shard_id của matching engine instance hiện tại
-                                final long numShards,   // tổng số lượng shard cho các symbol
+                                final int numShards,    // tổng số lượng shard cho các symbol
                                 final ISerializationProcessor serializationProcessor,
                                 final IOrderBook.OrderBookFactory orderBookFactory,     // factory tạo orderbook khi cần. Naive | Direct tùy thuộc config
                                 final SharedPool sharedPool,
+                                final SymbolMigrationHandoff migrationHandoff,  // dùng chung cho tất cả matching engine
                                 final ExchangeConfiguration exchangeCfg) {  // config hệ thống để chạy
-        // đếm số bit có giá trị 1. Các số là bội số của 2 sẽ luôn có dạng 1000xxx (với n số '0' phía sau)
-        if (Long.bitCount(numShards) != 1) {
-            throw new IllegalArgumentException("Invalid number of shards " + numShards + " - must be power of 2");
+        if (numShards <= 0) {
+            throw new IllegalArgumentException("Invalid number of shards " + numShards);
         }
 
         final InitialStateConfiguration initStateCfg = exchangeCfg.getInitStateCfg();
@@ -106,9 +134,12 @@ public final class MatchingEngineRouter implements WriteBytesMarshallable {
         this.exchangeId = initStateCfg.getExchangeId();
         this.folder = Paths.get(DiskSerializationProcessorConfiguration.DEFAULT_FOLDER);
 
-        // shard_id và shard_mask
+        // shard_id và sharding policy
         this.shardId = shardId;
-        this.shardMask = numShards - 1;
+        this.shardsNum = numShards;
+        this.shardingPolicy = exchangeCfg.getPerformanceCfg().getSymbolShardingPolicyFactory().create(numShards);
+        this.symbolShardsTable = shardingPolicy instanceof SymbolShardsTable ? (SymbolShardsTable) shardingPolicy : null;
+        this.migrationHandoff = migrationHandoff;
         this.serializationProcessor = serializationProcessor;
         this.orderBookFactory = orderBookFactory;
         this.eventsHelper = new OrderBookEventsHelper(sharedPool::getChain);
@@ -118,27 +149,51 @@ public final class MatchingEngineRouter implements WriteBytesMarshallable {
 
         // initialize object pools // TODO move to perf config
         // #desc chưa hiểu làm gì
-        final HashMap<Integer, Integer> objectsPoolConfig = new HashMap<>();
-        objectsPoolConfig.put(ObjectsPool.DIRECT_ORDER, 1024 * 1024);
-        objectsPoolConfig.put(ObjectsPool.DIRECT_BUCKET, 1024 * 64);
-        objectsPoolConfig.put(ObjectsPool.ART_NODE_4, 1024 * 32);
-        objectsPoolConfig.put(ObjectsPool.ART_NODE_16, 1024 * 16);
-        objectsPoolConfig.put(ObjectsPool.ART_NODE_48, 1024 * 8);
-        objectsPoolConfig.put(ObjectsPool.ART_NODE_256, 1024 * 4);
-        this.objectsPool = new ObjectsPool(objectsPoolConfig);
+        this.objectsPool = createObjectsPool(0);
 
         if (ISerializationProcessor.canLoadFromSnapshot(serializationProcessor, initStateCfg, shardId, MODULE_ME)) {
-            final DeserializedData deserialized = serializationProcessor.loadData(
+            // chunks are loaded concurrently: header and groups of order books
+            final List<Object> chunks = serializationProcessor.<Object>loadDataChunks(
                     initStateCfg.getSnapshotId(),
                     ISerializationProcessor.SerializedModuleType.MATCHING_ENGINE_ROUTER,
                     shardId,
+                    (chunkIdx, bytesIn) -> {
+                        if (chunkIdx == 0) {
+                            if (shardId != bytesIn.readInt()) {
+                                throw new IllegalStateException("wrong shardId");
+                            }
+                            if (shardsNum != bytesIn.readLong()) {
+                                throw new IllegalStateException("wrong shards number");
+                            }
+                            if (bytesIn.readBoolean() != (symbolShardsTable != null)) {
+                                throw new IllegalStateException("wrong symbol sharding policy");
+                            }
+                            if (symbolShardsTable != null) {
+                                symbolShardsTable.readTable(bytesIn);
+                            }
+
+                            return new BinaryCommandsProcessor(
+                                    this::handleBinaryMessage,
+                                    this::handleReportQuery,
+                                    sharedPool,
+                                    exchangeCfg.getReportsQueriesCfg(),
+                                    bytesIn,
+                                    shardId + 1024);
+                        }
+
+                        // objects pool is not thread-safe - each group of order books gets own smaller pool
+                        // (later accessed from matching engine thread only)
+                        final ObjectsPool chunkObjectsPool = createObjectsPool(CHUNK_OBJECTS_POOL_SHIFT);
+                        return SerializationUtils.readIntHashMap(
+                                bytesIn,
+                                bytes -> IOrderBook.create(bytes, chunkObjectsPool, eventsHelper, loggingCfg));
+                    },
                     bytesIn -> {
+                        // previous format: shard mask, no symbol shards table, all order books in one collection
                         if (shardId != bytesIn.readInt()) {
                             throw new IllegalStateException("wrong shardId");
                         }
-                        if (shardMask != bytesIn.readLong()) {
-                            throw new IllegalStateException("wrong shardMask");
-                        }
+                        ISerializationProcessor.checkPreviousFormatShards(bytesIn.readLong(), shardsNum, shardingPolicy);
 
                         final BinaryCommandsProcessor bcp = new BinaryCommandsProcessor(
                                 this::handleBinaryMessage,
@@ -152,11 +207,15 @@ public final class MatchingEngineRouter implements WriteBytesMarshallable {
                                 bytesIn,
                                 bytes -> IOrderBook.create(bytes, objectsPool, eventsHelper, loggingCfg));
 
-                        return DeserializedData.builder().binaryCommandsProcessor(bcp).orderBooks(ob).build();
+                        return Arrays.asList(bcp, ob);
                     });
 
-            this.binaryCommandsProcessor = deserialized.binaryCommandsProcessor;
-            this.orderBooks = deserialized.orderBooks;
+            this.binaryCommandsProcessor = (BinaryCommandsProcessor) chunks.get(0);
+            this.orderBooks = new IntObjectHashMap<>();
+            for (int i = 1; i < chunks.size(); i++) {
+                @SuppressWarnings("unchecked") final IntObjectHashMap<IOrderBook> chunkOrderBooks = (IntObjectHashMap<IOrderBook>) chunks.get(i);
+                this.orderBooks.putAll(chunkOrderBooks);
+            }
 
         } else {
             this.binaryCommandsProcessor = new BinaryCommandsProcessor(
@@ -175,6 +234,7 @@ public final class MatchingEngineRouter implements WriteBytesMarshallable {
         final PerformanceConfiguration perfCfg = exchangeCfg.getPerformanceCfg();
         this.cfgSendL2ForEveryCmd = perfCfg.isSendL2ForEveryCmd();
         this.cfgL2RefreshDepth = perfCfg.getL2RefreshDepth();
+        this.cfgSendL2DeltasForEveryCmd = perfCfg.isSendL2DeltasForEveryCmd();
     }
 
 
@@ -188,6 +248,7 @@ public final class MatchingEngineRouter implements WriteBytesMarshallable {
                 || command == OrderCommandType.ORDER_BOOK_REQUEST) {
             // process specific symbol group only
             if (symbolForThisHandler(cmd.symbol)) {
+                symbolCommandsCounters.addToValue(cmd.symbol, 1);
                 processMatchingCommand(cmd);
             }
         } else if (command == OrderCommandType.BINARY_DATA_QUERY || command == OrderCommandType.BINARY_DATA_COMMAND) {
@@ -201,6 +262,10 @@ public final class MatchingEngineRouter implements WriteBytesMarshallable {
             // process all symbols groups, only processor 0 writes result
             orderBooks.clear();
             binaryCommandsProcessor.reset();
+            symbolCommandsCounters.clear();
+            if (symbolShardsTable != null) {
+                symbolShardsTable.reset();
+            }
             if (shardId == 0) {
                 cmd.resultCode = CommandResultCode.SUCCESS;
             }
@@ -211,13 +276,13 @@ public final class MatchingEngineRouter implements WriteBytesMarshallable {
             }
 
         } else if (command == OrderCommandType.PERSIST_STATE_MATCHING) {
-            final boolean isSuccess = serializationProcessor.storeData(
+            final boolean isSuccess = serializationProcessor.storeDataChunks(
                     cmd.orderId,
                     seq,
                     cmd.timestamp,
                     ISerializationProcessor.SerializedModuleType.MATCHING_ENGINE_ROUTER,
                     shardId,
-                    this);
+                    snapshotChunks());
             // Send ACCEPTED because this is a first command in series. Risk engine is second - so it will return SUCCESS
             UnsafeUtils.setResultVolatile(cmd, isSuccess, CommandResultCode.ACCEPTED, CommandResultCode.STATE_PERSIST_MATCHING_ENGINE_FAILED);
         }
@@ -228,9 +293,113 @@ public final class MatchingEngineRouter implements WriteBytesMarshallable {
 
         if (message instanceof BatchAddSymbolsCommand) {
             final IntObjectHashMap<CoreSymbolSpecification> symbols = ((BatchAddSymbolsCommand) message).getSymbols();
+            if (symbolShardsTable != null) {
+                // all shards pin symbol to the same shard
+                symbols.forEach(spec -> symbolShardsTable.pin(spec.symbolId));
+            }
             symbols.forEach(this::addSymbol);
         } else if (message instanceof BatchAddAccountsCommand) {
             // do nothing
+        } else if (message instanceof BatchAssignSymbolShardsCommand) {
+            if (symbolShardsTable != null) {
+                ((BatchAssignSymbolShardsCommand) message).getSymbolShards().forEachKeyValue(symbolShardsTable::assign);
+            } else if (shardId == 0) {
+                log.warn("Symbol shards assignment ignored - sharding policy is not SymbolShardsTable");
+            }
+        } else if (message instanceof BatchMigrateSymbolsCommand) {
+            migrateSymbols(((BatchMigrateSymbolsCommand) message).getSymbolShards());
+        }
+    }
+
+    /**
+     * Online migration of order books between shards.
+     * All shards process the same command at the same sequence and make the same decisions (shards table is identical):
+     * source shard serializes order book and replaces it by empty one, target shard rebuilds order book from serialized data,
+     * then every shard switches routing - next commands for the symbol are processed by target shard.
+     * If source shard fails to serialize order book, it keeps the order book and every shard leaves routing of the symbol unchanged.
+     */
+    private void migrateSymbols(final IntIntHashMap targetShards) {
+
+        if (symbolShardsTable == null) {
+            if (shardId == 0) {
+                log.warn("Symbols migration ignored - sharding policy is not SymbolShardsTable");
+            }
+            return;
+        }
+
+        // symbol -> source shard
+        final IntIntHashMap migrations = new IntIntHashMap();
+        targetShards.forEachKeyValue((symbol, targetShard) -> {
+            if (targetShard < 0 || targetShard >= shardsNum || orderBooks.get(symbol) == null) {
+                if (shardId == 0) {
+                    log.warn("Can not migrate symbol {} to shard {}", symbol, targetShard);
+                }
+            } else {
+                final int sourceShard = symbolShardsTable.shardOf(symbol);
+                if (sourceShard != targetShard) {
+                    migrations.put(symbol, sourceShard);
+                }
+            }
+        });
+
+        // symbols which source shard failed to serialize - migration is aborted, routing is not changed
+        final IntHashSet abortedSymbols = new IntHashSet();
+
+        // 1. source shards publish order books first (never wait), so shards can exchange symbols in one command
+        migrations.forEachKeyValue((symbol, sourceShard) -> {
+            if (sourceShard == shardId) {
+                final IOrderBook orderBook = orderBooks.get(symbol);
+                final Bytes<?> bytes = Bytes.allocateElasticDirect();
+                try {
+                    orderBook.writeMarshallable(bytes);
+                } catch (final RuntimeException ex) {
+                    // order book is kept by source shard, other shards should not wait for it
+                    log.error("Can not serialize order book of symbol {}, migration is aborted", symbol, ex);
+                    bytes.release();
+                    migrationHandoff.publishFailure(symbol, shardsNum - 1);
+                    abortedSymbols.add(symbol);
+                    return;
+                }
+                migrationHandoff.publish(symbol, bytes, shardsNum - 1);
+
+                // non-owner shards keep empty order book (same as after adding symbol)
+                orderBooks.put(symbol, createOrderBook(orderBook.getSymbolSpec()));
+                symbolCommandsCounters.remove(symbol);
+            }
+        });
+
+        // 2. all other shards receive result (waiting for source shards if needed), target shards rebuild order books,
+        // then routing is switched by every shard
+        migrations.forEachKeyValue((symbol, sourceShard) -> {
+            final int targetShard = targetShards.get(symbol);
+            if (targetShard == shardId) {
+                final Bytes<?> bytes = migrationHandoff.take(symbol);
+                if (bytes == null) {
+                    abortedSymbols.add(symbol);
+                } else {
+                    try {
+                        orderBooks.put(symbol, IOrderBook.create(bytes, objectsPool, eventsHelper, loggingCfg));
+                    } finally {
+                        bytes.release();
+                    }
+                }
+            } else if (sourceShard != shardId && !migrationHandoff.awaitResult(symbol)) {
+                abortedSymbols.add(symbol);
+            }
+
+            if (!abortedSymbols.contains(symbol)) {
+                symbolShardsTable.move(symbol, targetShard);
+            }
+        });
+
+        if (shardId == 0) {
+            if (!abortedSymbols.isEmpty()) {
+                log.warn("Symbols migration aborted: {}", abortedSymbols);
+                abortedSymbols.forEach(migrations::removeKey);
+            }
+            if (!migrations.isEmpty()) {
+                log.info("Migrated symbols (symbol -> source shard): {}", migrations);
+            }
         }
     }
 
@@ -242,7 +411,7 @@ public final class MatchingEngineRouter implements WriteBytesMarshallable {
     // check xem matching_engine instance hiện tại có xử lý symbol này ko
     // check bằng cách xác định symbol thuộc shard nào, có giống shard của matching_engine instance này
     private boolean symbolForThisHandler(final long symbol) {
-        return (shardMask == 0) || ((symbol & shardMask) == shardId);
+        return (shardsNum == 1) || (shardingPolicy.shardOf(symbol) == shardId);
     }
 
 
@@ -252,19 +421,31 @@ public final class MatchingEngineRouter implements WriteBytesMarshallable {
         }
 
         if (orderBooks.get(spec.symbolId) == null) {
-            orderBooks.put(spec.symbolId, orderBookFactory.create(spec, objectsPool, eventsHelper, loggingCfg));
+            orderBooks.put(spec.symbolId, createOrderBook(spec));
         } else {
             log.warn("OrderBook for symbol id={} already exists! Can not add symbol: {}", spec.symbolId, spec);
         }
     }
 
 
+    private IOrderBook createOrderBook(final CoreSymbolSpecification spec) {
+        // symbol can override default order book implementation
+        final IOrderBook.OrderBookFactory factory = spec.orderBookType != null ? IOrderBook.factoryOf(spec.orderBookType) : orderBookFactory;
+        return factory.create(spec, objectsPool, eventsHelper, loggingCfg);
+    }
+
+
     private void processMatchingCommand(final OrderCommand cmd) {
 
         final IOrderBook orderBook = orderBooks.get(cmd.symbol);
         if (orderBook == null) {
             cmd.resultCode = CommandResultCode.MATCHING_INVALID_ORDER_BOOK_ID;
         } else {
+            // original price is required to publish changed level for move command
+            final long movedOrderPrice = cfgSendL2DeltasForEveryCmd && cmd.command == OrderCommandType.MOVE_ORDER
+                    ? IOrderBook.findOrderPrice(orderBook, cmd.orderId)
+                    : -1L;
+
             cmd.resultCode = IOrderBook.processCommand(orderBook, cmd);
 
             // quyết định xem có lấy order_book với độ sâu 'cfgL2RefreshDepth' sau mỗi order thành công ko
@@ -277,22 +458,69 @@ public final class MatchingEngineRouter implements WriteBytesMarshallable {
                     && cmd.resultCode == CommandResultCode.SUCCESS) {
                 cmd.marketData = orderBook.getL2MarketDataSnapshot(cfgL2RefreshDepth);
             }
+
+            // incremental mode - only changed price levels
+            if (cfgSendL2DeltasForEveryCmd
+                    && cmd.command != OrderCommandType.ORDER_BOOK_REQUEST
+                    && cmd.resultCode == CommandResultCode.SUCCESS) {
+                if (cmd.marketDataDelta == null) {
+                    cmd.marketDataDelta = new L2MarketDataDelta();
+                }
+                IOrderBook.fillL2MarketDataDelta(orderBook, cmd, movedOrderPrice, cmd.marketDataDelta);
+            }
+
+            // top of book for every successful command - risk engine should know last price of all futures contracts
+            if (cfgMarginTradingEnabled
+                    && cmd.command != OrderCommandType.ORDER_BOOK_REQUEST
+                    && cmd.resultCode == CommandResultCode.SUCCESS
+                    && orderBook.getSymbolSpec().type == SymbolType.FUTURES_CONTRACT) {
+                orderBook.fillAsks(1, topOfBook);
+                orderBook.fillBids(1, topOfBook);
+                cmd.topAskPrice = (topOfBook.askSize != 0) ? topOfBook.askPrices[0] : Long.MAX_VALUE;
+                cmd.topBidPrice = (topOfBook.bidSize != 0) ? topOfBook.bidPrices[0] : 0;
+            }
         }
     }
 
     @Override
     public void writeMarshallable(BytesOut bytes) {
-        bytes.writeInt(shardId).writeLong(shardMask);
+        writeHeader(bytes);
         binaryCommandsProcessor.writeMarshallable(bytes);
 
         // write orderBooks
         SerializationUtils.marshallIntHashMap(orderBooks, bytes);
     }
 
-    @Builder
-    @RequiredArgsConstructor
-    private static class DeserializedData {
-        private final BinaryCommandsProcessor binaryCommandsProcessor;
-        private final IntObjectHashMap<IOrderBook> orderBooks;
+    /**
+     * Snapshot is split into independent chunks (can be loaded in parallel):
+     * header (shardId, shards number, symbol shards table, binary commands processor), then groups of order books.
+     */
+    private List<WriteBytesMarshallable> snapshotChunks() {
+        final List<WriteBytesMarshallable> chunks = new ArrayList<>();
+        chunks.add(bytes -> {
+            writeHeader(bytes);
+            binaryCommandsProcessor.writeMarshallable(bytes);
+        });
+        chunks.addAll(SerializationUtils.marshallIntHashMapChunks(orderBooks, ISerializationProcessor.SNAPSHOT_MAX_CHUNKS));
+        return chunks;
+    }
+
+    private void writeHeader(final BytesOut bytes) {
+        bytes.writeInt(shardId).writeLong(shardsNum);
+        bytes.writeBoolean(symbolShardsTable != null);
+        if (symbolShardsTable != null) {
+            symbolShardsTable.writeMarshallable(bytes);
+        }
+    }
+
+    private static ObjectsPool createObjectsPool(final int capacityShift) {
+        final HashMap<Integer, Integer> objectsPoolConfig = new HashMap<>();
+        objectsPoolConfig.put(ObjectsPool.DIRECT_ORDER, (1024 * 1024) >> capacityShift);
+        objectsPoolConfig.put(ObjectsPool.DIRECT_BUCKET, (1024 * 64) >> capacityShift);
+        objectsPoolConfig.put(ObjectsPool.ART_NODE_4, (1024 * 32) >> capacityShift);
+        objectsPoolConfig.put(ObjectsPool.ART_NODE_16, (1024 * 16) >> capacityShift);
+        objectsPoolConfig.put(ObjectsPool.ART_NODE_48, (1024 * 8) >> capacityShift);
+        objectsPoolConfig.put(ObjectsPool.ART_NODE_256, (1024 * 4) >> capacityShift);
+        return new ObjectsPool(objectsPoolConfig);
     }
 }
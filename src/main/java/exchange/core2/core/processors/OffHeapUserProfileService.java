@@ -0,0 +1,792 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors;
+
+import exchange.core2.core.common.UserProfile;
+import exchange.core2.core.common.UserStatus;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.utils.SerializationUtils;
+import lombok.extern.slf4j.Slf4j;
+import net.openhft.chronicle.bytes.BytesIn;
+import net.openhft.chronicle.bytes.BytesOut;
+import net.openhft.chronicle.bytes.BytesStore;
+import net.openhft.chronicle.bytes.PointerBytesStore;
+import net.openhft.chronicle.bytes.WriteBytesMarshallable;
+import org.agrona.BitUtil;
+import org.agrona.BufferUtil;
+import org.agrona.collections.MutableLong;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.eclipse.collections.api.block.procedure.primitive.IntLongProcedure;
+import org.eclipse.collections.impl.map.mutable.primitive.LongObjectHashMap;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * User profiles store for large number of accounts.
+ * <p>
+ * Profiles are kept in off-heap open-addressed table (linear probing, keyed by uid) split into fixed-size segments.
+ * Each slot has space for first N currency balances, other balances are stored in chained overflow blocks (secondary off-heap region).
+ * <p>
+ * Risk engine works with regular UserProfile objects: profile is loaded to heap when accessed
+ * and written back into its slot by {@link #releaseProfiles()} when number of profiles on heap exceeds the limit (oldest loaded first).
+ * Profiles having margin positions are never moved out of heap (position records are referenced by risk engine).
+ * <p>
+ * Snapshot is a bulk memory copy of table segments and overflow region, plus profiles kept on heap.
+ * State hash is the same as for {@link UserProfileService} containing the same profiles.
+ * <p>
+ * Risk engine thread only.
+ */
+@Slf4j
+public final class OffHeapUserProfileService implements IUserProfileService {
+
+    static final int NIL = -1;
+
+    // slot layout
+    private static final int UID_OFFSET = 0;
+    private static final int ADJUSTMENTS_COUNTER_OFFSET = 8;
+    private static final int FLAGS_OFFSET = 16;
+    private static final int ACCOUNTS_NUM_OFFSET = 20;
+    // first overflow block (NIL - none)
+    private static final int OVERFLOW_OFFSET = 24;
+    // int[N] currencies, then long[N] balances
+    private static final int CURRENCIES_OFFSET = 32;
+
+    private static final int FLAG_USED = 1;
+    private static final int FLAG_SUSPENDED = 2;
+    // profile is loaded to heap - slot content is outdated
+    private static final int FLAG_ON_HEAP = 4;
+
+    // overflow block layout
+    private static final int OVERFLOW_BLOCK_ACCOUNTS = 8;
+    private static final int BLOCK_NEXT_OFFSET = 0;
+    private static final int BLOCK_CURRENCIES_OFFSET = 4;
+    private static final int BLOCK_BALANCES_OFFSET = 40;
+    static final int OVERFLOW_BLOCK_SIZE = BLOCK_BALANCES_OFFSET + OVERFLOW_BLOCK_ACCOUNTS * 8;
+
+    private static final int SEGMENT_SLOTS_MAX = 1 << 16;
+    private static final int MIN_CAPACITY = 16;
+    private static final int INITIAL_OVERFLOW_BLOCKS = 64;
+
+    // max number of profiles checked by single releaseProfiles call
+    private static final int RELEASE_ATTEMPTS_LIMIT = 32;
+
+    private static final byte CHUNK_TABLE_HEADER = 0;
+    private static final byte CHUNK_TABLE_SEGMENTS = 1;
+    private static final byte CHUNK_HEAP_PROFILES = 2;
+
+    private final int inlineAccounts;
+    private final int balancesOffset;
+    private final int slotSize;
+    private final int maxProfilesOnHeap;
+
+    // table
+    private int capacity;
+    private int mask;
+    private int segmentBits;
+    private int segmentSlotsMask;
+    private ByteBuffer[] segmentBuffers;
+    private UnsafeBuffer[] segments;
+    private int size = 0;
+
+    private final OverflowRegion overflow = new OverflowRegion(INITIAL_OVERFLOW_BLOCKS);
+
+    // uid -> profiles loaded to heap
+    private final LongObjectHashMap<UserProfile> profilesOnHeap = new LongObjectHashMap<>();
+
+    // uids in order of loading to heap (ring buffer, can contain outdated entries)
+    private long[] loadQueue = new long[1024];
+    private int loadQueueHead = 0;
+    private int loadQueueSize = 0;
+
+    private final AccountsWriter accountsWriter = new AccountsWriter();
+
+    /**
+     * @param inlineAccounts    - number of currency balances stored in the slot (other balances go to overflow region)
+     * @param expectedUsers     - initial table capacity (table grows when 70% full)
+     * @param maxProfilesOnHeap - profiles without positions are moved out of heap when this number is exceeded
+     */
+    public OffHeapUserProfileService(final int inlineAccounts, final int expectedUsers, final int maxProfilesOnHeap) {
+        if (inlineAccounts < 1) {
+            throw new IllegalArgumentException("At least one inline account required");
+        }
+        this.inlineAccounts = inlineAccounts;
+        this.balancesOffset = CURRENCIES_OFFSET + BitUtil.align(inlineAccounts * 4, 8);
+        this.slotSize = balancesOffset + inlineAccounts * 8;
+        this.maxProfilesOnHeap = maxProfilesOnHeap;
+        allocateTable(BitUtil.findNextPositivePowerOfTwo(Math.max(MIN_CAPACITY, (int) (expectedUsers / 0.7))));
+    }
+
+    @Override
+    public UserProfile getUserProfile(final long uid) {
+        final UserProfile userProfile = profilesOnHeap.get(uid);
+        if (userProfile != null) {
+            return userProfile;
+        }
+        final int slot = findSlot(uid);
+        return slot != NIL ? loadToHeap(slot) : null;
+    }
+
+    @Override
+    public UserProfile getUserProfileOrAddSuspended(final long uid) {
+        final UserProfile userProfile = getUserProfile(uid);
+        if (userProfile != null) {
+            return userProfile;
+        }
+        return loadToHeap(insertSlot(uid, FLAG_USED | FLAG_SUSPENDED));
+    }
+
+    @Override
+    public CommandResultCode balanceAdjustment(final long uid, final int currency, final long amount, final long fundingTransactionId) {
+        final UserProfile userProfile = getUserProfile(uid);
+        if (userProfile == null) {
+            log.warn("User profile {} not found", uid);
+            return CommandResultCode.AUTH_INVALID_USER;
+        }
+        return UserProfileService.applyBalanceAdjustment(userProfile, currency, amount, fundingTransactionId);
+    }
+
+    @Override
+    public boolean addEmptyUserProfile(final long uid) {
+        if (profilesOnHeap.containsKey(uid) || findSlot(uid) != NIL) {
+            log.debug("Can not add user, already exists: {}", uid);
+            return false;
+        }
+        // new profile is written directly into the table
+        insertSlot(uid, FLAG_USED);
+        return true;
+    }
+
+    @Override
+    public CommandResultCode suspendUserProfile(final long uid) {
+        final UserProfile userProfile = getUserProfile(uid);
+        final CommandResultCode resultCode = UserProfileService.checkSuspendable(userProfile);
+        if (resultCode == CommandResultCode.SUCCESS) {
+            log.debug("Suspended user profile: {}", userProfile);
+            profilesOnHeap.remove(uid);
+            removeSlot(findSlot(uid));
+        }
+        return resultCode;
+    }
+
+    @Override
+    public CommandResultCode resumeUserProfile(final long uid) {
+        final UserProfile userProfile = getUserProfile(uid);
+        if (userProfile == null) {
+            // create new empty user profile
+            insertSlot(uid, FLAG_USED);
+            return CommandResultCode.SUCCESS;
+        } else if (userProfile.userStatus != UserStatus.SUSPENDED) {
+            return CommandResultCode.USER_MGMT_USER_NOT_SUSPENDED;
+        } else {
+            // resume existing suspended profile (can contain non empty positions or accounts)
+            userProfile.userStatus = UserStatus.ACTIVE;
+            log.debug("Resumed user profile: {}", userProfile);
+            return CommandResultCode.SUCCESS;
+        }
+    }
+
+    @Override
+    public void forEachUserProfile(final Consumer<UserProfile> consumer) {
+        profilesOnHeap.forEachValue(consumer::accept);
+        for (int slot = 0; slot < capacity; slot++) {
+            if ((getInt(slot, FLAGS_OFFSET) & (FLAG_USED | FLAG_ON_HEAP)) == FLAG_USED) {
+                consumer.accept(readProfile(slot));
+            }
+        }
+    }
+
+    @Override
+    public void forEachUserProfileWithPositions(final Consumer<UserProfile> consumer) {
+        profilesOnHeap.forEachValue(userProfile -> {
+            if (!userProfile.positions.isEmpty()) {
+                consumer.accept(userProfile);
+            }
+        });
+    }
+
+    @Override
+    public void releaseProfiles() {
+        for (int i = 0; i < RELEASE_ATTEMPTS_LIMIT && loadQueueSize != 0 && profilesOnHeap.size() > maxProfilesOnHeap; i++) {
+            final long uid = pollLoadQueue();
+            final UserProfile userProfile = profilesOnHeap.get(uid);
+            if (userProfile == null) {
+                // already released or suspended
+                continue;
+            }
+            if (!userProfile.positions.isEmpty()) {
+                // referenced by risk engine - keep on heap
+                offerLoadQueue(uid);
+                continue;
+            }
+            final int slot = findSlot(uid);
+            if (slot == NIL) {
+                throw new IllegalStateException("Slot not found for profile " + uid);
+            }
+            writeProfile(slot, userProfile);
+            profilesOnHeap.remove(uid);
+        }
+    }
+
+    /**
+     * @return number of user profiles
+     */
+    public int getUserProfilesNum() {
+        return size;
+    }
+
+    /**
+     * @return number of user profiles currently loaded to heap
+     */
+    public int getProfilesOnHeapNum() {
+        return profilesOnHeap.size();
+    }
+
+    /**
+     * @return off-heap memory allocated for table and overflow region (bytes)
+     */
+    public long getOffHeapMemorySize() {
+        return (long) capacity * slotSize + (long) overflow.capacity * OVERFLOW_BLOCK_SIZE;
+    }
+
+    /**
+     * Snapshot chunks: table header with overflow region, ranges of table segments (raw memory),
+     * profiles loaded to heap (slots of these profiles are outdated and restored as is).
+     */
+    @Override
+    public List<WriteBytesMarshallable> snapshotChunks(final int maxChunks) {
+
+        final List<WriteBytesMarshallable> chunks = new ArrayList<>();
+
+        chunks.add(bytes -> {
+            bytes.writeByte(CHUNK_TABLE_HEADER);
+            bytes.writeInt(inlineAccounts);
+            bytes.writeInt(capacity);
+            bytes.writeInt(size);
+            bytes.writeInt(overflow.capacity);
+            bytes.writeInt(overflow.allocated);
+            bytes.writeInt(overflow.used);
+            bytes.writeInt(overflow.freeHead);
+            writeMemory(bytes, overflow.buffer, overflow.allocated * OVERFLOW_BLOCK_SIZE);
+        });
+
+        final int segmentsNum = segments.length;
+        final int segmentsPerChunk = Math.max(1, (segmentsNum + maxChunks - 1) / maxChunks);
+        final int segmentLength = segmentLength();
+        for (int from = 0; from < segmentsNum; from += segmentsPerChunk) {
+            final int start = from;
+            final int end = Math.min(from + segmentsPerChunk, segmentsNum);
+            chunks.add(bytes -> {
+                bytes.writeByte(CHUNK_TABLE_SEGMENTS);
+                bytes.writeInt(capacity);
+                bytes.writeInt(start);
+                bytes.writeInt(end - start);
+                for (int i = start; i < end; i++) {
+                    writeMemory(bytes, segments[i], segmentLength);
+                }
+            });
+        }
+
+        chunks.add(bytes -> {
+            bytes.writeByte(CHUNK_HEAP_PROFILES);
+            SerializationUtils.marshallLongHashMap(profilesOnHeap, bytes);
+        });
+
+        return chunks;
+    }
+
+    @Override
+    public Object readSnapshotChunk(final BytesIn bytes) {
+
+        final byte chunkType = bytes.readByte();
+        switch (chunkType) {
+            case CHUNK_TABLE_HEADER: {
+                final TableHeader header = new TableHeader();
+                header.inlineAccounts = bytes.readInt();
+                header.capacity = bytes.readInt();
+                header.size = bytes.readInt();
+                header.overflowCapacity = bytes.readInt();
+                header.overflowAllocated = bytes.readInt();
+                header.overflowUsed = bytes.readInt();
+                header.overflowFreeHead = bytes.readInt();
+                header.overflowBuffer = ByteBuffer.allocateDirect(header.overflowCapacity * OVERFLOW_BLOCK_SIZE);
+                readMemory(bytes, new UnsafeBuffer(header.overflowBuffer), header.overflowAllocated * OVERFLOW_BLOCK_SIZE);
+                return header;
+            }
+
+            case CHUNK_TABLE_SEGMENTS: {
+                final int tableCapacity = bytes.readInt();
+                final int firstSegment = bytes.readInt();
+                final int segmentLength = Math.min(tableCapacity, SEGMENT_SLOTS_MAX) * slotSize;
+                final ByteBuffer[] buffers = new ByteBuffer[bytes.readInt()];
+                for (int i = 0; i < buffers.length; i++) {
+                    buffers[i] = ByteBuffer.allocateDirect(segmentLength);
+                    readMemory(bytes, new UnsafeBuffer(buffers[i]), segmentLength);
+                }
+                return new TableSegments(firstSegment, buffers);
+            }
+
+            case CHUNK_HEAP_PROFILES:
+                return SerializationUtils.readLongHashMap(bytes, UserProfile::new);
+
+            default:
+                throw new IllegalStateException("Unknown profiles snapshot chunk type " + chunkType);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void loadSnapshotChunk(final Object chunk) {
+
+        if (chunk instanceof TableHeader) {
+            final TableHeader header = (TableHeader) chunk;
+            if (header.inlineAccounts != inlineAccounts) {
+                throw new IllegalStateException("Snapshot has " + header.inlineAccounts + " inline accounts per slot, configured " + inlineAccounts);
+            }
+            freeTable();
+            initTableLayout(header.capacity);
+            size = header.size;
+            overflow.replace(header.overflowBuffer, header.overflowCapacity, header.overflowAllocated, header.overflowUsed, header.overflowFreeHead);
+
+        } else if (chunk instanceof TableSegments) {
+            final TableSegments tableSegments = (TableSegments) chunk;
+            for (int i = 0; i < tableSegments.buffers.length; i++) {
+                final int segment = tableSegments.firstSegment + i;
+                segmentBuffers[segment] = tableSegments.buffers[i];
+                segments[segment] = new UnsafeBuffer(tableSegments.buffers[i]);
+            }
+
+        } else {
+            final LongObjectHashMap<UserProfile> profiles = (LongObjectHashMap<UserProfile>) chunk;
+            profiles.forEachKeyValue((uid, userProfile) -> {
+                profilesOnHeap.put(uid, userProfile);
+                offerLoadQueue(uid);
+            });
+        }
+    }
+
+    @Override
+    public void addUserProfiles(final LongObjectHashMap<UserProfile> userProfiles) {
+        userProfiles.forEachValue(userProfile -> {
+            final int slot = insertSlot(userProfile.uid, FLAG_USED);
+            writeProfile(slot, userProfile);
+            if (!userProfile.positions.isEmpty()) {
+                // referenced by risk engine - keep on heap
+                putInt(slot, FLAGS_OFFSET, getInt(slot, FLAGS_OFFSET) | FLAG_ON_HEAP);
+                profilesOnHeap.put(userProfile.uid, userProfile);
+                offerLoadQueue(userProfile.uid);
+            }
+        });
+    }
+
+    @Override
+    public void reset() {
+        freeTable();
+        allocateTable(capacity);
+        size = 0;
+        overflow.clear();
+        profilesOnHeap.clear();
+        loadQueueHead = 0;
+        loadQueueSize = 0;
+    }
+
+    /**
+     * Same format as UserProfileService (hash map of profiles)
+     */
+    @Override
+    public void writeMarshallable(final BytesOut bytes) {
+        bytes.writeInt(size);
+        forEachUserProfile(userProfile -> {
+            bytes.writeLong(userProfile.uid);
+            userProfile.writeMarshallable(bytes);
+        });
+    }
+
+    /**
+     * Same as HashingUtils.stateHash(userProfiles) of UserProfileService
+     */
+    @Override
+    public int stateHash() {
+        final MutableLong mutableLong = new MutableLong();
+        forEachUserProfile(userProfile -> mutableLong.addAndGet(Objects.hash(userProfile.uid, userProfile.stateHash())));
+        return Long.hashCode(mutableLong.value);
+    }
+
+    private UserProfile loadToHeap(final int slot) {
+        final UserProfile userProfile = readProfile(slot);
+        putInt(slot, FLAGS_OFFSET, getInt(slot, FLAGS_OFFSET) | FLAG_ON_HEAP);
+        profilesOnHeap.put(userProfile.uid, userProfile);
+        offerLoadQueue(userProfile.uid);
+        return userProfile;
+    }
+
+    private UserProfile readProfile(final int slot) {
+
+        final int flags = getInt(slot, FLAGS_OFFSET);
+        final UserProfile userProfile = new UserProfile(
+                getLong(slot, UID_OFFSET),
+                (flags & FLAG_SUSPENDED) != 0 ? UserStatus.SUSPENDED : UserStatus.ACTIVE);
+
+        userProfile.adjustmentsCounter = getLong(slot, ADJUSTMENTS_COUNTER_OFFSET);
+
+        final int accountsNum = getInt(slot, ACCOUNTS_NUM_OFFSET);
+        final int inlineNum = Math.min(accountsNum, inlineAccounts);
+        for (int i = 0; i < inlineNum; i++) {
+            userProfile.accounts.put(getInt(slot, CURRENCIES_OFFSET + i * 4), getLong(slot, balancesOffset + i * 8));
+        }
+
+        int block = getInt(slot, OVERFLOW_OFFSET);
+        for (int i = inlineNum; i < accountsNum; block = overflow.next(block)) {
+            final UnsafeBuffer b = overflow.buffer;
+            final int o = overflow.offset(block);
+            for (int j = 0; j < OVERFLOW_BLOCK_ACCOUNTS && i < accountsNum; j++, i++) {
+                userProfile.accounts.put(b.getInt(o + BLOCK_CURRENCIES_OFFSET + j * 4), b.getLong(o + BLOCK_BALANCES_OFFSET + j * 8));
+            }
+        }
+        return userProfile;
+    }
+
+    private void writeProfile(final int slot, final UserProfile userProfile) {
+
+        putInt(slot, FLAGS_OFFSET, userProfile.userStatus == UserStatus.SUSPENDED ? FLAG_USED | FLAG_SUSPENDED : FLAG_USED);
+        putLong(slot, ADJUSTMENTS_COUNTER_OFFSET, userProfile.adjustmentsCounter);
+        putInt(slot, ACCOUNTS_NUM_OFFSET, userProfile.accounts.size());
+
+        overflow.freeChain(getInt(slot, OVERFLOW_OFFSET));
+        putInt(slot, OVERFLOW_OFFSET, NIL);
+
+        accountsWriter.slot = slot;
+        accountsWriter.index = 0;
+        accountsWriter.lastBlock = NIL;
+        userProfile.accounts.forEachKeyValue(accountsWriter);
+    }
+
+    private int findSlot(final long uid) {
+        int slot = hash(uid) & mask;
+        while ((getInt(slot, FLAGS_OFFSET) & FLAG_USED) != 0) {
+            if (getLong(slot, UID_OFFSET) == uid) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NIL;
+    }
+
+    private int insertSlot(final long uid, final int flags) {
+        if ((size + 1) * 10L > capacity * 7L) {
+            growTable();
+        }
+        final int slot = findFreeSlot(uid);
+        putLong(slot, UID_OFFSET, uid);
+        putLong(slot, ADJUSTMENTS_COUNTER_OFFSET, 0L);
+        putInt(slot, FLAGS_OFFSET, flags);
+        putInt(slot, ACCOUNTS_NUM_OFFSET, 0);
+        putInt(slot, OVERFLOW_OFFSET, NIL);
+        size++;
+        return slot;
+    }
+
+    private int findFreeSlot(final long uid) {
+        int slot = hash(uid) & mask;
+        while ((getInt(slot, FLAGS_OFFSET) & FLAG_USED) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Backward shift deletion (no tombstones): following slots of the same cluster are moved to the hole if allowed by their home position
+     */
+    private void removeSlot(int hole) {
+
+        overflow.freeChain(getInt(hole, OVERFLOW_OFFSET));
+
+        int slot = (hole + 1) & mask;
+        while ((getInt(slot, FLAGS_OFFSET) & FLAG_USED) != 0) {
+            final int home = hash(getLong(slot, UID_OFFSET)) & mask;
+            // move if home position is not in the cyclic range (hole, slot]
+            if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+                copySlot(slot, segments[hole >>> segmentBits], (hole & segmentSlotsMask) * slotSize);
+                hole = slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        segments[hole >>> segmentBits].setMemory((hole & segmentSlotsMask) * slotSize, slotSize, (byte) 0);
+        size--;
+    }
+
+    private void growTable() {
+
+        final UnsafeBuffer[] oldSegments = segments;
+        final ByteBuffer[] oldSegmentBuffers = segmentBuffers;
+        final int oldCapacity = capacity;
+        final int oldSegmentBits = segmentBits;
+        final int oldSegmentSlotsMask = segmentSlotsMask;
+
+        allocateTable(oldCapacity << 1);
+
+        for (int oldSlot = 0; oldSlot < oldCapacity; oldSlot++) {
+            final UnsafeBuffer oldSegment = oldSegments[oldSlot >>> oldSegmentBits];
+            final int oldOffset = (oldSlot & oldSegmentSlotsMask) * slotSize;
+            if ((oldSegment.getInt(oldOffset + FLAGS_OFFSET) & FLAG_USED) != 0) {
+                final int slot = findFreeSlot(oldSegment.getLong(oldOffset + UID_OFFSET));
+                segments[slot >>> segmentBits].putBytes((slot & segmentSlotsMask) * slotSize, oldSegment, oldOffset, slotSize);
+            }
+        }
+
+        for (ByteBuffer buffer : oldSegmentBuffers) {
+            BufferUtil.free(buffer);
+        }
+        log.debug("Profiles table capacity increased to {} ({} profiles)", capacity, size);
+    }
+
+    private void allocateTable(final int newCapacity) {
+        initTableLayout(newCapacity);
+        for (int i = 0; i < segments.length; i++) {
+            segmentBuffers[i] = ByteBuffer.allocateDirect(segmentLength());
+            segments[i] = new UnsafeBuffer(segmentBuffers[i]);
+        }
+    }
+
+    private void initTableLayout(final int newCapacity) {
+        final int segmentSlots = Math.min(newCapacity, SEGMENT_SLOTS_MAX);
+        this.capacity = newCapacity;
+        this.mask = newCapacity - 1;
+        this.segmentBits = Integer.numberOfTrailingZeros(segmentSlots);
+        this.segmentSlotsMask = segmentSlots - 1;
+        this.segmentBuffers = new ByteBuffer[newCapacity / segmentSlots];
+        this.segments = new UnsafeBuffer[newCapacity / segmentSlots];
+    }
+
+    private void freeTable() {
+        for (ByteBuffer buffer : segmentBuffers) {
+            if (buffer != null) {
+                BufferUtil.free(buffer);
+            }
+        }
+    }
+
+    private int segmentLength() {
+        return (segmentSlotsMask + 1) * slotSize;
+    }
+
+    private void copySlot(final int slot, final UnsafeBuffer dst, final int dstOffset) {
+        dst.putBytes(dstOffset, segments[slot >>> segmentBits], (slot & segmentSlotsMask) * slotSize, slotSize);
+    }
+
+    private long getLong(final int slot, final int field) {
+        return segments[slot >>> segmentBits].getLong((slot & segmentSlotsMask) * slotSize + field);
+    }
+
+    private int getInt(final int slot, final int field) {
+        return segments[slot >>> segmentBits].getInt((slot & segmentSlotsMask) * slotSize + field);
+    }
+
+    private void putLong(final int slot, final int field, final long value) {
+        segments[slot >>> segmentBits].putLong((slot & segmentSlotsMask) * slotSize + field, value);
+    }
+
+    private void putInt(final int slot, final int field, final int value) {
+        segments[slot >>> segmentBits].putInt((slot & segmentSlotsMask) * slotSize + field, value);
+    }
+
+    /**
+     * Bulk copy of off-heap memory into bytes (memcpy when bytes are direct)
+     */
+    private static void writeMemory(final BytesOut bytes, final UnsafeBuffer buffer, final int length) {
+        final PointerBytesStore store = BytesStore.wrap(buffer.addressOffset(), length);
+        bytes.write(store, 0L, length);
+    }
+
+    private static void readMemory(final BytesIn bytes, final UnsafeBuffer buffer, final int length) {
+        final PointerBytesStore store = BytesStore.wrap(buffer.addressOffset(), length);
+        store.write(0L, bytes, bytes.readPosition(), length);
+        bytes.readSkip(length);
+    }
+
+    private static int hash(final long uid) {
+        final long h = uid * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private void offerLoadQueue(final long uid) {
+        if (loadQueueSize == loadQueue.length) {
+            final long[] newQueue = new long[loadQueue.length << 1];
+            for (int i = 0; i < loadQueueSize; i++) {
+                newQueue[i] = loadQueue[(loadQueueHead + i) & (loadQueue.length - 1)];
+            }
+            loadQueue = newQueue;
+            loadQueueHead = 0;
+        }
+        loadQueue[(loadQueueHead + loadQueueSize) & (loadQueue.length - 1)] = uid;
+        loadQueueSize++;
+    }
+
+    private long pollLoadQueue() {
+        final long uid = loadQueue[loadQueueHead];
+        loadQueueHead = (loadQueueHead + 1) & (loadQueue.length - 1);
+        loadQueueSize--;
+        return uid;
+    }
+
+    /**
+     * Writes balances into slot, then into newly allocated overflow blocks
+     */
+    private final class AccountsWriter implements IntLongProcedure {
+
+        // procedure is never serialized, declared only because IntLongProcedure is Serializable
+        private static final long serialVersionUID = 1L;
+
+        private int slot;
+        private int index;
+        private int lastBlock;
+
+        @Override
+        public void value(final int currency, final long balance) {
+            if (index < inlineAccounts) {
+                putInt(slot, CURRENCIES_OFFSET + index * 4, currency);
+                putLong(slot, balancesOffset + index * 8, balance);
+            } else {
+                final int j = (index - inlineAccounts) % OVERFLOW_BLOCK_ACCOUNTS;
+                if (j == 0) {
+                    final int block = overflow.allocate();
+                    if (lastBlock == NIL) {
+                        putInt(slot, OVERFLOW_OFFSET, block);
+                    } else {
+                        overflow.buffer.putInt(overflow.offset(lastBlock) + BLOCK_NEXT_OFFSET, block);
+                    }
+                    lastBlock = block;
+                }
+                final UnsafeBuffer b = overflow.buffer;
+                final int o = overflow.offset(lastBlock);
+                b.putInt(o + BLOCK_CURRENCIES_OFFSET + j * 4, currency);
+                b.putLong(o + BLOCK_BALANCES_OFFSET + j * 8, balance);
+            }
+            index++;
+        }
+    }
+
+    /**
+     * Overflow blocks with free-list (next block link is also free-list link)
+     */
+    private static final class OverflowRegion {
+
+        private ByteBuffer byteBuffer;
+        private UnsafeBuffer buffer;
+
+        private int capacity;
+        // blocks ever allocated (next never used block)
+        private int allocated = 0;
+        // blocks in use
+        private int used = 0;
+        private int freeHead = NIL;
+
+        private OverflowRegion(final int initialCapacity) {
+            this.capacity = initialCapacity;
+            this.byteBuffer = ByteBuffer.allocateDirect(initialCapacity * OVERFLOW_BLOCK_SIZE);
+            this.buffer = new UnsafeBuffer(byteBuffer);
+        }
+
+        private int offset(final int block) {
+            return block * OVERFLOW_BLOCK_SIZE;
+        }
+
+        private int next(final int block) {
+            return buffer.getInt(offset(block) + BLOCK_NEXT_OFFSET);
+        }
+
+        private int allocate() {
+            used++;
+            final int block;
+            if (freeHead != NIL) {
+                block = freeHead;
+                freeHead = next(block);
+            } else {
+                if (allocated == capacity) {
+                    grow();
+                }
+                block = allocated++;
+            }
+            buffer.putInt(offset(block) + BLOCK_NEXT_OFFSET, NIL);
+            return block;
+        }
+
+        private void freeChain(int block) {
+            while (block != NIL) {
+                final int next = next(block);
+                buffer.putInt(offset(block) + BLOCK_NEXT_OFFSET, freeHead);
+                freeHead = block;
+                used--;
+                block = next;
+            }
+        }
+
+        private void grow() {
+            final long newCapacity = (long) capacity * 2;
+            if (newCapacity * OVERFLOW_BLOCK_SIZE > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Overflow region capacity exceeded: " + capacity + " blocks");
+            }
+            final ByteBuffer newByteBuffer = ByteBuffer.allocateDirect((int) newCapacity * OVERFLOW_BLOCK_SIZE);
+            final UnsafeBuffer newBuffer = new UnsafeBuffer(newByteBuffer);
+            newBuffer.putBytes(0, buffer, 0, allocated * OVERFLOW_BLOCK_SIZE);
+            BufferUtil.free(byteBuffer);
+            byteBuffer = newByteBuffer;
+            buffer = newBuffer;
+            capacity = (int) newCapacity;
+        }
+
+        private void replace(final ByteBuffer newByteBuffer, final int capacity, final int allocated, final int used, final int freeHead) {
+            BufferUtil.free(byteBuffer);
+            this.byteBuffer = newByteBuffer;
+            this.buffer = new UnsafeBuffer(newByteBuffer);
+            this.capacity = capacity;
+            this.allocated = allocated;
+            this.used = used;
+            this.freeHead = freeHead;
+        }
+
+        private void clear() {
+            buffer.setMemory(0, allocated * OVERFLOW_BLOCK_SIZE, (byte) 0);
+            allocated = 0;
+            used = 0;
+            freeHead = NIL;
+        }
+    }
+
+    private static final class TableHeader {
+        private int inlineAccounts;
+        private int capacity;
+        private int size;
+        private int overflowCapacity;
+        private int overflowAllocated;
+        private int overflowUsed;
+        private int overflowFreeHead;
+        private ByteBuffer overflowBuffer;
+    }
+
+    private static final class TableSegments {
+        private final int firstSegment;
+        private final ByteBuffer[] buffers;
+
+        private TableSegments(int firstSegment, ByteBuffer[] buffers) {
+            this.firstSegment = firstSegment;
+            this.buffers = buffers;
+        }
+    }
+}
@@ -28,9 +28,11 @@ import exchange.core2.core.common.cmd.OrderCommandType;
 import exchange.core2.core.common.config.ExchangeConfiguration;
 import exchange.core2.core.common.config.InitialStateConfiguration;
 import exchange.core2.core.common.config.LoggingConfiguration;
+import exchange.core2.core.common.config.MarginMonitorConfiguration;
 import exchange.core2.core.common.config.OrdersProcessingConfiguration;
 import exchange.core2.core.processors.journaling.DiskSerializationProcessorConfiguration;
 import exchange.core2.core.processors.journaling.ISerializationProcessor;
+import exchange.core2.core.processors.sharding.IShardingPolicy;
 import exchange.core2.core.utils.CoreArithmeticUtils;
 import exchange.core2.core.utils.SerializationUtils;
 import exchange.core2.core.utils.UnsafeUtils;
@@ -44,12 +46,16 @@ import net.openhft.chronicle.bytes.BytesOut;
 import net.openhft.chronicle.bytes.WriteBytesMarshallable;
 import org.eclipse.collections.impl.map.mutable.primitive.IntLongHashMap;
 import org.eclipse.collections.impl.map.mutable.primitive.IntObjectHashMap;
+import org.eclipse.collections.impl.map.mutable.primitive.LongObjectHashMap;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 
@@ -65,7 +71,7 @@ public final class RiskEngine implements WriteBytesMarshallable {
 
     // state
     private final SymbolSpecificationProvider symbolSpecificationProvider;
-    private final UserProfileService userProfileService;
+    private final IUserProfileService userProfileService;
     private final BinaryCommandsProcessor binaryCommandsProcessor;
     private final IntObjectHashMap<LastPriceCacheRecord> lastPriceCache;
     private final IntLongHashMap fees;
@@ -73,9 +79,17 @@ public final class RiskEngine implements WriteBytesMarshallable {
     private final IntLongHashMap suspends;
     private final ObjectsPool objectsPool;
 
-    // sharding by symbolId
+    // symbol -> uid -> profiles holding position in this symbol (derived from positions, not serialized)
+    // used for re-calculating free margin of holders when last price changes
+    private final IntObjectHashMap<LongObjectHashMap<UserProfile>> positionHolders = new IntObjectHashMap<>();
+
+    // accounts ordered by margin ratio (null - disabled)
+    private final MarginMonitor marginMonitor;
+
+    // sharding by uid
     private final int shardId;
-    private final long shardMask;
+    private final int shardsNum;
+    private final IShardingPolicy shardingPolicy;
 
     private final String exchangeId; // TODO validate
     private final Path folder;
@@ -88,13 +102,13 @@ public final class RiskEngine implements WriteBytesMarshallable {
     private final boolean logDebug;
 
     public RiskEngine(final int shardId,
-                      final long numShards,
+                      final int numShards,
                       final ISerializationProcessor serializationProcessor,
                       final SharedPool sharedPool,
                       final ExchangeConfiguration exchangeConfiguration) {
 
-        if (Long.bitCount(numShards) != 1) {
-            throw new IllegalArgumentException("Invalid number of shards " + numShards + " - must be power of 2");
+        if (numShards <= 0) {
+            throw new IllegalArgumentException("Invalid number of shards " + numShards);
         }
 
         final InitialStateConfiguration initStateCfg = exchangeConfiguration.getInitStateCfg();
@@ -103,7 +117,8 @@ public final class RiskEngine implements WriteBytesMarshallable {
         this.folder = Paths.get(DiskSerializationProcessorConfiguration.DEFAULT_FOLDER);
 
         this.shardId = shardId;
-        this.shardMask = numShards - 1;
+        this.shardsNum = numShards;
+        this.shardingPolicy = exchangeConfiguration.getPerformanceCfg().getUidShardingPolicyFactory().create(numShards);
         this.serializationProcessor = serializationProcessor;
 
         // initialize object pools // TODO move to perf config
@@ -113,46 +128,51 @@ public final class RiskEngine implements WriteBytesMarshallable {
 
         this.logDebug = exchangeConfiguration.getLoggingCfg().getLoggingLevels().contains(LoggingConfiguration.LoggingLevel.LOGGING_RISK_DEBUG);
 
+        // user profiles store (profiles are loaded from snapshot chunks)
+        this.userProfileService = exchangeConfiguration.getPerformanceCfg().getUserProfileServiceFactory().create();
+
         if (ISerializationProcessor.canLoadFromSnapshot(serializationProcessor, initStateCfg, shardId, MODULE_RE)) {
 
             // TODO refactor, change to creator (simpler init)`
-            final State state = serializationProcessor.loadData(
+            // chunks are loaded concurrently: header and ranges of user profiles
+            final List<Object> chunks = serializationProcessor.<Object>loadDataChunks(
                     initStateCfg.getSnapshotId(),
                     MODULE_RE,
                     shardId,
-                    bytesIn -> {
+                    (chunkIdx, bytesIn) -> {
+                        if (chunkIdx != 0) {
+                            return userProfileService.readSnapshotChunk(bytesIn);
+                        }
+
                         if (shardId != bytesIn.readInt()) {
                             throw new IllegalStateException("wrong shardId");
                         }
-                        if (shardMask != bytesIn.readLong()) {
-                            throw new IllegalStateException("wrong shardMask");
+                        if (shardsNum != bytesIn.readLong()) {
+                            throw new IllegalStateException("wrong shards number");
                         }
                         final SymbolSpecificationProvider symbolSpecificationProvider = new SymbolSpecificationProvider(bytesIn);
-                        final UserProfileService userProfileService = new UserProfileService(bytesIn);
-                        final BinaryCommandsProcessor binaryCommandsProcessor = new BinaryCommandsProcessor(
-                                this::handleBinaryMessage,
-                                this::handleReportQuery,
-                                sharedPool,
-                                exchangeConfiguration.getReportsQueriesCfg(),
-                                bytesIn,
-                                shardId);
-                        final IntObjectHashMap<LastPriceCacheRecord> lastPriceCache = SerializationUtils.readIntHashMap(bytesIn, LastPriceCacheRecord::new);
-                        final IntLongHashMap fees = SerializationUtils.readIntLongHashMap(bytesIn);
-                        final IntLongHashMap adjustments = SerializationUtils.readIntLongHashMap(bytesIn);
-                        final IntLongHashMap suspends = SerializationUtils.readIntLongHashMap(bytesIn);
-
-                        return new State(
-                                symbolSpecificationProvider,
-                                userProfileService,
-                                binaryCommandsProcessor,
-                                lastPriceCache,
-                                fees,
-                                adjustments,
-                                suspends);
+                        return readState(bytesIn, symbolSpecificationProvider, null, sharedPool, exchangeConfiguration);
+                    },
+                    bytesIn -> {
+                        // previous format: shard mask, user profiles are stored between symbols and binary commands processor
+                        if (shardId != bytesIn.readInt()) {
+                            throw new IllegalStateException("wrong shardId");
+                        }
+                        ISerializationProcessor.checkPreviousFormatShards(bytesIn.readLong(), shardsNum, shardingPolicy);
+                        final SymbolSpecificationProvider symbolSpecificationProvider = new SymbolSpecificationProvider(bytesIn);
+                        final LongObjectHashMap<UserProfile> userProfiles = SerializationUtils.readLongHashMap(bytesIn, UserProfile::new);
+                        return Collections.singletonList(readState(bytesIn, symbolSpecificationProvider, userProfiles, sharedPool, exchangeConfiguration));
                     });
 
+            final State state = (State) chunks.get(0);
+            if (state.userProfiles != null) {
+                userProfileService.addUserProfiles(state.userProfiles);
+            }
+            for (int i = 1; i < chunks.size(); i++) {
+                userProfileService.loadSnapshotChunk(chunks.get(i));
+            }
+
             this.symbolSpecificationProvider = state.symbolSpecificationProvider;
-            this.userProfileService = state.userProfileService;
             this.binaryCommandsProcessor = state.binaryCommandsProcessor;
             this.lastPriceCache = state.lastPriceCache;
             this.fees = state.fees;
@@ -161,7 +181,6 @@ public final class RiskEngine implements WriteBytesMarshallable {
 
         } else {
             this.symbolSpecificationProvider = new SymbolSpecificationProvider();
-            this.userProfileService = new UserProfileService();
             this.binaryCommandsProcessor = new BinaryCommandsProcessor(
                     this::handleBinaryMessage,
                     this::handleReportQuery,
@@ -177,6 +196,12 @@ public final class RiskEngine implements WriteBytesMarshallable {
         final OrdersProcessingConfiguration ordersProcCfg = exchangeConfiguration.getOrdersProcessingCfg();
         this.cfgIgnoreRiskProcessing = ordersProcCfg.getRiskProcessingMode() == OrdersProcessingConfiguration.RiskProcessingMode.NO_RISK_PROCESSING;
         this.cfgMarginTradingEnabled = ordersProcCfg.getMarginTradingMode() == OrdersProcessingConfiguration.MarginTradingMode.MARGIN_TRADING_ENABLED;
+
+        final MarginMonitorConfiguration marginMonitorCfg = exchangeConfiguration.getMarginMonitorCfg();
+        this.marginMonitor = (marginMonitorCfg != null && cfgMarginTradingEnabled) ? new MarginMonitor(marginMonitorCfg) : null;
+
+        // free margin cache and margin monitor are not serialized (nothing to restore for clean start)
+        restoreFreeMargin();
     }
 
     @ToString
@@ -232,6 +257,8 @@ public final class RiskEngine implements WriteBytesMarshallable {
      * @return true if caller should publish sequence even if batch was not processed yet
      */
     public boolean preProcessCommand(final long seq, final OrderCommand cmd) {
+        // no profile references are kept between commands (except position holders)
+        userProfileService.releaseProfiles();
         switch (cmd.command) {
             case MOVE_ORDER:
             case CANCEL_ORDER:
@@ -293,13 +320,13 @@ public final class RiskEngine implements WriteBytesMarshallable {
                 return true;// true = publish sequence before finishing processing whole batch
 
             case PERSIST_STATE_RISK:
-                final boolean isSuccess = serializationProcessor.storeData(
+                final boolean isSuccess = serializationProcessor.storeDataChunks(
                         cmd.orderId,
                         seq,
                         cmd.timestamp,
                         MODULE_RE,
                         shardId,
-                        this);
+                        snapshotChunks());
                 UnsafeUtils.setResultVolatile(cmd, isSuccess, CommandResultCode.SUCCESS, CommandResultCode.STATE_PERSIST_RISK_ENGINE_FAILED);
                 return false;
         }
@@ -319,6 +346,12 @@ public final class RiskEngine implements WriteBytesMarshallable {
                     suspends.addToValue(currency, -amountDiff);
                     break;
             }
+            if (marginMonitor != null) {
+                final UserProfile userProfile = userProfileService.getUserProfile(uid);
+                if (userProfile != null) {
+                    marginMonitor.update(userProfile, currency);
+                }
+            }
         }
         return res;
     }
@@ -354,7 +387,7 @@ public final class RiskEngine implements WriteBytesMarshallable {
     }
 
     public boolean uidForThisHandler(final long uid) {
-        return (shardMask == 0) || ((uid & shardMask) == shardId);
+        return (shardsNum == 1) || (shardingPolicy.shardOf(uid) == shardId);
     }
 
     private CommandResultCode placeOrderRiskCheck(final OrderCommand cmd) {
@@ -410,11 +443,13 @@ public final class RiskEngine implements WriteBytesMarshallable {
                 position = objectsPool.get(ObjectsPool.SYMBOL_POSITION_RECORD, SymbolPositionRecord::new);
                 position.initialize(userProfile.uid, spec.symbolId, spec.quoteCurrency);
                 userProfile.positions.put(spec.symbolId, position);
+                positionHolders.getIfAbsentPut(spec.symbolId, LongObjectHashMap::new).put(userProfile.uid, userProfile);
             }
 
             final boolean canPlaceOrder = canPlaceMarginOrder(cmd, userProfile, spec, position);
             if (canPlaceOrder) {
                 position.pendingHold(cmd.action, cmd.size);
+                updateFreeMargin(userProfile, position, spec);
                 return CommandResultCode.VALID_FOR_MATCHING_ENGINE;
             } else {
                 // try to cleanup position if refusing to place
@@ -435,19 +470,8 @@ public final class RiskEngine implements WriteBytesMarshallable {
 
         final int currency = (cmd.action == OrderAction.BID) ? spec.quoteCurrency : spec.baseCurrency;
 
-        // futures positions check for this currency
-        long freeFuturesMargin = 0L;
-        if (cfgMarginTradingEnabled) {
-            for (final SymbolPositionRecord position : userProfile.positions) {
-                if (position.currency == currency) {
-                    final int recSymbol = position.symbol;
-                    final CoreSymbolSpecification spec2 = symbolSpecificationProvider.getSymbolSpecification(recSymbol);
-                    // add P&L subtract margin
-                    freeFuturesMargin +=
-                            (position.estimateProfit(spec2, lastPriceCache.get(recSymbol)) - position.calculateRequiredMarginForFutures(spec2));
-                }
-            }
-        }
+        // futures positions check for this currency (P&L minus margin of all positions, maintained incrementally)
+        final long freeFuturesMargin = cfgMarginTradingEnabled ? userProfile.freeMargin.get(currency) : 0L;
 
         final long size = cmd.size;
         final long orderHoldAmount;
@@ -501,6 +525,7 @@ public final class RiskEngine implements WriteBytesMarshallable {
 //            log.warn("orderAmount={} > userProfile.accounts.get({})={}", orderAmount, currency, userProfile.accounts.get(currency));
             return CommandResultCode.RISK_NSF;
         } else {
+            checkMargin(userProfile, currency);
             return CommandResultCode.VALID_FOR_MATCHING_ENGINE;
         }
     }
@@ -533,22 +558,11 @@ public final class RiskEngine implements WriteBytesMarshallable {
 
         // extra margin is required
 
-        final int symbol = cmd.symbol;
-        // calculate free margin for all positions same currency
-        long freeMargin = 0L;
-        for (final SymbolPositionRecord positionRecord : userProfile.positions) {
-            final int recSymbol = positionRecord.symbol;
-            if (recSymbol != symbol) {
-                if (positionRecord.currency == spec.quoteCurrency) {
-                    final CoreSymbolSpecification spec2 = symbolSpecificationProvider.getSymbolSpecification(recSymbol);
-                    // add P&L subtract margin
-                    freeMargin += positionRecord.estimateProfit(spec2, lastPriceCache.get(recSymbol));
-                    freeMargin -= positionRecord.calculateRequiredMarginForFutures(spec2);
-                }
-            } else {
-                freeMargin = position.estimateProfit(spec, lastPriceCache.get(spec.symbolId));
-            }
-        }
+        // free margin for all other positions same currency (P&L minus margin), plus P&L of this position
+        // (margin of this position is included into newRequiredMarginForSymbol)
+        final long freeMargin = userProfile.freeMargin.get(position.currency)
+                - position.freeMargin
+                + position.estimateProfit(spec, lastPriceCache.get(spec.symbolId));
 
 //        log.debug("newMargin={} <= account({})={} + free {}",
 //                newRequiredMarginForSymbol, position.currency, userProfile.accounts.get(position.currency), freeMargin);
@@ -565,7 +579,7 @@ public final class RiskEngine implements WriteBytesMarshallable {
         MatcherTradeEvent mte = cmd.matcherEvent;
 
         // skip events processing if no events (or if contains BINARY EVENT)
-        if (marketData == null && (mte == null || mte.eventType == MatcherEventType.BINARY_EVENT)) {
+        if (marketData == null && cmd.topAskPrice == 0 && (mte == null || mte.eventType == MatcherEventType.BINARY_EVENT)) {
             return false;
         }
 
@@ -614,15 +628,32 @@ public final class RiskEngine implements WriteBytesMarshallable {
         }
 
         // Process marked data
-        if (marketData != null && cfgMarginTradingEnabled) {
-            final RiskEngine.LastPriceCacheRecord record = lastPriceCache.getIfAbsentPut(symbol, RiskEngine.LastPriceCacheRecord::new);
-            record.askPrice = (marketData.askSize != 0) ? marketData.askPrices[0] : Long.MAX_VALUE;
-            record.bidPrice = (marketData.bidSize != 0) ? marketData.bidPrices[0] : 0;
+        if (cfgMarginTradingEnabled) {
+            if (cmd.topAskPrice != 0) {
+                // top of book is attached by matching engine after every successful command (futures contracts)
+                updateLastPrice(spec, cmd.topAskPrice, cmd.topBidPrice);
+            } else if (marketData != null) {
+                updateLastPrice(
+                        spec,
+                        (marketData.askSize != 0) ? marketData.askPrices[0] : Long.MAX_VALUE,
+                        (marketData.bidSize != 0) ? marketData.bidPrices[0] : 0);
+            }
         }
 
         return false;
     }
 
+    private void updateLastPrice(final CoreSymbolSpecification spec, final long askPrice, final long bidPrice) {
+        final RiskEngine.LastPriceCacheRecord record = lastPriceCache.getIfAbsentPut(spec.symbolId, RiskEngine.LastPriceCacheRecord::new);
+        if (record.askPrice != askPrice || record.bidPrice != bidPrice) {
+            record.askPrice = askPrice;
+            record.bidPrice = bidPrice;
+            if (spec.type == SymbolType.FUTURES_CONTRACT) {
+                updateFreeMarginForHolders(spec, record);
+            }
+        }
+    }
+
     private void handleMatcherEventMargin(final MatcherTradeEvent ev,
                                           final CoreSymbolSpecification spec,
                                           final OrderAction takerAction,
@@ -642,6 +673,8 @@ public final class RiskEngine implements WriteBytesMarshallable {
 
             if (takerSpr.isEmpty()) {
                 removePositionRecord(takerSpr, takerUp);
+            } else {
+                updateFreeMargin(takerUp, takerSpr, spec);
             }
         }
 
@@ -655,6 +688,8 @@ public final class RiskEngine implements WriteBytesMarshallable {
             fees.addToValue(spec.quoteCurrency, fee);
             if (makerSpr.isEmpty()) {
                 removePositionRecord(makerSpr, maker);
+            } else {
+                updateFreeMargin(maker, makerSpr, spec);
             }
         }
 
@@ -672,6 +707,7 @@ public final class RiskEngine implements WriteBytesMarshallable {
         if (takerSell) {
 
             taker.accounts.addToValue(spec.baseCurrency, CoreArithmeticUtils.calculateAmountAsk(ev.size, spec));
+            checkMargin(taker, spec.baseCurrency);
 
         } else {
 
@@ -681,6 +717,7 @@ public final class RiskEngine implements WriteBytesMarshallable {
                 taker.accounts.addToValue(spec.quoteCurrency, CoreArithmeticUtils.calculateAmountBidTakerFee(ev.size, ev.bidderHoldPrice, spec));
             }
             // TODO for OrderType.IOC_BUDGET - for REJECT should release leftover deposit after all trades calculated
+            checkMargin(taker, spec.quoteCurrency);
         }
 
     }
@@ -720,6 +757,8 @@ public final class RiskEngine implements WriteBytesMarshallable {
 
                 final long gainedAmountInBaseCurrency = CoreArithmeticUtils.calculateAmountAsk(size, spec);
                 maker.accounts.addToValue(spec.baseCurrency, gainedAmountInBaseCurrency);
+                checkMargin(maker, quoteCurrency);
+                checkMargin(maker, spec.baseCurrency);
 
                 makerSizeForThisHandler += size;
             }
@@ -729,6 +768,7 @@ public final class RiskEngine implements WriteBytesMarshallable {
 
         if (taker != null) {
             taker.accounts.addToValue(quoteCurrency, takerSizePriceForThisHandler * spec.quoteScaleK - spec.takerFee * takerSizeForThisHandler);
+            checkMargin(taker, quoteCurrency);
         }
 
         if (takerSizeForThisHandler != 0 || makerSizeForThisHandler != 0) {
@@ -769,6 +809,7 @@ public final class RiskEngine implements WriteBytesMarshallable {
                 final UserProfile maker = userProfileService.getUserProfileOrAddSuspended(ev.matchedOrderUid);
                 final long gainedAmountInQuoteCurrency = CoreArithmeticUtils.calculateAmountBid(size, ev.price, spec);
                 maker.accounts.addToValue(quoteCurrency, gainedAmountInQuoteCurrency - spec.makerFee * size);
+                checkMargin(maker, quoteCurrency);
                 makerSizeForThisHandler += size;
             }
 
@@ -785,6 +826,8 @@ public final class RiskEngine implements WriteBytesMarshallable {
 
             taker.accounts.addToValue(quoteCurrency, (takerSizePriceHeldSum - takerSizePriceSum) * spec.quoteScaleK);
             taker.accounts.addToValue(spec.baseCurrency, takerSizeForThisHandler * spec.baseScaleK);
+            checkMargin(taker, quoteCurrency);
+            checkMargin(taker, spec.baseCurrency);
         }
 
         if (takerSizeForThisHandler != 0 || makerSizeForThisHandler != 0) {
@@ -794,14 +837,108 @@ public final class RiskEngine implements WriteBytesMarshallable {
 
     private void removePositionRecord(SymbolPositionRecord record, UserProfile userProfile) {
         userProfile.accounts.addToValue(record.currency, record.profit);
+        userProfile.freeMargin.addToValue(record.currency, -record.freeMargin);
+        userProfile.requiredMargin.addToValue(record.currency, -record.requiredMargin);
         userProfile.positions.removeKey(record.symbol);
+        final LongObjectHashMap<UserProfile> holders = positionHolders.get(record.symbol);
+        if (holders != null) {
+            holders.remove(userProfile.uid);
+        }
+        checkMargin(userProfile, record.currency);
         objectsPool.put(ObjectsPool.SYMBOL_POSITION_RECORD, record);
     }
 
+    /**
+     * Re-calculate cached free margin (estimated profit minus required margin) and required margin of position
+     * and apply difference to users aggregates for position currency.
+     * Should be called after every change of position (or last price).
+     */
+    private void updateFreeMargin(final UserProfile userProfile,
+                                  final SymbolPositionRecord position,
+                                  final CoreSymbolSpecification spec) {
+        updateFreeMargin(userProfile, position, spec, lastPriceCache.get(position.symbol));
+    }
+
+    private void updateFreeMargin(final UserProfile userProfile,
+                                  final SymbolPositionRecord position,
+                                  final CoreSymbolSpecification spec,
+                                  final LastPriceCacheRecord lastPriceRecord) {
+        final long requiredMargin = position.calculateRequiredMarginForFutures(spec);
+        final long freeMargin = position.estimateProfit(spec, lastPriceRecord) - requiredMargin;
+        if (freeMargin != position.freeMargin) {
+            userProfile.freeMargin.addToValue(position.currency, freeMargin - position.freeMargin);
+            position.freeMargin = freeMargin;
+        }
+        if (requiredMargin != position.requiredMargin) {
+            userProfile.requiredMargin.addToValue(position.currency, requiredMargin - position.requiredMargin);
+            position.requiredMargin = requiredMargin;
+        }
+        // balance could be changed as well (fees)
+        checkMargin(userProfile, position.currency);
+    }
+
+    private void checkMargin(final UserProfile userProfile, final int currency) {
+        if (marginMonitor != null) {
+            marginMonitor.update(userProfile, currency);
+        }
+    }
+
+    /**
+     * Last price changed - re-calculate free margin for all users holding position in this symbol
+     */
+    private void updateFreeMarginForHolders(final CoreSymbolSpecification spec, final LastPriceCacheRecord lastPriceRecord) {
+        final LongObjectHashMap<UserProfile> holders = positionHolders.get(spec.symbolId);
+        if (holders == null || holders.isEmpty()) {
+            return;
+        }
+        for (final UserProfile userProfile : holders) {
+            updateFreeMargin(userProfile, userProfile.positions.get(spec.symbolId), spec, lastPriceRecord);
+        }
+    }
+
+    /**
+     * Build free margin cache and position holders index from loaded positions
+     */
+    private void restoreFreeMargin() {
+        userProfileService.forEachUserProfileWithPositions(userProfile -> {
+            for (final SymbolPositionRecord position : userProfile.positions) {
+                final CoreSymbolSpecification spec = symbolSpecificationProvider.getSymbolSpecification(position.symbol);
+                positionHolders.getIfAbsentPut(position.symbol, LongObjectHashMap::new).put(userProfile.uid, userProfile);
+                updateFreeMargin(userProfile, position, spec);
+            }
+        });
+    }
+
+    // testing only - compare incrementally maintained free margin and required margin with full re-calculation
+    public void validateFreeMargin() {
+        userProfileService.forEachUserProfile(userProfile -> {
+            final IntLongHashMap freeMargin = new IntLongHashMap();
+            final IntLongHashMap requiredMargin = new IntLongHashMap();
+            for (final SymbolPositionRecord position : userProfile.positions) {
+                final CoreSymbolSpecification spec = symbolSpecificationProvider.getSymbolSpecification(position.symbol);
+                final long required = position.calculateRequiredMarginForFutures(spec);
+                freeMargin.addToValue(position.currency, position.estimateProfit(spec, lastPriceCache.get(position.symbol)) - required);
+                requiredMargin.addToValue(position.currency, required);
+
+                final LongObjectHashMap<UserProfile> holders = positionHolders.get(position.symbol);
+                if (holders == null || !holders.containsKey(userProfile.uid)) {
+                    throw new IllegalStateException("uid " + userProfile.uid + " is not in holders of symbol " + position.symbol);
+                }
+            }
+            // removed positions leave zero values in aggregates, comparing non-zero values only
+            if (!freeMargin.reject((currency, amount) -> amount == 0).equals(userProfile.freeMargin.reject((currency, amount) -> amount == 0))) {
+                throw new IllegalStateException("uid " + userProfile.uid + " free margin " + userProfile.freeMargin + ", expected " + freeMargin);
+            }
+            if (!requiredMargin.reject((currency, amount) -> amount == 0).equals(userProfile.requiredMargin.reject((currency, amount) -> amount == 0))) {
+                throw new IllegalStateException("uid " + userProfile.uid + " required margin " + userProfile.requiredMargin + ", expected " + requiredMargin);
+            }
+        });
+    }
+
     @Override
     public void writeMarshallable(BytesOut bytes) {
 
-        bytes.writeInt(shardId).writeLong(shardMask);
+        bytes.writeInt(shardId).writeLong(shardsNum);
 
         symbolSpecificationProvider.writeMarshallable(bytes);
         userProfileService.writeMarshallable(bytes);
@@ -812,21 +949,73 @@ public final class RiskEngine implements WriteBytesMarshallable {
         SerializationUtils.marshallIntLongHashMap(suspends, bytes);
     }
 
+    /**
+     * Snapshot is split into independent chunks (can be loaded in parallel):
+     * header (everything except user profiles), then ranges of user profiles.
+     */
+    private List<WriteBytesMarshallable> snapshotChunks() {
+        final List<WriteBytesMarshallable> chunks = new ArrayList<>();
+        chunks.add(bytes -> {
+            bytes.writeInt(shardId).writeLong(shardsNum);
+            symbolSpecificationProvider.writeMarshallable(bytes);
+            binaryCommandsProcessor.writeMarshallable(bytes);
+            SerializationUtils.marshallIntHashMap(lastPriceCache, bytes);
+            SerializationUtils.marshallIntLongHashMap(fees, bytes);
+            SerializationUtils.marshallIntLongHashMap(adjustments, bytes);
+            SerializationUtils.marshallIntLongHashMap(suspends, bytes);
+        });
+        chunks.addAll(userProfileService.snapshotChunks(ISerializationProcessor.SNAPSHOT_MAX_CHUNKS));
+        return chunks;
+    }
+
     public void reset() {
         userProfileService.reset();
         symbolSpecificationProvider.reset();
         binaryCommandsProcessor.reset();
         lastPriceCache.clear();
+        positionHolders.clear();
+        if (marginMonitor != null) {
+            marginMonitor.reset();
+        }
         fees.clear();
         adjustments.clear();
         suspends.clear();
     }
 
+    // rest of header chunk (same in previous format)
+    private State readState(final BytesIn bytesIn,
+                            final SymbolSpecificationProvider symbolSpecificationProvider,
+                            final LongObjectHashMap<UserProfile> userProfiles,
+                            final SharedPool sharedPool,
+                            final ExchangeConfiguration exchangeConfiguration) {
+
+        final BinaryCommandsProcessor binaryCommandsProcessor = new BinaryCommandsProcessor(
+                this::handleBinaryMessage,
+                this::handleReportQuery,
+                sharedPool,
+                exchangeConfiguration.getReportsQueriesCfg(),
+                bytesIn,
+                shardId);
+        final IntObjectHashMap<LastPriceCacheRecord> lastPriceCache = SerializationUtils.readIntHashMap(bytesIn, LastPriceCacheRecord::new);
+        final IntLongHashMap fees = SerializationUtils.readIntLongHashMap(bytesIn);
+        final IntLongHashMap adjustments = SerializationUtils.readIntLongHashMap(bytesIn);
+        final IntLongHashMap suspends = SerializationUtils.readIntLongHashMap(bytesIn);
+
+        return new State(
+                symbolSpecificationProvider,
+                userProfiles,
+                binaryCommandsProcessor,
+                lastPriceCache,
+                fees,
+                adjustments,
+                suspends);
+    }
+
     @AllArgsConstructor
     @Getter
     private static class State {
         private final SymbolSpecificationProvider symbolSpecificationProvider;
-        private final UserProfileService userProfileService;
+        private final LongObjectHashMap<UserProfile> userProfiles; // previous format only
         private final BinaryCommandsProcessor binaryCommandsProcessor;
         private final IntObjectHashMap<LastPriceCacheRecord> lastPriceCache;
         private final IntLongHashMap fees;
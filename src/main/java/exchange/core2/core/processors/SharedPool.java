@@ -18,16 +18,15 @@ package exchange.core2.core.processors;
 import exchange.core2.core.common.MatcherTradeEvent;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
-
-import java.util.concurrent.LinkedBlockingQueue;
+import org.agrona.concurrent.ManyToManyConcurrentArrayQueue;
 
 @Slf4j
 public final class SharedPool {
 
     // queue theo dạng FIFO
-    // ko giới hạn kích thước
-    // thread-safe
-    private final LinkedBlockingQueue<MatcherTradeEvent> eventChainsBuffer;
+    // giới hạn kích thước (poolMaxSize), preallocated array
+    // thread-safe, lock-free (MPMC): GroupingProcessor trả chain về, ME/RE lấy chain ra
+    private final ManyToManyConcurrentArrayQueue<MatcherTradeEvent> eventChainsBuffer;
 
     @Getter
     private final int chainLength;
@@ -51,7 +50,7 @@ public final class SharedPool {
         }
 
         // tạo pool với max size như trên
-        this.eventChainsBuffer = new LinkedBlockingQueue<>(poolMaxSize);
+        this.eventChainsBuffer = new ManyToManyConcurrentArrayQueue<>(poolMaxSize);
         this.chainLength = chainLength;
 
         // tạo các chain với độ dài cố định
@@ -78,10 +77,10 @@ public final class SharedPool {
     }
 
     /**
-     *
+     * Trả chain về pool. Nếu pool đã full thì chain bị bỏ qua (GC sẽ thu hồi).
      *
      * Offers next chain.
-     * Threadsafe (single producer safety is sufficient)
+     * Threadsafe, lock-free
      *
      * @param head - pointer to the first element
      */
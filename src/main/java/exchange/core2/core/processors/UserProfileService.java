@@ -15,7 +15,6 @@
  */
 package exchange.core2.core.processors;
 
-import exchange.core2.core.common.StateHash;
 import exchange.core2.core.common.UserProfile;
 import exchange.core2.core.common.UserStatus;
 import exchange.core2.core.common.cmd.CommandResultCode;
@@ -28,13 +27,14 @@ import net.openhft.chronicle.bytes.BytesOut;
 import net.openhft.chronicle.bytes.WriteBytesMarshallable;
 import org.eclipse.collections.impl.map.mutable.primitive.LongObjectHashMap;
 
+import java.util.List;
+import java.util.function.Consumer;
+
 /**
- * Stateful (!) User profile service
- * <p>
- * TODO make multi instance
+ * Stateful (!) User profile service - all profiles are kept on heap
  */
 @Slf4j
-public final class UserProfileService implements WriteBytesMarshallable, StateHash {
+public final class UserProfileService implements IUserProfileService {
 
     /*
      * State: uid to UserProfile
@@ -56,11 +56,18 @@ public final class UserProfileService implements WriteBytesMarshallable, StateHa
      * @param uid uid
      * @return user profile
      */
+    @Override
     public UserProfile getUserProfile(long uid) {
         return userProfiles.get(uid);
     }
 
+    @Override
     public UserProfile getUserProfileOrAddSuspended(long uid) {
+        // fast path without capturing lambda (called for every trade event)
+        final UserProfile userProfile = userProfiles.get(uid);
+        if (userProfile != null) {
+            return userProfile;
+        }
         return userProfiles.getIfAbsentPut(uid, () -> new UserProfile(uid, UserStatus.SUSPENDED));
     }
 
@@ -74,6 +81,7 @@ public final class UserProfileService implements WriteBytesMarshallable, StateHa
      * @param fundingTransactionId transaction id (should increment only)
      * @return result code
      */
+    @Override
     public CommandResultCode balanceAdjustment(final long uid, final int currency, final long amount, final long fundingTransactionId) {
 
         final UserProfile userProfile = getUserProfile(uid);
@@ -81,6 +89,13 @@ public final class UserProfileService implements WriteBytesMarshallable, StateHa
             log.warn("User profile {} not found", uid);
             return CommandResultCode.AUTH_INVALID_USER;
         }
+        return applyBalanceAdjustment(userProfile, currency, amount, fundingTransactionId);
+    }
+
+    static CommandResultCode applyBalanceAdjustment(final UserProfile userProfile,
+                                                    final int currency,
+                                                    final long amount,
+                                                    final long fundingTransactionId) {
 
 //        if (amount == 0) {
 //            return CommandResultCode.USER_MGMT_ACCOUNT_BALANCE_ADJUSTMENT_ZERO;
@@ -112,6 +127,7 @@ public final class UserProfileService implements WriteBytesMarshallable, StateHa
      * @param uid uid
      * @return true if user was added
      */
+    @Override
     public boolean addEmptyUserProfile(long uid) {
         if (userProfiles.get(uid) == null) {
             userProfiles.put(uid, new UserProfile(uid, UserStatus.ACTIVE));
@@ -133,8 +149,19 @@ public final class UserProfileService implements WriteBytesMarshallable, StateHa
      * @param uid client id
      * @return result code
      */
+    @Override
     public CommandResultCode suspendUserProfile(long uid) {
         final UserProfile userProfile = userProfiles.get(uid);
+        final CommandResultCode resultCode = checkSuspendable(userProfile);
+        if (resultCode == CommandResultCode.SUCCESS) {
+            log.debug("Suspended user profile: {}", userProfile);
+            userProfiles.remove(uid);
+            // TODO pool UserProfile objects
+        }
+        return resultCode;
+    }
+
+    static CommandResultCode checkSuspendable(final UserProfile userProfile) {
         if (userProfile == null) {
             return CommandResultCode.USER_MGMT_USER_NOT_FOUND;
 
@@ -148,13 +175,11 @@ public final class UserProfileService implements WriteBytesMarshallable, StateHa
             return CommandResultCode.USER_MGMT_USER_NOT_SUSPENDABLE_NON_EMPTY_ACCOUNTS;
 
         } else {
-            log.debug("Suspended user profile: {}", userProfile);
-            userProfiles.remove(uid);
-            // TODO pool UserProfile objects
             return CommandResultCode.SUCCESS;
         }
     }
 
+    @Override
     public CommandResultCode resumeUserProfile(long uid) {
         final UserProfile userProfile = userProfiles.get(uid);
         if (userProfile == null) {
@@ -173,9 +198,47 @@ public final class UserProfileService implements WriteBytesMarshallable, StateHa
         }
     }
 
-    /**
-     * Reset module - for testing only
-     */
+    @Override
+    public void forEachUserProfile(final Consumer<UserProfile> consumer) {
+        userProfiles.forEachValue(consumer::accept);
+    }
+
+    @Override
+    public void forEachUserProfileWithPositions(final Consumer<UserProfile> consumer) {
+        userProfiles.forEachValue(userProfile -> {
+            if (!userProfile.positions.isEmpty()) {
+                consumer.accept(userProfile);
+            }
+        });
+    }
+
+    @Override
+    public void releaseProfiles() {
+        // all profiles are kept on heap
+    }
+
+    @Override
+    public List<WriteBytesMarshallable> snapshotChunks(final int maxChunks) {
+        return SerializationUtils.marshallLongHashMapChunks(userProfiles, maxChunks);
+    }
+
+    @Override
+    public Object readSnapshotChunk(final BytesIn bytes) {
+        return SerializationUtils.readLongHashMap(bytes, UserProfile::new);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void loadSnapshotChunk(final Object chunk) {
+        userProfiles.putAll((LongObjectHashMap<UserProfile>) chunk);
+    }
+
+    @Override
+    public void addUserProfiles(final LongObjectHashMap<UserProfile> userProfiles) {
+        this.userProfiles.putAll(userProfiles);
+    }
+
+    @Override
     public void reset() {
         userProfiles.clear();
     }
@@ -0,0 +1,39 @@
+package exchange.core2.core.processors.audit;
+
+
+import exchange.core2.core.processors.journaling.DiskSerializationProcessorConfiguration;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+@AllArgsConstructor
+@Getter
+@Builder
+@ToString
+public class AuditLogConfiguration {
+
+    private static final long ONE_MEGABYTE = 1024 * 1024;
+
+    private final String storageFolder;
+
+    // capacity of off-heap ring between disruptor handler and writer thread, must be power of 2
+    // if writer can not keep up, disruptor handler will wait for free space (back-pressure)
+    private final int ringBufferSize;
+
+    // size of direct buffer used by writer thread to batch records before writing into file
+    private final int writeBufferSize;
+
+    // start next audit log file when this size is reached
+    private final long fileMaxSize;
+
+    public static AuditLogConfiguration createDefaultConfig() {
+
+        return AuditLogConfiguration.builder()
+                .storageFolder(DiskSerializationProcessorConfiguration.DEFAULT_FOLDER)
+                .ringBufferSize(8 * 1024 * 1024) // 8 MB - about 87K records
+                .writeBufferSize(1024 * 1024)
+                .fileMaxSize(1000 * ONE_MEGABYTE)
+                .build();
+    }
+}
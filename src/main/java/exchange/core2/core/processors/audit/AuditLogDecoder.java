@@ -0,0 +1,147 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.audit;
+
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.cmd.OrderCommandType;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import static exchange.core2.core.processors.audit.AuditLogRecord.*;
+
+/**
+ * Offline tool: converts binary audit log file into human readable text (one line per command).
+ */
+@Slf4j
+public final class AuditLogDecoder {
+
+    private AuditLogDecoder() {
+    }
+
+    /**
+     * Decode audit log file
+     *
+     * @param path     - audit log file
+     * @param consumer - receives one text line per record
+     * @return number of decoded records
+     */
+    public static long decode(final Path path, final Consumer<String> consumer) throws IOException {
+
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+
+            final ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE).order(BYTE_ORDER);
+            readFully(channel, header);
+            header.flip();
+
+            final int magic = header.getInt();
+            final int version = header.getInt();
+            final int recordSize = header.getInt();
+            if (magic != FILE_MAGIC) {
+                throw new IllegalStateException("Not an audit log file: " + path);
+            }
+            if (version != FILE_VERSION || recordSize != RECORD_SIZE) {
+                throw new IllegalStateException("Unsupported audit log version " + version + " (recordSize=" + recordSize + ")");
+            }
+
+            final ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * 1024).order(BYTE_ORDER);
+            final StringBuilder sb = new StringBuilder(256);
+            long counter = 0;
+
+            while (channel.read(buffer) != -1 || buffer.position() > 0) {
+                buffer.flip();
+                while (buffer.remaining() >= RECORD_SIZE) {
+                    sb.setLength(0);
+                    formatRecord(buffer, buffer.position(), sb);
+                    consumer.accept(sb.toString());
+                    buffer.position(buffer.position() + RECORD_SIZE);
+                    counter++;
+                }
+                final boolean incomplete = buffer.hasRemaining();
+                buffer.compact();
+                if (incomplete && channel.position() == channel.size()) {
+                    // file was not closed properly - last record is truncated
+                    log.warn("Truncated record at the end of {}", path);
+                    break;
+                }
+            }
+
+            return counter;
+        }
+    }
+
+    static void formatRecord(final ByteBuffer b, final int offset, final StringBuilder sb) {
+
+        final OrderCommandType command = OrderCommandType.fromCode(b.get(offset + COMMAND_OFFSET));
+        final byte action = b.get(offset + ACTION_OFFSET);
+        final byte orderType = b.get(offset + ORDER_TYPE_OFFSET);
+        final int resultCode = b.getInt(offset + RESULT_CODE_OFFSET);
+
+        sb.append("seq=").append(b.getLong(offset + SEQ_OFFSET))
+                .append(" ts=").append(b.getLong(offset + TIMESTAMP_OFFSET))
+                .append(" cmd=").append(command)
+                .append(" result=").append(resultCodeName(resultCode))
+                .append(" uid=").append(b.getLong(offset + UID_OFFSET))
+                .append(" symbol=").append(b.getInt(offset + SYMBOL_OFFSET))
+                .append(" orderId=").append(b.getLong(offset + ORDER_ID_OFFSET))
+                .append(" action=").append(action == NOT_SET ? "-" : OrderAction.of(action).toString())
+                .append(" type=").append(orderType == NOT_SET ? "-" : OrderType.of(orderType).toString())
+                .append(" price=").append(b.getLong(offset + PRICE_OFFSET))
+                .append(" reserveBidPrice=").append(b.getLong(offset + RESERVE_BID_PRICE_OFFSET))
+                .append(" size=").append(b.getLong(offset + SIZE_OFFSET))
+                .append(" cookie=").append(b.getInt(offset + USER_COOKIE_OFFSET))
+                .append(" eventsGroup=").append(b.getLong(offset + EVENTS_GROUP_OFFSET))
+                .append(" serviceFlags=").append(b.getInt(offset + SERVICE_FLAGS_OFFSET))
+                .append(" tradeEvents=").append(b.getInt(offset + TRADE_EVENTS_NUM_OFFSET))
+                .append(" eob=").append(b.get(offset + EOB_OFFSET) != 0);
+    }
+
+    private static String resultCodeName(final int code) {
+        return Arrays.stream(CommandResultCode.values())
+                .filter(c -> c.getCode() == code)
+                .map(Enum::name)
+                .findFirst()
+                .orElse(Integer.toString(code));
+    }
+
+    private static void readFully(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) == -1) {
+                throw new IllegalStateException("Unexpected end of audit log file");
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: AuditLogDecoder <file.ecl> [<file.ecl> ...]");
+            return;
+        }
+        for (final String fileName : args) {
+            final long count = decode(Paths.get(fileName), System.out::println);
+            log.info("Decoded {} records from {}", count, fileName);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.audit;
+
+import com.lmax.disruptor.EventHandler;
+import exchange.core2.core.common.MatcherTradeEvent;
+import exchange.core2.core.common.cmd.OrderCommand;
+import lombok.extern.slf4j.Slf4j;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.BackoffIdleStrategy;
+import org.agrona.concurrent.IdleStrategy;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.ringbuffer.OneToOneRingBuffer;
+import org.agrona.concurrent.ringbuffer.RingBufferDescriptor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import static exchange.core2.core.processors.audit.AuditLogRecord.*;
+
+/**
+ * Audit log stage.
+ * <p>
+ * Disruptor thread encodes every command into fixed-layout binary record (see {@link AuditLogRecord})
+ * and puts it into preallocated off-heap single-producer ring. No allocations and no locks on disruptor thread.
+ * Background writer thread drains the ring into audit log files. Use {@link AuditLogDecoder} to convert files into text.
+ * <p>
+ * If writer thread can not keep up, disruptor thread waits for free space in the ring (back-pressure).
+ */
+@Slf4j
+public final class AuditLogHandler implements EventHandler<OrderCommand> {
+
+    private static final int MSG_TYPE_ID = 1;
+
+    private final OneToOneRingBuffer ringBuffer;
+    private final UnsafeBuffer buffer;
+
+    private final String exchangeId;
+    private final Path folder;
+    private final long fileMaxSize;
+
+    // writer thread state
+    private final ByteBuffer writeBuffer;
+    private final Thread writerThread;
+    private FileChannel channel;
+    private int filesCounter = 0;
+    private long writtenBytes = 0;
+    private long startTimeMs;
+
+    private volatile boolean running = false;
+    private volatile boolean writerFailed = false;
+
+    public AuditLogHandler(final String exchangeId, final AuditLogConfiguration cfg) {
+
+        this.exchangeId = exchangeId;
+        this.folder = Paths.get(cfg.getStorageFolder());
+        this.fileMaxSize = cfg.getFileMaxSize();
+
+        final ByteBuffer ringBytes = ByteBuffer.allocateDirect(cfg.getRingBufferSize() + RingBufferDescriptor.TRAILER_LENGTH);
+        this.buffer = new UnsafeBuffer(ringBytes);
+        this.ringBuffer = new OneToOneRingBuffer(buffer);
+
+        this.writeBuffer = ByteBuffer.allocateDirect(cfg.getWriteBufferSize());
+
+        this.writerThread = new Thread(this::runWriter, "Thread-AuditLog");
+        this.writerThread.setDaemon(true);
+    }
+
+    public void start() {
+        startTimeMs = System.currentTimeMillis();
+        running = true;
+        writerThread.start();
+    }
+
+    /**
+     * Stop writer thread. Remaining records are drained into the file before returning.
+     * Should be called after disruptor is stopped.
+     */
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            writerThread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void onEvent(final OrderCommand cmd, final long seq, final boolean eob) {
+
+        int index;
+        while ((index = ringBuffer.tryClaim(MSG_TYPE_ID, RECORD_SIZE)) < 0) {
+            if (writerFailed) {
+                throw new IllegalStateException("Audit log writer failed");
+            }
+            Thread.yield();
+        }
+
+        int tradeEventsNum = 0;
+        for (MatcherTradeEvent evt = cmd.matcherEvent; evt != null; evt = evt.nextEvent) {
+            tradeEventsNum++;
+        }
+
+        final UnsafeBuffer b = buffer;
+        b.putLong(index + SEQ_OFFSET, seq, BYTE_ORDER);
+        b.putLong(index + TIMESTAMP_OFFSET, cmd.timestamp, BYTE_ORDER);
+        b.putLong(index + ORDER_ID_OFFSET, cmd.orderId, BYTE_ORDER);
+        b.putLong(index + PRICE_OFFSET, cmd.price, BYTE_ORDER);
+        b.putLong(index + RESERVE_BID_PRICE_OFFSET, cmd.reserveBidPrice, BYTE_ORDER);
+        b.putLong(index + SIZE_OFFSET, cmd.size, BYTE_ORDER);
+        b.putLong(index + UID_OFFSET, cmd.uid, BYTE_ORDER);
+        b.putLong(index + EVENTS_GROUP_OFFSET, cmd.eventsGroup, BYTE_ORDER);
+        b.putInt(index + SYMBOL_OFFSET, cmd.symbol, BYTE_ORDER);
+        b.putInt(index + USER_COOKIE_OFFSET, cmd.userCookie, BYTE_ORDER);
+        b.putInt(index + SERVICE_FLAGS_OFFSET, cmd.serviceFlags, BYTE_ORDER);
+        b.putInt(index + RESULT_CODE_OFFSET, cmd.resultCode == null ? 0 : cmd.resultCode.getCode(), BYTE_ORDER);
+        b.putInt(index + TRADE_EVENTS_NUM_OFFSET, tradeEventsNum, BYTE_ORDER);
+        b.putByte(index + COMMAND_OFFSET, cmd.command.getCode());
+        b.putByte(index + ACTION_OFFSET, cmd.action == null ? NOT_SET : cmd.action.getCode());
+        b.putByte(index + ORDER_TYPE_OFFSET, cmd.orderType == null ? NOT_SET : cmd.orderType.getCode());
+        b.putByte(index + EOB_OFFSET, (byte) (eob ? 1 : 0));
+
+        ringBuffer.commit(index);
+    }
+
+    private void runWriter() {
+
+        final IdleStrategy idleStrategy = new BackoffIdleStrategy(100, 10, 1_000, 1_000_000);
+
+        try {
+            startNewFile();
+
+            while (running) {
+                final int read = ringBuffer.read(this::onRecord);
+                if (read == 0) {
+                    flushWriteBuffer();
+                }
+                idleStrategy.idle(read);
+            }
+
+            // drain remaining records (read can return 0 after skipping padding at the end of the ring)
+            while (ringBuffer.size() > 0) {
+                ringBuffer.read(this::onRecord);
+            }
+
+            flushWriteBuffer();
+            channel.force(false);
+            channel.close();
+            log.debug("Audit log writer stopped");
+
+        } catch (final IOException | UncheckedIOException ex) {
+            log.error("Can not write audit log: ", ex);
+            writerFailed = true;
+        }
+    }
+
+    private void onRecord(final int msgTypeId, final MutableDirectBuffer srcBuffer, final int index, final int length) {
+        if (writeBuffer.remaining() < length) {
+            try {
+                flushWriteBuffer();
+            } catch (final IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+        srcBuffer.getBytes(index, writeBuffer, length);
+    }
+
+    private void flushWriteBuffer() throws IOException {
+        if (writeBuffer.position() == 0) {
+            return;
+        }
+
+        writeBuffer.flip();
+        while (writeBuffer.hasRemaining()) {
+            writtenBytes += channel.write(writeBuffer);
+        }
+        writeBuffer.clear();
+
+        if (writtenBytes >= fileMaxSize) {
+            startNewFile();
+        }
+    }
+
+    private void startNewFile() throws IOException {
+        filesCounter++;
+        if (channel != null) {
+            channel.force(false);
+            channel.close();
+        }
+
+        final Path fileName = resolveAuditLogPath(filesCounter);
+        log.debug("Starting new audit log file: {}", fileName);
+
+        channel = FileChannel.open(fileName, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+
+        final ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE).order(BYTE_ORDER);
+        header.putInt(FILE_MAGIC).putInt(FILE_VERSION).putInt(RECORD_SIZE).flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        writtenBytes = FILE_HEADER_SIZE;
+    }
+
+    private Path resolveAuditLogPath(int partitionId) {
+        return folder.resolve(String.format("%s_audit_%d_%04X.ecl", exchangeId, startTimeMs, partitionId));
+    }
+}
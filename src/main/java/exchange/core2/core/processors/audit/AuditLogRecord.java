@@ -0,0 +1,57 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.audit;
+
+import java.nio.ByteOrder;
+
+/**
+ * Fixed layout of audit log record (one record per processed command).
+ * <p>
+ * File starts with header (magic, version, record size), then records follow back-to-back without any framing.
+ */
+public final class AuditLogRecord {
+
+    public static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    public static final int FILE_MAGIC = 0x4C414345; // "ECAL"
+    public static final int FILE_VERSION = 1;
+    public static final int FILE_HEADER_SIZE = 12; // magic + version + record size
+
+    public static final int SEQ_OFFSET = 0; // 8 bytes
+    public static final int TIMESTAMP_OFFSET = 8; // 8 bytes
+    public static final int ORDER_ID_OFFSET = 16; // 8 bytes
+    public static final int PRICE_OFFSET = 24; // 8 bytes
+    public static final int RESERVE_BID_PRICE_OFFSET = 32; // 8 bytes
+    public static final int SIZE_OFFSET = 40; // 8 bytes
+    public static final int UID_OFFSET = 48; // 8 bytes
+    public static final int EVENTS_GROUP_OFFSET = 56; // 8 bytes
+    public static final int SYMBOL_OFFSET = 64; // 4 bytes
+    public static final int USER_COOKIE_OFFSET = 68; // 4 bytes
+    public static final int SERVICE_FLAGS_OFFSET = 72; // 4 bytes
+    public static final int RESULT_CODE_OFFSET = 76; // 4 bytes
+    public static final int TRADE_EVENTS_NUM_OFFSET = 80; // 4 bytes
+    public static final int COMMAND_OFFSET = 84; // 1 byte
+    public static final int ACTION_OFFSET = 85; // 1 byte (-1 if not set)
+    public static final int ORDER_TYPE_OFFSET = 86; // 1 byte (-1 if not set)
+    public static final int EOB_OFFSET = 87; // 1 byte
+
+    public static final int RECORD_SIZE = 88;
+
+    public static final byte NOT_SET = -1;
+
+    private AuditLogRecord() {
+    }
+}
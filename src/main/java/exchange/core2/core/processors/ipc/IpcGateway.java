@@ -0,0 +1,131 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.ipc;
+
+import exchange.core2.core.common.BalanceAdjustmentType;
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.cmd.OrderCommandType;
+import org.agrona.IoUtil;
+import org.agrona.concurrent.AtomicBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.ringbuffer.ManyToOneRingBuffer;
+
+import java.io.File;
+import java.nio.MappedByteBuffer;
+
+import static exchange.core2.core.processors.ipc.IpcMessages.*;
+
+/**
+ * Gateway side of shared memory ingress (can be used from another process on the same host).
+ * <p>
+ * Methods are not blocking, false is returned if ingress ring is full (caller should retry later).
+ * Thread safe - multiple threads (and processes) can write into the same ingress ring.
+ * Results are not returned, subscribe for results broadcast using {@link IpcResultsSubscriber}.
+ */
+public final class IpcGateway implements AutoCloseable {
+
+    private final MappedByteBuffer mappedBuffer;
+    private final ManyToOneRingBuffer ingressRing;
+    private final AtomicBuffer buffer;
+
+    public IpcGateway(final String ingressFile) {
+        this.mappedBuffer = IoUtil.mapExistingFile(new File(ingressFile), "ingress");
+        this.ingressRing = new ManyToOneRingBuffer(new UnsafeBuffer(mappedBuffer));
+        this.buffer = ingressRing.buffer();
+    }
+
+    public boolean placeOrder(final long uid, final long orderId, final long price, final long reservePrice, final long size,
+                              final OrderAction action, final OrderType orderType, final int symbol, final int userCookie,
+                              final long timestamp) {
+        final int index = ingressRing.tryClaim(OrderCommandType.PLACE_ORDER.getCode(), CMD_LENGTH);
+        if (index < 0) {
+            return false;
+        }
+        write(index, uid, orderId, price, reservePrice, size, symbol, userCookie, timestamp);
+        buffer.putByte(index + CMD_ACTION_OFFSET, action.getCode());
+        buffer.putByte(index + CMD_ORDER_TYPE_OFFSET, orderType.getCode());
+        ingressRing.commit(index);
+        return true;
+    }
+
+    public boolean moveOrder(final long uid, final long orderId, final long newPrice, final int symbol, final long timestamp) {
+        return writeCommand(OrderCommandType.MOVE_ORDER, uid, orderId, newPrice, 0, symbol, timestamp);
+    }
+
+    public boolean cancelOrder(final long uid, final long orderId, final int symbol, final long timestamp) {
+        return writeCommand(OrderCommandType.CANCEL_ORDER, uid, orderId, 0, 0, symbol, timestamp);
+    }
+
+    public boolean reduceOrder(final long uid, final long orderId, final long reduceSize, final int symbol, final long timestamp) {
+        return writeCommand(OrderCommandType.REDUCE_ORDER, uid, orderId, 0, reduceSize, symbol, timestamp);
+    }
+
+    public boolean addUser(final long uid, final long timestamp) {
+        return writeCommand(OrderCommandType.ADD_USER, uid, 0, 0, 0, 0, timestamp);
+    }
+
+    public boolean suspendUser(final long uid, final long timestamp) {
+        return writeCommand(OrderCommandType.SUSPEND_USER, uid, 0, 0, 0, 0, timestamp);
+    }
+
+    public boolean resumeUser(final long uid, final long timestamp) {
+        return writeCommand(OrderCommandType.RESUME_USER, uid, 0, 0, 0, 0, timestamp);
+    }
+
+    public boolean balanceAdjustment(final long uid, final long transactionId, final int currency, final long amount,
+                                     final BalanceAdjustmentType adjustmentType, final long timestamp) {
+        final int index = ingressRing.tryClaim(OrderCommandType.BALANCE_ADJUSTMENT.getCode(), CMD_LENGTH);
+        if (index < 0) {
+            return false;
+        }
+        write(index, uid, transactionId, amount, 0, 0, currency, 0, timestamp);
+        buffer.putByte(index + CMD_ACTION_OFFSET, NOT_SET);
+        buffer.putByte(index + CMD_ORDER_TYPE_OFFSET, adjustmentType.getCode());
+        ingressRing.commit(index);
+        return true;
+    }
+
+    @Override
+    public void close() {
+        IoUtil.unmap(mappedBuffer);
+    }
+
+    private boolean writeCommand(final OrderCommandType type, final long uid, final long orderId, final long price,
+                                 final long size, final int symbol, final long timestamp) {
+        final int index = ingressRing.tryClaim(type.getCode(), CMD_LENGTH);
+        if (index < 0) {
+            return false;
+        }
+        write(index, uid, orderId, price, 0, size, symbol, 0, timestamp);
+        buffer.putByte(index + CMD_ACTION_OFFSET, NOT_SET);
+        buffer.putByte(index + CMD_ORDER_TYPE_OFFSET, NOT_SET);
+        ingressRing.commit(index);
+        return true;
+    }
+
+    private void write(final int index, final long uid, final long orderId, final long price, final long reservePrice,
+                       final long size, final int symbol, final int userCookie, final long timestamp) {
+        buffer.putLong(index + CMD_UID_OFFSET, uid, BYTE_ORDER);
+        buffer.putLong(index + CMD_ORDER_ID_OFFSET, orderId, BYTE_ORDER);
+        buffer.putLong(index + CMD_PRICE_OFFSET, price, BYTE_ORDER);
+        buffer.putLong(index + CMD_RESERVE_BID_PRICE_OFFSET, reservePrice, BYTE_ORDER);
+        buffer.putLong(index + CMD_SIZE_OFFSET, size, BYTE_ORDER);
+        buffer.putLong(index + CMD_TIMESTAMP_OFFSET, timestamp, BYTE_ORDER);
+        buffer.putInt(index + CMD_SYMBOL_OFFSET, symbol, BYTE_ORDER);
+        buffer.putInt(index + CMD_USER_COOKIE_OFFSET, userCookie, BYTE_ORDER);
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.ipc;
+
+import exchange.core2.core.ExchangeApi;
+import exchange.core2.core.common.CoreWaitStrategy;
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.cmd.OrderCommandType;
+import exchange.core2.core.common.config.IpcConfiguration;
+import lombok.extern.slf4j.Slf4j;
+import org.agrona.BitUtil;
+import org.agrona.IoUtil;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.BackoffIdleStrategy;
+import org.agrona.concurrent.BusySpinIdleStrategy;
+import org.agrona.concurrent.IdleStrategy;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.YieldingIdleStrategy;
+import org.agrona.concurrent.ringbuffer.ManyToOneRingBuffer;
+import org.agrona.concurrent.ringbuffer.RecordDescriptor;
+import org.agrona.concurrent.ringbuffer.RingBufferDescriptor;
+
+import java.io.File;
+import java.nio.MappedByteBuffer;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static exchange.core2.core.processors.ipc.IpcMessages.*;
+
+/**
+ * Shared memory ingress.
+ * <p>
+ * Exchange core creates memory-mapped many-to-one ring file, gateway processes write fixed-layout command messages
+ * into it using {@link IpcGateway} (see {@link IpcMessages}).
+ * Ingress thread drains the ring into main ring buffer using batched claims (through ExchangeApi, so all ingress modes are supported).
+ * <p>
+ * Number of messages in the batch is estimated from ring size, if some message of the batch is claimed but not committed yet,
+ * its ring buffer slot is filled with NOP command.
+ * <p>
+ * Ingress does not claim sequences while the head message is not committed. If head message stays not committed longer
+ * than unblock timeout (gateway died in the middle of offer), the ring is unblocked, so next messages can be read.
+ */
+@Slf4j
+public final class IpcIngress {
+
+    private static final int RECORD_LENGTH = BitUtil.align(RecordDescriptor.HEADER_LENGTH + CMD_LENGTH, RecordDescriptor.ALIGNMENT);
+
+    // message type id -> command type (null - not accepted)
+    private static final OrderCommandType[] ACCEPTED_COMMANDS = new OrderCommandType[128];
+
+    static {
+        for (OrderCommandType type : new OrderCommandType[]{
+                OrderCommandType.PLACE_ORDER,
+                OrderCommandType.CANCEL_ORDER,
+                OrderCommandType.MOVE_ORDER,
+                OrderCommandType.REDUCE_ORDER,
+                OrderCommandType.ADD_USER,
+                OrderCommandType.BALANCE_ADJUSTMENT,
+                OrderCommandType.SUSPEND_USER,
+                OrderCommandType.RESUME_USER,
+                OrderCommandType.NOP}) {
+            ACCEPTED_COMMANDS[type.getCode()] = type;
+        }
+    }
+
+    private final ExchangeApi api;
+    private final File file;
+    private final MappedByteBuffer mappedBuffer;
+    private final UnsafeBuffer ingressBuffer;
+    private final ManyToOneRingBuffer ingressRing;
+    private final int maxBatchSize;
+    private final long unblockTimeoutNs;
+    private final Thread thread;
+    private final IdleStrategy idleStrategy;
+
+    private volatile boolean running = false;
+
+    // ingress thread only
+    private OrderCommand slot;
+    private int readMessages;
+    private final Consumer<OrderCommand> slotFiller = this::fillSlot;
+
+    // ingress thread only - position of not committed head message
+    private long blockedPosition = -1;
+    private long blockedSinceNs;
+
+    public IpcIngress(final IpcConfiguration cfg,
+                      final ExchangeApi api,
+                      final ThreadFactory threadFactory,
+                      final CoreWaitStrategy waitStrategy) {
+
+        this.api = api;
+        this.maxBatchSize = cfg.getIngressMaxBatchSize();
+        this.unblockTimeoutNs = TimeUnit.MILLISECONDS.toNanos(cfg.getIngressUnblockTimeoutMs());
+
+        // previous ring file can contain not processed commands
+        this.file = new File(cfg.getIngressFile());
+        IoUtil.deleteIfExists(file);
+        this.mappedBuffer = IoUtil.mapNewFile(file, cfg.getIngressBufferSize() + RingBufferDescriptor.TRAILER_LENGTH);
+        this.ingressBuffer = new UnsafeBuffer(mappedBuffer);
+        this.ingressRing = new ManyToOneRingBuffer(ingressBuffer);
+
+        this.idleStrategy = waitStrategy == CoreWaitStrategy.BUSY_SPIN
+                ? new BusySpinIdleStrategy()
+                : waitStrategy.isYield() ? new YieldingIdleStrategy() : new BackoffIdleStrategy(100, 10, 1_000, 100_000);
+
+        this.thread = threadFactory.newThread(this::run);
+        this.thread.setName("Thread-IpcIngress");
+        this.thread.setDaemon(true);
+
+        log.info("IPC ingress file {} ({} bytes)", file, cfg.getIngressBufferSize());
+    }
+
+    public void start() {
+        running = true;
+        thread.start();
+    }
+
+    /**
+     * Stop ingress thread and unmap ring file. All committed messages are moved into ring buffer before returning.
+     */
+    public void stop() {
+        if (running) {
+            running = false;
+            try {
+                thread.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        IoUtil.unmap(mappedBuffer);
+    }
+
+    private void run() {
+
+        while (running) {
+            idleStrategy.idle(drain());
+        }
+
+        // move remaining commands (bounded - gateways can keep writing, and not committed head message is unblocked by timeout)
+        int limit = ingressRing.capacity() / RECORD_LENGTH;
+        final long deadlineNs = System.nanoTime() + unblockTimeoutNs * 2;
+        while (limit > 0 && ingressRing.size() != 0 && System.nanoTime() - deadlineNs < 0) {
+            final int n = drain();
+            if (n == 0) {
+                Thread.yield();
+            }
+            limit -= n;
+        }
+
+        log.debug("IPC ingress stopped");
+    }
+
+    /**
+     * @return number of messages read from ingress ring
+     */
+    private int drain() {
+        final int n = Math.min(ingressRing.size() / RECORD_LENGTH, maxBatchSize);
+        if (n == 0) {
+            return 0;
+        }
+        if (!isHeadCommitted()) {
+            checkBlockedHead();
+            return 0;
+        }
+        blockedPosition = -1;
+        readMessages = 0;
+        api.publishCommandsBatch(n, slotFiller);
+        return readMessages;
+    }
+
+    private boolean isHeadCommitted() {
+        final int headIndex = (int) ingressRing.consumerPosition() & (ingressRing.capacity() - 1);
+        return ingressBuffer.getIntVolatile(RecordDescriptor.lengthOffset(headIndex)) > 0;
+    }
+
+    private void checkBlockedHead() {
+        final long position = ingressRing.consumerPosition();
+        final long now = System.nanoTime();
+        if (position != blockedPosition) {
+            blockedPosition = position;
+            blockedSinceNs = now;
+        } else if (now - blockedSinceNs > unblockTimeoutNs) {
+            if (ingressRing.unblock()) {
+                log.warn("IPC ingress ring unblocked at position {} - message was claimed but not committed", position);
+            }
+            blockedPosition = -1;
+        }
+    }
+
+    private void fillSlot(final OrderCommand cmd) {
+        slot = cmd;
+        if (ingressRing.read(this::readMessage, 1) != 0) {
+            readMessages++;
+        } else {
+            // message is claimed by gateway, but not committed yet
+            cmd.command = OrderCommandType.NOP;
+            cmd.resultCode = CommandResultCode.NEW;
+        }
+    }
+
+    private void readMessage(final int msgTypeId, final MutableDirectBuffer buffer, final int index, final int length) {
+
+        final OrderCommand cmd = slot;
+        cmd.resultCode = CommandResultCode.NEW;
+        cmd.serviceFlags = 0;
+        cmd.eventsGroup = 0;
+
+        final OrderCommandType type = msgTypeId < ACCEPTED_COMMANDS.length ? ACCEPTED_COMMANDS[msgTypeId] : null;
+        if (type == null || length != CMD_LENGTH) {
+            log.warn("Ignored IPC message type={} length={}", msgTypeId, length);
+            cmd.command = OrderCommandType.NOP;
+            return;
+        }
+
+        cmd.uid = buffer.getLong(index + CMD_UID_OFFSET, BYTE_ORDER);
+        cmd.orderId = buffer.getLong(index + CMD_ORDER_ID_OFFSET, BYTE_ORDER);
+        cmd.price = buffer.getLong(index + CMD_PRICE_OFFSET, BYTE_ORDER);
+        cmd.reserveBidPrice = buffer.getLong(index + CMD_RESERVE_BID_PRICE_OFFSET, BYTE_ORDER);
+        cmd.size = buffer.getLong(index + CMD_SIZE_OFFSET, BYTE_ORDER);
+        cmd.timestamp = buffer.getLong(index + CMD_TIMESTAMP_OFFSET, BYTE_ORDER);
+        cmd.symbol = buffer.getInt(index + CMD_SYMBOL_OFFSET, BYTE_ORDER);
+        cmd.userCookie = buffer.getInt(index + CMD_USER_COOKIE_OFFSET, BYTE_ORDER);
+
+        try {
+            if (type == OrderCommandType.PLACE_ORDER) {
+                cmd.action = OrderAction.of(buffer.getByte(index + CMD_ACTION_OFFSET));
+                cmd.orderType = OrderType.of(buffer.getByte(index + CMD_ORDER_TYPE_OFFSET));
+            } else if (type == OrderCommandType.BALANCE_ADJUSTMENT) {
+                cmd.orderType = OrderType.of(buffer.getByte(index + CMD_ORDER_TYPE_OFFSET));
+            }
+        } catch (IllegalArgumentException ex) {
+            log.warn("Ignored IPC message type={}: {}", msgTypeId, ex.getMessage());
+            cmd.command = OrderCommandType.NOP;
+            return;
+        }
+
+        cmd.command = type;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.ipc;
+
+import java.nio.ByteOrder;
+
+/**
+ * Fixed layouts of IPC messages.
+ * <p>
+ * Ingress: gateway writes one command message per command, message type id is OrderCommandType code.
+ * Only PLACE_ORDER, CANCEL_ORDER, MOVE_ORDER, REDUCE_ORDER, ADD_USER, BALANCE_ADJUSTMENT, SUSPEND_USER, RESUME_USER and NOP are accepted.
+ * Fields are same as for corresponding ExchangeApi commands (balance adjustment: currency - symbol, transactionId - orderId, amount - price).
+ * <p>
+ * Egress: exchange core broadcasts result message for every processed command (except NOP),
+ * followed by event messages of the same command (same sequence): trades, reduce, reject, L2 snapshot, L2 update.
+ * Events are same as provided by IFlyweightEventsHandler.
+ */
+public final class IpcMessages {
+
+    public static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    // ingress command
+    public static final int CMD_UID_OFFSET = 0; // 8 bytes
+    public static final int CMD_ORDER_ID_OFFSET = 8; // 8 bytes
+    public static final int CMD_PRICE_OFFSET = 16; // 8 bytes
+    public static final int CMD_RESERVE_BID_PRICE_OFFSET = 24; // 8 bytes
+    public static final int CMD_SIZE_OFFSET = 32; // 8 bytes
+    public static final int CMD_TIMESTAMP_OFFSET = 40; // 8 bytes
+    public static final int CMD_SYMBOL_OFFSET = 48; // 4 bytes
+    public static final int CMD_USER_COOKIE_OFFSET = 52; // 4 bytes
+    public static final int CMD_ACTION_OFFSET = 56; // 1 byte
+    public static final int CMD_ORDER_TYPE_OFFSET = 57; // 1 byte (adjustment type for BALANCE_ADJUSTMENT)
+
+    public static final int CMD_LENGTH = 58;
+
+    // egress message types
+    public static final int MSG_TYPE_RESULT = 1;
+    public static final int MSG_TYPE_TRADE = 2;
+    public static final int MSG_TYPE_REDUCE = 3;
+    public static final int MSG_TYPE_REJECT = 4;
+    public static final int MSG_TYPE_ORDER_BOOK = 5;
+    public static final int MSG_TYPE_ORDER_BOOK_UPDATE = 6;
+
+    // egress command result
+    public static final int RESULT_SEQ_OFFSET = 0; // 8 bytes
+    public static final int RESULT_TIMESTAMP_OFFSET = 8; // 8 bytes
+    public static final int RESULT_ORDER_ID_OFFSET = 16; // 8 bytes
+    public static final int RESULT_UID_OFFSET = 24; // 8 bytes
+    public static final int RESULT_PRICE_OFFSET = 32; // 8 bytes
+    public static final int RESULT_SIZE_OFFSET = 40; // 8 bytes
+    public static final int RESULT_SYMBOL_OFFSET = 48; // 4 bytes
+    public static final int RESULT_USER_COOKIE_OFFSET = 52; // 4 bytes
+    public static final int RESULT_CODE_OFFSET = 56; // 4 bytes
+    public static final int RESULT_COMMAND_OFFSET = 60; // 1 byte
+    public static final int RESULT_ACTION_OFFSET = 61; // 1 byte (-1 if not set)
+
+    public static final int RESULT_LENGTH = 62;
+
+    // egress trade event (header and TRADE_ENTRY_LENGTH bytes per trade)
+    // very long chains are split into multiple messages with the same header (except number of trades)
+    public static final int TRADE_SEQ_OFFSET = 0; // 8 bytes
+    public static final int TRADE_TIMESTAMP_OFFSET = 8; // 8 bytes
+    public static final int TRADE_TAKER_ORDER_ID_OFFSET = 16; // 8 bytes
+    public static final int TRADE_TAKER_UID_OFFSET = 24; // 8 bytes
+    public static final int TRADE_TOTAL_VOLUME_OFFSET = 32; // 8 bytes
+    public static final int TRADE_SYMBOL_OFFSET = 40; // 4 bytes
+    public static final int TRADE_TRADES_NUM_OFFSET = 44; // 4 bytes (in this message)
+    public static final int TRADE_TAKER_ACTION_OFFSET = 48; // 1 byte
+    public static final int TRADE_TAKER_COMPLETED_OFFSET = 49; // 1 byte (0 or 1)
+
+    public static final int TRADE_HEADER_LENGTH = 56;
+
+    public static final int TRADE_ENTRY_MAKER_ORDER_ID_OFFSET = 0; // 8 bytes
+    public static final int TRADE_ENTRY_MAKER_UID_OFFSET = 8; // 8 bytes
+    public static final int TRADE_ENTRY_PRICE_OFFSET = 16; // 8 bytes
+    public static final int TRADE_ENTRY_VOLUME_OFFSET = 24; // 8 bytes
+    public static final int TRADE_ENTRY_MAKER_COMPLETED_OFFSET = 32; // 1 byte (0 or 1)
+
+    public static final int TRADE_ENTRY_LENGTH = 40;
+
+    // egress reduce event
+    public static final int REDUCE_SEQ_OFFSET = 0; // 8 bytes
+    public static final int REDUCE_TIMESTAMP_OFFSET = 8; // 8 bytes
+    public static final int REDUCE_ORDER_ID_OFFSET = 16; // 8 bytes
+    public static final int REDUCE_UID_OFFSET = 24; // 8 bytes
+    public static final int REDUCE_PRICE_OFFSET = 32; // 8 bytes
+    public static final int REDUCE_VOLUME_OFFSET = 40; // 8 bytes
+    public static final int REDUCE_SYMBOL_OFFSET = 48; // 4 bytes
+    public static final int REDUCE_ORDER_COMPLETED_OFFSET = 52; // 1 byte (0 or 1)
+
+    public static final int REDUCE_LENGTH = 53;
+
+    // egress reject event
+    public static final int REJECT_SEQ_OFFSET = 0; // 8 bytes
+    public static final int REJECT_TIMESTAMP_OFFSET = 8; // 8 bytes
+    public static final int REJECT_ORDER_ID_OFFSET = 16; // 8 bytes
+    public static final int REJECT_UID_OFFSET = 24; // 8 bytes
+    public static final int REJECT_PRICE_OFFSET = 32; // 8 bytes
+    public static final int REJECT_VOLUME_OFFSET = 40; // 8 bytes
+    public static final int REJECT_SYMBOL_OFFSET = 48; // 4 bytes
+
+    public static final int REJECT_LENGTH = 52;
+
+    // egress L2 snapshot (header and LEVEL_LENGTH bytes per level: asks, then bids)
+    public static final int ORDER_BOOK_SEQ_OFFSET = 0; // 8 bytes
+    public static final int ORDER_BOOK_TIMESTAMP_OFFSET = 8; // 8 bytes
+    public static final int ORDER_BOOK_SYMBOL_OFFSET = 16; // 4 bytes
+    public static final int ORDER_BOOK_ASK_SIZE_OFFSET = 20; // 4 bytes
+    public static final int ORDER_BOOK_BID_SIZE_OFFSET = 24; // 4 bytes
+    public static final int ORDER_BOOK_REQUESTED_OFFSET = 28; // 1 byte (1 - ORDER_BOOK_REQUEST result)
+
+    public static final int ORDER_BOOK_HEADER_LENGTH = 32;
+
+    // egress L2 update - changed levels (header and LEVEL_LENGTH bytes per level, zero volume - level removed)
+    // big updates are split into multiple messages with the same header (except size)
+    public static final int ORDER_BOOK_UPDATE_SEQ_OFFSET = 0; // 8 bytes
+    public static final int ORDER_BOOK_UPDATE_TIMESTAMP_OFFSET = 8; // 8 bytes
+    public static final int ORDER_BOOK_UPDATE_SYMBOL_OFFSET = 16; // 4 bytes
+    public static final int ORDER_BOOK_UPDATE_SIZE_OFFSET = 20; // 4 bytes
+
+    public static final int ORDER_BOOK_UPDATE_HEADER_LENGTH = 24;
+
+    public static final int LEVEL_PRICE_OFFSET = 0; // 8 bytes
+    public static final int LEVEL_VOLUME_OFFSET = 8; // 8 bytes
+    public static final int LEVEL_ORDERS_OFFSET = 16; // 4 bytes
+    public static final int LEVEL_IS_ASK_OFFSET = 20; // 1 byte (L2 update only)
+
+    public static final int LEVEL_LENGTH = 24;
+
+    public static final byte NOT_SET = -1;
+
+    private IpcMessages() {
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.ipc;
+
+import exchange.core2.core.IFlyweightEventsHandler;
+import exchange.core2.core.common.cmd.OrderCommandType;
+import exchange.core2.core.common.config.IpcConfiguration;
+import lombok.extern.slf4j.Slf4j;
+import org.agrona.ExpandableDirectByteBuffer;
+import org.agrona.IoUtil;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.broadcast.BroadcastBufferDescriptor;
+import org.agrona.concurrent.broadcast.BroadcastTransmitter;
+
+import java.io.File;
+import java.nio.MappedByteBuffer;
+
+import static exchange.core2.core.processors.ipc.IpcMessages.*;
+
+/**
+ * Shared memory results egress - serializes command results and events into memory-mapped broadcast buffer
+ * (see {@link IpcMessages} for messages layout).
+ * <p>
+ * Used through FlyweightEventsProcessor as separate results stage, in parallel with results consumer.
+ * Transmitter never waits for subscribers: slow subscriber is lapped and loses messages (see {@link IpcResultsSubscriber}).
+ * Results egress thread only.
+ */
+@Slf4j
+public final class IpcResultsEgress implements IFlyweightEventsHandler, AutoCloseable {
+
+    private final MappedByteBuffer mappedBuffer;
+    private final BroadcastTransmitter transmitter;
+    private final int maxMessageLength;
+
+    private final MutableDirectBuffer messageBuffer = new ExpandableDirectByteBuffer(1024);
+
+    // sequence of the last command result, events of the same command are following it
+    private long seq;
+
+    public IpcResultsEgress(final IpcConfiguration cfg) {
+
+        final File file = new File(cfg.getEgressFile());
+        IoUtil.deleteIfExists(file);
+        this.mappedBuffer = IoUtil.mapNewFile(file, cfg.getEgressBufferSize() + BroadcastBufferDescriptor.TRAILER_LENGTH);
+        this.transmitter = new BroadcastTransmitter(new UnsafeBuffer(mappedBuffer));
+        this.maxMessageLength = transmitter.maxMsgLength();
+
+        log.info("IPC egress file {} ({} bytes)", file, cfg.getEgressBufferSize());
+    }
+
+    @Override
+    public void commandResult(final CommandResultView result) {
+
+        seq = result.getSeq();
+
+        // including NOP commands filling ingress batches
+        if (result.getCommandType() == OrderCommandType.NOP) {
+            return;
+        }
+
+        final MutableDirectBuffer buffer = messageBuffer;
+        buffer.putLong(RESULT_SEQ_OFFSET, seq, BYTE_ORDER);
+        buffer.putLong(RESULT_TIMESTAMP_OFFSET, result.getTimestamp(), BYTE_ORDER);
+        buffer.putLong(RESULT_ORDER_ID_OFFSET, result.getOrderId(), BYTE_ORDER);
+        buffer.putLong(RESULT_UID_OFFSET, result.getUid(), BYTE_ORDER);
+        buffer.putLong(RESULT_PRICE_OFFSET, result.getPrice(), BYTE_ORDER);
+        buffer.putLong(RESULT_SIZE_OFFSET, result.getSize(), BYTE_ORDER);
+        buffer.putInt(RESULT_SYMBOL_OFFSET, result.getSymbol(), BYTE_ORDER);
+        buffer.putInt(RESULT_USER_COOKIE_OFFSET, result.getUserCookie(), BYTE_ORDER);
+        buffer.putInt(RESULT_CODE_OFFSET, result.getResultCode().getCode(), BYTE_ORDER);
+        buffer.putByte(RESULT_COMMAND_OFFSET, result.getCommandType().getCode());
+        buffer.putByte(RESULT_ACTION_OFFSET, result.getAction() != null ? result.getAction().getCode() : NOT_SET);
+
+        transmitter.transmit(MSG_TYPE_RESULT, buffer, 0, RESULT_LENGTH);
+    }
+
+    @Override
+    public void tradeEvent(final TradeEventView tradeEvent) {
+
+        final MutableDirectBuffer buffer = messageBuffer;
+        buffer.putLong(TRADE_SEQ_OFFSET, seq, BYTE_ORDER);
+        buffer.putLong(TRADE_TIMESTAMP_OFFSET, tradeEvent.getTimestamp(), BYTE_ORDER);
+        buffer.putLong(TRADE_TAKER_ORDER_ID_OFFSET, tradeEvent.getTakerOrderId(), BYTE_ORDER);
+        buffer.putLong(TRADE_TAKER_UID_OFFSET, tradeEvent.getTakerUid(), BYTE_ORDER);
+        buffer.putLong(TRADE_TOTAL_VOLUME_OFFSET, tradeEvent.getTotalVolume(), BYTE_ORDER);
+        buffer.putInt(TRADE_SYMBOL_OFFSET, tradeEvent.getSymbol(), BYTE_ORDER);
+        buffer.putByte(TRADE_TAKER_ACTION_OFFSET, tradeEvent.getTakerAction().getCode());
+        buffer.putByte(TRADE_TAKER_COMPLETED_OFFSET, tradeEvent.isTakerOrderCompleted() ? (byte) 1 : (byte) 0);
+
+        final int maxTradesNum = (maxMessageLength - TRADE_HEADER_LENGTH) / TRADE_ENTRY_LENGTH;
+        int tradesNum = 0;
+        int offset = TRADE_HEADER_LENGTH;
+        while (tradeEvent.nextTrade()) {
+            buffer.putLong(offset + TRADE_ENTRY_MAKER_ORDER_ID_OFFSET, tradeEvent.getMakerOrderId(), BYTE_ORDER);
+            buffer.putLong(offset + TRADE_ENTRY_MAKER_UID_OFFSET, tradeEvent.getMakerUid(), BYTE_ORDER);
+            buffer.putLong(offset + TRADE_ENTRY_PRICE_OFFSET, tradeEvent.getPrice(), BYTE_ORDER);
+            buffer.putLong(offset + TRADE_ENTRY_VOLUME_OFFSET, tradeEvent.getVolume(), BYTE_ORDER);
+            buffer.putByte(offset + TRADE_ENTRY_MAKER_COMPLETED_OFFSET, tradeEvent.isMakerOrderCompleted() ? (byte) 1 : (byte) 0);
+            offset += TRADE_ENTRY_LENGTH;
+
+            if (++tradesNum == maxTradesNum) {
+                // split very long chain
+                buffer.putInt(TRADE_TRADES_NUM_OFFSET, tradesNum, BYTE_ORDER);
+                transmitter.transmit(MSG_TYPE_TRADE, buffer, 0, offset);
+                tradesNum = 0;
+                offset = TRADE_HEADER_LENGTH;
+            }
+        }
+
+        if (tradesNum != 0) {
+            buffer.putInt(TRADE_TRADES_NUM_OFFSET, tradesNum, BYTE_ORDER);
+            transmitter.transmit(MSG_TYPE_TRADE, buffer, 0, offset);
+        }
+    }
+
+    @Override
+    public void rejectEvent(final RejectEventView rejectEvent) {
+
+        final MutableDirectBuffer buffer = messageBuffer;
+        buffer.putLong(REJECT_SEQ_OFFSET, seq, BYTE_ORDER);
+        buffer.putLong(REJECT_TIMESTAMP_OFFSET, rejectEvent.getTimestamp(), BYTE_ORDER);
+        buffer.putLong(REJECT_ORDER_ID_OFFSET, rejectEvent.getOrderId(), BYTE_ORDER);
+        buffer.putLong(REJECT_UID_OFFSET, rejectEvent.getUid(), BYTE_ORDER);
+        buffer.putLong(REJECT_PRICE_OFFSET, rejectEvent.getPrice(), BYTE_ORDER);
+        buffer.putLong(REJECT_VOLUME_OFFSET, rejectEvent.getRejectedVolume(), BYTE_ORDER);
+        buffer.putInt(REJECT_SYMBOL_OFFSET, rejectEvent.getSymbol(), BYTE_ORDER);
+
+        transmitter.transmit(MSG_TYPE_REJECT, buffer, 0, REJECT_LENGTH);
+    }
+
+    @Override
+    public void reduceEvent(final ReduceEventView reduceEvent) {
+
+        final MutableDirectBuffer buffer = messageBuffer;
+        buffer.putLong(REDUCE_SEQ_OFFSET, seq, BYTE_ORDER);
+        buffer.putLong(REDUCE_TIMESTAMP_OFFSET, reduceEvent.getTimestamp(), BYTE_ORDER);
+        buffer.putLong(REDUCE_ORDER_ID_OFFSET, reduceEvent.getOrderId(), BYTE_ORDER);
+        buffer.putLong(REDUCE_UID_OFFSET, reduceEvent.getUid(), BYTE_ORDER);
+        buffer.putLong(REDUCE_PRICE_OFFSET, reduceEvent.getPrice(), BYTE_ORDER);
+        buffer.putLong(REDUCE_VOLUME_OFFSET, reduceEvent.getReducedVolume(), BYTE_ORDER);
+        buffer.putInt(REDUCE_SYMBOL_OFFSET, reduceEvent.getSymbol(), BYTE_ORDER);
+        buffer.putByte(REDUCE_ORDER_COMPLETED_OFFSET, reduceEvent.isOrderCompleted() ? (byte) 1 : (byte) 0);
+
+        transmitter.transmit(MSG_TYPE_REDUCE, buffer, 0, REDUCE_LENGTH);
+    }
+
+    @Override
+    public void orderBook(final OrderBookView orderBook) {
+
+        // deep snapshots are truncated to max message length
+        final int maxLevels = (maxMessageLength - ORDER_BOOK_HEADER_LENGTH) / LEVEL_LENGTH / 2;
+        final int askSize = Math.min(orderBook.getAskSize(), maxLevels);
+        final int bidSize = Math.min(orderBook.getBidSize(), maxLevels);
+
+        final MutableDirectBuffer buffer = messageBuffer;
+        buffer.putLong(ORDER_BOOK_SEQ_OFFSET, seq, BYTE_ORDER);
+        buffer.putLong(ORDER_BOOK_TIMESTAMP_OFFSET, orderBook.getTimestamp(), BYTE_ORDER);
+        buffer.putInt(ORDER_BOOK_SYMBOL_OFFSET, orderBook.getSymbol(), BYTE_ORDER);
+        buffer.putInt(ORDER_BOOK_ASK_SIZE_OFFSET, askSize, BYTE_ORDER);
+        buffer.putInt(ORDER_BOOK_BID_SIZE_OFFSET, bidSize, BYTE_ORDER);
+        buffer.putByte(ORDER_BOOK_REQUESTED_OFFSET, orderBook.isRequested() ? (byte) 1 : (byte) 0);
+
+        int offset = ORDER_BOOK_HEADER_LENGTH;
+        for (int i = 0; i < askSize; i++) {
+            offset = putLevel(buffer, offset, orderBook.getAskPrice(i), orderBook.getAskVolume(i), orderBook.getAskOrders(i), true);
+        }
+        for (int i = 0; i < bidSize; i++) {
+            offset = putLevel(buffer, offset, orderBook.getBidPrice(i), orderBook.getBidVolume(i), orderBook.getBidOrders(i), false);
+        }
+
+        transmitter.transmit(MSG_TYPE_ORDER_BOOK, buffer, 0, offset);
+    }
+
+    @Override
+    public void orderBookUpdate(final OrderBookUpdateView orderBookUpdate) {
+
+        final MutableDirectBuffer buffer = messageBuffer;
+        buffer.putLong(ORDER_BOOK_UPDATE_SEQ_OFFSET, seq, BYTE_ORDER);
+        buffer.putLong(ORDER_BOOK_UPDATE_TIMESTAMP_OFFSET, orderBookUpdate.getTimestamp(), BYTE_ORDER);
+        buffer.putInt(ORDER_BOOK_UPDATE_SYMBOL_OFFSET, orderBookUpdate.getSymbol(), BYTE_ORDER);
+
+        // levels are independent, so big update is split into several messages (same as long trades chain)
+        final int maxLevels = (maxMessageLength - ORDER_BOOK_UPDATE_HEADER_LENGTH) / LEVEL_LENGTH;
+        final int size = orderBookUpdate.getSize();
+        int levelsNum = 0;
+        int offset = ORDER_BOOK_UPDATE_HEADER_LENGTH;
+        for (int i = 0; i < size; i++) {
+            offset = putLevel(buffer, offset, orderBookUpdate.getPrice(i), orderBookUpdate.getVolume(i), orderBookUpdate.getOrders(i), orderBookUpdate.isAsk(i));
+
+            if (++levelsNum == maxLevels && i != size - 1) {
+                buffer.putInt(ORDER_BOOK_UPDATE_SIZE_OFFSET, levelsNum, BYTE_ORDER);
+                transmitter.transmit(MSG_TYPE_ORDER_BOOK_UPDATE, buffer, 0, offset);
+                levelsNum = 0;
+                offset = ORDER_BOOK_UPDATE_HEADER_LENGTH;
+            }
+        }
+
+        // empty update is transmitted as well
+        buffer.putInt(ORDER_BOOK_UPDATE_SIZE_OFFSET, levelsNum, BYTE_ORDER);
+        transmitter.transmit(MSG_TYPE_ORDER_BOOK_UPDATE, buffer, 0, offset);
+    }
+
+    @Override
+    public void close() {
+        IoUtil.unmap(mappedBuffer);
+    }
+
+    private static int putLevel(final MutableDirectBuffer buffer, final int offset, final long price, final long volume,
+                                final int orders, final boolean ask) {
+        buffer.putLong(offset + LEVEL_PRICE_OFFSET, price, BYTE_ORDER);
+        buffer.putLong(offset + LEVEL_VOLUME_OFFSET, volume, BYTE_ORDER);
+        buffer.putInt(offset + LEVEL_ORDERS_OFFSET, orders, BYTE_ORDER);
+        buffer.putByte(offset + LEVEL_IS_ASK_OFFSET, ask ? (byte) 1 : (byte) 0);
+        return offset + LEVEL_LENGTH;
+    }
+}
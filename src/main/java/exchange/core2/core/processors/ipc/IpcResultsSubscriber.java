@@ -0,0 +1,90 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.ipc;
+
+import org.agrona.IoUtil;
+import org.agrona.concurrent.MessageHandler;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.broadcast.BroadcastReceiver;
+
+import java.io.File;
+import java.nio.MappedByteBuffer;
+
+/**
+ * Subscriber of shared memory results broadcast (can be used from another process on the same host).
+ * <p>
+ * Subscriber receives messages transmitted after subscription (already available messages are skipped).
+ * If subscriber is too slow, transmitter overwrites not received messages (subscriber is lapped),
+ * lost messages are skipped and counted.
+ * Not thread safe.
+ */
+public final class IpcResultsSubscriber implements AutoCloseable {
+
+    private final MappedByteBuffer mappedBuffer;
+    private final BroadcastReceiver receiver;
+
+    // message is copied before validation - transmitter can overwrite it while handler is reading
+    private final UnsafeBuffer messageBuffer = new UnsafeBuffer(new byte[256]);
+
+    private long lappedCount = 0;
+
+    public IpcResultsSubscriber(final String egressFile) {
+        this.mappedBuffer = IoUtil.mapExistingFile(new File(egressFile), "egress");
+        this.receiver = new BroadcastReceiver(new UnsafeBuffer(mappedBuffer));
+
+        // receiver is positioned at latest transmitted message
+        while (receiver.receiveNext()) ;
+    }
+
+    /**
+     * Receive available messages
+     *
+     * @param handler - message handler (buffer is valid during callback only)
+     * @param limit   - max number of messages
+     * @return number of messages passed to handler
+     */
+    public int poll(final MessageHandler handler, final int limit) {
+        int count = 0;
+        while (count < limit && receiver.receiveNext()) {
+            final int length = receiver.length();
+            if (length > messageBuffer.capacity()) {
+                messageBuffer.wrap(new byte[length]);
+            }
+            messageBuffer.putBytes(0, receiver.buffer(), receiver.offset(), length);
+            final int msgTypeId = receiver.typeId();
+            if (!receiver.validate()) {
+                // overwritten while copying
+                lappedCount++;
+                continue;
+            }
+            handler.onMessage(msgTypeId, messageBuffer, 0, length);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return number of times subscriber was lapped by transmitter (some messages were lost)
+     */
+    public long getLappedCount() {
+        return lappedCount + receiver.lappedCount();
+    }
+
+    @Override
+    public void close() {
+        IoUtil.unmap(mappedBuffer);
+    }
+}
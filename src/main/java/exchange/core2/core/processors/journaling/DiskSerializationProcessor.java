@@ -15,10 +15,12 @@
  */
 package exchange.core2.core.processors.journaling;
 
+import com.lmax.disruptor.Sequence;
 import exchange.core2.core.ExchangeApi;
 import exchange.core2.core.common.BalanceAdjustmentType;
 import exchange.core2.core.common.OrderAction;
 import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.cmd.CommandResultCode;
 import exchange.core2.core.common.cmd.OrderCommand;
 import exchange.core2.core.common.cmd.OrderCommandType;
 import exchange.core2.core.common.config.ExchangeConfiguration;
@@ -33,18 +35,29 @@ import net.openhft.chronicle.bytes.WriteBytesMarshallable;
 import net.openhft.chronicle.wire.InputStreamToWire;
 import net.openhft.chronicle.wire.Wire;
 import net.openhft.chronicle.wire.WireType;
+import org.agrona.BufferUtil;
+import org.agrona.IoUtil;
 import org.agrona.collections.MutableLong;
 
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.NavigableMap;
-import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 
@@ -81,12 +94,78 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
     private RandomAccessFile raf;
     private FileChannel channel;
 
+    // memory-mapped journal mode
+    private final boolean mappedMode;
+    private final DiskSerializationProcessorConfiguration.MappedSyncPolicy mappedSyncPolicy;
+    private final int mappedSegmentSize;
+    private final int mappedSyncBytes;
+    private final long mappedFlushIntervalNs;
+    private final Object mappedSegmentLock = new Object();
+    private MappedByteBuffer mappedBuffer;
+    private int mappedSyncedPosition;
+    private Thread mappedFlusherThread;
+    private volatile boolean mappedFlusherActive;
+
+    // journal durability (FILE_CHANNEL mode)
+    private final DiskSerializationProcessorConfiguration.JournalDurability durability;
+    private final Object channelLock = new Object();
+    // group commit: last sequence written into channel (published by journaling thread at the end of batch)
+    private volatile long groupCommitWrittenSeq = -1;
+    // group commit: last sequence covered by fsync, results handler waits for it
+    private final Sequence durableSequence;
+    private Thread groupCommitFlusherThread;
+    private volatile boolean groupCommitFlusherActive;
+
+    // asynchronous snapshots: module thread only dumps state into reusable buffer, compression and file I/O are done by writer thread
+    private final ExecutorService snapshotWriterExecutor;
+    private final int snapshotBufferInitialSize;
+    private final Map<String, SnapshotBuffer> snapshotBuffers = new ConcurrentHashMap<>();
+    private final byte[] snapshotCopyBuffer = new byte[1024 * 1024]; // writer thread only
+
+    // fast recovery
+    private final int journalReplayThreads;
+
+    // journal format v2 (null - v1 fixed size records)
+    private final JournalCompactCodec journalCodec;
+    private final ByteBuffer journalBlockHeader;
+    private final ByteBuffer[] journalBlockBuffers;
+    private int journalBlockCommands = 0;
+
+    // next journal files are prepared in background (null - created on rollover)
+    private final JournalSegmentManager segmentManager;
+
+    private final int snapshotLoadThreads;
+
     private int filesCounter = 0;
 
     private long writtenBytes = 0;
 
     private static final int MAX_COMMAND_SIZE_BYTES = 256;
 
+    // cmd(1) + seq(8) + timestamp(8) + serviceFlags(4) + eventsGroup(8)
+    static final int JOURNAL_HEADER_SIZE = 29;
+    // cmd(1) + compressed size(4) + original size(4)
+    static final int COMPRESSED_BLOCK_HEADER_SIZE = 9;
+
+    private static final int REPLAY_MAP_WINDOW_SIZE = 1 << 30;
+    private static final int REPLAY_RAW_CHUNK_COMMANDS = 4096;
+    private static final int REPLAY_PUBLISH_BATCH = 256;
+
+    // journal format v2: file header (marker, version), then blocks
+    // block header: type, payload length, original length, number of commands
+    static final byte JOURNAL_V2_FILE_MARKER = 'J'; // not a command code
+    static final byte JOURNAL_V2_VERSION = 2;
+    static final int JOURNAL_BLOCK_HEADER_SIZE = 13;
+    static final byte JOURNAL_BLOCK_END = 0; // end of written data in pre-allocated segment
+    static final byte JOURNAL_BLOCK_RAW = 1;
+    static final byte JOURNAL_BLOCK_LZ4 = 2;
+
+    // chunked snapshot: magic, payload version, chunksNum, then index entries (offset, compressed length, original length)
+    private static final int SNAPSHOT_CHUNKED_MAGIC = 0x45435331; // "ECS1", LZ4 frame starts from 0x04224D18
+    private static final int SNAPSHOT_CHUNKED_HEADER_SIZE = 12;
+    private static final int SNAPSHOT_CHUNK_INDEX_ENTRY_SIZE = 16;
+    private static final int SNAPSHOT_MAX_CHUNK_SIZE = 1 << 30; // compressed chunk must fit into single ByteBuffer
+
 //    private List<Integer> batchSizes = new ArrayList<>(100000);
 //    final SingleWriterRecorder hdrRecorderRaw = new SingleWriterRecorder(Integer.MAX_VALUE, 2);
 //    final SingleWriterRecorder hdrRecorderLz4 = new SingleWriterRecorder(Integer.MAX_VALUE, 2);
@@ -119,7 +198,43 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
         this.lz4CompressorSnapshot = diskConfig.getSnapshotLz4CompressorFactory().get();
 
         final int maxCompressedBlockLength = lz4CompressorJournal.maxCompressedLength(journalBufferSize);
-        this.lz4WriteBuffer = ByteBuffer.allocate(maxCompressedBlockLength);
+        this.lz4WriteBuffer = ByteBuffer.allocate(JOURNAL_BLOCK_HEADER_SIZE + maxCompressedBlockLength);
+
+        this.mappedMode = diskConfig.getJournalWriteMode() == DiskSerializationProcessorConfiguration.JournalWriteMode.MEMORY_MAPPED;
+        this.mappedSyncPolicy = diskConfig.getJournalMappedSyncPolicy();
+        // single MappedByteBuffer can not exceed 2GB
+        this.mappedSegmentSize = (int) Math.min(diskConfig.getJournalFileMaxSize(), Integer.MAX_VALUE);
+        this.mappedSyncBytes = diskConfig.getJournalMappedSyncBytes();
+        this.mappedFlushIntervalNs = diskConfig.getJournalMappedFlushIntervalNs();
+
+        this.durability = mappedMode
+                ? DiskSerializationProcessorConfiguration.JournalDurability.NONE // see mappedSyncPolicy
+                : diskConfig.getJournalDurability();
+        this.durableSequence = durability == DiskSerializationProcessorConfiguration.JournalDurability.GROUP_COMMIT
+                ? new Sequence(-1)
+                : null;
+
+        this.journalReplayThreads = diskConfig.getJournalReplayThreads();
+
+        this.journalCodec = !mappedMode && diskConfig.getJournalFormat() == DiskSerializationProcessorConfiguration.JournalFormat.V2_COMPACT
+                ? new JournalCompactCodec()
+                : null;
+        this.journalBlockHeader = ByteBuffer.allocateDirect(JOURNAL_BLOCK_HEADER_SIZE);
+        this.journalBlockBuffers = new ByteBuffer[]{journalBlockHeader, journalWriteBuffer};
+
+        this.segmentManager = diskConfig.getJournalSegmentsPreallocated() > 0
+                ? new JournalSegmentManager(this::resolveJournalPath, mappedMode ? mappedSegmentSize : diskConfig.getJournalFileMaxSize(), diskConfig.getJournalSegmentsPreallocated())
+                : null;
+
+        this.snapshotBufferInitialSize = diskConfig.getSnapshotBufferInitialSize();
+        this.snapshotLoadThreads = diskConfig.getSnapshotLoadThreads();
+        this.snapshotWriterExecutor = diskConfig.isSnapshotAsyncWrite()
+                ? Executors.newSingleThreadExecutor(r -> {
+            final Thread thread = new Thread(r, "Thread-SnapshotWriter");
+            thread.setDaemon(true);
+            return thread;
+        })
+                : null;
     }
 
     @Override
@@ -132,6 +247,10 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
 
         final Path path = resolveSnapshotPath(snapshotId, type, instanceId);
 
+        if (snapshotWriterExecutor != null) {
+            return storeDataAsync(path, snapshotId, seq, timestampNs, type, instanceId, obj);
+        }
+
         log.debug("Writing state into file {} ...", path);
 
         try (final OutputStream os = Files.newOutputStream(path, StandardOpenOption.CREATE_NEW);
@@ -159,6 +278,196 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
             return false;
         }
 
+        return writeMainLogRecord(snapshotId, seq, timestampNs, type, instanceId);
+    }
+
+    /**
+     * Asynchronous mode - called from module thread.<p>
+     * Only point-in-time dump into reusable in-memory buffer is done synchronously (no compression, no I/O).
+     * Result is true when state is captured, writer thread failures are logged (snapshot file will not appear).
+     */
+    private boolean storeDataAsync(final Path path,
+                                   final long snapshotId,
+                                   final long seq,
+                                   final long timestampNs,
+                                   final SerializedModuleType type,
+                                   final int instanceId,
+                                   final WriteBytesMarshallable obj) {
+
+        // each module instance reuses own buffer, only previous snapshot of the same module can block
+        final SnapshotBuffer buffer = snapshotBuffers.computeIfAbsent(type.code + instanceId, k -> new SnapshotBuffer(snapshotBufferInitialSize));
+        buffer.awaitWritten();
+
+        log.debug("Capturing state for {} ...", path);
+        buffer.wire.clear();
+        buffer.wire.writeBytes(obj);
+        log.debug("Captured {} bytes, writing asynchronously", buffer.bytes.readRemaining());
+
+        buffer.pendingWrite = snapshotWriterExecutor.submit(() -> {
+            if (writeSnapshotFile(path, buffer.bytes)) {
+                writeMainLogRecord(snapshotId, seq, timestampNs, type, instanceId);
+            }
+        });
+
+        return true;
+    }
+
+    // writer thread
+    private boolean writeSnapshotFile(final Path path, final Bytes<ByteBuffer> bytes) {
+
+        // file appears only when completely written
+        final Path tmpPath = path.resolveSibling(path.getFileName() + ".tmp");
+
+        try (final OutputStream os = Files.newOutputStream(tmpPath, StandardOpenOption.CREATE_NEW);
+             final OutputStream bos = new BufferedOutputStream(os);
+             final LZ4FrameOutputStream lz4os = new LZ4FrameOutputStream(
+                     bos,
+                     LZ4FrameOutputStream.BLOCKSIZE.SIZE_4MB,
+                     -1,
+                     lz4CompressorSnapshot,
+                     XXHashFactory.fastestInstance().hash32(),
+                     LZ4FrameOutputStream.FLG.Bits.BLOCK_INDEPENDENCE);
+             final DataOutputStream dos = new DataOutputStream(lz4os)) {
+
+            // same format as WireToOutputStream2
+            dos.writeInt(Math.toIntExact(bytes.readRemaining()));
+            while (bytes.readPosition() < bytes.readLimit()) {
+                final int read = bytes.read(snapshotCopyBuffer);
+                dos.write(snapshotCopyBuffer, 0, read);
+            }
+
+        } catch (final IOException ex) {
+            log.error("Can not write snapshot file: ", ex);
+            return false;
+        }
+
+        try {
+            Files.move(tmpPath, path, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final IOException ex) {
+            log.error("Can not rename snapshot file: ", ex);
+            return false;
+        }
+
+        log.debug("completed {}", path);
+        return true;
+    }
+
+    @Override
+    public boolean storeDataChunks(long snapshotId,
+                                   long seq,
+                                   long timestampNs,
+                                   SerializedModuleType type,
+                                   int instanceId,
+                                   List<? extends WriteBytesMarshallable> chunks) {
+
+        if (snapshotLoadThreads == 0) {
+            // single LZ4 stream format
+            return ISerializationProcessor.super.storeDataChunks(snapshotId, seq, timestampNs, type, instanceId, chunks);
+        }
+
+        final Path path = resolveSnapshotPath(snapshotId, type, instanceId);
+
+        final SnapshotBuffer buffer = snapshotBuffers.computeIfAbsent(type.code + instanceId, k -> new SnapshotBuffer(snapshotBufferInitialSize));
+        buffer.awaitWritten();
+
+        log.debug("Capturing {} chunks for {} ...", chunks.size(), path);
+        final Bytes<ByteBuffer> bytes = buffer.bytes;
+        bytes.clear();
+        final long[] chunkEnds = new long[chunks.size()];
+        for (int i = 0; i < chunkEnds.length; i++) {
+            chunks.get(i).writeMarshallable(bytes);
+            chunkEnds[i] = bytes.writePosition();
+        }
+
+        if (snapshotWriterExecutor != null) {
+            buffer.pendingWrite = snapshotWriterExecutor.submit(() -> {
+                if (writeChunkedSnapshotFile(path, bytes, chunkEnds)) {
+                    writeMainLogRecord(snapshotId, seq, timestampNs, type, instanceId);
+                }
+            });
+            return true;
+        }
+
+        return writeChunkedSnapshotFile(path, bytes, chunkEnds)
+                && writeMainLogRecord(snapshotId, seq, timestampNs, type, instanceId);
+    }
+
+    // module thread or writer thread
+    private boolean writeChunkedSnapshotFile(final Path path, final Bytes<ByteBuffer> bytes, final long[] chunkEnds) {
+
+        final Path tmpPath = path.resolveSibling(path.getFileName() + ".tmp");
+        final ByteBuffer src = bytes.underlyingObject();
+
+        int maxChunkLength = 0;
+        for (int i = 0; i < chunkEnds.length; i++) {
+            final long chunkLength = chunkEnds[i] - (i == 0 ? 0 : chunkEnds[i - 1]);
+            if (chunkLength > SNAPSHOT_MAX_CHUNK_SIZE) {
+                log.error("Snapshot chunk is too large: {} bytes", chunkLength);
+                return false;
+            }
+            maxChunkLength = Math.max(maxChunkLength, (int) chunkLength);
+        }
+
+        final ByteBuffer index = ByteBuffer.allocate(SNAPSHOT_CHUNKED_HEADER_SIZE + chunkEnds.length * SNAPSHOT_CHUNK_INDEX_ENTRY_SIZE);
+        final ByteBuffer compressed = ByteBuffer.allocateDirect(lz4CompressorSnapshot.maxCompressedLength(maxChunkLength));
+
+        try (final FileChannel fileChannel = FileChannel.open(tmpPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+
+            index.putInt(SNAPSHOT_CHUNKED_MAGIC).putInt(SNAPSHOT_CHUNKED_PAYLOAD_VERSION).putInt(chunkEnds.length);
+            long offset = index.capacity();
+
+            for (int i = 0; i < chunkEnds.length; i++) {
+                final int chunkStart = i == 0 ? 0 : (int) chunkEnds[i - 1];
+                final int chunkLength = (int) chunkEnds[i] - chunkStart;
+
+                final int compressedLength = lz4CompressorSnapshot.compress(src, chunkStart, chunkLength, compressed, 0, compressed.capacity());
+                compressed.limit(compressedLength).position(0);
+                writeFully(fileChannel, compressed, offset);
+                compressed.clear();
+
+                index.putLong(offset).putInt(compressedLength).putInt(chunkLength);
+                offset += compressedLength;
+            }
+
+            // index is written last
+            index.flip();
+            writeFully(fileChannel, index, 0);
+
+        } catch (final IOException ex) {
+            log.error("Can not write snapshot file: ", ex);
+            return false;
+        } finally {
+            BufferUtil.free(compressed);
+        }
+
+        try {
+            Files.move(tmpPath, path, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final IOException ex) {
+            log.error("Can not rename snapshot file: ", ex);
+            return false;
+        }
+
+        log.debug("completed {} ({} chunks)", path, chunkEnds.length);
+        return true;
+    }
+
+    private static void writeFully(final FileChannel fileChannel, final ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += fileChannel.write(buffer, position);
+        }
+    }
+
+    private static void readFully(final FileChannel fileChannel, final ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            final int read = fileChannel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            position += read;
+        }
+    }
+
+    private boolean writeMainLogRecord(long snapshotId, long seq, long timestampNs, SerializedModuleType type, int instanceId) {
         synchronized (this) {
             // TODO improve format
             try (final OutputStream os = Files.newOutputStream(resolveMainLogPath(), StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
@@ -172,6 +481,49 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
         return true;
     }
 
+    @Override
+    public void shutdown() {
+        if (segmentManager != null) {
+            segmentManager.close();
+        }
+        if (snapshotWriterExecutor != null) {
+            snapshotWriterExecutor.shutdown();
+            try {
+                snapshotWriterExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // chunked snapshots are captured into buffers in synchronous mode as well
+        snapshotBuffers.values().forEach(buffer -> buffer.bytes.release());
+        snapshotBuffers.clear();
+    }
+
+    private static final class SnapshotBuffer {
+
+        private final Bytes<ByteBuffer> bytes;
+        private final Wire wire;
+        private Future<?> pendingWrite;
+
+        private SnapshotBuffer(int initialSize) {
+            this.bytes = Bytes.elasticByteBuffer(initialSize);
+            this.wire = WireType.RAW.apply(bytes);
+        }
+
+        private void awaitWritten() {
+            if (pendingWrite != null) {
+                try {
+                    pendingWrite.get();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException ex) {
+                    log.error("Snapshot writing failed", ex);
+                }
+                pendingWrite = null;
+            }
+        }
+    }
+
     @Override
     public <T> T loadData(long snapshotId,
                           SerializedModuleType type,
@@ -202,6 +554,102 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
         }
     }
 
+    @Override
+    public <T> List<T> loadDataChunks(long snapshotId,
+                                      SerializedModuleType type,
+                                      int instanceId,
+                                      BiFunction<Integer, BytesIn, T> chunkReader,
+                                      Function<BytesIn, List<T>> previousFormatReader) {
+
+        final Path path = resolveSnapshotPath(snapshotId, type, instanceId);
+
+        try (final FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+
+            final ByteBuffer header = ByteBuffer.allocate(SNAPSHOT_CHUNKED_HEADER_SIZE);
+            readFully(fileChannel, header, 0);
+            if (header.getInt(0) != SNAPSHOT_CHUNKED_MAGIC) {
+                // single LZ4 stream format
+                return ISerializationProcessor.super.loadDataChunks(snapshotId, type, instanceId, chunkReader, previousFormatReader);
+            }
+
+            ISerializationProcessor.checkChunkedPayloadVersion(header.getInt(4));
+            final int chunksNum = header.getInt(8);
+            final ByteBuffer index = ByteBuffer.allocate(chunksNum * SNAPSHOT_CHUNK_INDEX_ENTRY_SIZE);
+            readFully(fileChannel, index, SNAPSHOT_CHUNKED_HEADER_SIZE);
+
+            final int threads = Math.min(Math.max(1, snapshotLoadThreads), chunksNum);
+            log.debug("Loading {} chunks from {} using {} threads", chunksNum, path, threads);
+
+            final List<T> chunks = new ArrayList<>(chunksNum);
+
+            if (threads <= 1) {
+                for (int i = 0; i < chunksNum; i++) {
+                    chunks.add(loadSnapshotChunk(fileChannel, index, i, chunkReader));
+                }
+                return chunks;
+            }
+
+            final ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+                final Thread thread = new Thread(r, "Thread-SnapshotLoader");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+            try {
+                final List<Future<T>> futures = new ArrayList<>(chunksNum);
+                for (int i = 0; i < chunksNum; i++) {
+                    final int chunkIdx = i;
+                    futures.add(executor.submit(() -> loadSnapshotChunk(fileChannel, index, chunkIdx, chunkReader)));
+                }
+                for (final Future<T> future : futures) {
+                    chunks.add(future.get());
+                }
+                return chunks;
+
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(ex);
+            } catch (ExecutionException ex) {
+                throw new IllegalStateException("Can not load snapshot chunk from " + path, ex.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+
+        } catch (final IOException ex) {
+            log.error("Can not read snapshot file: ", ex);
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    // loader thread
+    private <T> T loadSnapshotChunk(final FileChannel fileChannel,
+                                    final ByteBuffer index,
+                                    final int chunkIdx,
+                                    final BiFunction<Integer, BytesIn, T> chunkReader) throws IOException {
+
+        final int entry = chunkIdx * SNAPSHOT_CHUNK_INDEX_ENTRY_SIZE;
+        final long offset = index.getLong(entry);
+        final int compressedLength = index.getInt(entry + 8);
+        final int originalLength = index.getInt(entry + 12);
+
+        final ByteBuffer data = ByteBuffer.allocateDirect(originalLength);
+        final MappedByteBuffer compressed = fileChannel.map(FileChannel.MapMode.READ_ONLY, offset, compressedLength);
+        try {
+            final int length = lz4SafeDecompressor.decompress(compressed, 0, compressedLength, data, 0, originalLength);
+            if (length != originalLength) {
+                throw new IllegalStateException("Snapshot chunk " + chunkIdx + " is corrupted: " + length + " bytes instead of " + originalLength);
+            }
+        } finally {
+            IoUtil.unmap(compressed);
+        }
+
+        try {
+            return chunkReader.apply(chunkIdx, Bytes.wrapForRead(data));
+        } finally {
+            BufferUtil.free(data);
+        }
+    }
+
     public class WireToOutputStream2 implements AutoCloseable {
         private final Bytes<ByteBuffer> bytes = Bytes.elasticByteBuffer(128 * 1024 * 1024);
         private final Wire wire;
@@ -240,6 +688,21 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
     @Override
     public void writeToJournal(OrderCommand cmd, long dSeq, boolean eob) throws IOException {
 
+        writeCommand(cmd, dSeq, eob);
+
+        if (durableSequence != null) {
+            if (cmd.command == OrderCommandType.SHUTDOWN_SIGNAL) {
+                stopGroupCommitFlusher();
+                forceChannel();
+                durableSequence.set(dSeq);
+            } else if (eob) {
+                publishWrittenSequence(dSeq, cmd.timestamp);
+            }
+        }
+    }
+
+    private void writeCommand(OrderCommand cmd, long dSeq, boolean eob) throws IOException {
+
         // TODO improve checks logic
         // skip
         if (enableJournalAfterSeq == -1 || dSeq + baseSeq <= enableJournalAfterSeq) {
@@ -249,14 +712,17 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
             log.info("Enabled journaling at seq = {} ({}+{})", enableJournalAfterSeq + 1, baseSeq, dSeq);
         }
 
-        boolean debug = false;
-
 //        log.debug("Writing {}", cmd);
 
         final OrderCommandType cmdType = cmd.command;
 
         if (cmdType == OrderCommandType.SHUTDOWN_SIGNAL) {
-            flushBufferSync(false, cmd.timestamp);
+            if (mappedMode) {
+                stopMappedFlusher();
+                closeMappedSegment();
+            } else {
+                flushBufferSync(false, cmd.timestamp);
+            }
             log.debug("Shutdown signal received, flushed to disk");
             return;
         }
@@ -266,21 +732,75 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
             return;
         }
 
-        if (channel == null) {
+        if (mappedMode) {
+            // command is never split between segments
+            if (mappedBuffer == null || mappedBuffer.remaining() < MAX_COMMAND_SIZE_BYTES) {
+                startNewMappedSegment(cmd.timestamp);
+            }
+        } else if (channel == null) {
             startNewFile(cmd.timestamp);
         }
 
-        final ByteBuffer buffer = journalWriteBuffer;
+        final ByteBuffer buffer = mappedMode ? mappedBuffer : journalWriteBuffer;
+
+        if (journalCodec != null) {
+            journalCodec.encode(cmd, baseSeq + dSeq, buffer);
+            journalBlockCommands++;
+        } else {
+            writeCommandV1(cmd, baseSeq + dSeq, buffer);
+        }
+
+        if (cmdType == OrderCommandType.PERSIST_STATE_RISK) {
+
+            // register snapshot change
+            registerNextSnapshot(cmd.orderId, baseSeq + dSeq, cmd.timestamp);
+
+            // start new file
+            baseSnapshotId = cmd.orderId;
+            filesCounter = 0;
+
+            if (mappedMode) {
+                startNewMappedSegment(cmd.timestamp);
+            } else {
+                flushBufferSync(true, cmd.timestamp);
+            }
+
+        } else if (cmdType == OrderCommandType.RESET) {
+
+            // forcing to start next journal file on reset (useful for testing)
+            if (mappedMode) {
+                startNewMappedSegment(cmd.timestamp);
+            } else {
+                flushBufferSync(true, cmd.timestamp);
+            }
+
+        } else if (mappedMode) {
+
+            syncMappedSegment(eob);
+
+        } else if (eob || buffer.position() >= journalBufferFlushTrigger) {
+
+            // flushing on end of batch or when buffer is full
+            flushBufferSync(false, cmd.timestamp);
+        }
+
+    }
+
+    private static void writeCommandV1(final OrderCommand cmd, final long seq, final ByteBuffer buffer) {
+
+        boolean debug = false;
+
+        final OrderCommandType cmdType = cmd.command;
 
         // mandatory fields
         buffer.put(cmdType.getCode()); // 1 byte
-        buffer.putLong(baseSeq + dSeq); // 8 bytes - can be compressed as delta
+        buffer.putLong(seq); // 8 bytes - can be compressed as delta
         buffer.putLong(cmd.timestamp); // 8 bytes - can be compressed as delta
         buffer.putInt(cmd.serviceFlags); // 4 bytes - can be compressed as dictionary
         buffer.putLong(cmd.eventsGroup); // 8 bytes - can be compressed as delta
 
         if (debug)
-            log.debug("LOG {} eventsGroup={} serviceFlags={}", String.format("seq=%d t=%d cmd=%X (%s) ", baseSeq + dSeq, cmd.timestamp, cmdType.getCode(), cmdType), cmd.eventsGroup, cmd.serviceFlags);
+            log.debug("LOG {} eventsGroup={} serviceFlags={}", String.format("seq=%d t=%d cmd=%X (%s) ", seq, cmd.timestamp, cmdType.getCode(), cmdType), cmd.eventsGroup, cmd.serviceFlags);
 
         if (cmdType == OrderCommandType.MOVE_ORDER) {
 
@@ -289,7 +809,7 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
             buffer.putLong(cmd.orderId); // 8 bytes - can be compressed as delta
             buffer.putLong(cmd.price); // 8 bytes - can be compressed as delta
 
-            if (debug) log.debug("move order seq={} t={} orderId={} symbol={} uid={} price={}", baseSeq + dSeq, cmd.timestamp, cmd.orderId, cmd.symbol, cmd.uid, cmd.price);
+            if (debug) log.debug("move order seq={} t={} orderId={} symbol={} uid={} price={}", seq, cmd.timestamp, cmd.orderId, cmd.symbol, cmd.uid, cmd.price);
 
         } else if (cmdType == OrderCommandType.CANCEL_ORDER) {
 
@@ -297,7 +817,7 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
             buffer.putInt(cmd.symbol); // 4 bytes can be compressed as dictionary
             buffer.putLong(cmd.orderId); // 8 bytes - can be compressed as delta
 
-            if (debug) log.debug("cancel order seq={} t={} orderId={} symbol={} uid={}", baseSeq + dSeq, cmd.timestamp, cmd.orderId, cmd.symbol, cmd.uid);
+            if (debug) log.debug("cancel order seq={} t={} orderId={} symbol={} uid={}", seq, cmd.timestamp, cmd.orderId, cmd.symbol, cmd.uid);
 
         } else if (cmdType == OrderCommandType.REDUCE_ORDER) {
 
@@ -306,7 +826,7 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
             buffer.putLong(cmd.orderId); // 8 bytes - can be compressed as delta
             buffer.putLong(cmd.size); // 8 bytes - can be compressed as low value
 
-            if (debug) log.debug("reduce order seq={} t={} orderId={} symbol={} uid={} size={}", baseSeq + dSeq, cmd.timestamp, cmd.orderId, cmd.symbol, cmd.uid, cmd.size);
+            if (debug) log.debug("reduce order seq={} t={} orderId={} symbol={} uid={} size={}", seq, cmd.timestamp, cmd.orderId, cmd.symbol, cmd.uid, cmd.size);
 
         } else if (cmdType == OrderCommandType.PLACE_ORDER) {
 
@@ -323,7 +843,7 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
             buffer.put(actionAndType1); // 1 byte
 
             if (debug) log.debug("place order seq={} t={} orderId={} symbol={} uid={} price={} reserveBidPrice={} size={} userCookie={} {}/{} actionAndType={}",
-                    baseSeq + dSeq, cmd.timestamp, cmd.orderId, cmd.symbol, cmd.uid, cmd.price, cmd.reserveBidPrice, cmd.size, cmd.userCookie, cmd.action, cmd.orderType, actionAndType1);
+                    seq, cmd.timestamp, cmd.orderId, cmd.symbol, cmd.uid, cmd.price, cmd.reserveBidPrice, cmd.size, cmd.userCookie, cmd.action, cmd.orderType, actionAndType1);
 
         } else if (cmdType == OrderCommandType.BALANCE_ADJUSTMENT) {
 
@@ -355,29 +875,11 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
 //                cmdType == OrderCommandType.PERSIST_STATE_RISK) {
 //            buffer.putLong(cmd.orderId); // 8 bytes
         }
+    }
 
-        if (cmdType == OrderCommandType.PERSIST_STATE_RISK) {
-
-            // register snapshot change
-            registerNextSnapshot(cmd.orderId, baseSeq + dSeq, cmd.timestamp);
-
-            // start new file
-            baseSnapshotId = cmd.orderId;
-            filesCounter = 0;
-
-            flushBufferSync(true, cmd.timestamp);
-
-        } else if (cmdType == OrderCommandType.RESET) {
-
-            // forcing to start next journal file on reset (useful for testing)
-            flushBufferSync(true, cmd.timestamp);
-
-        } else if (eob || buffer.position() >= journalBufferFlushTrigger) {
-
-            // flushing on end of batch or when buffer is full
-            flushBufferSync(false, cmd.timestamp);
-        }
-
+    @Override
+    public Sequence getDurableSequence() {
+        return durableSequence;
     }
 
     @Override
@@ -416,6 +918,9 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
 
         api.groupingControl(0, 0);
 
+        if (journalReplayThreads > 0) {
+            return replayJournalFullParallel(initialCfg.getSnapshotId(), api);
+        }
 
         final MutableLong lastSeq = new MutableLong();
         // TODO refactor reading, use EOF flag
@@ -430,7 +935,16 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
                  final BufferedInputStream bis = new BufferedInputStream(fis);
                  final DataInputStream dis = new DataInputStream(bis)) {
 
-                readCommands(dis, api, lastSeq, false);
+                // format is detected by the first byte (v1 file always starts from command code)
+                bis.mark(1);
+                final int firstByte = bis.read();
+                bis.reset();
+
+                if (firstByte == JOURNAL_V2_FILE_MARKER) {
+                    readJournalBlocksV2(dis, api, lastSeq);
+                } else {
+                    readCommands(dis, api, lastSeq, false);
+                }
                 partitionCounter++;
                 log.debug("File end reached, try next partition {}...", partitionCounter);
 
@@ -446,6 +960,495 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
     }
 
 
+    /**
+     * Fast recovery: journal files are memory-mapped and scanned by replay thread,
+     * LZ4 blocks are decompressed in parallel (bounded read-ahead), commands are decoded directly into ring buffer in batches.
+     */
+    private long replayJournalFullParallel(final long snapshotId, final ExchangeApi api) {
+
+        final ExecutorService executor = Executors.newFixedThreadPool(journalReplayThreads, r -> {
+            final Thread thread = new Thread(r, "Thread-JournalReplay");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        final MutableLong lastSeq = new MutableLong();
+        final ReplayCommandReader commandReader = new ReplayCommandReader(lastSeq);
+
+        try {
+            int partitionCounter = 1;
+            while (true) {
+
+                final Path path = resolveJournalPath(partitionCounter, snapshotId);
+                if (!Files.exists(path)) {
+                    log.debug("return lastSeq={}, file not found: {}", lastSeq, path);
+                    return lastSeq.value;
+                }
+
+                log.debug("Reading journal file (mapped): {}", path.toFile());
+                try (final FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+
+                    final JournalScanner scanner = new JournalScanner(fileChannel);
+                    commandReader.codec = scanner.compactFormat ? new JournalCompactCodec() : null;
+                    final ArrayDeque<Future<ReplayChunk>> readAhead = new ArrayDeque<>();
+                    final int maxReadAhead = journalReplayThreads * 4;
+
+                    while (true) {
+                        while (readAhead.size() < maxReadAhead) {
+                            final Future<ReplayChunk> chunk = scanner.nextChunk(executor);
+                            if (chunk == null) {
+                                break;
+                            }
+                            readAhead.add(chunk);
+                        }
+
+                        final Future<ReplayChunk> head = readAhead.poll();
+                        if (head == null) {
+                            break;
+                        }
+
+                        final ReplayChunk chunk = head.get();
+                        commandReader.startChunk(chunk.buffer);
+                        for (int remaining = chunk.commandsNum; remaining > 0; remaining -= REPLAY_PUBLISH_BATCH) {
+                            api.publishCommandsBatch(Math.min(remaining, REPLAY_PUBLISH_BATCH), commandReader);
+                        }
+                    }
+
+                } catch (IOException | ExecutionException ex) {
+                    throw new IllegalStateException("Can not replay journal file " + path, ex);
+                }
+
+                partitionCounter++;
+                log.debug("File end reached, try next partition {}...", partitionCounter);
+            }
+
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ex);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static final class ReplayCommandReader implements Consumer<OrderCommand> {
+
+        private final MutableLong lastSeq;
+        private ByteBuffer buffer;
+
+        // format v2 decoder of current file (null - v1)
+        private JournalCompactCodec codec;
+
+        private ReplayCommandReader(MutableLong lastSeq) {
+            this.lastSeq = lastSeq;
+        }
+
+        private void startChunk(final ByteBuffer buffer) {
+            this.buffer = buffer;
+            if (codec != null) {
+                // v2 chunk is always a whole block
+                codec.resetBlock();
+            }
+        }
+
+        @Override
+        public void accept(OrderCommand cmd) {
+            if (codec == null) {
+                readCommand(buffer, cmd, lastSeq);
+            } else {
+                final long seq = codec.decode(buffer, cmd);
+                if (seq != lastSeq.value + 1) {
+                    log.warn("Sequence gap {}->{} ({})", lastSeq, seq, seq - lastSeq.value);
+                }
+                lastSeq.value = seq;
+            }
+
+            if (cmd.command == OrderCommandType.PERSIST_STATE_MATCHING || cmd.command == OrderCommandType.PERSIST_STATE_RISK) {
+                throw new IllegalStateException("unexpected command " + cmd.command);
+            }
+        }
+    }
+
+    /**
+     * Decompressed block or range of uncompressed commands
+     */
+    private static final class ReplayChunk {
+
+        private final ByteBuffer buffer;
+        private final int commandsNum;
+
+        private ReplayChunk(ByteBuffer buffer, int commandsNum) {
+            this.buffer = buffer;
+            this.commandsNum = commandsNum;
+        }
+    }
+
+    /**
+     * Splits mapped journal file into chunks, only reading command codes and block sizes (replay thread).
+     * Files larger than 1GB are mapped by windows, command or block is never split between windows.
+     */
+    private final class JournalScanner {
+
+        private final FileChannel fileChannel;
+        private final long fileSize;
+
+        private final boolean compactFormat;
+
+        private MappedByteBuffer window;
+        private long windowStart = 0;
+        private int position = 0;
+        private boolean endOfData = false;
+
+        private JournalScanner(final FileChannel fileChannel) throws IOException {
+            this.fileChannel = fileChannel;
+            this.fileSize = fileChannel.size();
+            mapWindow(0);
+
+            this.compactFormat = fileSize >= 2 && window.get(0) == JOURNAL_V2_FILE_MARKER;
+            if (compactFormat) {
+                checkJournalVersion(window.get(1));
+                position = 2;
+            }
+        }
+
+        private void mapWindow(final long start) throws IOException {
+            window = fileChannel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(fileSize - start, REPLAY_MAP_WINDOW_SIZE));
+            windowStart = start;
+            position = 0;
+        }
+
+        /**
+         * @return true if required bytes are in current window (re-maps window if needed when no raw commands pending)
+         */
+        private boolean ensureAvailable(final int size, final boolean rawCommandsPending) throws IOException {
+            if (position + size <= window.limit()) {
+                return true;
+            }
+            if (windowStart + window.limit() >= fileSize) {
+                // same as stream reading - truncated tail is ignored
+                log.debug("File end reached (incomplete record)");
+                endOfData = true;
+                return false;
+            }
+            if (rawCommandsPending) {
+                return false;
+            }
+            mapWindow(windowStart + position);
+            return position + size <= window.limit();
+        }
+
+        private Future<ReplayChunk> nextChunk(final ExecutorService executor) throws IOException {
+
+            if (compactFormat) {
+                return nextBlockV2(executor);
+            }
+
+            int start = position;
+            int commandsNum = 0;
+
+            while (!endOfData && commandsNum < REPLAY_RAW_CHUNK_COMMANDS) {
+
+                if (windowStart + position >= fileSize || !ensureAvailable(1, commandsNum != 0)) {
+                    endOfData |= windowStart + position >= fileSize;
+                    break;
+                }
+
+                final byte cmd = window.get(position);
+                if (cmd == 0) {
+                    // end of written data in pre-sized memory-mapped segment
+                    endOfData = true;
+                    break;
+                }
+
+                if (cmd == OrderCommandType.RESERVED_COMPRESSED.getCode()) {
+                    if (commandsNum != 0) {
+                        break;
+                    }
+                    if (!ensureAvailable(COMPRESSED_BLOCK_HEADER_SIZE, false)) {
+                        break;
+                    }
+                    final int size = window.getInt(position + 1);
+                    final int origSize = window.getInt(position + 5);
+                    if (size > 1000000) {
+                        throw new IllegalStateException("Bad compressed block size = " + size + "(data corrupted)");
+                    }
+                    if (origSize > 1000000) {
+                        throw new IllegalStateException("Bad original block size = " + size + "(data corrupted)");
+                    }
+                    if (!ensureAvailable(COMPRESSED_BLOCK_HEADER_SIZE + size, false)) {
+                        break;
+                    }
+                    final MappedByteBuffer src = window;
+                    final int srcOffset = position + COMPRESSED_BLOCK_HEADER_SIZE;
+                    position += COMPRESSED_BLOCK_HEADER_SIZE + size;
+                    return executor.submit(() -> decompressChunk(src, srcOffset, size, origSize));
+                }
+
+                if (commandsNum == 0) {
+                    // window can be re-mapped only before first raw command
+                    if (!ensureAvailable(journalCommandSize(cmd), false)) {
+                        break;
+                    }
+                    start = position;
+                } else if (!ensureAvailable(journalCommandSize(cmd), true)) {
+                    break;
+                }
+
+                position += journalCommandSize(cmd);
+                commandsNum++;
+            }
+
+            if (commandsNum == 0) {
+                return endOfData ? null : nextChunk(executor);
+            }
+
+            final ByteBuffer raw = window.duplicate();
+            raw.limit(position).position(start);
+            return CompletableFuture.completedFuture(new ReplayChunk(raw.slice(), commandsNum));
+        }
+
+        /**
+         * Format v2: chunk is always a whole block (commands number is known from block header)
+         */
+        private Future<ReplayChunk> nextBlockV2(final ExecutorService executor) throws IOException {
+
+            if (windowStart + position >= fileSize || !ensureAvailable(JOURNAL_BLOCK_HEADER_SIZE, false)) {
+                return null;
+            }
+
+            final byte blockType = window.get(position);
+            if (blockType == JOURNAL_BLOCK_END) {
+                endOfData = true;
+                return null;
+            }
+            final int size = window.getInt(position + 1);
+            final int origSize = window.getInt(position + 5);
+            final int commandsNum = window.getInt(position + 9);
+            checkJournalBlockSizes(size, origSize);
+
+            if (!ensureAvailable(JOURNAL_BLOCK_HEADER_SIZE + size, false)) {
+                return null;
+            }
+
+            final MappedByteBuffer src = window;
+            final int srcOffset = position + JOURNAL_BLOCK_HEADER_SIZE;
+            position += JOURNAL_BLOCK_HEADER_SIZE + size;
+
+            if (blockType == JOURNAL_BLOCK_LZ4) {
+                return executor.submit(() -> {
+                    final ByteBuffer dest = ByteBuffer.allocate(origSize);
+                    dest.limit(lz4SafeDecompressor.decompress(src, srcOffset, size, dest, 0, origSize));
+                    return new ReplayChunk(dest, commandsNum);
+                });
+            } else if (blockType == JOURNAL_BLOCK_RAW) {
+                final ByteBuffer raw = src.duplicate();
+                raw.limit(srcOffset + size).position(srcOffset);
+                return CompletableFuture.completedFuture(new ReplayChunk(raw.slice(), commandsNum));
+            } else {
+                throw new IllegalStateException("Unknown journal block type " + blockType + " (data corrupted)");
+            }
+        }
+    }
+
+    // worker thread
+    private ReplayChunk decompressChunk(final ByteBuffer src, final int srcOffset, final int size, final int origSize) {
+
+        final ByteBuffer dest = ByteBuffer.allocate(origSize);
+        final int length = lz4SafeDecompressor.decompress(src, srcOffset, size, dest, 0, origSize);
+        dest.limit(length);
+
+        int commandsNum = 0;
+        for (int pos = 0; pos < length; pos += journalCommandSize(dest.get(pos))) {
+            if (dest.get(pos) == OrderCommandType.RESERVED_COMPRESSED.getCode()) {
+                throw new IllegalStateException("Recursive compression block (data corrupted)");
+            }
+            commandsNum++;
+        }
+        return new ReplayChunk(dest, commandsNum);
+    }
+
+    static int journalCommandSize(final byte cmd) {
+        final OrderCommandType cmdType = OrderCommandType.fromCode(cmd);
+        switch (cmdType) {
+            case MOVE_ORDER:
+            case REDUCE_ORDER:
+                return JOURNAL_HEADER_SIZE + 28;
+            case CANCEL_ORDER:
+                return JOURNAL_HEADER_SIZE + 20;
+            case PLACE_ORDER:
+                return JOURNAL_HEADER_SIZE + 49;
+            case BALANCE_ADJUSTMENT:
+                return JOURNAL_HEADER_SIZE + 29;
+            case ADD_USER:
+            case SUSPEND_USER:
+            case RESUME_USER:
+                return JOURNAL_HEADER_SIZE + 8;
+            case BINARY_DATA_COMMAND:
+                return JOURNAL_HEADER_SIZE + 41;
+            case RESET:
+            case PERSIST_STATE_MATCHING:
+            case PERSIST_STATE_RISK:
+                return JOURNAL_HEADER_SIZE;
+            default:
+                throw new IllegalStateException("unexpected command " + cmdType);
+        }
+    }
+
+    /**
+     * Decode single command directly into ring buffer slot (sets same fields as ExchangeApi replay methods).
+     * PERSIST_STATE_* records are decoded without snapshot id (orderId=-1, not stored in v1 format).
+     */
+    static void readCommand(final ByteBuffer buffer, final OrderCommand cmd, final MutableLong lastSeq) {
+
+        final OrderCommandType cmdType = OrderCommandType.fromCode(buffer.get());
+        final long seq = buffer.getLong();
+        final long timestampNs = buffer.getLong();
+        final int serviceFlags = buffer.getInt();
+        final long eventsGroup = buffer.getLong();
+
+        if (seq != lastSeq.value + 1) {
+            log.warn("Sequence gap {}->{} ({})", lastSeq, seq, seq - lastSeq.value);
+        }
+        lastSeq.value = seq;
+
+        cmd.command = cmdType;
+        cmd.resultCode = CommandResultCode.NEW;
+        cmd.timestamp = timestampNs;
+
+        if (cmdType == OrderCommandType.RESET) {
+            return;
+        }
+
+        cmd.serviceFlags = serviceFlags;
+        cmd.eventsGroup = eventsGroup;
+
+        switch (cmdType) {
+            case MOVE_ORDER:
+                cmd.uid = buffer.getLong();
+                cmd.symbol = buffer.getInt();
+                cmd.orderId = buffer.getLong();
+                cmd.price = buffer.getLong();
+                break;
+
+            case CANCEL_ORDER:
+                cmd.uid = buffer.getLong();
+                cmd.symbol = buffer.getInt();
+                cmd.orderId = buffer.getLong();
+                break;
+
+            case REDUCE_ORDER:
+                cmd.uid = buffer.getLong();
+                cmd.symbol = buffer.getInt();
+                cmd.orderId = buffer.getLong();
+                cmd.size = buffer.getLong();
+                break;
+
+            case PLACE_ORDER:
+                cmd.uid = buffer.getLong();
+                cmd.symbol = buffer.getInt();
+                cmd.orderId = buffer.getLong();
+                cmd.price = buffer.getLong();
+                cmd.reserveBidPrice = buffer.getLong();
+                cmd.size = buffer.getLong();
+                cmd.userCookie = buffer.getInt();
+                final byte actionAndType = buffer.get();
+                cmd.action = OrderAction.of((byte) (actionAndType & 0b1));
+                cmd.orderType = OrderType.of((byte) ((actionAndType >> 1) & 0b1111));
+                break;
+
+            case BALANCE_ADJUSTMENT:
+                cmd.uid = buffer.getLong();
+                cmd.symbol = buffer.getInt();
+                cmd.orderId = buffer.getLong();
+                cmd.price = buffer.getLong();
+                cmd.orderType = OrderType.of(BalanceAdjustmentType.of(buffer.get()).getCode());
+                cmd.size = 0;
+                break;
+
+            case ADD_USER:
+            case SUSPEND_USER:
+            case RESUME_USER:
+                cmd.orderId = -1;
+                cmd.symbol = -1;
+                cmd.uid = buffer.getLong();
+                break;
+
+            case BINARY_DATA_COMMAND:
+                cmd.symbol = buffer.get();
+                cmd.orderId = buffer.getLong();
+                cmd.price = buffer.getLong();
+                cmd.reserveBidPrice = buffer.getLong();
+                cmd.size = buffer.getLong();
+                cmd.uid = buffer.getLong();
+                break;
+
+            case PERSIST_STATE_MATCHING:
+            case PERSIST_STATE_RISK:
+                cmd.orderId = -1;
+                break;
+
+            default:
+                throw new IllegalStateException("unexpected command " + cmdType);
+        }
+    }
+
+    /**
+     * Format v2 (sequential replay): blocks are decoded directly into ring buffer in batches.
+     */
+    private void readJournalBlocksV2(final DataInputStream jr,
+                                     final ExchangeApi api,
+                                     final MutableLong lastSeq) throws IOException {
+
+        jr.readByte(); // file marker
+        checkJournalVersion(jr.readByte());
+
+        final ReplayCommandReader commandReader = new ReplayCommandReader(lastSeq);
+        commandReader.codec = new JournalCompactCodec();
+
+        while (jr.available() != 0) {
+
+            final byte blockType = jr.readByte();
+            if (blockType == JOURNAL_BLOCK_END) {
+                return;
+            }
+            final int size = jr.readInt();
+            final int origSize = jr.readInt();
+            final int commandsNum = jr.readInt();
+            checkJournalBlockSizes(size, origSize);
+
+            final byte[] payload = new byte[size];
+            jr.readFully(payload);
+
+            final ByteBuffer block;
+            if (blockType == JOURNAL_BLOCK_LZ4) {
+                block = ByteBuffer.wrap(lz4SafeDecompressor.decompress(payload, origSize));
+            } else if (blockType == JOURNAL_BLOCK_RAW) {
+                block = ByteBuffer.wrap(payload);
+            } else {
+                throw new IllegalStateException("Unknown journal block type " + blockType + " (data corrupted)");
+            }
+
+            commandReader.startChunk(block);
+            for (int remaining = commandsNum; remaining > 0; remaining -= REPLAY_PUBLISH_BATCH) {
+                api.publishCommandsBatch(Math.min(remaining, REPLAY_PUBLISH_BATCH), commandReader);
+            }
+        }
+    }
+
+    static void checkJournalVersion(final byte version) {
+        if (version != JOURNAL_V2_VERSION) {
+            throw new IllegalStateException("Unsupported journal format version " + version);
+        }
+    }
+
+    static void checkJournalBlockSizes(final int size, final int origSize) {
+        if (size < 0 || size > 1000000) {
+            throw new IllegalStateException("Bad journal block size = " + size + "(data corrupted)");
+        }
+        if (origSize < 0 || origSize > 1000000) {
+            throw new IllegalStateException("Bad original block size = " + origSize + "(data corrupted)");
+        }
+    }
+
     private void readCommands(final DataInputStream jr,
                               final ExchangeApi api,
                               final MutableLong lastSeq,
@@ -458,6 +1461,11 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
 
             final byte cmd = jr.readByte();
 
+            if (cmd == 0) {
+                // end of written data in pre-sized memory-mapped segment
+                return;
+            }
+
             if (debug) log.debug("COMPR STEP lastSeq={} ", lastSeq);
 
             if (cmd == OrderCommandType.RESERVED_COMPRESSED.getCode()) {
@@ -656,7 +1664,10 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
 //            batchSizes = new ArrayList<>();
 //        }
 
-        if (journalWriteBuffer.position() < journalBatchCompressThreshold) {
+        if (journalCodec != null) {
+            writeJournalBlockV2();
+
+        } else if (journalWriteBuffer.position() < journalBatchCompressThreshold) {
             // uncompressed write for single messages or small batches
             writtenBytes += journalWriteBuffer.position();
             journalWriteBuffer.flip();
@@ -685,34 +1696,244 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
             lz4WriteBuffer.clear();
         }
 
+        if (durability == DiskSerializationProcessorConfiguration.JournalDurability.SYNC_PER_BATCH) {
+            channel.force(false);
+        }
+
         if (forceStartNextFile || writtenBytes >= journalFileMaxSize) {
 
 //            log.info("RAW {}", LatencyTools.createLatencyReportFast(hdrRecorderRaw.getIntervalHistogram()));
 //            log.info("LZ4-compression {}", LatencyTools.createLatencyReportFast(hdrRecorderLz4.getIntervalHistogram()));
 
-            // todo start preparing new file asynchronously, but ONLY ONCE
             startNewFile(timestampNs);
             writtenBytes = 0;
         }
     }
 
+    /**
+     * Format v2: every flushed buffer is a block with its own header, record deltas are restarting from each block.
+     */
+    private void writeJournalBlockV2() throws IOException {
+
+        if (journalBlockCommands == 0) {
+            journalWriteBuffer.clear();
+            return;
+        }
+
+        final int originalLength = journalWriteBuffer.position();
+        journalWriteBuffer.flip();
+
+        if (originalLength < journalBatchCompressThreshold) {
+            // uncompressed block - header and buffer written with single gathering write
+            journalBlockHeader.clear();
+            journalBlockHeader.put(JOURNAL_BLOCK_RAW);
+            journalBlockHeader.putInt(originalLength);
+            journalBlockHeader.putInt(originalLength);
+            journalBlockHeader.putInt(journalBlockCommands);
+            journalBlockHeader.flip();
+            channel.write(journalBlockBuffers);
+            writtenBytes += JOURNAL_BLOCK_HEADER_SIZE + originalLength;
+
+        } else {
+            lz4WriteBuffer.position(JOURNAL_BLOCK_HEADER_SIZE);
+            lz4CompressorJournal.compress(journalWriteBuffer, lz4WriteBuffer);
+            final int compressedLength = lz4WriteBuffer.position() - JOURNAL_BLOCK_HEADER_SIZE;
+            lz4WriteBuffer.put(0, JOURNAL_BLOCK_LZ4);
+            lz4WriteBuffer.putInt(1, compressedLength);
+            lz4WriteBuffer.putInt(5, originalLength);
+            lz4WriteBuffer.putInt(9, journalBlockCommands);
+            lz4WriteBuffer.flip();
+            channel.write(lz4WriteBuffer);
+            writtenBytes += JOURNAL_BLOCK_HEADER_SIZE + compressedLength;
+            lz4WriteBuffer.clear();
+        }
+
+        journalWriteBuffer.clear();
+        journalBlockCommands = 0;
+        journalCodec.resetBlock();
+    }
+
     private void startNewFile(final long timestampNs) throws IOException {
         filesCounter++;
-        if (channel != null) {
-            channel.close();
-            raf.close();
+        final RandomAccessFile nextFile = openJournalFile();
+
+        synchronized (channelLock) {
+            if (channel != null) {
+                if (durableSequence != null) {
+                    // group commit flusher will only sync next file
+                    channel.force(false);
+                }
+                channel.close();
+                raf.close();
+            }
+            raf = nextFile;
+            channel = raf.getChannel();
+        }
+
+        if (journalCodec != null) {
+            // dictionaries are per file, so any file can be read independently
+            journalCodec.resetFile();
+            channel.write(ByteBuffer.wrap(new byte[]{JOURNAL_V2_FILE_MARKER, JOURNAL_V2_VERSION}));
+        }
+
+        registerNextJournal(baseSnapshotId, timestampNs); // TODO fix time
+    }
+
+    /**
+     * Group commit: write pending data (batch can end with non-journaled command) and publish written sequence for flusher.
+     * Every disruptor batch ends with eob, so flusher always can catch up.
+     */
+    private void publishWrittenSequence(final long dSeq, final long timestampNs) throws IOException {
+        if (journalWriteBuffer.position() != 0) {
+            flushBufferSync(false, timestampNs);
+        }
+        groupCommitWrittenSeq = dSeq;
+
+        if (groupCommitFlusherThread == null) {
+            groupCommitFlusherActive = true;
+            groupCommitFlusherThread = new Thread(this::runGroupCommitFlusher, "Thread-JournalGroupCommit");
+            groupCommitFlusherThread.setDaemon(true);
+            groupCommitFlusherThread.start();
+        }
+    }
+
+    private void runGroupCommitFlusher() {
+        try {
+            while (groupCommitFlusherActive) {
+                final long writtenSeq = groupCommitWrittenSeq;
+                if (writtenSeq > durableSequence.get()) {
+                    // single fdatasync covers all batches written since previous one
+                    forceChannel();
+                    durableSequence.set(writtenSeq);
+                } else {
+                    LockSupport.parkNanos(1);
+                }
+            }
+        } catch (IOException ex) {
+            // durable sequence is not moving anymore - results will not be released
+            log.error("Journal group commit failed", ex);
+        }
+    }
+
+    private void stopGroupCommitFlusher() {
+        if (groupCommitFlusherThread != null) {
+            groupCommitFlusherActive = false;
+            try {
+                groupCommitFlusherThread.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            groupCommitFlusherThread = null;
+        }
+    }
+
+    private void forceChannel() throws IOException {
+        synchronized (channelLock) {
+            if (channel != null) {
+                channel.force(false);
+            }
+        }
+    }
+
+    private void syncMappedSegment(final boolean eob) {
+        final int position = mappedBuffer.position();
+        switch (mappedSyncPolicy) {
+            case PER_BATCH:
+                if (eob) {
+                    mappedBuffer.force();
+                    mappedSyncedPosition = position;
+                }
+                break;
+
+            case PER_BYTES:
+                if (position - mappedSyncedPosition >= mappedSyncBytes) {
+                    mappedBuffer.force();
+                    mappedSyncedPosition = position;
+                }
+                break;
+
+            case ASYNC:
+                // background flusher
+                break;
+
+            default:
+                throw new IllegalStateException("unknown sync policy: " + mappedSyncPolicy);
+        }
+    }
+
+    private void startNewMappedSegment(final long timestampNs) throws IOException {
+        filesCounter++;
+        closeMappedSegment();
+
+        // pre-sized file, not written tail is zeros (replay stops at zero command code)
+        try (final RandomAccessFile segmentFile = openJournalFile()) {
+            segmentFile.setLength(mappedSegmentSize);
+            final MappedByteBuffer buffer = segmentFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, mappedSegmentSize);
+            synchronized (mappedSegmentLock) {
+                mappedBuffer = buffer;
+            }
+        }
+        mappedSyncedPosition = 0;
+
+        if (mappedSyncPolicy == DiskSerializationProcessorConfiguration.MappedSyncPolicy.ASYNC && mappedFlusherThread == null) {
+            mappedFlusherActive = true;
+            mappedFlusherThread = new Thread(this::runMappedFlusher, "Thread-JournalFlusher");
+            mappedFlusherThread.setDaemon(true);
+            mappedFlusherThread.start();
+        }
+
+        registerNextJournal(baseSnapshotId, timestampNs); // TODO fix time
+    }
+
+    /**
+     * Opens journal file for current filesCounter: prepared segment (if enabled) or new file
+     */
+    private RandomAccessFile openJournalFile() throws IOException {
+        if (segmentManager != null) {
+            return segmentManager.openSegment(baseSnapshotId, filesCounter);
         }
+
         final Path fileName = resolveJournalPath(filesCounter, baseSnapshotId);
 //        log.debug("Starting new journal file: {}", fileName);
 
         if (Files.exists(fileName)) {
             throw new IllegalStateException("File already exists: " + fileName);
         }
+        return new RandomAccessFile(fileName.toString(), "rw");
+    }
 
-        raf = new RandomAccessFile(fileName.toString(), "rwd");
-        channel = raf.getChannel();
+    private void closeMappedSegment() {
+        synchronized (mappedSegmentLock) {
+            if (mappedBuffer != null) {
+                mappedBuffer.force();
+                IoUtil.unmap(mappedBuffer);
+                mappedBuffer = null;
+            }
+        }
+    }
 
-        registerNextJournal(baseSnapshotId, timestampNs); // TODO fix time
+    private void runMappedFlusher() {
+        while (mappedFlusherActive) {
+            LockSupport.parkNanos(mappedFlushIntervalNs);
+            synchronized (mappedSegmentLock) {
+                if (mappedBuffer != null) {
+                    mappedBuffer.force();
+                }
+            }
+        }
+    }
+
+    private void stopMappedFlusher() {
+        if (mappedFlusherThread != null) {
+            mappedFlusherActive = false;
+            LockSupport.unpark(mappedFlusherThread);
+            try {
+                mappedFlusherThread.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            mappedFlusherThread = null;
+        }
     }
 
     /**
@@ -751,6 +1972,10 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
     }
 
     private Path resolveJournalPath(int partitionId, long snapshotId) {
+        return resolveJournalPath(folder, exchangeId, partitionId, snapshotId);
+    }
+
+    static Path resolveJournalPath(Path folder, String exchangeId, int partitionId, long snapshotId) {
         return folder.resolve(String.format("%s_journal_%d_%04X.ecj", exchangeId, snapshotId, partitionId));
     }
 }
@@ -29,6 +29,18 @@ public class DiskSerializationProcessorConfiguration {
     // note: using LZ4 HIGH will require about twice more time
     private final Supplier<LZ4Compressor> snapshotLz4CompressorFactory;
 
+    // write snapshots asynchronously: module thread only dumps state into reusable in-memory buffer,
+    // LZ4 compression and file I/O are done by background writer thread (reduces pipeline stall)
+    private final boolean snapshotAsyncWrite;
+
+    // initial size of snapshot buffer (per module instance, grows if needed)
+    private final int snapshotBufferInitialSize;
+
+    // chunked snapshots format: state is split into independently compressed chunks (order books, ranges of user profiles)
+    // with index in file header, chunks are memory-mapped and decompressed/deserialized by this number of threads on startup
+    // (0 - single LZ4 stream format, chunked snapshots can still be loaded sequentially)
+    private final int snapshotLoadThreads;
+
     // -------- journal settings ---------------
 
     private final long journalFileMaxSize;
@@ -43,15 +55,202 @@ public class DiskSerializationProcessorConfiguration {
     // note: using LZ4 HIGH is not recommended because of very high impact on throughput
     private final Supplier<LZ4Compressor> journalLz4CompressorFactory;
 
+    // FILE_CHANNEL - commands are collected in buffer and written through FileChannel (fsync depends on journalDurability)
+    // MEMORY_MAPPED - commands are written directly into pre-sized memory-mapped segment (journalFileMaxSize, max 2GB),
+    // no write() copy on journaling thread, compression is not used
+    private final JournalWriteMode journalWriteMode;
+
+    // records format for FILE_CHANNEL mode (MEMORY_MAPPED mode always uses V1),
+    // files of both formats can be replayed
+    private final JournalFormat journalFormat;
+
+    // fsync policy for FILE_CHANNEL mode
+    private final JournalDurability journalDurability;
+
+    // number of next journal segments created and zero-filled in advance by background thread (journalFileMaxSize each),
+    // rollover only switches to already opened file (0 - next file is created by journaling thread on rollover)
+    private final int journalSegmentsPreallocated;
+
+    // fast recovery: number of threads decompressing memory-mapped journal blocks on replay,
+    // commands are published in batches (0 - sequential stream reading, one command at a time)
+    private final int journalReplayThreads;
+
+    // msync policy for MEMORY_MAPPED mode
+    private final MappedSyncPolicy journalMappedSyncPolicy;
+
+    // PER_BYTES policy: msync after this amount of bytes written
+    private final int journalMappedSyncBytes;
+
+    // ASYNC policy: background flusher interval
+    private final long journalMappedFlushIntervalNs;
+
     public static DiskSerializationProcessorConfiguration createDefaultConfig() {
+        return createDefaultConfig(JournalDurability.SYNC_PER_BATCH);
+    }
+
+    public static DiskSerializationProcessorConfiguration createDefaultConfig(final JournalDurability durability) {
+        return createDefaultConfig(durability, JournalFormat.V2_COMPACT);
+    }
+
+    public static DiskSerializationProcessorConfiguration createDefaultConfig(final JournalDurability durability,
+                                                                              final JournalFormat format) {
 
         return DiskSerializationProcessorConfiguration.builder()
                 .storageFolder(DEFAULT_FOLDER)
                 .snapshotLz4CompressorFactory(LZ4_FAST)
+                .snapshotAsyncWrite(false)
+                .snapshotBufferInitialSize(64 * 1024 * 1024)
+                .snapshotLoadThreads(0)
                 .journalFileMaxSize(4000 * ONE_MEGABYTE)
                 .journalBufferSize(256 * 1024) // 256 KB - TODO calculate based on ringBufferSize
                 .journalBatchCompressThreshold(2048)
                 .journalLz4CompressorFactory(LZ4_FAST)
+                .journalWriteMode(JournalWriteMode.FILE_CHANNEL)
+                .journalFormat(format)
+                .journalDurability(durability)
+                .journalMappedSyncPolicy(MappedSyncPolicy.PER_BATCH)
+                .journalMappedSyncBytes(64 * 1024)
+                .journalMappedFlushIntervalNs(1_000_000)
+                .journalSegmentsPreallocated(0)
+                .journalReplayThreads(0)
+                .build();
+    }
+
+    public static DiskSerializationProcessorConfiguration createFastReplayConfig(final int replayThreads) {
+
+        return DiskSerializationProcessorConfiguration.builder()
+                .storageFolder(DEFAULT_FOLDER)
+                .snapshotLz4CompressorFactory(LZ4_FAST)
+                .snapshotAsyncWrite(false)
+                .snapshotBufferInitialSize(64 * 1024 * 1024)
+                .snapshotLoadThreads(0)
+                .journalFileMaxSize(4000 * ONE_MEGABYTE)
+                .journalBufferSize(256 * 1024)
+                .journalBatchCompressThreshold(2048)
+                .journalLz4CompressorFactory(LZ4_FAST)
+                .journalWriteMode(JournalWriteMode.FILE_CHANNEL)
+                .journalFormat(JournalFormat.V2_COMPACT)
+                .journalDurability(JournalDurability.SYNC_PER_BATCH)
+                .journalMappedSyncPolicy(MappedSyncPolicy.PER_BATCH)
+                .journalMappedSyncBytes(64 * 1024)
+                .journalMappedFlushIntervalNs(1_000_000)
+                .journalSegmentsPreallocated(0)
+                .journalReplayThreads(replayThreads)
+                .build();
+    }
+
+    public static DiskSerializationProcessorConfiguration createAsyncSnapshotsConfig() {
+
+        return DiskSerializationProcessorConfiguration.builder()
+                .storageFolder(DEFAULT_FOLDER)
+                .snapshotLz4CompressorFactory(LZ4_FAST)
+                .snapshotAsyncWrite(true)
+                .snapshotBufferInitialSize(64 * 1024 * 1024)
+                .snapshotLoadThreads(0)
+                .journalFileMaxSize(4000 * ONE_MEGABYTE)
+                .journalBufferSize(256 * 1024)
+                .journalBatchCompressThreshold(2048)
+                .journalLz4CompressorFactory(LZ4_FAST)
+                .journalWriteMode(JournalWriteMode.FILE_CHANNEL)
+                .journalFormat(JournalFormat.V2_COMPACT)
+                .journalDurability(JournalDurability.SYNC_PER_BATCH)
+                .journalMappedSyncPolicy(MappedSyncPolicy.PER_BATCH)
+                .journalMappedSyncBytes(64 * 1024)
+                .journalMappedFlushIntervalNs(1_000_000)
+                .journalSegmentsPreallocated(0)
+                .journalReplayThreads(0)
                 .build();
     }
+
+    public static DiskSerializationProcessorConfiguration createChunkedSnapshotsConfig(final int loadThreads) {
+
+        return DiskSerializationProcessorConfiguration.builder()
+                .storageFolder(DEFAULT_FOLDER)
+                .snapshotLz4CompressorFactory(LZ4_FAST)
+                .snapshotAsyncWrite(false)
+                .snapshotBufferInitialSize(64 * 1024 * 1024)
+                .snapshotLoadThreads(loadThreads)
+                .journalFileMaxSize(4000 * ONE_MEGABYTE)
+                .journalBufferSize(256 * 1024)
+                .journalBatchCompressThreshold(2048)
+                .journalLz4CompressorFactory(LZ4_FAST)
+                .journalWriteMode(JournalWriteMode.FILE_CHANNEL)
+                .journalFormat(JournalFormat.V2_COMPACT)
+                .journalDurability(JournalDurability.SYNC_PER_BATCH)
+                .journalMappedSyncPolicy(MappedSyncPolicy.PER_BATCH)
+                .journalMappedSyncBytes(64 * 1024)
+                .journalMappedFlushIntervalNs(1_000_000)
+                .journalSegmentsPreallocated(0)
+                .journalReplayThreads(0)
+                .build();
+    }
+
+    public static DiskSerializationProcessorConfiguration createJournalSegmentsConfig(final long journalFileMaxSize,
+                                                                                      final int segmentsPreallocated) {
+
+        return DiskSerializationProcessorConfiguration.builder()
+                .storageFolder(DEFAULT_FOLDER)
+                .snapshotLz4CompressorFactory(LZ4_FAST)
+                .snapshotAsyncWrite(false)
+                .snapshotBufferInitialSize(64 * 1024 * 1024)
+                .snapshotLoadThreads(0)
+                .journalFileMaxSize(journalFileMaxSize)
+                .journalBufferSize(256 * 1024)
+                .journalBatchCompressThreshold(2048)
+                .journalLz4CompressorFactory(LZ4_FAST)
+                .journalWriteMode(JournalWriteMode.FILE_CHANNEL)
+                .journalFormat(JournalFormat.V2_COMPACT)
+                .journalDurability(JournalDurability.SYNC_PER_BATCH)
+                .journalMappedSyncPolicy(MappedSyncPolicy.PER_BATCH)
+                .journalMappedSyncBytes(64 * 1024)
+                .journalMappedFlushIntervalNs(1_000_000)
+                .journalSegmentsPreallocated(segmentsPreallocated)
+                .journalReplayThreads(0)
+                .build();
+    }
+
+    public static DiskSerializationProcessorConfiguration createMappedConfig(final MappedSyncPolicy syncPolicy) {
+
+        return DiskSerializationProcessorConfiguration.builder()
+                .storageFolder(DEFAULT_FOLDER)
+                .snapshotLz4CompressorFactory(LZ4_FAST)
+                .snapshotAsyncWrite(false)
+                .snapshotBufferInitialSize(64 * 1024 * 1024)
+                .snapshotLoadThreads(0)
+                .journalFileMaxSize(1024 * ONE_MEGABYTE)
+                .journalBufferSize(256 * 1024)
+                .journalBatchCompressThreshold(2048)
+                .journalLz4CompressorFactory(LZ4_FAST)
+                .journalWriteMode(JournalWriteMode.MEMORY_MAPPED)
+                .journalFormat(JournalFormat.V1) // compact format is not supported
+                .journalDurability(JournalDurability.NONE) // not used, see journalMappedSyncPolicy
+                .journalMappedSyncPolicy(syncPolicy)
+                .journalMappedSyncBytes(64 * 1024)
+                .journalMappedFlushIntervalNs(1_000_000)
+                .journalSegmentsPreallocated(0)
+                .journalReplayThreads(0)
+                .build();
+    }
+
+    public enum JournalWriteMode {
+        FILE_CHANNEL,
+        MEMORY_MAPPED
+    }
+
+    public enum JournalFormat {
+        V1, // fixed size records
+        V2_COMPACT // blocks of varint-delta encoded records, per-file dictionaries for uid and symbol
+    }
+
+    public enum JournalDurability {
+        NONE, // no fsync, data can stay in OS page cache when results are already released
+        GROUP_COMMIT, // fsync by background flusher thread covering many batches, results are released only after durable sequence
+        SYNC_PER_BATCH // fsync at the end of every batch on journaling thread (default)
+    }
+
+    public enum MappedSyncPolicy {
+        PER_BATCH, // msync at the end of every batch (same durability as FILE_CHANNEL)
+        PER_BYTES, // msync after every journalMappedSyncBytes bytes
+        ASYNC // msync by background flusher thread every journalMappedFlushIntervalNs
+    }
 }
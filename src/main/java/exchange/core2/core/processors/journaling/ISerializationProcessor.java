@@ -15,19 +15,35 @@
  */
 package exchange.core2.core.processors.journaling;
 
+import com.lmax.disruptor.Sequence;
 import exchange.core2.core.ExchangeApi;
 import exchange.core2.core.common.cmd.OrderCommand;
 import exchange.core2.core.common.config.InitialStateConfiguration;
+import exchange.core2.core.processors.sharding.IShardingPolicy;
+import exchange.core2.core.processors.sharding.ModuloShardingPolicy;
 import lombok.AllArgsConstructor;
 import net.openhft.chronicle.bytes.BytesIn;
 import net.openhft.chronicle.bytes.WriteBytesMarshallable;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.NavigableMap;
+import java.util.function.BiFunction;
 import java.util.function.Function;
 
 public interface ISerializationProcessor {
 
+    // max number of chunks for splitting big collections (order books, user profiles) of single module instance
+    int SNAPSHOT_MAX_CHUNKS = 64;
+
+    // chunked payload in single stream starts with negative marker,
+    // previous format (whole module state written at once) starts with shardId
+    int SNAPSHOT_CHUNKED_PAYLOAD_MARKER = -1;
+
+    // layout of module chunks (header chunk, then chunks of big collections)
+    int SNAPSHOT_CHUNKED_PAYLOAD_VERSION = 1;
+
     /**
      * Serialize state into a storage (disk, NAS, etc).<p>
      * Method is threadsafe - called from each module's thread upon receiving serialization command.<p>
@@ -64,6 +80,76 @@ public interface ISerializationProcessor {
                    int instanceId,
                    Function<BytesIn, T> initFunc);
 
+    /**
+     * Serialize state as a list of independent chunks (for example header, groups of order books, ranges of user profiles).<p>
+     * Storage can compress and load chunks in parallel, see {@link #loadDataChunks}.<p>
+     * Default implementation writes all chunks sequentially using {@link #storeData}.<p>
+     *
+     * @param snapshotId  - unique snapshot id
+     * @param seq         - sequence of serialization
+     * @param timestampNs - timestamp
+     * @param type        - module (risk engine or matching engine)
+     * @param instanceId  - module instance number (starting from 0 for each module type)
+     * @param chunks      - serialized data chunks
+     * @return true if serialization succeeded, false otherwise
+     */
+    default boolean storeDataChunks(long snapshotId,
+                                    long seq,
+                                    long timestampNs,
+                                    SerializedModuleType type,
+                                    int instanceId,
+                                    List<? extends WriteBytesMarshallable> chunks) {
+
+        return storeData(snapshotId, seq, timestampNs, type, instanceId, bytes -> {
+            bytes.writeInt(SNAPSHOT_CHUNKED_PAYLOAD_MARKER);
+            bytes.writeInt(SNAPSHOT_CHUNKED_PAYLOAD_VERSION);
+            bytes.writeInt(chunks.size());
+            chunks.forEach(chunk -> chunk.writeMarshallable(bytes));
+        });
+    }
+
+    /**
+     * Deserialize state stored by {@link #storeDataChunks}.<p>
+     * Chunk reader can be called concurrently for different chunks - it should not modify any shared state.<p>
+     * Snapshot of previous format (whole module state written by {@link #storeData}) is passed to previous format reader.<p>
+     *
+     * @param snapshotId           - unique snapshot id
+     * @param type                 - module (risk engine or matching engine)
+     * @param instanceId           - module instance number (starting from 0)
+     * @param chunkReader          - creator lambda function (chunk index, chunk data)
+     * @param previousFormatReader - creator lambda function for previous format, returns same chunk objects as chunk reader
+     * @param <T>                  - chunk object class
+     * @return chunk objects (in the same order as chunks were stored), or throws exception
+     */
+    default <T> List<T> loadDataChunks(long snapshotId,
+                                       SerializedModuleType type,
+                                       int instanceId,
+                                       BiFunction<Integer, BytesIn, T> chunkReader,
+                                       Function<BytesIn, List<T>> previousFormatReader) {
+
+        return loadData(snapshotId, type, instanceId, bytes -> {
+            if (bytes.readInt(bytes.readPosition()) != SNAPSHOT_CHUNKED_PAYLOAD_MARKER) {
+                return previousFormatReader.apply(bytes);
+            }
+            bytes.readSkip(4);
+            checkChunkedPayloadVersion(bytes.readInt());
+
+            final int chunksNum = bytes.readInt();
+            final List<T> chunks = new ArrayList<>(chunksNum);
+            for (int i = 0; i < chunksNum; i++) {
+                chunks.add(chunkReader.apply(i, bytes));
+            }
+            return chunks;
+        });
+    }
+
+    /**
+     * Complete pending asynchronous writes and release resources.<p>
+     * Called once after exchange core is stopped.<p>
+     */
+    default void shutdown() {
+    }
+
 
     /**
      * Write command into journal
@@ -75,6 +161,16 @@ public interface ISerializationProcessor {
      */
     void writeToJournal(OrderCommand cmd, long dSeq, boolean eob) throws IOException;
 
+    /**
+     * Durable sequence for group commit mode - journal is fsync-ed up to this disruptor sequence (inclusive).<p>
+     * Results handler does not release commands until durable sequence reaches them.<p>
+     *
+     * @return durable sequence, or null if journal does not require additional barrier (written synchronously or not durable)
+     */
+    default Sequence getDurableSequence() {
+        return null;
+    }
+
 
     /**
      * Activate journal
@@ -152,4 +248,26 @@ public interface ISerializationProcessor {
         return false;
     }
 
+    static void checkChunkedPayloadVersion(int version) {
+        if (version != SNAPSHOT_CHUNKED_PAYLOAD_VERSION) {
+            throw new IllegalStateException("Unsupported snapshot payload version " + version);
+        }
+    }
+
+    /**
+     * Check shards header of snapshot written in previous format - shard was selected by bit mask of id.
+     *
+     * @param shardMask      - shard mask from snapshot
+     * @param shardsNum      - configured number of shards
+     * @param shardingPolicy - configured sharding policy
+     */
+    static void checkPreviousFormatShards(long shardMask, int shardsNum, IShardingPolicy shardingPolicy) {
+        if (shardMask + 1 != shardsNum) {
+            throw new IllegalStateException("wrong shardMask");
+        }
+        // modulo policy gives the same mapping for power of 2 number of shards
+        if (shardsNum != 1 && !(shardingPolicy instanceof ModuloShardingPolicy)) {
+            throw new IllegalStateException("snapshot of previous format requires modulo sharding policy");
+        }
+    }
 }
@@ -0,0 +1,364 @@
+package exchange.core2.core.processors.journaling;
+
+import exchange.core2.core.common.BalanceAdjustmentType;
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.cmd.OrderCommandType;
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+import org.eclipse.collections.impl.list.mutable.primitive.LongArrayList;
+import org.eclipse.collections.impl.map.mutable.primitive.IntIntHashMap;
+import org.eclipse.collections.impl.map.mutable.primitive.LongIntHashMap;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Compact journal records (journal format v2).<p>
+ * Record starts from packed header byte: command index (4 bits) and command flags (order action and type, adjustment type or last frame flag).<p>
+ * seq, timestamp, eventsGroup, orderId and price are written as zigzag varint deltas against previous record of the same block,
+ * uid and symbol are written as indexes in per-file dictionaries (new value is appended: index equal to dictionary size, followed by the value).<p>
+ * Same instance is used for sequential writing or reading of one file: delta context is reset for every block, dictionaries - for every file.
+ */
+final class JournalCompactCodec {
+
+    // 0 - not used
+    private static final OrderCommandType[] COMMANDS = {
+            null,
+            OrderCommandType.PLACE_ORDER,
+            OrderCommandType.CANCEL_ORDER,
+            OrderCommandType.MOVE_ORDER,
+            OrderCommandType.REDUCE_ORDER,
+            OrderCommandType.BALANCE_ADJUSTMENT,
+            OrderCommandType.ADD_USER,
+            OrderCommandType.SUSPEND_USER,
+            OrderCommandType.RESUME_USER,
+            OrderCommandType.BINARY_DATA_COMMAND,
+            OrderCommandType.RESET,
+            OrderCommandType.PERSIST_STATE_MATCHING,
+            OrderCommandType.PERSIST_STATE_RISK};
+
+    private static final byte[] COMMAND_INDEXES = new byte[256];
+
+    static {
+        for (int i = 1; i < COMMANDS.length; i++) {
+            COMMAND_INDEXES[COMMANDS[i].getCode() & 0xFF] = (byte) i;
+        }
+    }
+
+    // per-file dictionaries
+    private final LongIntHashMap uidIndexes = new LongIntHashMap(); // writer
+    private final IntIntHashMap symbolIndexes = new IntIntHashMap(); // writer
+    private final LongArrayList uids = new LongArrayList(); // reader
+    private final IntArrayList symbols = new IntArrayList(); // reader
+
+    // per-block delta context
+    private long lastSeq;
+    private long lastTimestamp;
+    private long lastEventsGroup;
+    private long lastOrderId;
+    private long lastPrice;
+
+    void resetFile() {
+        uidIndexes.clear();
+        symbolIndexes.clear();
+        uids.clear();
+        symbols.clear();
+        resetBlock();
+    }
+
+    void resetBlock() {
+        lastSeq = 0;
+        lastTimestamp = 0;
+        lastEventsGroup = 0;
+        lastOrderId = 0;
+        lastPrice = 0;
+    }
+
+    void encode(final OrderCommand cmd, final long seq, final ByteBuffer buffer) {
+
+        final OrderCommandType cmdType = cmd.command;
+        final int index = COMMAND_INDEXES[cmdType.getCode() & 0xFF];
+        if (index == 0) {
+            throw new IllegalStateException("unexpected command " + cmdType);
+        }
+
+        final int flags;
+        if (cmdType == OrderCommandType.PLACE_ORDER) {
+            flags = (cmd.orderType.getCode() << 1) | cmd.action.getCode(); // 3 bits type + 1 bit action
+        } else if (cmdType == OrderCommandType.BALANCE_ADJUSTMENT) {
+            flags = cmd.orderType.getCode(); // adjustment or suspend
+        } else if (cmdType == OrderCommandType.BINARY_DATA_COMMAND) {
+            flags = cmd.symbol & 1; // last frame flag (0 or -1)
+        } else {
+            flags = 0;
+        }
+
+        buffer.put((byte) ((index << 4) | flags));
+
+        putVarLong(buffer, zigzag(seq - lastSeq));
+        putVarLong(buffer, zigzag(cmd.timestamp - lastTimestamp));
+        putVarLong(buffer, zigzag(cmd.serviceFlags));
+        putVarLong(buffer, zigzag(cmd.eventsGroup - lastEventsGroup));
+        lastSeq = seq;
+        lastTimestamp = cmd.timestamp;
+        lastEventsGroup = cmd.eventsGroup;
+
+        switch (cmdType) {
+            case MOVE_ORDER:
+                putUid(buffer, cmd.uid);
+                putSymbol(buffer, cmd.symbol);
+                putOrderId(buffer, cmd.orderId);
+                putPrice(buffer, cmd.price);
+                break;
+
+            case CANCEL_ORDER:
+                putUid(buffer, cmd.uid);
+                putSymbol(buffer, cmd.symbol);
+                putOrderId(buffer, cmd.orderId);
+                break;
+
+            case REDUCE_ORDER:
+                putUid(buffer, cmd.uid);
+                putSymbol(buffer, cmd.symbol);
+                putOrderId(buffer, cmd.orderId);
+                putVarLong(buffer, zigzag(cmd.size));
+                break;
+
+            case PLACE_ORDER:
+                putUid(buffer, cmd.uid);
+                putSymbol(buffer, cmd.symbol);
+                putOrderId(buffer, cmd.orderId);
+                putPrice(buffer, cmd.price);
+                putVarLong(buffer, zigzag(cmd.reserveBidPrice - cmd.price));
+                putVarLong(buffer, zigzag(cmd.size));
+                putVarLong(buffer, zigzag(cmd.userCookie));
+                break;
+
+            case BALANCE_ADJUSTMENT:
+                putUid(buffer, cmd.uid);
+                putSymbol(buffer, cmd.symbol); // currency
+                putOrderId(buffer, cmd.orderId); // transaction
+                putVarLong(buffer, zigzag(cmd.price)); // amount
+                break;
+
+            case ADD_USER:
+            case SUSPEND_USER:
+            case RESUME_USER:
+                putUid(buffer, cmd.uid);
+                break;
+
+            case BINARY_DATA_COMMAND:
+                // packed binary data - not compressible
+                buffer.putLong(cmd.orderId);
+                buffer.putLong(cmd.price);
+                buffer.putLong(cmd.reserveBidPrice);
+                buffer.putLong(cmd.size);
+                buffer.putLong(cmd.uid);
+                break;
+
+            case PERSIST_STATE_MATCHING:
+            case PERSIST_STATE_RISK:
+                putVarLong(buffer, zigzag(cmd.orderId)); // snapshot id - journal tailer follows to the next snapshot files
+                break;
+
+            default:
+                // header only
+        }
+    }
+
+    /**
+     * Decode single command (sets same fields as ExchangeApi replay methods).
+     * PERSIST_STATE_* records are decoded with snapshot id in orderId field (not expected on replay).
+     *
+     * @return command sequence
+     */
+    long decode(final ByteBuffer buffer, final OrderCommand cmd) {
+
+        final int header = buffer.get() & 0xFF;
+        final int index = header >> 4;
+        final int flags = header & 0b1111;
+        if (index == 0 || index >= COMMANDS.length) {
+            throw new IllegalStateException("Unknown journal record header " + header + " (data corrupted)");
+        }
+        final OrderCommandType cmdType = COMMANDS[index];
+
+        final long seq = lastSeq + unzigzag(getVarLong(buffer));
+        final long timestampNs = lastTimestamp + unzigzag(getVarLong(buffer));
+        final int serviceFlags = (int) unzigzag(getVarLong(buffer));
+        final long eventsGroup = lastEventsGroup + unzigzag(getVarLong(buffer));
+        lastSeq = seq;
+        lastTimestamp = timestampNs;
+        lastEventsGroup = eventsGroup;
+
+        cmd.command = cmdType;
+        cmd.resultCode = CommandResultCode.NEW;
+        cmd.timestamp = timestampNs;
+
+        if (cmdType == OrderCommandType.RESET) {
+            return seq;
+        }
+
+        cmd.serviceFlags = serviceFlags;
+        cmd.eventsGroup = eventsGroup;
+
+        switch (cmdType) {
+            case MOVE_ORDER:
+                cmd.uid = getUid(buffer);
+                cmd.symbol = getSymbol(buffer);
+                cmd.orderId = getOrderId(buffer);
+                cmd.price = getPrice(buffer);
+                break;
+
+            case CANCEL_ORDER:
+                cmd.uid = getUid(buffer);
+                cmd.symbol = getSymbol(buffer);
+                cmd.orderId = getOrderId(buffer);
+                break;
+
+            case REDUCE_ORDER:
+                cmd.uid = getUid(buffer);
+                cmd.symbol = getSymbol(buffer);
+                cmd.orderId = getOrderId(buffer);
+                cmd.size = unzigzag(getVarLong(buffer));
+                break;
+
+            case PLACE_ORDER:
+                cmd.uid = getUid(buffer);
+                cmd.symbol = getSymbol(buffer);
+                cmd.orderId = getOrderId(buffer);
+                cmd.price = getPrice(buffer);
+                cmd.reserveBidPrice = cmd.price + unzigzag(getVarLong(buffer));
+                cmd.size = unzigzag(getVarLong(buffer));
+                cmd.userCookie = (int) unzigzag(getVarLong(buffer));
+                cmd.action = OrderAction.of((byte) (flags & 0b1));
+                cmd.orderType = OrderType.of((byte) (flags >> 1));
+                break;
+
+            case BALANCE_ADJUSTMENT:
+                cmd.uid = getUid(buffer);
+                cmd.symbol = getSymbol(buffer);
+                cmd.orderId = getOrderId(buffer);
+                cmd.price = unzigzag(getVarLong(buffer));
+                cmd.orderType = OrderType.of(BalanceAdjustmentType.of((byte) flags).getCode());
+                cmd.size = 0;
+                break;
+
+            case ADD_USER:
+            case SUSPEND_USER:
+            case RESUME_USER:
+                cmd.orderId = -1;
+                cmd.symbol = -1;
+                cmd.uid = getUid(buffer);
+                break;
+
+            case BINARY_DATA_COMMAND:
+                cmd.symbol = flags == 0 ? 0 : -1;
+                cmd.orderId = buffer.getLong();
+                cmd.price = buffer.getLong();
+                cmd.reserveBidPrice = buffer.getLong();
+                cmd.size = buffer.getLong();
+                cmd.uid = buffer.getLong();
+                break;
+
+            case PERSIST_STATE_MATCHING:
+            case PERSIST_STATE_RISK:
+                cmd.orderId = unzigzag(getVarLong(buffer));
+                break;
+
+            default:
+                throw new IllegalStateException("unexpected command " + cmdType);
+        }
+
+        return seq;
+    }
+
+    private void putUid(final ByteBuffer buffer, final long uid) {
+        final int idx = uidIndexes.getIfAbsent(uid, -1);
+        if (idx != -1) {
+            putVarLong(buffer, idx);
+        } else {
+            final int newIdx = uidIndexes.size();
+            uidIndexes.put(uid, newIdx);
+            putVarLong(buffer, newIdx);
+            putVarLong(buffer, zigzag(uid));
+        }
+    }
+
+    private long getUid(final ByteBuffer buffer) {
+        final int idx = (int) getVarLong(buffer);
+        if (idx == uids.size()) {
+            uids.add(unzigzag(getVarLong(buffer)));
+        }
+        return uids.get(idx);
+    }
+
+    private void putSymbol(final ByteBuffer buffer, final int symbol) {
+        final int idx = symbolIndexes.getIfAbsent(symbol, -1);
+        if (idx != -1) {
+            putVarLong(buffer, idx);
+        } else {
+            final int newIdx = symbolIndexes.size();
+            symbolIndexes.put(symbol, newIdx);
+            putVarLong(buffer, newIdx);
+            putVarLong(buffer, zigzag(symbol));
+        }
+    }
+
+    private int getSymbol(final ByteBuffer buffer) {
+        final int idx = (int) getVarLong(buffer);
+        if (idx == symbols.size()) {
+            symbols.add((int) unzigzag(getVarLong(buffer)));
+        }
+        return symbols.get(idx);
+    }
+
+    private void putOrderId(final ByteBuffer buffer, final long orderId) {
+        putVarLong(buffer, zigzag(orderId - lastOrderId));
+        lastOrderId = orderId;
+    }
+
+    private long getOrderId(final ByteBuffer buffer) {
+        lastOrderId += unzigzag(getVarLong(buffer));
+        return lastOrderId;
+    }
+
+    private void putPrice(final ByteBuffer buffer, final long price) {
+        putVarLong(buffer, zigzag(price - lastPrice));
+        lastPrice = price;
+    }
+
+    private long getPrice(final ByteBuffer buffer) {
+        lastPrice += unzigzag(getVarLong(buffer));
+        return lastPrice;
+    }
+
+    static long zigzag(final long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(final long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    // unsigned LEB128
+    static void putVarLong(final ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    static long getVarLong(final ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Malformed varint (data corrupted)");
+    }
+}
@@ -0,0 +1,180 @@
+package exchange.core2.core.processors.journaling;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+/**
+ * Prepares next journal segments in background thread: files are created, zero-filled (disk space is allocated,
+ * so later writes and fdatasync do not update file size) and opened in advance.
+ * Rollover only takes already opened file from the queue.<p>
+ * Segments are prepared for current snapshot only - on snapshot change (or any unexpected partition)
+ * not used segments are deleted and next segment is created synchronously.<p>
+ * Not written tail of segment is zeros, replay stops at zero command code (same as pre-sized memory-mapped segments).<p>
+ * Journaling thread only (except background tasks).
+ */
+@Slf4j
+final class JournalSegmentManager {
+
+    private static final int ZERO_FILL_CHUNK_SIZE = 1024 * 1024;
+
+    // (partitionId, snapshotId) -> path
+    private final BiFunction<Integer, Long, Path> pathResolver;
+    private final long segmentSize;
+    private final int segmentsPreallocated;
+
+    private final ExecutorService executor;
+    private final ByteBuffer zeros = ByteBuffer.allocateDirect(ZERO_FILL_CHUNK_SIZE); // background thread only
+
+    private final ArrayDeque<PreparedSegment> preparedSegments = new ArrayDeque<>();
+    private int nextPartition;
+
+    JournalSegmentManager(final BiFunction<Integer, Long, Path> pathResolver,
+                          final long segmentSize,
+                          final int segmentsPreallocated) {
+
+        this.pathResolver = pathResolver;
+        this.segmentSize = segmentSize;
+        this.segmentsPreallocated = segmentsPreallocated;
+
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            final Thread thread = new Thread(r, "Thread-JournalSegments");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Open next segment (prepared one if available) and schedule preparation of following segments.
+     *
+     * @param snapshotId  base snapshot of journal
+     * @param partitionId journal file number
+     * @return opened file, positioned at the beginning
+     */
+    RandomAccessFile openSegment(final long snapshotId, final int partitionId) throws IOException {
+
+        final RandomAccessFile file;
+
+        final PreparedSegment head = preparedSegments.peekFirst();
+        if (head != null && head.snapshotId == snapshotId && head.partitionId == partitionId) {
+            preparedSegments.pollFirst();
+            file = awaitPrepared(head);
+        } else {
+            discardPrepared();
+            final Path path = pathResolver.apply(partitionId, snapshotId);
+            if (Files.exists(path)) {
+                throw new IllegalStateException("File already exists: " + path);
+            }
+            file = new RandomAccessFile(path.toString(), "rw");
+            nextPartition = partitionId + 1;
+        }
+
+        while (preparedSegments.size() < segmentsPreallocated) {
+            final int nextPartitionId = nextPartition++;
+            final Path path = pathResolver.apply(nextPartitionId, snapshotId);
+            preparedSegments.addLast(new PreparedSegment(snapshotId, nextPartitionId, path, executor.submit(() -> prepareSegment(path))));
+        }
+
+        return file;
+    }
+
+    /**
+     * Delete not used segments and stop background thread
+     */
+    void close() {
+        discardPrepared();
+        executor.shutdown();
+        try {
+            executor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private RandomAccessFile awaitPrepared(final PreparedSegment segment) throws IOException {
+        try {
+            // normally already completed
+            return segment.file.get();
+        } catch (ExecutionException ex) {
+            throw new IOException("Can not prepare journal segment " + segment.path, ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while preparing journal segment " + segment.path);
+        }
+    }
+
+    private void discardPrepared() {
+        PreparedSegment segment;
+        while ((segment = preparedSegments.pollFirst()) != null) {
+            final PreparedSegment discarded = segment;
+            // same single thread executor - preparation task is already completed
+            executor.execute(() -> {
+                try {
+                    discarded.file.get().close();
+                } catch (Exception ex) {
+                    log.debug("Segment {} was not prepared: {}", discarded.path, ex.getMessage());
+                }
+                try {
+                    Files.deleteIfExists(discarded.path);
+                } catch (IOException ex) {
+                    log.warn("Can not delete not used journal segment {}", discarded.path, ex);
+                }
+            });
+        }
+    }
+
+    // background thread
+    private RandomAccessFile prepareSegment(final Path path) throws IOException {
+
+        if (Files.exists(path)) {
+            throw new IllegalStateException("File already exists: " + path);
+        }
+
+        final RandomAccessFile file = new RandomAccessFile(path.toString(), "rw");
+        try {
+            // zero-fill instead of setLength - sparse file would allocate blocks (and update metadata) on first write
+            final FileChannel fileChannel = file.getChannel();
+            long position = 0;
+            while (position < segmentSize) {
+                zeros.clear();
+                zeros.limit((int) Math.min(ZERO_FILL_CHUNK_SIZE, segmentSize - position));
+                position += fileChannel.write(zeros, position);
+            }
+            fileChannel.force(true);
+            fileChannel.position(0);
+            log.debug("Prepared journal segment {} ({} bytes)", path, segmentSize);
+            return file;
+
+        } catch (IOException ex) {
+            file.close();
+            throw ex;
+        }
+    }
+
+    private static final class PreparedSegment {
+
+        private final long snapshotId;
+        private final int partitionId;
+        private final Path path;
+        private final Future<RandomAccessFile> file;
+
+        private PreparedSegment(long snapshotId, int partitionId, Path path, Future<RandomAccessFile> file) {
+            this.snapshotId = snapshotId;
+            this.partitionId = partitionId;
+            this.path = path;
+            this.file = file;
+        }
+    }
+}
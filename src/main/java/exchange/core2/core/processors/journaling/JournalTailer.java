@@ -0,0 +1,369 @@
+package exchange.core2.core.processors.journaling;
+
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.cmd.OrderCommandType;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+import org.agrona.IoUtil;
+import org.agrona.collections.MutableLong;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Journal reader following journal files of running exchange instance (or reading journal offline).<p>
+ * Files are memory-mapped and polled for appended data, commands are decoded directly from mapped file
+ * (LZ4 blocks are decompressed into reusable buffer), both journal formats are supported.
+ * Reader follows next files of the same snapshot and switches to files of next snapshot after PERSIST_STATE_RISK record
+ * (v2 format only - v1 records do not contain snapshot id).<p>
+ * Live tailing requires FILE_CHANNEL journal without pre-allocated segments (file size is used as watermark of written data).
+ * Pre-allocated and memory-mapped segments are zero-filled, so they can be read reliably only when completed.<p>
+ * Not thread safe, all methods should be called from the same thread.
+ */
+@Slf4j
+public final class JournalTailer implements AutoCloseable {
+
+    private static final int MAP_WINDOW_SIZE = 1 << 30;
+    private static final ByteBuffer EMPTY_WINDOW = ByteBuffer.allocate(0);
+
+    private final Path folder;
+    private final String exchangeId;
+
+    private final LZ4SafeDecompressor lz4SafeDecompressor = LZ4Factory.fastestInstance().safeDecompressor();
+    private final JournalCompactCodec codec = new JournalCompactCodec();
+
+    // flyweight - same instance is passed to handler for every record
+    private final OrderCommand cmd = new OrderCommand();
+    private final MutableLong lastSeq;
+    private final ByteBuffer firstByteBuffer = ByteBuffer.allocate(1);
+
+    @Getter
+    private long snapshotId;
+    @Getter
+    private int partitionId = 1;
+
+    // PERSIST_STATE_RISK record was read - next file belongs to next snapshot
+    private boolean snapshotChanged = false;
+    private long nextSnapshotId;
+
+    // current file
+    private FileChannel fileChannel;
+    private long knownFileSize;
+    private ByteBuffer window = EMPTY_WINDOW;
+    private long windowStart;
+    private int position;
+    private boolean formatKnown;
+    private boolean compactFormat;
+
+    // current block (decompressed or raw v2 block)
+    private ByteBuffer block;
+    private int blockCommandsRemaining;
+    private ByteBuffer decompressBuffer = ByteBuffer.allocate(256 * 1024);
+
+    /**
+     * @param storageFolder - journal folder (same as DiskSerializationProcessorConfiguration.storageFolder)
+     * @param exchangeId    - exchange id
+     * @param snapshotId    - base snapshot id of journal (0 - journal started from clean state)
+     * @param baseSeq       - sequence of snapshot (0 - journal started from clean state)
+     */
+    public JournalTailer(final String storageFolder, final String exchangeId, final long snapshotId, final long baseSeq) {
+        this.folder = Paths.get(storageFolder);
+        this.exchangeId = exchangeId;
+        this.snapshotId = snapshotId;
+        this.lastSeq = new MutableLong(baseSeq);
+    }
+
+    /**
+     * Read available journal records.
+     *
+     * @param handler - receives decoded command and its sequence number.
+     *                Command is re-used flyweight - it is valid only during callback, copy required data instead of keeping reference.
+     * @param limit   - max number of records
+     * @return number of records passed to handler (0 - no new data written yet)
+     */
+    public int poll(final ObjLongConsumer<OrderCommand> handler, final int limit) throws IOException {
+        int count = 0;
+        while (count < limit && readNext()) {
+            handler.accept(cmd, lastSeq.value);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return sequence of last record passed to handler (baseSeq - no records yet)
+     */
+    public long getLastSeq() {
+        return lastSeq.value;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeFile();
+    }
+
+    private boolean readNext() throws IOException {
+
+        while (true) {
+
+            if (block != null) {
+                if (compactFormat ? blockCommandsRemaining > 0 : block.hasRemaining()) {
+                    decode(block);
+                    return true;
+                }
+                block = null;
+            }
+
+            if (fileChannel == null && !openFile()) {
+                return false;
+            }
+
+            // zero - end of written data in pre-allocated or memory-mapped segment
+            if (!ensureAvailable(1) || window.get(position) == 0) {
+                if (switchToNextFile()) {
+                    continue;
+                }
+                return false;
+            }
+
+            if (!formatKnown) {
+                if (window.get(position) == DiskSerializationProcessor.JOURNAL_V2_FILE_MARKER) {
+                    if (!ensureAvailable(2)) {
+                        return false;
+                    }
+                    DiskSerializationProcessor.checkJournalVersion(window.get(position + 1));
+                    position += 2;
+                    compactFormat = true;
+                    codec.resetFile();
+                }
+                formatKnown = true;
+                continue;
+            }
+
+            final boolean ready = compactFormat ? nextBlockV2() : nextRecordV1();
+            if (ready) {
+                return true;
+            } else if (block == null && !switchToNextFile()) {
+                // record or block is not completely written yet
+                return false;
+            }
+        }
+    }
+
+    /**
+     * @return true if command is decoded from mapped file, false if block is started or data is not complete yet
+     */
+    private boolean nextRecordV1() throws IOException {
+
+        final byte code = window.get(position);
+
+        if (code == OrderCommandType.RESERVED_COMPRESSED.getCode()) {
+            if (!ensureAvailable(DiskSerializationProcessor.COMPRESSED_BLOCK_HEADER_SIZE)) {
+                return false;
+            }
+            final int size = window.getInt(position + 1);
+            final int origSize = window.getInt(position + 5);
+            DiskSerializationProcessor.checkJournalBlockSizes(size, origSize);
+            if (!ensureAvailable(DiskSerializationProcessor.COMPRESSED_BLOCK_HEADER_SIZE + size)) {
+                return false;
+            }
+            block = decompress(position + DiskSerializationProcessor.COMPRESSED_BLOCK_HEADER_SIZE, size, origSize);
+            position += DiskSerializationProcessor.COMPRESSED_BLOCK_HEADER_SIZE + size;
+            return false;
+        }
+
+        if (!ensureAvailable(DiskSerializationProcessor.journalCommandSize(code))) {
+            return false;
+        }
+
+        window.position(position);
+        decode(window);
+        position = window.position();
+        return true;
+    }
+
+    /**
+     * @return always false - block is started or data is not complete yet
+     */
+    private boolean nextBlockV2() throws IOException {
+
+        if (!ensureAvailable(DiskSerializationProcessor.JOURNAL_BLOCK_HEADER_SIZE)) {
+            return false;
+        }
+
+        final byte blockType = window.get(position);
+        final int size = window.getInt(position + 1);
+        final int origSize = window.getInt(position + 5);
+        final int commandsNum = window.getInt(position + 9);
+        DiskSerializationProcessor.checkJournalBlockSizes(size, origSize);
+
+        if (!ensureAvailable(DiskSerializationProcessor.JOURNAL_BLOCK_HEADER_SIZE + size)) {
+            return false;
+        }
+
+        final int srcOffset = position + DiskSerializationProcessor.JOURNAL_BLOCK_HEADER_SIZE;
+        if (blockType == DiskSerializationProcessor.JOURNAL_BLOCK_LZ4) {
+            block = decompress(srcOffset, size, origSize);
+        } else if (blockType == DiskSerializationProcessor.JOURNAL_BLOCK_RAW) {
+            // zero-copy: decoding directly from mapped window
+            final ByteBuffer raw = window.duplicate();
+            raw.limit(srcOffset + size).position(srcOffset);
+            block = raw;
+        } else {
+            throw new IllegalStateException("Unknown journal block type " + blockType + " (data corrupted)");
+        }
+
+        blockCommandsRemaining = commandsNum;
+        codec.resetBlock();
+        position = srcOffset + size;
+        return false;
+    }
+
+    private void decode(final ByteBuffer buffer) {
+
+        if (compactFormat) {
+            lastSeq.value = codec.decode(buffer, cmd);
+            blockCommandsRemaining--;
+        } else {
+            DiskSerializationProcessor.readCommand(buffer, cmd, lastSeq);
+        }
+
+        if (cmd.command == OrderCommandType.PERSIST_STATE_RISK) {
+            // journaling continues in files of the new snapshot
+            snapshotChanged = true;
+            nextSnapshotId = cmd.orderId;
+            if (nextSnapshotId == -1) {
+                log.warn("Snapshot id is not stored in journal v1, can not follow journal after seq={}", lastSeq.value);
+            }
+        }
+    }
+
+    private ByteBuffer decompress(final int srcOffset, final int size, final int origSize) {
+        if (decompressBuffer.capacity() < origSize) {
+            decompressBuffer = ByteBuffer.allocate(origSize);
+        }
+        final int length = lz4SafeDecompressor.decompress(window, srcOffset, size, decompressBuffer, 0, origSize);
+        decompressBuffer.limit(length).position(0);
+        return decompressBuffer;
+    }
+
+    /**
+     * Re-maps window if required bytes are written but not mapped yet (no block is referencing current window)
+     *
+     * @return true if required bytes are available in window
+     */
+    private boolean ensureAvailable(final int size) throws IOException {
+        if (position + size <= window.limit()) {
+            return true;
+        }
+
+        knownFileSize = fileChannel.size();
+        final long start = windowStart + position;
+        if (knownFileSize - start < size) {
+            return false;
+        }
+
+        unmapWindow();
+        window = fileChannel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(knownFileSize - start, MAP_WINDOW_SIZE));
+        windowStart = start;
+        position = 0;
+        return true;
+    }
+
+    /**
+     * Writer starts writing next file only after current one is completely written.
+     *
+     * @return true if switched to the next file or if current file has grown
+     */
+    private boolean switchToNextFile() throws IOException {
+
+        final Path nextPath = nextFilePath();
+        if (nextPath == null || !isFileStarted(nextPath)) {
+            return false;
+        }
+
+        // check current file once more - data could be appended before next file was started
+        final long fileSize = fileChannel.size();
+        if (fileSize != knownFileSize) {
+            knownFileSize = fileSize;
+            return true;
+        }
+
+        if (windowStart + position < fileSize && window.get(position) != 0) {
+            log.warn("Incomplete record at the end of journal file {} (skipped {} bytes)",
+                    resolvePath(partitionId, snapshotId), fileSize - windowStart - position);
+        }
+
+        closeFile();
+        if (snapshotChanged) {
+            snapshotId = nextSnapshotId;
+            partitionId = 1;
+            snapshotChanged = false;
+        } else {
+            partitionId++;
+        }
+        log.debug("Following journal file {}", nextPath);
+        return true;
+    }
+
+    private Path nextFilePath() {
+        if (!snapshotChanged) {
+            return resolvePath(partitionId + 1, snapshotId);
+        }
+        return nextSnapshotId != -1 ? resolvePath(1, nextSnapshotId) : null;
+    }
+
+    private boolean isFileStarted(final Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return false;
+        }
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            firstByteBuffer.clear();
+            return channel.read(firstByteBuffer, 0) == 1 && firstByteBuffer.get(0) != 0;
+        }
+    }
+
+    private boolean openFile() throws IOException {
+        final Path path = resolvePath(partitionId, snapshotId);
+        if (!Files.exists(path)) {
+            return false;
+        }
+        fileChannel = FileChannel.open(path, StandardOpenOption.READ);
+        knownFileSize = 0;
+        window = EMPTY_WINDOW;
+        windowStart = 0;
+        position = 0;
+        formatKnown = false;
+        compactFormat = false;
+        return true;
+    }
+
+    private void closeFile() throws IOException {
+        block = null;
+        unmapWindow();
+        window = EMPTY_WINDOW;
+        if (fileChannel != null) {
+            fileChannel.close();
+            fileChannel = null;
+        }
+    }
+
+    private void unmapWindow() {
+        if (window instanceof MappedByteBuffer) {
+            IoUtil.unmap(window);
+        }
+    }
+
+    private Path resolvePath(final int partitionId, final long snapshotId) {
+        return DiskSerializationProcessor.resolveJournalPath(folder, exchangeId, partitionId, snapshotId);
+    }
+}
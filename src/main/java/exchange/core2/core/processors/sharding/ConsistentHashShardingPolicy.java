@@ -0,0 +1,97 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.sharding;
+
+import java.util.Arrays;
+
+/**
+ * Consistent hashing: every shard owns many points on the hash ring, id belongs to the owner of next point after hash(id).
+ * Ids with colliding low bits are spread between shards, and adding one more shard moves only ~1/N of ids.
+ */
+public final class ConsistentHashShardingPolicy implements IShardingPolicy {
+
+    public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+    // sorted ring points and their owners
+    private final long[] points;
+    private final int[] shards;
+
+    public ConsistentHashShardingPolicy(final int shardsNum) {
+        this(shardsNum, DEFAULT_VIRTUAL_NODES);
+    }
+
+    public ConsistentHashShardingPolicy(final int shardsNum, final int virtualNodes) {
+        if (shardsNum <= 0 || virtualNodes <= 0) {
+            throw new IllegalArgumentException("Invalid number of shards " + shardsNum + " or virtual nodes " + virtualNodes);
+        }
+
+        final int pointsNum = shardsNum * virtualNodes;
+        final long[] ring = new long[pointsNum];
+        final int[] owners = new int[pointsNum];
+        final long[] sortKeys = new long[pointsNum];
+
+        // sort points, keep owner (ties are broken by shard id to be deterministic)
+        final Integer[] order = new Integer[pointsNum];
+        for (int shard = 0; shard < shardsNum; shard++) {
+            for (int node = 0; node < virtualNodes; node++) {
+                final int i = shard * virtualNodes + node;
+                sortKeys[i] = mix(((long) shard << 32) | node);
+                order[i] = i;
+            }
+        }
+        Arrays.sort(order, (a, b) -> {
+            final int c = Long.compareUnsigned(sortKeys[a], sortKeys[b]);
+            return c != 0 ? c : Integer.compare(a, b);
+        });
+        for (int i = 0; i < pointsNum; i++) {
+            ring[i] = sortKeys[order[i]];
+            owners[i] = order[i] / virtualNodes;
+        }
+
+        this.points = ring;
+        this.shards = owners;
+    }
+
+    @Override
+    public int shardOf(final long id) {
+        final long hash = mix(id);
+
+        // first point greater or equal than hash (unsigned), wrapping around the ring
+        int low = 0;
+        int high = points.length - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            if (Long.compareUnsigned(points[mid], hash) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return shards[low == points.length ? 0 : low];
+    }
+
+    /**
+     * MurmurHash3 64-bit finalizer
+     */
+    static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
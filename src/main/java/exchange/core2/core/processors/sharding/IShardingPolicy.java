@@ -0,0 +1,42 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.sharding;
+
+/**
+ * Maps id (symbolId for matching engines, uid for risk engines) to the shard processing it.
+ * Every engine instance has its own policy object, so policy must be deterministic:
+ * all instances should resolve the same shard for the same id.
+ */
+public interface IShardingPolicy {
+
+    /**
+     * @param id symbolId or uid
+     * @return shard (0..shardsNum-1)
+     */
+    int shardOf(long id);
+
+    @FunctionalInterface
+    interface ShardingPolicyFactory {
+
+        /**
+         * Create new policy instance for one engine
+         *
+         * @param shardsNum number of engines (any positive number)
+         * @return new policy
+         */
+        IShardingPolicy create(int shardsNum);
+    }
+}
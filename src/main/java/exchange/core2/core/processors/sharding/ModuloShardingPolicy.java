@@ -0,0 +1,41 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.sharding;
+
+/**
+ * Shard is id modulo number of shards.
+ * For power of 2 number of shards it is the same as bit mask (lowest bits of id).
+ */
+public final class ModuloShardingPolicy implements IShardingPolicy {
+
+    private final int shardsNum;
+
+    // -1 if number of shards is not a power of 2
+    private final long mask;
+
+    public ModuloShardingPolicy(final int shardsNum) {
+        if (shardsNum <= 0) {
+            throw new IllegalArgumentException("Invalid number of shards " + shardsNum);
+        }
+        this.shardsNum = shardsNum;
+        this.mask = Integer.bitCount(shardsNum) == 1 ? shardsNum - 1 : -1;
+    }
+
+    @Override
+    public int shardOf(final long id) {
+        return mask != -1 ? (int) (id & mask) : (int) Math.floorMod(id, (long) shardsNum);
+    }
+}
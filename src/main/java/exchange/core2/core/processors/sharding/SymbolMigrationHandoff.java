@@ -0,0 +1,130 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.sharding;
+
+import lombok.extern.slf4j.Slf4j;
+import net.openhft.chronicle.bytes.Bytes;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Transfers serialized order books between matching engines (shared by all matching engine instances).
+ * <p>
+ * Matching engines process the same sequence in parallel: source shard publishes migration result (order book or failure) and continues,
+ * all other shards wait for it while processing the same migration command (so it works like a barrier behind source shard).
+ * Every shard receives the result, so routing is switched (or left unchanged if source shard failed) by all shards consistently.
+ * Source shard does not publish next result for the same symbol until previous one is received by all shards,
+ * so there is at most one record per symbol.
+ * <p>
+ * Source shard always publishes result within the same command, so receivers wait without timeout
+ * (failing by timeout would leave symbol without order book on both shards).
+ */
+@Slf4j
+public final class SymbolMigrationHandoff {
+
+    private static final long WAIT_WARNING_INTERVAL_NS = TimeUnit.SECONDS.toNanos(10);
+
+    // symbolId -> migration result
+    private final ConcurrentHashMap<Integer, MigrationResult> results = new ConcurrentHashMap<>();
+
+    /**
+     * Publish serialized order book (called by source shard)
+     *
+     * @param symbol         symbolId
+     * @param orderBookBytes serialized order book (released by target shard)
+     * @param receiversNum   number of shards receiving the result (all shards except source)
+     */
+    public void publish(final int symbol, final Bytes<?> orderBookBytes, final int receiversNum) {
+        publishResult(symbol, new MigrationResult(orderBookBytes, receiversNum));
+    }
+
+    /**
+     * Publish failure - source shard keeps order book, symbol migration is aborted by all shards
+     *
+     * @param symbol       symbolId
+     * @param receiversNum number of shards receiving the result (all shards except source)
+     */
+    public void publishFailure(final int symbol, final int receiversNum) {
+        publishResult(symbol, new MigrationResult(null, receiversNum));
+    }
+
+    /**
+     * Wait for the order book published by source shard (within the same sequence), called by target shard
+     *
+     * @param symbol symbolId
+     * @return serialized order book (caller should release bytes), or null if source shard failed to serialize order book
+     */
+    public Bytes<?> take(final int symbol) {
+        return receive(symbol).orderBookBytes;
+    }
+
+    /**
+     * Wait for the migration result published by source shard (within the same sequence), called by non-target shards
+     *
+     * @param symbol symbolId
+     * @return true if order book was migrated, false if source shard failed to serialize order book
+     */
+    public boolean awaitResult(final int symbol) {
+        return receive(symbol).orderBookBytes != null;
+    }
+
+    private void publishResult(final int symbol, final MigrationResult result) {
+        long warningNs = System.nanoTime() + WAIT_WARNING_INTERVAL_NS;
+        // previous result for the same symbol can still be waiting for slow shards
+        while (results.putIfAbsent(symbol, result) != null) {
+            warningNs = waitIteration(symbol, warningNs, "previous migration result to be received");
+        }
+    }
+
+    private MigrationResult receive(final int symbol) {
+        long warningNs = System.nanoTime() + WAIT_WARNING_INTERVAL_NS;
+        MigrationResult result;
+        while ((result = results.get(symbol)) == null) {
+            warningNs = waitIteration(symbol, warningNs, "migration result from source shard");
+        }
+        if (result.pendingReceivers.decrementAndGet() == 0) {
+            results.remove(symbol, result);
+        }
+        return result;
+    }
+
+    private static long waitIteration(final int symbol, final long warningNs, final String waitingFor) {
+        if (Thread.currentThread().isInterrupted()) {
+            // published result (if any) stays in handoff, nothing is discarded
+            throw new IllegalStateException("Interrupted while waiting for " + waitingFor + " of symbol " + symbol);
+        }
+        Thread.yield();
+        if (System.nanoTime() > warningNs) {
+            log.warn("Still waiting for {} of symbol {}", waitingFor, symbol);
+            return warningNs + WAIT_WARNING_INTERVAL_NS;
+        }
+        return warningNs;
+    }
+
+    private static final class MigrationResult {
+
+        // null - source shard failed, order book is not migrated
+        private final Bytes<?> orderBookBytes;
+        private final AtomicInteger pendingReceivers;
+
+        private MigrationResult(final Bytes<?> orderBookBytes, final int receiversNum) {
+            this.orderBookBytes = orderBookBytes;
+            this.pendingReceivers = new AtomicInteger(receiversNum);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.sharding;
+
+import exchange.core2.core.common.StateHash;
+import exchange.core2.core.utils.SerializationUtils;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import net.openhft.chronicle.bytes.BytesIn;
+import net.openhft.chronicle.bytes.BytesOut;
+import net.openhft.chronicle.bytes.WriteBytesMarshallable;
+import org.eclipse.collections.impl.map.mutable.primitive.IntIntHashMap;
+
+/**
+ * Explicit symbol to shard table (stateful, part of matching engine snapshot).
+ * <p>
+ * Symbols are assigned by BatchAssignSymbolShardsCommand, all other symbols are resolved by fallback policy.
+ * When symbol is added every matching engine pins it to its current shard, so assignment of existing symbol can not
+ * silently move order book to another shard (all shards see the same commands, so tables are always identical).
+ * Hot symbols should be assigned before they are added, existing symbols can be moved by BatchMigrateSymbolsCommand.
+ */
+@Slf4j
+public final class SymbolShardsTable implements IShardingPolicy, WriteBytesMarshallable, StateHash {
+
+    @Getter
+    private final int shardsNum;
+
+    private final IShardingPolicy fallbackPolicy;
+
+    // symbolId -> shardId
+    private final IntIntHashMap symbolShards = new IntIntHashMap();
+
+    public SymbolShardsTable(final int shardsNum, final IShardingPolicy fallbackPolicy) {
+        if (shardsNum <= 0) {
+            throw new IllegalArgumentException("Invalid number of shards " + shardsNum);
+        }
+        this.shardsNum = shardsNum;
+        this.fallbackPolicy = fallbackPolicy;
+    }
+
+    public static ShardingPolicyFactory factory(final ShardingPolicyFactory fallbackFactory) {
+        return shardsNum -> new SymbolShardsTable(shardsNum, fallbackFactory.create(shardsNum));
+    }
+
+    @Override
+    public int shardOf(final long id) {
+        final int shard = symbolShards.getIfAbsent((int) id, -1);
+        return shard != -1 ? shard : fallbackPolicy.shardOf(id);
+    }
+
+    /**
+     * Assign symbol to specific shard
+     *
+     * @param symbol symbolId
+     * @param shard  shardId
+     * @return true if assigned, false if symbol already belongs to another shard or shard is invalid
+     */
+    public boolean assign(final int symbol, final int shard) {
+        if (shard < 0 || shard >= shardsNum) {
+            log.warn("Can not assign symbol {} to shard {} - invalid shard (shards: {})", symbol, shard, shardsNum);
+            return false;
+        }
+        final int current = symbolShards.getIfAbsent(symbol, -1);
+        if (current != -1 && current != shard) {
+            log.warn("Can not assign symbol {} to shard {} - already belongs to shard {}", symbol, shard, current);
+            return false;
+        }
+        symbolShards.put(symbol, shard);
+        return true;
+    }
+
+    /**
+     * Move symbol to another shard (order book migration - called by all shards at the same sequence)
+     *
+     * @param symbol symbolId
+     * @param shard  new shardId
+     */
+    public void move(final int symbol, final int shard) {
+        symbolShards.put(symbol, shard);
+    }
+
+    /**
+     * Fix current shard of the symbol (called when symbol is added)
+     *
+     * @param symbol symbolId
+     */
+    public void pin(final int symbol) {
+        if (!symbolShards.containsKey(symbol)) {
+            symbolShards.put(symbol, fallbackPolicy.shardOf(symbol));
+        }
+    }
+
+    public int getSymbolsNum() {
+        return symbolShards.size();
+    }
+
+    public void readTable(final BytesIn bytes) {
+        symbolShards.clear();
+        symbolShards.putAll(SerializationUtils.readIntIntHashMap(bytes));
+    }
+
+    public void reset() {
+        symbolShards.clear();
+    }
+
+    @Override
+    public void writeMarshallable(final BytesOut bytes) {
+        SerializationUtils.marshallIntIntHashMap(symbolShards, bytes);
+    }
+
+    @Override
+    public int stateHash() {
+        return symbolShards.hashCode();
+    }
+}
@@ -22,8 +22,10 @@ import net.jpountz.lz4.LZ4FastDecompressor;
 import net.openhft.chronicle.bytes.*;
 import net.openhft.chronicle.wire.Wire;
 import net.openhft.chronicle.wire.WireType;
+import org.eclipse.collections.api.map.primitive.MutableIntIntMap;
 import org.eclipse.collections.api.map.primitive.MutableIntLongMap;
 import org.eclipse.collections.api.map.primitive.MutableLongIntMap;
+import org.eclipse.collections.impl.map.mutable.primitive.IntIntHashMap;
 import org.eclipse.collections.impl.map.mutable.primitive.IntLongHashMap;
 import org.eclipse.collections.impl.map.mutable.primitive.IntObjectHashMap;
 import org.eclipse.collections.impl.map.mutable.primitive.LongIntHashMap;
@@ -265,6 +267,27 @@ public final class SerializationUtils {
     }
 
 
+    public static void marshallIntIntHashMap(final MutableIntIntMap hashMap, final BytesOut bytes) {
+
+        bytes.writeInt(hashMap.size());
+
+        hashMap.forEachKeyValue((k, v) -> {
+            bytes.writeInt(k);
+            bytes.writeInt(v);
+        });
+    }
+
+    public static IntIntHashMap readIntIntHashMap(final BytesIn bytes) {
+        int length = bytes.readInt();
+        final IntIntHashMap hashMap = new IntIntHashMap(length);
+        for (int i = 0; i < length; i++) {
+            int k = bytes.readInt();
+            int v = bytes.readInt();
+            hashMap.put(k, v);
+        }
+        return hashMap;
+    }
+
     public static void marshallLongHashSet(final LongHashSet set, final BytesOut bytes) {
         bytes.writeInt(set.size());
         set.forEach(bytes::writeLong);
@@ -312,6 +335,50 @@ public final class SerializationUtils {
         return hashMap;
     }
 
+    /**
+     * Split hash map into up to maxChunks independent chunks (ranges of sorted keys).
+     * Each chunk has the same format as marshallLongHashMap, chunks are written when marshaller is called.
+     */
+    public static <T extends WriteBytesMarshallable> List<WriteBytesMarshallable> marshallLongHashMapChunks(final LongObjectHashMap<T> hashMap, final int maxChunks) {
+        final long[] keys = hashMap.keySet().toSortedArray();
+        final int chunkSize = Math.max(1, (keys.length + maxChunks - 1) / maxChunks);
+        final List<WriteBytesMarshallable> chunks = new ArrayList<>();
+        for (int from = 0; from < keys.length; from += chunkSize) {
+            final int start = from;
+            final int end = Math.min(from + chunkSize, keys.length);
+            chunks.add(bytes -> {
+                bytes.writeInt(end - start);
+                for (int i = start; i < end; i++) {
+                    bytes.writeLong(keys[i]);
+                    hashMap.get(keys[i]).writeMarshallable(bytes);
+                }
+            });
+        }
+        return chunks;
+    }
+
+    /**
+     * Split hash map into up to maxChunks independent chunks (ranges of sorted keys).
+     * Each chunk has the same format as marshallIntHashMap, chunks are written when marshaller is called.
+     */
+    public static <T extends WriteBytesMarshallable> List<WriteBytesMarshallable> marshallIntHashMapChunks(final IntObjectHashMap<T> hashMap, final int maxChunks) {
+        final int[] keys = hashMap.keySet().toSortedArray();
+        final int chunkSize = Math.max(1, (keys.length + maxChunks - 1) / maxChunks);
+        final List<WriteBytesMarshallable> chunks = new ArrayList<>();
+        for (int from = 0; from < keys.length; from += chunkSize) {
+            final int start = from;
+            final int end = Math.min(from + chunkSize, keys.length);
+            chunks.add(bytes -> {
+                bytes.writeInt(end - start);
+                for (int i = start; i < end; i++) {
+                    bytes.writeInt(keys[i]);
+                    hashMap.get(keys[i]).writeMarshallable(bytes);
+                }
+            });
+        }
+        return chunks;
+    }
+
     public static <T extends WriteBytesMarshallable> void marshallIntHashMap(final IntObjectHashMap<T> hashMap, final BytesOut bytes) {
         bytes.writeInt(hashMap.size());
         hashMap.forEachKeyValue((k, v) -> {
@@ -0,0 +1,198 @@
+package exchange.core2.core;
+
+import exchange.core2.core.common.L2MarketDataDelta;
+import exchange.core2.core.common.MatcherEventType;
+import exchange.core2.core.common.MatcherTradeEvent;
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.cmd.OrderCommandType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class FlyweightEventsProcessorTest {
+
+    private FlyweightEventsProcessor processor;
+
+    private RecordingHandler handler;
+
+    @BeforeEach
+    public void before() {
+        handler = new RecordingHandler();
+        processor = new FlyweightEventsProcessor(handler);
+    }
+
+    @Test
+    public void shouldIterateTradesWithCursor() {
+
+        final OrderCommand cmd = samplePlaceOrderCommand();
+        cmd.matcherEvent = tradeEvent(276810L, 20100L, 1000L, false,
+                tradeEvent(276811L, 20110L, 2000L, false,
+                        rejectEvent(200L)));
+
+        processor.accept(cmd, 192837L);
+
+        assertThat(handler.commandResults, is(1));
+        assertThat(handler.lastSeq, is(192837L));
+        assertThat(handler.trades, is(2));
+        assertThat(handler.tradesVolume, is(3000L));
+        assertThat(handler.totalVolume, is(3000L));
+        assertThat(handler.makerOrders, is(Arrays.asList(276810L, 276811L)));
+        assertFalse(handler.takerCompleted);
+        assertThat(handler.rejectedVolume, is(200L));
+        assertThat(handler.reduces, is(0));
+    }
+
+    @Test
+    public void shouldHandleOrderBookUpdate() {
+
+        final OrderCommand cmd = samplePlaceOrderCommand();
+        cmd.marketDataDelta = new L2MarketDataDelta();
+        cmd.marketDataDelta.add(true, 20100L, 0L, 0);
+        cmd.marketDataDelta.add(false, 20000L, 5L, 1);
+
+        processor.accept(cmd, 192837L);
+
+        assertThat(handler.levelUpdates, is(2));
+        assertThat(handler.levelsVolume, is(5L));
+    }
+
+    @Test
+    public void shouldNotAllocate() {
+
+        final OrderCommand cmd = samplePlaceOrderCommand();
+        cmd.matcherEvent = tradeEvent(276810L, 20100L, 1000L, false,
+                tradeEvent(276811L, 20110L, 2000L, true, null));
+        cmd.marketDataDelta = new L2MarketDataDelta();
+        cmd.marketDataDelta.add(true, 20100L, 0L, 0);
+
+        final com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        // warmup
+        for (int i = 0; i < 100_000; i++) {
+            processor.accept(cmd, i);
+        }
+
+        final long bytesBefore = threadMXBean.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 1_000_000; i++) {
+            processor.accept(cmd, i);
+        }
+        final long allocated = threadMXBean.getCurrentThreadAllocatedBytes() - bytesBefore;
+
+        assertTrue(handler.takerCompleted);
+        assertThat(handler.trades, is(2_200_000));
+        assertThat(allocated, lessThan(1024L));
+    }
+
+    private static MatcherTradeEvent tradeEvent(long makerOrderId, long price, long size, boolean takerCompleted, MatcherTradeEvent next) {
+        return MatcherTradeEvent.builder()
+                .eventType(MatcherEventType.TRADE)
+                .activeOrderCompleted(takerCompleted)
+                .matchedOrderId(makerOrderId)
+                .matchedOrderUid(10332L)
+                .matchedOrderCompleted(true)
+                .price(price)
+                .size(size)
+                .nextEvent(next)
+                .build();
+    }
+
+    private static MatcherTradeEvent rejectEvent(long size) {
+        return MatcherTradeEvent.builder()
+                .eventType(MatcherEventType.REJECT)
+                .activeOrderCompleted(true)
+                .size(size)
+                .price(52200L)
+                .nextEvent(null)
+                .build();
+    }
+
+    private static OrderCommand samplePlaceOrderCommand() {
+
+        return OrderCommand.builder()
+                .command(OrderCommandType.PLACE_ORDER)
+                .orderId(123L)
+                .symbol(3)
+                .price(52200L)
+                .size(3200L)
+                .reserveBidPrice(12800L)
+                .action(OrderAction.BID)
+                .orderType(OrderType.IOC)
+                .uid(29851L)
+                .timestamp(1578930983745201L)
+                .userCookie(44188)
+                .resultCode(CommandResultCode.SUCCESS)
+                .matcherEvent(null)
+                .marketData(null)
+                .build();
+    }
+
+    // keeps only primitives, so that handler itself does not allocate
+    private static final class RecordingHandler implements IFlyweightEventsHandler {
+
+        int commandResults;
+        long lastSeq;
+        int trades;
+        long tradesVolume;
+        long totalVolume;
+        boolean takerCompleted;
+        long rejectedVolume;
+        int reduces;
+        int levelUpdates;
+        long levelsVolume;
+        final List<Long> makerOrders = new ArrayList<>();
+
+        @Override
+        public void commandResult(CommandResultView commandResult) {
+            commandResults++;
+            lastSeq = commandResult.getSeq();
+        }
+
+        @Override
+        public void tradeEvent(TradeEventView tradeEvent) {
+            totalVolume = tradeEvent.getTotalVolume();
+            takerCompleted = tradeEvent.isTakerOrderCompleted();
+            while (tradeEvent.nextTrade()) {
+                trades++;
+                tradesVolume += tradeEvent.getVolume();
+                if (makerOrders.size() < 2) {
+                    makerOrders.add(tradeEvent.getMakerOrderId());
+                }
+            }
+        }
+
+        @Override
+        public void rejectEvent(RejectEventView rejectEvent) {
+            rejectedVolume = rejectEvent.getRejectedVolume();
+        }
+
+        @Override
+        public void reduceEvent(ReduceEventView reduceEvent) {
+            reduces++;
+        }
+
+        @Override
+        public void orderBook(OrderBookView orderBook) {
+        }
+
+        @Override
+        public void orderBookUpdate(OrderBookUpdateView orderBookUpdate) {
+            for (int i = 0; i < orderBookUpdate.getSize(); i++) {
+                levelUpdates++;
+                levelsVolume += orderBookUpdate.getVolume(i);
+            }
+        }
+    }
+}
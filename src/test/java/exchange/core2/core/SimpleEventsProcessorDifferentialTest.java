@@ -0,0 +1,435 @@
+package exchange.core2.core;
+
+import exchange.core2.core.common.L2MarketData;
+import exchange.core2.core.common.L2MarketDataDelta;
+import exchange.core2.core.common.MatcherEventType;
+import exchange.core2.core.common.MatcherTradeEvent;
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.api.*;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.cmd.OrderCommandType;
+import org.eclipse.collections.impl.map.mutable.primitive.IntObjectHashMap;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.ObjLongConsumer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * SimpleEventsProcessor (adapter on top of flyweight processor) is compared with
+ * previous direct implementation on random mixed streams of results.
+ */
+public final class SimpleEventsProcessorDifferentialTest {
+
+    private static final int SYMBOLS = 3;
+
+    private static final OrderCommandType[] COMMANDS = {
+            OrderCommandType.PLACE_ORDER,
+            OrderCommandType.PLACE_ORDER,
+            OrderCommandType.PLACE_ORDER,
+            OrderCommandType.MOVE_ORDER,
+            OrderCommandType.MOVE_ORDER,
+            OrderCommandType.CANCEL_ORDER,
+            OrderCommandType.REDUCE_ORDER,
+            OrderCommandType.ORDER_BOOK_REQUEST,
+            OrderCommandType.ADD_USER,
+            OrderCommandType.BALANCE_ADJUSTMENT,
+            OrderCommandType.SUSPEND_USER,
+            OrderCommandType.RESUME_USER,
+            OrderCommandType.BINARY_DATA_COMMAND,
+            OrderCommandType.BINARY_DATA_QUERY,
+            OrderCommandType.PERSIST_STATE_MATCHING,
+            OrderCommandType.RESET,
+            OrderCommandType.NOP};
+
+    private static final CommandResultCode[] FAILURES = {
+            CommandResultCode.RISK_NSF,
+            CommandResultCode.MATCHING_UNKNOWN_ORDER_ID,
+            CommandResultCode.MATCHING_INVALID_ORDER_BOOK_ID,
+            CommandResultCode.INVALID_SYMBOL,
+            CommandResultCode.USER_MGMT_USER_NOT_FOUND};
+
+    @Test
+    public void shouldProduceSameEventsAsDirectImplementation() {
+
+        final List<String> expectedEvents = new ArrayList<>();
+        final List<String> actualEvents = new ArrayList<>();
+        final ReferenceEventsProcessor reference = new ReferenceEventsProcessor(new RecordingHandler(expectedEvents), true);
+        final SimpleEventsProcessor processor = new SimpleEventsProcessor(new RecordingHandler(actualEvents), true);
+
+        final Random rand = new Random(1L);
+        int localOrderBookChecks = 0;
+
+        for (long seq = 0; seq < 50_000; seq++) {
+
+            final OrderCommand cmd = randomCommand(rand, seq);
+
+            reference.accept(cmd, seq);
+            processor.accept(cmd, seq);
+
+            assertThat("seq=" + seq + " cmd=" + cmd, actualEvents, is(expectedEvents));
+
+            for (int symbol = 0; symbol < SYMBOLS; symbol++) {
+                final L2LocalOrderBook expectedBook = reference.getLocalOrderBook(symbol);
+                final L2LocalOrderBook actualBook = processor.getLocalOrderBook(symbol);
+                if (expectedBook == null) {
+                    assertThat("seq=" + seq, actualBook == null, is(true));
+                } else {
+                    assertThat("seq=" + seq + " symbol=" + symbol, actualBook.getOrderBook(), is(expectedBook.getOrderBook()));
+                    localOrderBookChecks++;
+                }
+            }
+
+            expectedEvents.clear();
+            actualEvents.clear();
+        }
+
+        assertThat(localOrderBookChecks, greaterThan(10_000));
+    }
+
+    private static OrderCommand randomCommand(final Random rand, final long seq) {
+
+        final OrderCommandType commandType = COMMANDS[rand.nextInt(COMMANDS.length)];
+
+        final CommandResultCode resultCode;
+        if (commandType == OrderCommandType.BINARY_DATA_COMMAND || commandType == OrderCommandType.BINARY_DATA_QUERY) {
+            // intermediate frames are not reported
+            resultCode = rand.nextInt(3) != 0 ? CommandResultCode.ACCEPTED : CommandResultCode.SUCCESS;
+        } else {
+            resultCode = rand.nextInt(5) != 0 ? CommandResultCode.SUCCESS : FAILURES[rand.nextInt(FAILURES.length)];
+        }
+
+        final OrderCommand cmd = OrderCommand.builder()
+                .command(commandType)
+                .orderId(rand.nextInt(1000))
+                .symbol(rand.nextInt(SYMBOLS))
+                .price(10_000 + rand.nextInt(100))
+                .size(1 + rand.nextInt(50))
+                .reserveBidPrice(10_100)
+                .action(rand.nextBoolean() ? OrderAction.ASK : OrderAction.BID)
+                .orderType(rand.nextInt(4) == 0 ? OrderType.IOC : OrderType.GTC)
+                .uid(1 + rand.nextInt(100))
+                .timestamp(1_578_930_983_745_201L + seq * 1000)
+                .userCookie(rand.nextInt(10))
+                .resultCode(resultCode)
+                .build();
+
+        if (resultCode == CommandResultCode.SUCCESS) {
+            switch (commandType) {
+                case PLACE_ORDER:
+                case MOVE_ORDER:
+                    cmd.matcherEvent = randomTradeChain(rand);
+                    cmd.marketDataDelta = randomDelta(rand);
+                    break;
+
+                case CANCEL_ORDER:
+                case REDUCE_ORDER:
+                    cmd.matcherEvent = MatcherTradeEvent.builder()
+                            .eventType(MatcherEventType.REDUCE)
+                            .activeOrderCompleted(commandType == OrderCommandType.CANCEL_ORDER || rand.nextBoolean())
+                            .price(cmd.price)
+                            .size(cmd.size)
+                            .build();
+                    cmd.marketDataDelta = randomDelta(rand);
+                    break;
+
+                default:
+            }
+        }
+
+        // snapshot is attached to order book requests, sometimes to other commands (including failed ones)
+        if (commandType == OrderCommandType.ORDER_BOOK_REQUEST || rand.nextInt(20) == 0) {
+            cmd.marketData = randomMarketData(rand);
+        }
+
+        // empty delta is not reported
+        if (cmd.marketDataDelta == null && rand.nextInt(20) == 0) {
+            cmd.marketDataDelta = new L2MarketDataDelta();
+        }
+
+        return cmd;
+    }
+
+    // trades (possibly none) and optional reject in the end or the beginning of the chain
+    private static MatcherTradeEvent randomTradeChain(final Random rand) {
+
+        final List<MatcherTradeEvent> events = new ArrayList<>();
+        final int tradesNum = rand.nextInt(4) == 0 ? 0 : 1 + rand.nextInt(5);
+        for (int i = 0; i < tradesNum; i++) {
+            events.add(MatcherTradeEvent.builder()
+                    .eventType(MatcherEventType.TRADE)
+                    .activeOrderCompleted(i == tradesNum - 1 && rand.nextBoolean())
+                    .matchedOrderId(rand.nextInt(1000))
+                    .matchedOrderUid(1 + rand.nextInt(100))
+                    .matchedOrderCompleted(rand.nextBoolean())
+                    .price(10_000 + rand.nextInt(100))
+                    .size(1 + rand.nextInt(20))
+                    .bidderHoldPrice(10_100)
+                    .build());
+        }
+
+        if (rand.nextInt(3) == 0) {
+            final MatcherTradeEvent reject = MatcherTradeEvent.builder()
+                    .eventType(MatcherEventType.REJECT)
+                    .activeOrderCompleted(true)
+                    .price(10_000 + rand.nextInt(100))
+                    .size(1 + rand.nextInt(20))
+                    .bidderHoldPrice(10_100)
+                    .build();
+            events.add(rand.nextInt(4) == 0 ? 0 : events.size(), reject);
+        }
+
+        for (int i = 1; i < events.size(); i++) {
+            events.get(i - 1).nextEvent = events.get(i);
+        }
+        return events.isEmpty() ? null : events.get(0);
+    }
+
+    private static L2MarketData randomMarketData(final Random rand) {
+        final int askSize = rand.nextInt(6);
+        final int bidSize = rand.nextInt(6);
+        final L2MarketData marketData = new L2MarketData(
+                new long[askSize], new long[askSize], new long[askSize],
+                new long[bidSize], new long[bidSize], new long[bidSize]);
+        for (int i = 0; i < askSize; i++) {
+            marketData.askPrices[i] = 10_050 + i * 2 + rand.nextInt(2);
+            marketData.askVolumes[i] = 1 + rand.nextInt(100);
+            marketData.askOrders[i] = 1 + rand.nextInt(5);
+        }
+        for (int i = 0; i < bidSize; i++) {
+            marketData.bidPrices[i] = 10_049 - i * 2 - rand.nextInt(2);
+            marketData.bidVolumes[i] = 1 + rand.nextInt(100);
+            marketData.bidOrders[i] = 1 + rand.nextInt(5);
+        }
+        return marketData;
+    }
+
+    // same price range as snapshots - levels are changed, added and removed (zero volume)
+    private static L2MarketDataDelta randomDelta(final Random rand) {
+        final L2MarketDataDelta delta = new L2MarketDataDelta();
+        final int size = rand.nextInt(5);
+        for (int i = 0; i < size; i++) {
+            final boolean ask = rand.nextBoolean();
+            final long price = ask ? 10_050 + rand.nextInt(12) : 10_049 - rand.nextInt(12);
+            final boolean remove = rand.nextInt(3) == 0;
+            delta.add(ask, price, remove ? 0 : 1 + rand.nextInt(100), remove ? 0 : 1 + rand.nextInt(5));
+        }
+        return delta;
+    }
+
+    private static final class RecordingHandler implements IEventsHandler {
+
+        private final List<String> events;
+
+        RecordingHandler(final List<String> events) {
+            this.events = events;
+        }
+
+        @Override
+        public void commandResult(ApiCommandResult commandResult) {
+            // api commands do not print timestamp
+            events.add(commandResult + " ts=" + commandResult.command.timestamp);
+        }
+
+        @Override
+        public void tradeEvent(TradeEvent tradeEvent) {
+            events.add(tradeEvent.toString());
+        }
+
+        @Override
+        public void rejectEvent(RejectEvent rejectEvent) {
+            events.add(rejectEvent.toString());
+        }
+
+        @Override
+        public void reduceEvent(ReduceEvent reduceEvent) {
+            events.add(reduceEvent.toString());
+        }
+
+        @Override
+        public void orderBook(OrderBook orderBook) {
+            events.add(orderBook.toString());
+        }
+
+        @Override
+        public void orderBookUpdate(OrderBookUpdate orderBookUpdate) {
+            events.add(orderBookUpdate.toString());
+        }
+    }
+
+    // previous implementation - converts OrderCommand directly, without flyweight views
+    private static final class ReferenceEventsProcessor implements ObjLongConsumer<OrderCommand> {
+
+        private final IEventsHandler eventsHandler;
+        private final boolean localOrderBooksEnabled;
+        private final IntObjectHashMap<L2LocalOrderBook> localOrderBooks = new IntObjectHashMap<>();
+
+        ReferenceEventsProcessor(final IEventsHandler eventsHandler, final boolean localOrderBooksEnabled) {
+            this.eventsHandler = eventsHandler;
+            this.localOrderBooksEnabled = localOrderBooksEnabled;
+        }
+
+        L2LocalOrderBook getLocalOrderBook(int symbol) {
+            return localOrderBooks.get(symbol);
+        }
+
+        @Override
+        public void accept(OrderCommand cmd, long seq) {
+            sendCommandResult(cmd, seq);
+            sendTradeEvents(cmd);
+            sendMarketData(cmd);
+            sendMarketDataUpdate(cmd);
+        }
+
+        private void sendTradeEvents(OrderCommand cmd) {
+            final MatcherTradeEvent firstEvent = cmd.matcherEvent;
+            if (firstEvent == null) {
+                return;
+            }
+
+            if (firstEvent.eventType == MatcherEventType.REDUCE) {
+                eventsHandler.reduceEvent(new IEventsHandler.ReduceEvent(
+                        cmd.symbol,
+                        firstEvent.size,
+                        firstEvent.activeOrderCompleted,
+                        firstEvent.price,
+                        cmd.orderId,
+                        cmd.uid,
+                        cmd.timestamp));
+                return;
+            }
+
+            boolean takerOrderCompleted = false;
+            long totalVolume = 0L;
+            final List<IEventsHandler.Trade> trades = new ArrayList<>();
+            IEventsHandler.RejectEvent rejectEvent = null;
+
+            for (MatcherTradeEvent evt = firstEvent; evt != null; evt = evt.nextEvent) {
+                if (evt.eventType == MatcherEventType.TRADE) {
+                    trades.add(new IEventsHandler.Trade(evt.matchedOrderId, evt.matchedOrderUid, evt.matchedOrderCompleted, evt.price, evt.size));
+                    totalVolume += evt.size;
+                    if (evt.activeOrderCompleted) {
+                        takerOrderCompleted = true;
+                    }
+                } else if (evt.eventType == MatcherEventType.REJECT) {
+                    rejectEvent = new IEventsHandler.RejectEvent(cmd.symbol, evt.size, evt.price, cmd.orderId, cmd.uid, cmd.timestamp);
+                }
+            }
+
+            if (!trades.isEmpty()) {
+                eventsHandler.tradeEvent(new IEventsHandler.TradeEvent(
+                        cmd.symbol, totalVolume, cmd.orderId, cmd.uid, cmd.action, takerOrderCompleted, cmd.timestamp, trades));
+            }
+
+            if (rejectEvent != null) {
+                eventsHandler.rejectEvent(rejectEvent);
+            }
+        }
+
+        private void sendMarketData(OrderCommand cmd) {
+            final L2MarketData marketData = cmd.marketData;
+            if (marketData != null) {
+                final List<IEventsHandler.OrderBookRecord> asks = new ArrayList<>(marketData.askSize);
+                for (int i = 0; i < marketData.askSize; i++) {
+                    asks.add(new IEventsHandler.OrderBookRecord(marketData.askPrices[i], marketData.askVolumes[i], (int) marketData.askOrders[i]));
+                }
+
+                final List<IEventsHandler.OrderBookRecord> bids = new ArrayList<>(marketData.bidSize);
+                for (int i = 0; i < marketData.bidSize; i++) {
+                    bids.add(new IEventsHandler.OrderBookRecord(marketData.bidPrices[i], marketData.bidVolumes[i], (int) marketData.bidOrders[i]));
+                }
+
+                final IEventsHandler.OrderBook orderBook = new IEventsHandler.OrderBook(cmd.symbol, asks, bids, cmd.timestamp);
+
+                if (localOrderBooksEnabled
+                        && cmd.command == OrderCommandType.ORDER_BOOK_REQUEST
+                        && cmd.resultCode == CommandResultCode.SUCCESS) {
+                    localOrderBooks.put(cmd.symbol, new L2LocalOrderBook(orderBook));
+                }
+
+                eventsHandler.orderBook(orderBook);
+            }
+
+            if (cmd.command == OrderCommandType.RESET && cmd.resultCode == CommandResultCode.SUCCESS) {
+                localOrderBooks.clear();
+            }
+        }
+
+        private void sendMarketDataUpdate(OrderCommand cmd) {
+            final L2MarketDataDelta delta = cmd.marketDataDelta;
+            if (delta != null && delta.size != 0) {
+                final List<IEventsHandler.OrderBookRecord> asks = new ArrayList<>();
+                final List<IEventsHandler.OrderBookRecord> bids = new ArrayList<>();
+                for (int i = 0; i < delta.size; i++) {
+                    final IEventsHandler.OrderBookRecord rec = new IEventsHandler.OrderBookRecord(delta.prices[i], delta.volumes[i], delta.orders[i]);
+                    (delta.isAsk[i] ? asks : bids).add(rec);
+                }
+
+                final IEventsHandler.OrderBookUpdate update = new IEventsHandler.OrderBookUpdate(cmd.symbol, asks, bids, cmd.timestamp);
+
+                if (localOrderBooksEnabled) {
+                    final L2LocalOrderBook localOrderBook = localOrderBooks.get(cmd.symbol);
+                    if (localOrderBook != null) {
+                        localOrderBook.applyUpdate(update);
+                    }
+                }
+
+                eventsHandler.orderBookUpdate(update);
+            }
+        }
+
+        private void sendCommandResult(OrderCommand cmd, long seq) {
+
+            switch (cmd.command) {
+                case PLACE_ORDER:
+                    sendApiCommandResult(new ApiPlaceOrder(cmd.price, cmd.size, cmd.orderId, cmd.action, cmd.orderType, cmd.uid,
+                            cmd.symbol, cmd.userCookie, cmd.reserveBidPrice), cmd, seq);
+                    break;
+
+                case MOVE_ORDER:
+                    sendApiCommandResult(new ApiMoveOrder(cmd.orderId, cmd.price, cmd.uid, cmd.symbol), cmd, seq);
+                    break;
+
+                case CANCEL_ORDER:
+                    sendApiCommandResult(new ApiCancelOrder(cmd.orderId, cmd.uid, cmd.symbol), cmd, seq);
+                    break;
+
+                case REDUCE_ORDER:
+                    sendApiCommandResult(new ApiReduceOrder(cmd.orderId, cmd.uid, cmd.symbol, cmd.size), cmd, seq);
+                    break;
+
+                case ADD_USER:
+                    sendApiCommandResult(new ApiAddUser(cmd.uid), cmd, seq);
+                    break;
+
+                case BALANCE_ADJUSTMENT:
+                    sendApiCommandResult(new ApiAdjustUserBalance(cmd.uid, cmd.symbol, cmd.price, cmd.orderId), cmd, seq);
+                    break;
+
+                case BINARY_DATA_COMMAND:
+                    if (cmd.resultCode != CommandResultCode.ACCEPTED) {
+                        sendApiCommandResult(new ApiBinaryDataCommand(cmd.userCookie, null), cmd, seq);
+                    }
+                    break;
+
+                case ORDER_BOOK_REQUEST:
+                    sendApiCommandResult(new ApiOrderBookRequest(cmd.symbol, (int) cmd.size), cmd, seq);
+                    break;
+
+                default:
+            }
+        }
+
+        private void sendApiCommandResult(ApiCommand apiCommand, OrderCommand cmd, long seq) {
+            apiCommand.timestamp = cmd.timestamp;
+            eventsHandler.commandResult(new IEventsHandler.ApiCommandResult(apiCommand, cmd.resultCode, seq));
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package exchange.core2.core;
 
+import exchange.core2.core.common.L2MarketData;
+import exchange.core2.core.common.L2MarketDataDelta;
 import exchange.core2.core.common.MatcherEventType;
 import exchange.core2.core.common.MatcherTradeEvent;
 import exchange.core2.core.common.OrderAction;
@@ -49,6 +51,9 @@ public final class SimpleEventsProcessorTest {
     @Captor
     private ArgumentCaptor<IEventsHandler.RejectEvent> rejectEventCaptor;
 
+    @Captor
+    private ArgumentCaptor<IEventsHandler.OrderBookUpdate> orderBookUpdateCaptor;
+
     @BeforeEach
     public void before() {
         processor = new SimpleEventsProcessor(handler);
@@ -360,6 +365,46 @@ public final class SimpleEventsProcessorTest {
         assertThat(rejectEvent.getUid(), Is.is(29851L));
     }
 
+    @Test
+    public void shouldMaintainLocalOrderBookFromUpdates() {
+
+        processor = new SimpleEventsProcessor(handler, true);
+
+        // snapshot: asks 52200x100(2), 52300x50(1); bids 52000x70(1)
+        final OrderCommand snapshotCmd = OrderCommand.builder()
+                .command(OrderCommandType.ORDER_BOOK_REQUEST)
+                .symbol(3)
+                .size(-1)
+                .timestamp(1578930983745201L)
+                .resultCode(CommandResultCode.SUCCESS)
+                .marketData(new L2MarketData(
+                        new long[]{52200L, 52300L}, new long[]{100L, 50L}, new long[]{2L, 1L},
+                        new long[]{52000L}, new long[]{70L}, new long[]{1L}))
+                .build();
+
+        processor.accept(snapshotCmd, 192836L);
+
+        // IOC bid took whole 52200 level and part of 52300 level
+        final OrderCommand cmd = samplePlaceOrderCommand();
+        cmd.marketDataDelta = new L2MarketDataDelta();
+        cmd.marketDataDelta.add(true, 52200L, 0L, 0);
+        cmd.marketDataDelta.add(true, 52300L, 20L, 1);
+
+        processor.accept(cmd, 192837L);
+
+        verify(handler, times(1)).orderBookUpdate(orderBookUpdateCaptor.capture());
+
+        final IEventsHandler.OrderBookUpdate update = orderBookUpdateCaptor.getValue();
+        assertThat(update.getSymbol(), Is.is(3));
+        assertThat(update.getAsks().size(), Is.is(2));
+        assertTrue(update.getBids().isEmpty());
+        assertThat(update.getAsks().get(1), Is.is(new IEventsHandler.OrderBookRecord(52300L, 20L, 1)));
+
+        final IEventsHandler.OrderBook localOrderBook = processor.getLocalOrderBook(3).getOrderBook();
+        assertThat(localOrderBook.getAsks().size(), Is.is(1));
+        assertThat(localOrderBook.getAsks().get(0), Is.is(new IEventsHandler.OrderBookRecord(52300L, 20L, 1)));
+        assertThat(localOrderBook.getBids().get(0), Is.is(new IEventsHandler.OrderBookRecord(52000L, 70L, 1)));
+    }
 
     private OrderCommand sampleCancelCommand() {
 
@@ -0,0 +1,90 @@
+package exchange.core2.core.common;
+
+import exchange.core2.core.orderbook.IOrderBook;
+import net.openhft.chronicle.bytes.Bytes;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public final class CoreSymbolSpecificationTest {
+
+    private static final CoreSymbolSpecification SPEC = futures().build();
+
+    private static CoreSymbolSpecification.CoreSymbolSpecificationBuilder futures() {
+        return CoreSymbolSpecification.builder()
+                .symbolId(3_920)
+                .type(SymbolType.FUTURES_CONTRACT)
+                .baseCurrency(0)
+                .quoteCurrency(840)
+                .baseScaleK(1)
+                .quoteScaleK(1)
+                .takerFee(7)
+                .makerFee(3)
+                .marginBuy(5_000)
+                .marginSell(6_000);
+    }
+
+    @Test
+    public void shouldReadSpecificationWrittenInPreviousFormat() {
+
+        // layout used before order book settings were added
+        final Bytes<ByteBuffer> bytes = Bytes.elasticHeapByteBuffer(128);
+        bytes.writeInt(SPEC.symbolId);
+        bytes.writeByte(SPEC.type.getCode());
+        bytes.writeInt(SPEC.baseCurrency);
+        bytes.writeInt(SPEC.quoteCurrency);
+        bytes.writeLong(SPEC.baseScaleK);
+        bytes.writeLong(SPEC.quoteScaleK);
+        bytes.writeLong(SPEC.takerFee);
+        bytes.writeLong(SPEC.makerFee);
+        bytes.writeLong(SPEC.marginBuy);
+        bytes.writeLong(SPEC.marginSell);
+        bytes.writeInt(12345);
+
+        final CoreSymbolSpecification spec = new CoreSymbolSpecification(bytes);
+        assertThat(spec, is(SPEC));
+        assertThat(spec.orderBookType, nullValue());
+        assertThat(spec.priceTick, is(0L));
+        assertThat(bytes.readInt(), is(12345));
+    }
+
+    @Test
+    public void shouldWriteDefaultSettingsInPreviousFormat() {
+
+        final Bytes<ByteBuffer> bytes = Bytes.elasticHeapByteBuffer(128);
+        SPEC.writeMarshallable(bytes);
+
+        // 3 ints, 1 byte, 6 longs - no order book settings
+        assertThat(bytes.readRemaining(), is(4L + 1 + 4 + 4 + 8 * 6));
+        assertThat(new CoreSymbolSpecification(bytes), is(SPEC));
+    }
+
+    @Test
+    public void shouldKeepOrderBookSettings() {
+
+        final CoreSymbolSpecification ladderSpec = futures()
+                .orderBookType(IOrderBook.OrderBookImplType.PRICE_LADDER)
+                .priceTick(5)
+                .build();
+        final CoreSymbolSpecification tickOnlySpec = futures()
+                .priceTick(10)
+                .build();
+
+        final Bytes<ByteBuffer> bytes = Bytes.elasticHeapByteBuffer(128);
+        ladderSpec.writeMarshallable(bytes);
+        tickOnlySpec.writeMarshallable(bytes);
+        SPEC.writeMarshallable(bytes);
+
+        final CoreSymbolSpecification ladderSpecRead = new CoreSymbolSpecification(bytes);
+        assertThat(ladderSpecRead, is(ladderSpec));
+        assertThat(ladderSpecRead.type, is(SymbolType.FUTURES_CONTRACT));
+        assertThat(ladderSpecRead.orderBookType, is(IOrderBook.OrderBookImplType.PRICE_LADDER));
+        assertThat(new CoreSymbolSpecification(bytes), is(tickOnlySpec));
+        assertThat(new CoreSymbolSpecification(bytes), is(SPEC));
+        assertThat(bytes.readRemaining(), is(0L));
+    }
+}
@@ -15,12 +15,16 @@
  */
 package exchange.core2.core.orderbook;
 
+import exchange.core2.core.IEventsHandler;
+import exchange.core2.core.L2LocalOrderBook;
 import exchange.core2.core.common.CoreSymbolSpecification;
 import exchange.core2.core.common.L2MarketData;
+import exchange.core2.core.common.L2MarketDataDelta;
 import exchange.core2.core.common.MatcherEventType;
 import exchange.core2.core.common.MatcherTradeEvent;
 import exchange.core2.core.common.cmd.CommandResultCode;
 import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.cmd.OrderCommandType;
 import exchange.core2.tests.util.L2MarketDataHelper;
 import exchange.core2.tests.util.TestOrdersGenerator;
 import lombok.extern.slf4j.Slf4j;
@@ -29,6 +33,7 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -822,6 +827,59 @@ public abstract class OrderBookBaseTest {
 
     }
 
+    @Test
+    public void multipleCommandsL2DeltasRebuildOrderBookTest() {
+
+        int tranNum = 10000;
+
+        final IOrderBook localOrderBook = createNewOrderBook();
+
+        TestOrdersGenerator.GenResult genResult = TestOrdersGenerator.generateCommands(
+                tranNum,
+                200,
+                6,
+                TestOrdersGenerator.UID_PLAIN_MAPPER,
+                0,
+                false,
+                false,
+                TestOrdersGenerator.createAsyncProgressLogger(tranNum),
+                348290254);
+
+        // consumer side - empty book + updates
+        final L2LocalOrderBook l2Book = new L2LocalOrderBook(
+                new IEventsHandler.OrderBook(getCoreSymbolSpec().symbolId, new ArrayList<>(), new ArrayList<>(), 0L));
+        final L2MarketDataDelta delta = new L2MarketDataDelta();
+
+        genResult.getCommands().forEach(cmd -> {
+            cmd.orderId += 100;
+            final long movedOrderPrice = cmd.command == OrderCommandType.MOVE_ORDER ? IOrderBook.findOrderPrice(localOrderBook, cmd.orderId) : -1L;
+            CommandResultCode commandResultCode = IOrderBook.processCommand(localOrderBook, cmd);
+            assertThat(commandResultCode, is(SUCCESS));
+
+            IOrderBook.fillL2MarketDataDelta(localOrderBook, cmd, movedOrderPrice, delta);
+            final List<IEventsHandler.OrderBookRecord> asks = new ArrayList<>();
+            final List<IEventsHandler.OrderBookRecord> bids = new ArrayList<>();
+            for (int i = 0; i < delta.size; i++) {
+                (delta.isAsk[i] ? asks : bids).add(new IEventsHandler.OrderBookRecord(delta.prices[i], delta.volumes[i], delta.orders[i]));
+            }
+            l2Book.applyUpdate(new IEventsHandler.OrderBookUpdate(cmd.symbol, asks, bids, cmd.timestamp));
+
+            final L2MarketData snapshot = localOrderBook.getL2MarketDataSnapshot();
+            assertThat(l2Book.getAskLevelsNum(), is(snapshot.askSize));
+            assertThat(l2Book.getBidLevelsNum(), is(snapshot.bidSize));
+        });
+
+        // full depth comparison
+        final L2MarketData snapshot = localOrderBook.getL2MarketDataSnapshot();
+        final IEventsHandler.OrderBook rebuilt = l2Book.getOrderBook();
+        for (int i = 0; i < snapshot.askSize; i++) {
+            assertThat(rebuilt.asks.get(i), is(new IEventsHandler.OrderBookRecord(snapshot.askPrices[i], snapshot.askVolumes[i], (int) snapshot.askOrders[i])));
+        }
+        for (int i = 0; i < snapshot.bidSize; i++) {
+            assertThat(rebuilt.bids.get(i), is(new IEventsHandler.OrderBookRecord(snapshot.bidPrices[i], snapshot.bidVolumes[i], (int) snapshot.bidOrders[i])));
+        }
+    }
+
     // ------------------------------- UTILITY METHODS --------------------------
 
     public void processAndValidate(OrderCommand cmd, CommandResultCode expectedCmdState) {
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.orderbook;
+
+import exchange.core2.collections.objpool.ObjectsPool;
+import exchange.core2.core.common.CoreSymbolSpecification;
+import exchange.core2.core.common.SymbolType;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.config.LoggingConfiguration;
+import exchange.core2.tests.util.TestConstants;
+import net.openhft.chronicle.bytes.Bytes;
+import org.junit.jupiter.api.Test;
+
+import static exchange.core2.core.common.OrderAction.ASK;
+import static exchange.core2.core.common.OrderAction.BID;
+import static exchange.core2.core.common.OrderType.GTC;
+import static exchange.core2.core.common.cmd.CommandResultCode.SUCCESS;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Price ladder with a tiny window and tick=2: most levels are in overflow (or not aligned), window is re-centred often.
+ */
+public final class OrderBookPriceLadderImplSmallWindowTest extends OrderBookDirectImplTest {
+
+    private static final CoreSymbolSpecification SYMBOLSPEC_TICK2 = CoreSymbolSpecification.builder()
+            .symbolId(TestConstants.SYMBOL_MARGIN)
+            .type(SymbolType.FUTURES_CONTRACT)
+            .baseCurrency(TestConstants.CURRENECY_EUR)
+            .quoteCurrency(TestConstants.CURRENECY_USD)
+            .baseScaleK(1)
+            .quoteScaleK(1)
+            .marginBuy(2200)
+            .marginSell(3210)
+            .takerFee(0)
+            .makerFee(0)
+            .orderBookType(IOrderBook.OrderBookImplType.PRICE_LADDER)
+            .priceTick(2)
+            .build();
+
+    @Override
+    protected IOrderBook createNewOrderBook() {
+        return new OrderBookPriceLadderImpl(
+                getCoreSymbolSpec(),
+                16,
+                OrderBookEventsHelper.NON_POOLED_EVENTS_HELPER,
+                LoggingConfiguration.DEFAULT);
+    }
+
+    @Override
+    protected CoreSymbolSpecification getCoreSymbolSpec() {
+        return SYMBOLSPEC_TICK2;
+    }
+
+    @Test
+    public void shouldRecenterAndRestoreFromSnapshot() {
+
+        // pre-filled levels span the whole window - start from empty book
+        orderBook = createNewOrderBook();
+        final OrderBookPriceLadderImpl ladderBook = (OrderBookPriceLadderImpl) orderBook;
+
+        processAndValidate(OrderCommand.newOrder(GTC, 1001L, UID_2, 81602L, 0L, 5L, ASK), SUCCESS);
+        processAndValidate(OrderCommand.newOrder(GTC, 1002L, UID_2, 81594L, 82000L, 5L, BID), SUCCESS);
+        final long recentersBefore = ladderBook.getRecentersNum();
+
+        // best prices are moving away from the current window
+        for (int i = 1; i <= 20; i++) {
+            processAndValidate(OrderCommand.update(1001L, UID_2, 81602L + i * 6), SUCCESS);
+            processAndValidate(OrderCommand.update(1002L, UID_2, 81594L + i * 6), SUCCESS);
+        }
+        assertThat(ladderBook.getRecentersNum(), greaterThan(recentersBefore));
+
+        // too far from the window
+        processAndValidate(OrderCommand.newOrder(GTC, 1003L, UID_2, 90000L, 0L, 5L, ASK), SUCCESS);
+
+        final Bytes<?> bytes = Bytes.allocateElasticDirect();
+        orderBook.writeMarshallable(bytes);
+        final IOrderBook restored = IOrderBook.create(bytes, ObjectsPool.createDefaultTestPool(), OrderBookEventsHelper.NON_POOLED_EVENTS_HELPER, LoggingConfiguration.DEFAULT);
+
+        restored.validateInternalState();
+        assertThat(restored.getImplementationType(), is(IOrderBook.OrderBookImplType.PRICE_LADDER));
+        assertThat(restored.stateHash(), is(orderBook.stateHash()));
+        assertThat(restored.getL2MarketDataSnapshot(), is(orderBook.getL2MarketDataSnapshot()));
+    }
+}
@@ -0,0 +1,184 @@
+package exchange.core2.core.processors;
+
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.Sequence;
+import com.lmax.disruptor.YieldingWaitStrategy;
+import exchange.core2.core.ExchangeApi;
+import exchange.core2.core.common.CoreSymbolSpecification;
+import exchange.core2.core.common.CoreWaitStrategy;
+import exchange.core2.core.common.SymbolType;
+import exchange.core2.core.common.api.ApiPersistState;
+import exchange.core2.core.common.api.ApiPlaceOrder;
+import exchange.core2.core.common.api.binary.BatchAddSymbolsCommand;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.cmd.OrderCommandType;
+import net.jpountz.lz4.LZ4Factory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public final class IngressSequencerTest {
+
+    // small rings - batches are cut often (max batch size is 16)
+    private static final int RING_SIZE = 64;
+    private static final int QUEUE_SIZE = 64;
+
+    private static final int GATEWAYS = 4;
+    private static final int COMMANDS_PER_GATEWAY = 2_000;
+
+    private RingBuffer<OrderCommand> ringBuffer;
+    private IngressSequencer sequencer;
+    private ExchangeApi api;
+
+    private final Sequence processed = new Sequence();
+    private final ConcurrentLinkedQueue<String> violations = new ConcurrentLinkedQueue<>();
+    private Thread consumerThread;
+    private volatile boolean consuming;
+
+    @BeforeEach
+    public void before() {
+        ringBuffer = RingBuffer.createSingleProducer(OrderCommand::new, RING_SIZE, new YieldingWaitStrategy());
+        ringBuffer.addGatingSequences(processed);
+        sequencer = new IngressSequencer(ringBuffer, QUEUE_SIZE, Thread::new, CoreWaitStrategy.YIELDING);
+        api = new ExchangeApi(ringBuffer, LZ4Factory.fastestInstance().highCompressor(), sequencer);
+
+        consuming = true;
+        consumerThread = new Thread(this::consume);
+        consumerThread.start();
+        sequencer.start();
+    }
+
+    @AfterEach
+    public void after() throws InterruptedException {
+        sequencer.stop();
+        consuming = false;
+        consumerThread.join();
+    }
+
+    @Test
+    public void shouldKeepOrderAndAtomicRangesAndHandOffPromises() throws Exception {
+
+        final List<List<CompletableFuture<OrderCommand>>> orderFutures = new ArrayList<>();
+        final List<List<CompletableFuture<CommandResultCode>>> otherFutures = new ArrayList<>();
+        final List<Thread> gateways = new ArrayList<>();
+
+        for (int g = 0; g < GATEWAYS; g++) {
+            final long uid = g + 1;
+            final List<CompletableFuture<OrderCommand>> futures = new ArrayList<>();
+            final List<CompletableFuture<CommandResultCode>> others = new ArrayList<>();
+            orderFutures.add(futures);
+            otherFutures.add(others);
+            gateways.add(new Thread(() -> {
+                final Random rand = new Random(uid);
+                for (int i = 0; i < COMMANDS_PER_GATEWAY; i++) {
+                    final int r = rand.nextInt(100);
+                    if (r < 5) {
+                        others.add(api.submitCommandAsync(ApiPersistState.builder().dumpId(uid * 1_000_000L + i).build()));
+                    } else if (r < 8) {
+                        others.add(api.submitBinaryDataAsync(new BatchAddSymbolsCommand(randomSymbols(rand))));
+                    } else {
+                        futures.add(api.submitCommandAsyncFullResponse(placeOrder(uid, i)));
+                    }
+                }
+            }));
+        }
+
+        gateways.forEach(Thread::start);
+        for (Thread gateway : gateways) {
+            gateway.join();
+        }
+
+        for (int g = 0; g < GATEWAYS; g++) {
+            long lastOrderId = -1;
+            for (CompletableFuture<OrderCommand> future : orderFutures.get(g)) {
+                // promise is moved from staging sequence to main ring buffer sequence of the same command
+                final OrderCommand cmd = future.get(10, TimeUnit.SECONDS);
+                assertThat(cmd.uid, is((long) g + 1));
+                assertThat(cmd.orderId > lastOrderId, is(true));
+                lastOrderId = cmd.orderId;
+            }
+        }
+        for (List<CompletableFuture<CommandResultCode>> futures : otherFutures) {
+            for (CompletableFuture<CommandResultCode> future : futures) {
+                assertThat(future.get(10, TimeUnit.SECONDS), is(CommandResultCode.SUCCESS));
+            }
+        }
+
+        assertThat("first violation: " + violations.peek(), violations.size(), is(0));
+    }
+
+    // checks main ring buffer, same as processing stages
+    private void consume() {
+
+        final long[] lastOrderIds = new long[GATEWAYS + 1];
+        OrderCommandType lastCommand = OrderCommandType.NOP;
+        long lastDumpId = 0;
+        boolean binaryTransfer = false;
+        int transferId = 0;
+
+        long nextSeq = 0;
+        while (consuming || ringBuffer.getCursor() >= nextSeq) {
+            final long availableSeq = ringBuffer.getCursor();
+            for (; nextSeq <= availableSeq; nextSeq++) {
+                final OrderCommand cmd = ringBuffer.get(nextSeq);
+
+                if (lastCommand == OrderCommandType.PERSIST_STATE_MATCHING
+                        && (cmd.command != OrderCommandType.PERSIST_STATE_RISK || cmd.orderId != lastDumpId)) {
+                    violations.add("persist state pair split at seq " + nextSeq);
+                }
+                if (binaryTransfer && (cmd.command != OrderCommandType.BINARY_DATA_COMMAND || cmd.userCookie != transferId)) {
+                    violations.add("binary data fragment split at seq " + nextSeq);
+                }
+
+                if (cmd.command == OrderCommandType.PLACE_ORDER) {
+                    if (cmd.orderId <= lastOrderIds[(int) cmd.uid] && lastOrderIds[(int) cmd.uid] != 0) {
+                        violations.add("wrong order of gateway " + cmd.uid + " at seq " + nextSeq);
+                    }
+                    lastOrderIds[(int) cmd.uid] = cmd.orderId;
+                }
+
+                binaryTransfer = cmd.command == OrderCommandType.BINARY_DATA_COMMAND && cmd.symbol != -1;
+                transferId = cmd.userCookie;
+                lastCommand = cmd.command;
+                lastDumpId = cmd.orderId;
+
+                cmd.resultCode = CommandResultCode.SUCCESS;
+                api.processResult(nextSeq, cmd.copy());
+            }
+            processed.set(availableSeq);
+            Thread.yield();
+        }
+    }
+
+    private static ApiPlaceOrder placeOrder(final long uid, final long orderId) {
+        return ApiPlaceOrder.builder().uid(uid).orderId(orderId).symbol(1).price(100).size(1).build();
+    }
+
+    private static List<CoreSymbolSpecification> randomSymbols(final Random rand) {
+        final List<CoreSymbolSpecification> symbols = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            symbols.add(CoreSymbolSpecification.builder()
+                    .symbolId(rand.nextInt(100_000))
+                    .type(SymbolType.CURRENCY_EXCHANGE_PAIR)
+                    .baseCurrency(rand.nextInt(1000))
+                    .quoteCurrency(rand.nextInt(1000))
+                    .baseScaleK(rand.nextInt(1_000_000))
+                    .quoteScaleK(rand.nextInt(1_000_000))
+                    .takerFee(rand.nextInt(1_000_000))
+                    .makerFee(rand.nextInt(1_000_000))
+                    .build());
+        }
+        return symbols;
+    }
+}
@@ -0,0 +1,146 @@
+package exchange.core2.core.processors;
+
+import exchange.core2.core.common.MarginLevel;
+import exchange.core2.core.common.UserProfile;
+import exchange.core2.core.common.UserStatus;
+import exchange.core2.core.common.config.MarginMonitorConfiguration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public final class MarginMonitorTest {
+
+    private static final int CURRENCY = 840;
+    private static final long UID_1 = 1_000_001L;
+    private static final long UID_2 = 1_000_002L;
+
+    private final List<String> events = new ArrayList<>();
+    private MarginMonitor monitor;
+
+    @BeforeEach
+    public void before() {
+        events.clear();
+        monitor = new MarginMonitor(MarginMonitorConfiguration.builder()
+                .marginCallRatio(10_000)
+                .liquidationRatio(5_000)
+                .eventsHandler((uid, currency, level, equity, requiredMargin) -> events.add(uid + ":" + level))
+                .build());
+    }
+
+    @Test
+    public void shouldEmitEventsOnMarginLevelChange() {
+
+        final UserProfile profile = profile(UID_1, 10_000L);
+
+        // required margin 5000, estimated loss 0 -> ratio 200%
+        setMargin(profile, 5_000L, -5_000L);
+        assertThat(monitor.getAccountsNum(CURRENCY), is(1));
+        assertThat(monitor.getLowestRatio(CURRENCY), is(20_000L));
+        assertThat(events.size(), is(0));
+
+        // loss 6000 -> equity 4000, ratio 80%
+        setMargin(profile, 5_000L, -11_000L);
+        assertThat(monitor.getLowestRatio(CURRENCY), is(8_000L));
+        assertThat(events, is(Arrays.asList(UID_1 + ":" + MarginLevel.MARGIN_CALL)));
+
+        // loss 8000 -> equity 2000, ratio 40%
+        setMargin(profile, 5_000L, -13_000L);
+        assertThat(events.get(1), is(UID_1 + ":" + MarginLevel.LIQUIDATION));
+
+        // no level change
+        setMargin(profile, 5_000L, -13_500L);
+        assertThat(events.size(), is(2));
+
+        // position closed
+        setMargin(profile, 0L, 0L);
+        assertThat(events.get(2), is(UID_1 + ":" + MarginLevel.NORMAL));
+        assertThat(monitor.getAccountsNum(CURRENCY), is(0));
+        assertThat(monitor.getLowestRatioUid(CURRENCY), is(-1L));
+    }
+
+    @Test
+    public void shouldFindLiquidationCandidates() {
+
+        final UserProfile profile1 = profile(UID_1, 1_000L);
+        final UserProfile profile2 = profile(UID_2, 100_000L);
+
+        setMargin(profile1, 5_000L, -5_000L);
+        setMargin(profile2, 5_000L, -5_000L);
+        assertThat(monitor.getLowestRatioUid(CURRENCY), is(UID_1));
+
+        final List<Long> candidates = new ArrayList<>();
+        monitor.forEachLiquidationCandidate(CURRENCY, (uid, ratio) -> candidates.add(uid));
+        assertThat(candidates, is(Arrays.asList(UID_1)));
+
+        // balance deposited
+        profile1.accounts.addToValue(CURRENCY, 1_000_000L);
+        monitor.update(profile1, CURRENCY);
+        assertThat(monitor.getLowestRatioUid(CURRENCY), is(UID_2));
+
+        candidates.clear();
+        monitor.forEachLiquidationCandidate(CURRENCY, (uid, ratio) -> candidates.add(uid));
+        assertThat(candidates.size(), is(0));
+    }
+
+    @Test
+    public void shouldKeepHeapOrder() {
+
+        final Random rand = new Random(1L);
+        final Map<Long, UserProfile> profiles = new HashMap<>();
+        for (long uid = 1; uid <= 500; uid++) {
+            profiles.put(uid, profile(uid, 0L));
+        }
+
+        for (int i = 0; i < 20_000; i++) {
+            final UserProfile profile = profiles.get(1L + rand.nextInt(profiles.size()));
+            final long requiredMargin = rand.nextInt(10) == 0 ? 0L : 1 + rand.nextInt(10_000);
+            profile.accounts.put(CURRENCY, rand.nextInt(20_000));
+            setMargin(profile, requiredMargin, -requiredMargin - rand.nextInt(5_000));
+
+            if (i % 100 == 0) {
+                long expectedRatio = Long.MAX_VALUE;
+                int expectedNum = 0;
+                int expectedBelow = 0;
+                for (UserProfile p : profiles.values()) {
+                    final long required = p.requiredMargin.get(CURRENCY);
+                    if (required > 0) {
+                        final long equity = p.accounts.get(CURRENCY) + p.freeMargin.get(CURRENCY) + required;
+                        final long ratio = MarginMonitor.marginRatio(equity, required);
+                        expectedRatio = Math.min(expectedRatio, ratio);
+                        expectedNum++;
+                        if (ratio < 5_000) {
+                            expectedBelow++;
+                        }
+                    }
+                }
+                assertThat(monitor.getAccountsNum(CURRENCY), is(expectedNum));
+                assertThat(monitor.getLowestRatio(CURRENCY), is(expectedRatio));
+
+                final int[] below = {0};
+                monitor.forEachLiquidationCandidate(CURRENCY, (uid, ratio) -> below[0]++);
+                assertThat(below[0], is(expectedBelow));
+            }
+        }
+    }
+
+    private void setMargin(final UserProfile profile, final long requiredMargin, final long freeMargin) {
+        profile.requiredMargin.put(CURRENCY, requiredMargin);
+        profile.freeMargin.put(CURRENCY, freeMargin);
+        monitor.update(profile, CURRENCY);
+    }
+
+    private static UserProfile profile(final long uid, final long balance) {
+        final UserProfile profile = new UserProfile(uid, UserStatus.ACTIVE);
+        profile.accounts.put(CURRENCY, balance);
+        return profile;
+    }
+}
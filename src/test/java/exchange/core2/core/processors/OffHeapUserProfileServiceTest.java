@@ -0,0 +1,220 @@
+package exchange.core2.core.processors;
+
+import exchange.core2.core.common.SymbolPositionRecord;
+import exchange.core2.core.common.UserProfile;
+import exchange.core2.core.common.UserStatus;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import net.openhft.chronicle.bytes.Bytes;
+import net.openhft.chronicle.bytes.WriteBytesMarshallable;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+public final class OffHeapUserProfileServiceTest {
+
+    private static final int INLINE_ACCOUNTS = 2;
+    private static final int MAX_ON_HEAP = 16;
+
+    private OffHeapUserProfileService offHeap;
+    private UserProfileService onHeap;
+
+    @BeforeEach
+    public void before() {
+        // small initial capacity - table grows several times
+        offHeap = new OffHeapUserProfileService(INLINE_ACCOUNTS, 8, MAX_ON_HEAP);
+        onHeap = new UserProfileService();
+    }
+
+    @Test
+    public void shouldReloadEvictedProfiles() {
+
+        for (long uid = 1; uid <= 100; uid++) {
+            assertThat(offHeap.addEmptyUserProfile(uid), is(true));
+        }
+        assertThat(offHeap.addEmptyUserProfile(50), is(false));
+        assertThat(offHeap.getProfilesOnHeapNum(), is(0));
+
+        // more currencies than inline slots - balances go to overflow blocks
+        for (long uid = 1; uid <= 100; uid++) {
+            for (int currency = 1; currency <= 20; currency++) {
+                assertThat(offHeap.balanceAdjustment(uid, currency, uid * 1000 + currency, currency), is(CommandResultCode.SUCCESS));
+            }
+            offHeap.releaseProfiles();
+        }
+        assertThat(offHeap.getProfilesOnHeapNum(), lessThanOrEqualTo(MAX_ON_HEAP + 1));
+
+        for (long uid = 1; uid <= 100; uid++) {
+            final UserProfile profile = offHeap.getUserProfile(uid);
+            assertThat(profile.accounts.size(), is(20));
+            assertThat(profile.accounts.get(17), is(uid * 1000 + 17));
+            assertThat(profile.adjustmentsCounter, is(20L));
+            offHeap.releaseProfiles();
+        }
+        assertThat(offHeap.getUserProfilesNum(), is(100));
+        assertThat(offHeap.getUserProfile(101), nullValue());
+    }
+
+    @Test
+    public void shouldKeepProfilesWithPositionsOnHeap() {
+
+        final SymbolPositionRecord position = new SymbolPositionRecord();
+        position.initialize(1, 100, 840);
+
+        final OffHeapUserProfileService service = new OffHeapUserProfileService(INLINE_ACCOUNTS, 8, 0);
+        service.addEmptyUserProfile(1);
+        service.addEmptyUserProfile(2);
+        final UserProfile pinned = service.getUserProfile(1);
+        pinned.positions.put(100, position);
+        service.getUserProfile(2);
+        for (int i = 0; i < 10; i++) {
+            service.releaseProfiles();
+        }
+        assertThat(service.getProfilesOnHeapNum(), is(1));
+        assertThat(service.getUserProfile(1) == pinned, is(true));
+
+        final List<UserProfile> withPositions = new ArrayList<>();
+        service.forEachUserProfileWithPositions(withPositions::add);
+        assertThat(withPositions.size(), is(1));
+    }
+
+    @Test
+    public void shouldSuspendAndResume() {
+
+        offHeap.addEmptyUserProfile(1);
+        offHeap.balanceAdjustment(1, 840, 100, 1);
+        assertThat(offHeap.suspendUserProfile(1), is(CommandResultCode.USER_MGMT_USER_NOT_SUSPENDABLE_NON_EMPTY_ACCOUNTS));
+        offHeap.balanceAdjustment(1, 840, -100, 2);
+        assertThat(offHeap.suspendUserProfile(1), is(CommandResultCode.SUCCESS));
+        assertThat(offHeap.getUserProfile(1), nullValue());
+        assertThat(offHeap.getUserProfilesNum(), is(0));
+        assertThat(offHeap.suspendUserProfile(1), is(CommandResultCode.USER_MGMT_USER_NOT_FOUND));
+
+        // trade for suspended user
+        final UserProfile suspended = offHeap.getUserProfileOrAddSuspended(2);
+        assertThat(suspended.userStatus, is(UserStatus.SUSPENDED));
+        assertThat(offHeap.resumeUserProfile(2), is(CommandResultCode.SUCCESS));
+        assertThat(offHeap.resumeUserProfile(2), is(CommandResultCode.USER_MGMT_USER_NOT_SUSPENDED));
+        assertThat(offHeap.getUserProfile(2).userStatus, is(UserStatus.ACTIVE));
+    }
+
+    @Test
+    public void shouldMatchOnHeapServiceState() {
+
+        final Random rand = new Random(1L);
+        for (int i = 0; i < 100_000; i++) {
+            final long uid = 1 + rand.nextInt(3_000);
+            final int op = rand.nextInt(100);
+            if (op < 10) {
+                assertThat(offHeap.addEmptyUserProfile(uid), is(onHeap.addEmptyUserProfile(uid)));
+            } else if (op < 80) {
+                final int currency = rand.nextInt(5) == 0 ? 1 + rand.nextInt(30) : 840;
+                final long amount = rand.nextInt(1000) - 300;
+                final long txId = i * 64L;
+                assertThat(offHeap.balanceAdjustment(uid, currency, amount, txId), is(onHeap.balanceAdjustment(uid, currency, amount, txId)));
+            } else if (op < 85) {
+                // withdraw all and suspend
+                final UserProfile profile = onHeap.getUserProfile(uid);
+                if (profile != null) {
+                    final long txId = i * 64L;
+                    int k = 0;
+                    for (int currency : profile.accounts.keySet().toSortedArray()) {
+                        final long amount = -profile.accounts.get(currency);
+                        assertThat(offHeap.balanceAdjustment(uid, currency, amount, txId + k), is(onHeap.balanceAdjustment(uid, currency, amount, txId + k)));
+                        k++;
+                    }
+                }
+                assertThat(offHeap.suspendUserProfile(uid), is(onHeap.suspendUserProfile(uid)));
+            } else if (op < 90) {
+                assertThat(offHeap.resumeUserProfile(uid), is(onHeap.resumeUserProfile(uid)));
+            } else if (op < 95) {
+                assertThat(offHeap.getUserProfileOrAddSuspended(uid).stateHash(), is(onHeap.getUserProfileOrAddSuspended(uid).stateHash()));
+            } else {
+                final UserProfile profile = offHeap.getUserProfile(uid);
+                final UserProfile expected = onHeap.getUserProfile(uid);
+                assertThat(profile == null ? 0 : profile.stateHash(), is(expected == null ? 0 : expected.stateHash()));
+            }
+            offHeap.releaseProfiles();
+
+            if (i % 10_000 == 0) {
+                assertThat(offHeap.stateHash(), is(onHeap.stateHash()));
+            }
+        }
+
+        assertThat(offHeap.getUserProfilesNum(), is(onHeap.getUserProfiles().size()));
+        assertThat(offHeap.stateHash(), is(onHeap.stateHash()));
+
+        // serialized in the same format
+        final Bytes<?> expectedBytes = Bytes.allocateElasticDirect();
+        final Bytes<?> bytes = Bytes.allocateElasticDirect();
+        onHeap.writeMarshallable(expectedBytes);
+        offHeap.writeMarshallable(bytes);
+        assertThat(bytes.readRemaining(), is(expectedBytes.readRemaining()));
+        final UserProfileService restored = new UserProfileService(bytes);
+        assertThat(restored.stateHash(), is(onHeap.stateHash()));
+        assertThat(bytes.readRemaining(), is(0L));
+    }
+
+    @Test
+    public void shouldRestoreFromSnapshotChunks() {
+
+        final Random rand = new Random(2L);
+        for (long uid = 1; uid <= 20_000; uid++) {
+            offHeap.addEmptyUserProfile(uid);
+            final int currencies = 1 + rand.nextInt(12);
+            for (int c = 1; c <= currencies; c++) {
+                offHeap.balanceAdjustment(uid, c, rand.nextInt(1_000_000), c);
+            }
+            if (uid % 7 == 0) {
+                // shrink accounts - overflow blocks are released and re-used
+                offHeap.getUserProfile(uid).accounts.clear();
+            }
+            offHeap.releaseProfiles();
+        }
+        // some profiles stay on heap
+        for (long uid = 1; uid <= 10; uid++) {
+            offHeap.getUserProfile(uid).accounts.addToValue(840, 1);
+        }
+
+        final Bytes<?> bytes = Bytes.allocateElasticDirect();
+        final List<WriteBytesMarshallable> chunks = offHeap.snapshotChunks(4);
+        chunks.forEach(chunk -> chunk.writeMarshallable(bytes));
+
+        // snapshot is loaded from heap bytes (same as disk serialization processor)
+        final Bytes<?> loadedBytes = Bytes.wrapForRead(bytes.toByteArray());
+
+        final OffHeapUserProfileService restored = new OffHeapUserProfileService(INLINE_ACCOUNTS, 8, MAX_ON_HEAP);
+        final List<Object> loaded = new ArrayList<>();
+        for (int i = 0; i < chunks.size(); i++) {
+            loaded.add(restored.readSnapshotChunk(loadedBytes));
+        }
+        assertThat(loadedBytes.readRemaining(), is(0L));
+        loaded.forEach(restored::loadSnapshotChunk);
+
+        assertThat(restored.getUserProfilesNum(), is(20_000));
+        assertThat(restored.getProfilesOnHeapNum(), is(offHeap.getProfilesOnHeapNum()));
+        assertThat(restored.stateHash(), is(offHeap.stateHash()));
+
+        // restored store is fully functional
+        assertThat(restored.getUserProfile(5).accounts.get(840), is(1L));
+        for (long uid = 20_001; uid <= 40_000; uid++) {
+            restored.addEmptyUserProfile(uid);
+            restored.balanceAdjustment(uid, 1 + (int) (uid % 10), 1, 1);
+            restored.releaseProfiles();
+        }
+        assertThat(restored.getUserProfilesNum(), is(40_000));
+        assertThat(restored.getUserProfile(39_999), notNullValue());
+
+        restored.reset();
+        assertThat(restored.getUserProfilesNum(), is(0));
+        assertThat(restored.getUserProfile(1), nullValue());
+    }
+}
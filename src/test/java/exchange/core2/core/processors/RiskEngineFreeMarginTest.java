@@ -0,0 +1,233 @@
+package exchange.core2.core.processors;
+
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.RingBuffer;
+import exchange.core2.core.ExchangeApi;
+import exchange.core2.core.common.CoreSymbolSpecification;
+import exchange.core2.core.common.MatcherEventType;
+import exchange.core2.core.common.MatcherTradeEvent;
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.SymbolType;
+import exchange.core2.core.common.api.ApiAddUser;
+import exchange.core2.core.common.api.ApiAdjustUserBalance;
+import exchange.core2.core.common.api.ApiCancelOrder;
+import exchange.core2.core.common.api.ApiCommand;
+import exchange.core2.core.common.api.ApiMoveOrder;
+import exchange.core2.core.common.api.ApiPlaceOrder;
+import exchange.core2.core.common.api.ApiReduceOrder;
+import exchange.core2.core.common.api.binary.BatchAddSymbolsCommand;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.config.ExchangeConfiguration;
+import exchange.core2.core.processors.journaling.DummySerializationProcessor;
+import exchange.core2.core.processors.sharding.SymbolMigrationHandoff;
+import net.jpountz.lz4.LZ4Factory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Risk engine and matching engine are driven synchronously (R1 -> ME -> R2) from the test thread,
+ * free margin aggregates are compared with full re-calculation after every command.
+ */
+public final class RiskEngineFreeMarginTest {
+
+    private static final int CURRENCY_USD = 840;
+    private static final int CURRENCY_EUR = 978;
+
+    private static final int SYMBOL_1 = 101;
+    private static final int SYMBOL_2 = 102;
+    private static final int SYMBOL_3 = 103;
+
+    private static final long UID_MAKER = 1_000L;
+    private static final long UID_TRADER = 1_001L;
+
+    private RingBuffer<OrderCommand> ringBuffer;
+    private ExchangeApi api;
+    private RiskEngine riskEngine;
+    private MatchingEngineRouter matchingEngine;
+    private long nextSeq = 0;
+
+    private int tradeEvents;
+    private int reduceEvents;
+    private int rejectEvents;
+    private int rejectedByRisk;
+
+    @BeforeEach
+    public void before() {
+        final ExchangeConfiguration exchangeCfg = ExchangeConfiguration.defaultBuilder().build();
+        final SharedPool sharedPool = SharedPool.createTestSharedPool();
+
+        // no gating sequences - commands are processed right after publishing
+        ringBuffer = RingBuffer.createSingleProducer(OrderCommand::new, 1024, new BlockingWaitStrategy());
+        api = new ExchangeApi(ringBuffer, LZ4Factory.fastestInstance().highCompressor());
+        riskEngine = new RiskEngine(0, 1, DummySerializationProcessor.INSTANCE, sharedPool, exchangeCfg);
+        matchingEngine = new MatchingEngineRouter(0, 1, DummySerializationProcessor.INSTANCE,
+                exchangeCfg.getPerformanceCfg().getOrderBookFactory(), sharedPool, new SymbolMigrationHandoff(), exchangeCfg);
+
+        final List<CoreSymbolSpecification> symbols = Arrays.asList(
+                futures(SYMBOL_1, CURRENCY_USD, 1_000, 1_000),
+                futures(SYMBOL_2, CURRENCY_USD, 1_000, 1_200),
+                futures(SYMBOL_3, CURRENCY_EUR, 700, 900));
+        assertThat(process(api.submitBinaryDataAsync(new BatchAddSymbolsCommand(symbols))), is(CommandResultCode.SUCCESS));
+    }
+
+    @Test
+    public void shouldMaintainFreeMarginIncrementally() {
+
+        final int usersNum = 6;
+        for (long uid = 1; uid <= usersNum; uid++) {
+            addUser(uid, CURRENCY_USD, 60_000L);
+            addUser(uid, CURRENCY_EUR, 30_000L);
+        }
+
+        final int[] symbols = {SYMBOL_1, SYMBOL_2, SYMBOL_3};
+        final List<long[]> orders = new ArrayList<>(); // uid, orderId, symbol
+        final long[] lastPrice = {1_000L, 1_000L, 1_000L};
+        final Random rand = new Random(1L);
+
+        for (long orderId = 1; orderId <= 4_000; orderId++) {
+            final long uid = 1 + rand.nextInt(usersNum);
+            final int symbolIdx = rand.nextInt(symbols.length);
+            final int symbol = symbols[symbolIdx];
+            final int r = rand.nextInt(100);
+
+            if (r < 60 || orders.isEmpty()) {
+                // price is drifting, so holders free margin is re-calculated on top of book changes
+                lastPrice[symbolIdx] = Math.max(100L, lastPrice[symbolIdx] + rand.nextInt(21) - 10);
+                final OrderAction action = rand.nextBoolean() ? OrderAction.ASK : OrderAction.BID;
+                final long price = lastPrice[symbolIdx] + (action == OrderAction.ASK ? 1 : -1) * (rand.nextInt(10) - 3);
+                final OrderType orderType = rand.nextInt(10) == 0 ? OrderType.IOC : OrderType.GTC;
+                final CommandResultCode resultCode = process(placeOrder(uid, orderId, symbol, action, orderType, price, 1 + rand.nextInt(8)));
+                if (resultCode == CommandResultCode.RISK_NSF) {
+                    rejectedByRisk++;
+                } else if (orderType == OrderType.GTC) {
+                    orders.add(new long[]{uid, orderId, symbol});
+                }
+            } else {
+                final long[] order = orders.get(rand.nextInt(orders.size()));
+                if (r < 75) {
+                    process(ApiCancelOrder.builder().uid(order[0]).orderId(order[1]).symbol((int) order[2]).build());
+                } else if (r < 90) {
+                    process(ApiReduceOrder.builder().uid(order[0]).orderId(order[1]).symbol((int) order[2]).reduceSize(1 + rand.nextInt(3)).build());
+                } else {
+                    final long newPrice = lastPrice[(int) order[2] - SYMBOL_1] + rand.nextInt(11) - 5;
+                    process(ApiMoveOrder.builder().uid(order[0]).orderId(order[1]).symbol((int) order[2]).newPrice(newPrice).build());
+                }
+            }
+        }
+
+        assertThat(tradeEvents, greaterThan(1_000));
+        assertThat(reduceEvents, greaterThan(100));
+        assertThat(rejectEvents, greaterThan(10));
+        assertThat(rejectedByRisk, greaterThan(10));
+    }
+
+    @Test
+    public void shouldCountAllSameCurrencyPositionsInMarginCheck() {
+
+        addUser(UID_MAKER, CURRENCY_USD, 100_000_000L);
+        addUser(UID_TRADER, CURRENCY_USD, 2_000L);
+
+        // trader opens long position 1@10000 in SYMBOL_1
+        assertThat(process(placeOrder(UID_MAKER, 1L, SYMBOL_1, OrderAction.ASK, OrderType.GTC, 10_000L, 1L)), is(CommandResultCode.SUCCESS));
+        assertThat(process(placeOrder(UID_TRADER, 2L, SYMBOL_1, OrderAction.BID, OrderType.IOC, 10_000L, 1L)), is(CommandResultCode.SUCCESS));
+
+        // best bid 15000 - profit 5000, free margin 5000 - 1000 = 4000
+        assertThat(process(placeOrder(UID_MAKER, 3L, SYMBOL_1, OrderAction.BID, OrderType.GTC, 15_000L, 1L)), is(CommandResultCode.SUCCESS));
+
+        // new position margin 5 * 1000 is covered by balance 2000 and free margin of other position 4000
+        assertThat(process(placeOrder(UID_TRADER, 4L, SYMBOL_2, OrderAction.BID, OrderType.GTC, 100L, 5L)), is(CommandResultCode.SUCCESS));
+        assertThat(process(ApiCancelOrder.builder().uid(UID_TRADER).orderId(4L).symbol(SYMBOL_2).build()), is(CommandResultCode.SUCCESS));
+
+        // best bid 7000 - loss 3000, free margin -3000 - 1000 = -4000
+        assertThat(process(ApiMoveOrder.builder().uid(UID_MAKER).orderId(3L).symbol(SYMBOL_1).newPrice(7_000L).build()), is(CommandResultCode.SUCCESS));
+
+        // balance 2000 is not enough to cover loss of other position
+        assertThat(process(placeOrder(UID_TRADER, 5L, SYMBOL_2, OrderAction.BID, OrderType.GTC, 100L, 1L)), is(CommandResultCode.RISK_NSF));
+
+        // different currency positions are not counted
+        addUser(UID_TRADER, CURRENCY_EUR, 700L);
+        assertThat(process(placeOrder(UID_TRADER, 6L, SYMBOL_3, OrderAction.BID, OrderType.GTC, 100L, 1L)), is(CommandResultCode.SUCCESS));
+    }
+
+    private void addUser(final long uid, final int currency, final long amount) {
+        if (riskEngine.getUserProfileService().getUserProfile(uid) == null) {
+            assertThat(process(ApiAddUser.builder().uid(uid).build()), is(CommandResultCode.SUCCESS));
+        }
+        assertThat(process(ApiAdjustUserBalance.builder().uid(uid).currency(currency).amount(amount).transactionId(nextSeq).build()),
+                is(CommandResultCode.SUCCESS));
+    }
+
+    private CommandResultCode process(final ApiCommand command) {
+        return process(api.submitCommandAsync(command));
+    }
+
+    // same stages as exchange core pipeline: R1 -> ME -> R2 -> results
+    private CommandResultCode process(final CompletableFuture<CommandResultCode> future) {
+        final long availableSeq = ringBuffer.getCursor();
+        for (; nextSeq <= availableSeq; nextSeq++) {
+            final OrderCommand cmd = ringBuffer.get(nextSeq);
+            cmd.matcherEvent = null;
+            cmd.marketData = null;
+            cmd.topAskPrice = 0;
+
+            riskEngine.preProcessCommand(nextSeq, cmd);
+            matchingEngine.processOrder(nextSeq, cmd);
+            riskEngine.handlerRiskRelease(nextSeq, cmd);
+
+            for (MatcherTradeEvent evt = cmd.matcherEvent; evt != null; evt = evt.nextEvent) {
+                if (evt.eventType == MatcherEventType.TRADE) {
+                    tradeEvents++;
+                } else if (evt.eventType == MatcherEventType.REDUCE) {
+                    reduceEvents++;
+                } else if (evt.eventType == MatcherEventType.REJECT) {
+                    rejectEvents++;
+                }
+            }
+
+            riskEngine.validateFreeMargin();
+            api.processResult(nextSeq, cmd);
+        }
+        return future.join();
+    }
+
+    private static ApiPlaceOrder placeOrder(final long uid, final long orderId, final int symbol, final OrderAction action,
+                                            final OrderType orderType, final long price, final long size) {
+        return ApiPlaceOrder.builder()
+                .uid(uid)
+                .orderId(orderId)
+                .symbol(symbol)
+                .action(action)
+                .orderType(orderType)
+                .price(price)
+                .reservePrice(price)
+                .size(size)
+                .build();
+    }
+
+    private static CoreSymbolSpecification futures(final int symbolId, final int currency, final long marginBuy, final long marginSell) {
+        return CoreSymbolSpecification.builder()
+                .symbolId(symbolId)
+                .type(SymbolType.FUTURES_CONTRACT)
+                .baseCurrency(0)
+                .quoteCurrency(currency)
+                .baseScaleK(1)
+                .quoteScaleK(1)
+                .marginBuy(marginBuy)
+                .marginSell(marginSell)
+                .takerFee(0)
+                .makerFee(0)
+                .build();
+    }
+}
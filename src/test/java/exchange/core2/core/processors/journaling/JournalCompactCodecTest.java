@@ -0,0 +1,204 @@
+package exchange.core2.core.processors.journaling;
+
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.cmd.OrderCommandType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+public final class JournalCompactCodecTest {
+
+    private static final long UID_1 = 1_000_001L;
+    private static final long UID_2 = 1_000_002L;
+    private static final int SYMBOL = 50_001;
+    private static final int CURRENCY = 840;
+
+    private JournalCompactCodec writer;
+    private JournalCompactCodec reader;
+    private ByteBuffer buffer;
+
+    @BeforeEach
+    public void before() {
+        writer = new JournalCompactCodec();
+        reader = new JournalCompactCodec();
+        buffer = ByteBuffer.allocate(64 * 1024);
+    }
+
+    @Test
+    public void shouldDecodeAllCommandTypes() {
+
+        final List<OrderCommand> commands = new ArrayList<>();
+        commands.add(command(OrderCommandType.ADD_USER, UID_1, -1, -1L));
+        commands.add(balanceAdjustment(UID_1, CURRENCY, 3001L, 100_000_000L, OrderType.GTC));
+        commands.add(placeOrder(UID_1, 101L, 20_150L, 20_200L, 30L, OrderAction.BID, OrderType.GTC, 17));
+        commands.add(placeOrder(UID_2, 102L, 20_100L, 0L, 5L, OrderAction.ASK, OrderType.IOC, -3));
+        commands.add(placeOrder(UID_2, 103L, 20_100L, 0L, 5L, OrderAction.ASK, OrderType.FOK_BUDGET, 0));
+        commands.add(move(UID_1, 101L, 20_140L));
+        commands.add(reduce(UID_1, 101L, 7L));
+        commands.add(command(OrderCommandType.CANCEL_ORDER, UID_1, SYMBOL, 101L));
+        commands.add(command(OrderCommandType.SUSPEND_USER, UID_2, -1, -1L));
+        commands.add(command(OrderCommandType.RESUME_USER, UID_2, -1, -1L));
+        commands.add(binaryFrame(0, 0x1122334455667788L));
+        commands.add(binaryFrame(-1, -1L));
+        commands.add(balanceAdjustment(UID_2, CURRENCY, 3002L, -500L, OrderType.IOC)); // suspend adjustment
+        commands.add(command(OrderCommandType.RESET, 0L, 0, 0L));
+
+        final long baseSeq = 1_000_000L;
+        long timestamp = 1_600_000_000_000_000_000L;
+        for (int i = 0; i < commands.size(); i++) {
+            final OrderCommand cmd = commands.get(i);
+            cmd.timestamp = timestamp;
+            cmd.eventsGroup = 5 + i / 4;
+            cmd.serviceFlags = i % 3;
+            timestamp += 1_500 + i * 17;
+            writer.encode(cmd, baseSeq + i, buffer);
+        }
+        buffer.flip();
+
+        final OrderCommand decoded = new OrderCommand();
+        for (int i = 0; i < commands.size(); i++) {
+            final long seq = reader.decode(buffer, decoded);
+            assertThat(seq, is(baseSeq + i));
+            assertSameRecord(decoded, commands.get(i));
+        }
+        assertThat(buffer.remaining(), is(0));
+    }
+
+    @Test
+    public void shouldResetDeltasPerBlockAndDictionariesPerFile() {
+
+        // block 1
+        writer.encode(placeOrder(UID_1, 1001L, 10_000L, 10_000L, 1L, OrderAction.BID, OrderType.GTC, 0), 1L, buffer);
+        writer.resetBlock();
+        final int block2Start = buffer.position();
+
+        // block 2 - uid and symbol are taken from file dictionaries
+        writer.encode(placeOrder(UID_1, 1002L, 10_001L, 10_001L, 2L, OrderAction.ASK, OrderType.GTC, 0), 2L, buffer);
+        final int block2Size = buffer.position() - block2Start;
+        writer.resetFile();
+        final int block3Start = buffer.position();
+
+        // next file - values are written again
+        writer.encode(placeOrder(UID_1, 1003L, 10_002L, 10_002L, 3L, OrderAction.ASK, OrderType.GTC, 0), 3L, buffer);
+        assertThat(block2Size, lessThan(buffer.position() - block3Start));
+        buffer.flip();
+
+        final OrderCommand decoded = new OrderCommand();
+        assertThat(reader.decode(buffer, decoded), is(1L));
+        reader.resetBlock();
+        assertThat(reader.decode(buffer, decoded), is(2L));
+        assertThat(decoded.orderId, is(1002L));
+        assertThat(decoded.uid, is(UID_1));
+        reader.resetFile();
+        assertThat(reader.decode(buffer, decoded), is(3L));
+        assertThat(decoded.orderId, is(1003L));
+        assertThat(decoded.price, is(10_002L));
+        assertThat(decoded.symbol, is(SYMBOL));
+    }
+
+    @Test
+    public void shouldDecodePersistRecordsWithSnapshotId() {
+        writer.encode(command(OrderCommandType.PERSIST_STATE_MATCHING, 0L, 0, 123L), 1L, buffer);
+        writer.encode(command(OrderCommandType.PERSIST_STATE_RISK, 0L, 0, 123L), 2L, buffer);
+        buffer.flip();
+
+        final OrderCommand decoded = new OrderCommand();
+        assertThat(reader.decode(buffer, decoded), is(1L));
+        assertThat(decoded.command, is(OrderCommandType.PERSIST_STATE_MATCHING));
+        assertThat(decoded.orderId, is(123L));
+        assertThat(reader.decode(buffer, decoded), is(2L));
+        assertThat(decoded.command, is(OrderCommandType.PERSIST_STATE_RISK));
+        assertThat(decoded.orderId, is(123L));
+        assertThat(buffer.remaining(), is(0));
+    }
+
+    @Test
+    public void shouldEncodeVarLongs() {
+        final long[] values = {0L, 1L, -1L, 63L, -64L, 64L, 127L, 128L, Integer.MAX_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE};
+        for (long value : values) {
+            JournalCompactCodec.putVarLong(buffer, JournalCompactCodec.zigzag(value));
+        }
+        buffer.flip();
+        for (long value : values) {
+            assertThat(JournalCompactCodec.unzigzag(JournalCompactCodec.getVarLong(buffer)), is(value));
+        }
+        assertThat(buffer.remaining(), is(0));
+    }
+
+    private static void assertSameRecord(final OrderCommand decoded, final OrderCommand expected) {
+        assertThat(decoded.command, is(expected.command));
+        assertThat(decoded.timestamp, is(expected.timestamp));
+        if (expected.command == OrderCommandType.RESET) {
+            return;
+        }
+        assertThat(decoded.serviceFlags, is(expected.serviceFlags));
+        assertThat(decoded.eventsGroup, is(expected.eventsGroup));
+        assertThat(decoded.uid, is(expected.uid));
+        assertThat(decoded.symbol, is(expected.symbol));
+        assertThat(decoded.orderId, is(expected.orderId));
+
+        switch (expected.command) {
+            case PLACE_ORDER:
+                assertThat(decoded.reserveBidPrice, is(expected.reserveBidPrice));
+                assertThat(decoded.userCookie, is(expected.userCookie));
+                assertThat(decoded.action, is(expected.action));
+                assertThat(decoded.orderType, is(expected.orderType));
+                assertThat(decoded.price, is(expected.price));
+                assertThat(decoded.size, is(expected.size));
+                break;
+            case MOVE_ORDER:
+                assertThat(decoded.price, is(expected.price));
+                break;
+            case REDUCE_ORDER:
+                assertThat(decoded.size, is(expected.size));
+                break;
+            case BALANCE_ADJUSTMENT:
+                assertThat(decoded.price, is(expected.price));
+                assertThat(decoded.orderType, is(expected.orderType));
+                break;
+            case BINARY_DATA_COMMAND:
+                assertThat(decoded.price, is(expected.price));
+                assertThat(decoded.reserveBidPrice, is(expected.reserveBidPrice));
+                assertThat(decoded.size, is(expected.size));
+                break;
+            default:
+        }
+    }
+
+    private static OrderCommand command(OrderCommandType type, long uid, int symbol, long orderId) {
+        return OrderCommand.builder().command(type).uid(uid).symbol(symbol).orderId(orderId).build();
+    }
+
+    private static OrderCommand placeOrder(long uid, long orderId, long price, long reserveBidPrice, long size,
+                                           OrderAction action, OrderType orderType, int userCookie) {
+        return OrderCommand.builder().command(OrderCommandType.PLACE_ORDER).uid(uid).symbol(SYMBOL).orderId(orderId)
+                .price(price).reserveBidPrice(reserveBidPrice).size(size).action(action).orderType(orderType).userCookie(userCookie).build();
+    }
+
+    private static OrderCommand move(long uid, long orderId, long price) {
+        return OrderCommand.builder().command(OrderCommandType.MOVE_ORDER).uid(uid).symbol(SYMBOL).orderId(orderId).price(price).build();
+    }
+
+    private static OrderCommand reduce(long uid, long orderId, long size) {
+        return OrderCommand.builder().command(OrderCommandType.REDUCE_ORDER).uid(uid).symbol(SYMBOL).orderId(orderId).size(size).build();
+    }
+
+    private static OrderCommand balanceAdjustment(long uid, int currency, long transactionId, long amount, OrderType adjustmentType) {
+        return OrderCommand.builder().command(OrderCommandType.BALANCE_ADJUSTMENT).uid(uid).symbol(currency).orderId(transactionId)
+                .price(amount).orderType(adjustmentType).build();
+    }
+
+    private static OrderCommand binaryFrame(int lastFlag, long word) {
+        return OrderCommand.builder().command(OrderCommandType.BINARY_DATA_COMMAND).symbol(lastFlag)
+                .orderId(word).price(word + 1).reserveBidPrice(word + 2).size(word + 3).uid(word + 4).build();
+    }
+}
@@ -0,0 +1,87 @@
+package exchange.core2.core.processors.sharding;
+
+import net.openhft.chronicle.bytes.Bytes;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+public final class ShardingPolicyTest {
+
+    @Test
+    public void moduloShouldMatchBitMask() {
+        final ModuloShardingPolicy policy = new ModuloShardingPolicy(8);
+        for (long id = 0; id < 10_000; id++) {
+            assertThat(policy.shardOf(id), is((int) (id & 7)));
+        }
+
+        final ModuloShardingPolicy policy3 = new ModuloShardingPolicy(3);
+        assertThat(policy3.shardOf(7), is(1));
+        assertThat(policy3.shardOf(Long.MAX_VALUE), is((int) (Long.MAX_VALUE % 3)));
+        assertThat(policy3.shardOf(-1), is(2));
+    }
+
+    @Test
+    public void consistentHashShouldSpreadAndMoveFewIds() {
+        final int ids = 100_000;
+        final ConsistentHashShardingPolicy policy5 = new ConsistentHashShardingPolicy(5);
+        final ConsistentHashShardingPolicy policy6 = new ConsistentHashShardingPolicy(6);
+
+        final int[] counters = new int[5];
+        int moved = 0;
+        for (long id = 0; id < ids; id++) {
+            // ids colliding on low bits
+            final int shard = policy5.shardOf(id << 8);
+            counters[shard]++;
+            final int newShard = policy6.shardOf(id << 8);
+            if (newShard != shard) {
+                assertThat(newShard, is(5));
+                moved++;
+            }
+        }
+        for (int counter : counters) {
+            assertThat(counter, greaterThan(ids / 5 * 7 / 10));
+            assertThat(counter, lessThan(ids / 5 * 13 / 10));
+        }
+        // ~1/6 of ids moved to the new shard
+        assertThat(moved, greaterThan(ids / 6 * 7 / 10));
+        assertThat(moved, lessThan(ids / 6 * 13 / 10));
+
+        // deterministic
+        assertThat(new ConsistentHashShardingPolicy(5).shardOf(12345), is(policy5.shardOf(12345)));
+    }
+
+    @Test
+    public void symbolShardsTableShouldKeepAssignedShards() {
+        final SymbolShardsTable table = new SymbolShardsTable(4, new ModuloShardingPolicy(4));
+
+        assertThat(table.shardOf(6), is(2));
+        assertThat(table.assign(6, 3), is(true));
+        assertThat(table.shardOf(6), is(3));
+        assertThat(table.assign(7, 4), is(false));
+
+        // added symbol is pinned - can not be moved to another shard
+        table.pin(9);
+        table.pin(6);
+        assertThat(table.shardOf(6), is(3));
+        assertThat(table.assign(9, 0), is(false));
+        assertThat(table.assign(9, 1), is(true));
+        assertThat(table.getSymbolsNum(), is(2));
+
+        // migration
+        table.move(9, 2);
+        assertThat(table.shardOf(9), is(2));
+
+        final Bytes<?> bytes = Bytes.allocateElasticDirect();
+        table.writeMarshallable(bytes);
+        final SymbolShardsTable restored = new SymbolShardsTable(4, new ModuloShardingPolicy(4));
+        restored.readTable(bytes);
+        assertThat(restored.stateHash(), is(table.stateHash()));
+        assertThat(restored.shardOf(6), is(3));
+
+        restored.reset();
+        assertThat(restored.shardOf(6), is(2));
+    }
+}
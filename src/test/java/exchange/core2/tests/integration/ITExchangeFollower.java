@@ -0,0 +1,88 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.tests.integration;
+
+import exchange.core2.core.ExchangeFollower;
+import exchange.core2.core.common.config.*;
+import exchange.core2.core.processors.journaling.DiskSerializationProcessorConfiguration;
+import exchange.core2.tests.util.ExchangeTestContainer;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@Slf4j
+public final class ITExchangeFollower {
+
+    /**
+     * Follower can not read corrupted leader journal - failure is exposed and follower is not promoted with incomplete state.
+     */
+    @Test
+    @Timeout(30)
+    public void shouldNotPromoteIfJournalFollowingFailed() throws Exception {
+
+        final PerformanceConfiguration perfCfg = PerformanceConfiguration.baseBuilder().build();
+        final String exchangeId = ExchangeTestContainer.timeBasedExchangeId();
+
+        try (final ExchangeTestContainer primary = ExchangeTestContainer.create(
+                perfCfg, InitialStateConfiguration.cleanStartJournaling(exchangeId), SerializationConfiguration.DISK_JOURNALING)) {
+            primary.initBasicSymbols();
+            primary.initBasicUsers();
+        }
+
+        // unknown type of the first block (right after file marker and version)
+        final Path journalPath = Paths.get(DiskSerializationProcessorConfiguration.DEFAULT_FOLDER)
+                .resolve(String.format("%s_journal_%d_%04X.ecj", exchangeId, 0, 1));
+        final byte[] journal = Files.readAllBytes(journalPath);
+        assertThat(journal[0], is((byte) 'J'));
+        journal[2] = 0x7F;
+        Files.write(journalPath, journal);
+
+        final ExchangeConfiguration followerConfiguration = ExchangeConfiguration.defaultBuilder()
+                .initStateCfg(InitialStateConfiguration.CLEAN_TEST)
+                .performanceCfg(perfCfg)
+                .reportsQueriesCfg(ReportsQueriesConfiguration.createStandardConfig())
+                .ordersProcessingCfg(OrdersProcessingConfiguration.DEFAULT)
+                .loggingCfg(LoggingConfiguration.DEFAULT)
+                .serializationCfg(SerializationConfiguration.DEFAULT)
+                .build();
+
+        try (final ExchangeFollower follower = ExchangeFollower.builder()
+                .resultsConsumer((cmd, seq) -> {
+                })
+                .exchangeConfiguration(followerConfiguration)
+                .leaderStorageFolder(DiskSerializationProcessorConfiguration.DEFAULT_FOLDER)
+                .leaderExchangeId(exchangeId)
+                .build()) {
+
+            follower.startup();
+            while (follower.getFollowingFailure() == null) {
+                Thread.sleep(10);
+            }
+
+            final IllegalStateException ex = assertThrows(IllegalStateException.class, follower::promote);
+            assertThat(ex.getCause(), is(follower.getFollowingFailure()));
+            log.info("Promotion rejected: {}", ex.getMessage());
+        }
+    }
+}
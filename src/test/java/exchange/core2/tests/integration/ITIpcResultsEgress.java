@@ -0,0 +1,404 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.tests.integration;
+
+import exchange.core2.core.FlyweightEventsProcessor;
+import exchange.core2.core.IFlyweightEventsHandler;
+import exchange.core2.core.common.BalanceAdjustmentType;
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.api.ApiOrderBookRequest;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.cmd.OrderCommandType;
+import exchange.core2.core.common.config.IpcConfiguration;
+import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.core.processors.ipc.IpcGateway;
+import exchange.core2.core.processors.ipc.IpcResultsSubscriber;
+import exchange.core2.tests.util.ExchangeTestContainer;
+import exchange.core2.tests.util.TestConstants;
+import lombok.extern.slf4j.Slf4j;
+import org.agrona.DirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.broadcast.BroadcastBufferDescriptor;
+import org.agrona.concurrent.broadcast.BroadcastTransmitter;
+import org.eclipse.collections.impl.map.mutable.primitive.LongIntHashMap;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BooleanSupplier;
+
+import static exchange.core2.core.processors.ipc.IpcMessages.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Round trip through shared memory: IpcGateway -> IpcIngress -> exchange core -> IpcResultsEgress -> IpcResultsSubscriber.
+ * Decoded messages are compared with events received by FlyweightEventsProcessor attached as results consumer.
+ */
+@Slf4j
+public final class ITIpcResultsEgress {
+
+    // small broadcast buffer - max message length is 8K, so long trades chain and big L2 update are split
+    private static final int EGRESS_BUFFER_SIZE = 64 * 1024;
+
+    private static final int MAKER_ORDERS = 400;
+    private static final int CHUNK_SIZE = 50;
+
+    private static final long ASK_PRICE = 10_000L;
+    private static final long TAKER_ORDER_ID = 5_000L;
+
+    private final ConcurrentLinkedQueue<String> expected = new ConcurrentLinkedQueue<>();
+    private final List<String> received = new ArrayList<>();
+
+    // seq -> number of messages of particular type
+    private final LongIntHashMap tradeMessages = new LongIntHashMap();
+    private final LongIntHashMap updateMessages = new LongIntHashMap();
+
+    private IpcResultsSubscriber subscriber;
+    private int orderBookMaxLevels;
+    private long lastResultSeq;
+
+    @Test
+    @Timeout(60)
+    public void shouldBroadcastSameEventsAsFlyweightProcessor() {
+
+        final String exchangeId = ExchangeTestContainer.timeBasedExchangeId();
+        final IpcConfiguration ipcCfg = IpcConfiguration.builder()
+                .ingressFile(Paths.get(System.getProperty("java.io.tmpdir"), exchangeId + "_ingress.ipc").toString())
+                .ingressBufferSize(64 * 1024)
+                .ingressMaxBatchSize(64)
+                .ingressUnblockTimeoutMs(1000)
+                .egressFile(Paths.get(System.getProperty("java.io.tmpdir"), exchangeId + "_egress.ipc").toString())
+                .egressBufferSize(EGRESS_BUFFER_SIZE)
+                .build();
+
+        final PerformanceConfiguration perfCfg = PerformanceConfiguration.baseBuilder()
+                .sendL2DeltasForEveryCmd(true)
+                .build();
+
+        final int maxMsgLength = new BroadcastTransmitter(
+                new UnsafeBuffer(new byte[EGRESS_BUFFER_SIZE + BroadcastBufferDescriptor.TRAILER_LENGTH])).maxMsgLength();
+        orderBookMaxLevels = (maxMsgLength - ORDER_BOOK_HEADER_LENGTH) / LEVEL_LENGTH / 2;
+
+        try (final ExchangeTestContainer container = ExchangeTestContainer.create(perfCfg, ipcCfg);
+             final IpcGateway gateway = new IpcGateway(ipcCfg.getIngressFile());
+             final IpcResultsSubscriber resultsSubscriber = new IpcResultsSubscriber(ipcCfg.getEgressFile())) {
+
+            subscriber = resultsSubscriber;
+            container.setConsumer(new FlyweightEventsProcessor(new ExpectedEventsHandler()));
+
+            container.initBasicSymbols();
+            final int symbol = TestConstants.SYMBOL_MARGIN;
+            final long ts = 1L;
+
+            for (long uid : new long[]{TestConstants.UID_1, TestConstants.UID_2, TestConstants.UID_3}) {
+                send(() -> gateway.addUser(uid, ts));
+                send(() -> gateway.balanceAdjustment(uid, 1L, TestConstants.CURRENECY_USD, 1_000_000_000L, BalanceAdjustmentType.ADJUSTMENT, ts));
+                awaitResult(OrderCommandType.BALANCE_ADJUSTMENT, uid, 1L);
+            }
+
+            // maker orders - one price level per order
+            for (int i = 0; i < MAKER_ORDERS; i++) {
+                final long orderId = 1_000L + i;
+                final long price = ASK_PRICE + i;
+                send(() -> gateway.placeOrder(TestConstants.UID_1, orderId, price, price, 1L, OrderAction.ASK, OrderType.GTC, symbol, 0, ts));
+                if ((i + 1) % CHUNK_SIZE == 0) {
+                    awaitResult(OrderCommandType.PLACE_ORDER, TestConstants.UID_1, orderId);
+                }
+            }
+
+            // taker matches all levels (split trades chain and L2 update), not matched part is rejected
+            final long takerPrice = ASK_PRICE + MAKER_ORDERS - 1;
+            send(() -> gateway.placeOrder(TestConstants.UID_2, TAKER_ORDER_ID, takerPrice, takerPrice, MAKER_ORDERS + 100L, OrderAction.BID, OrderType.IOC, symbol, 0, ts));
+            awaitResult(OrderCommandType.PLACE_ORDER, TestConstants.UID_2, TAKER_ORDER_ID);
+
+            // reduce, move and cancel
+            send(() -> gateway.placeOrder(TestConstants.UID_2, 5_001L, 9_000L, 9_000L, 10L, OrderAction.BID, OrderType.GTC, symbol, 7, ts));
+            send(() -> gateway.moveOrder(TestConstants.UID_2, 5_001L, 9_100L, symbol, ts));
+            send(() -> gateway.reduceOrder(TestConstants.UID_2, 5_001L, 3L, symbol, ts));
+            send(() -> gateway.placeOrder(TestConstants.UID_3, 5_002L, 11_000L, 11_000L, 2L, OrderAction.ASK, OrderType.GTC, symbol, 0, ts));
+            awaitResult(OrderCommandType.PLACE_ORDER, TestConstants.UID_3, 5_002L);
+
+            // L2 snapshot
+            assertThat(container.getApi().submitCommandAsync(ApiOrderBookRequest.builder().symbol(symbol).size(10).build()).join(),
+                    is(CommandResultCode.SUCCESS));
+            awaitResult(OrderCommandType.ORDER_BOOK_REQUEST, 0L, 0L);
+
+            send(() -> gateway.cancelOrder(TestConstants.UID_2, 5_001L, symbol, ts));
+            send(() -> gateway.suspendUser(TestConstants.UID_3, ts));
+            send(() -> gateway.resumeUser(TestConstants.UID_3, ts));
+            awaitResult(OrderCommandType.RESUME_USER, TestConstants.UID_3, 0L);
+
+            // results consumer works in parallel with egress - wait until it gets the same last command
+            poll(() -> expected.size() == received.size());
+
+            assertEquals(new ArrayList<>(expected), received);
+            assertThat(subscriber.getLappedCount(), is(0L));
+
+            // taker order events were split
+            assertThat(tradeMessages.values().max(), greaterThan(1));
+            assertThat(updateMessages.values().max(), greaterThan(1));
+        }
+    }
+
+    private static void send(final BooleanSupplier command) {
+        // false - ingress ring is full
+        while (!command.getAsBoolean()) {
+            Thread.yield();
+        }
+    }
+
+    private void awaitResult(final OrderCommandType command, final long uid, final long orderId) {
+        final String prefix = "R " + command.getCode() + " ";
+        final String suffix = " uid=" + uid + " orderId=" + orderId;
+        final int from = received.size();
+        poll(() -> {
+            for (int i = from; i < received.size(); i++) {
+                final String msg = received.get(i);
+                if (msg.startsWith(prefix) && msg.contains(suffix + " ")) {
+                    return true;
+                }
+            }
+            return false;
+        });
+    }
+
+    private void poll(final BooleanSupplier condition) {
+        while (!condition.getAsBoolean()) {
+            if (subscriber.poll(this::decode, 100) == 0) {
+                Thread.yield();
+            }
+        }
+    }
+
+    private void decode(final int msgTypeId, final DirectBuffer buffer, final int index, final int length) {
+        switch (msgTypeId) {
+            case MSG_TYPE_RESULT:
+                lastResultSeq = buffer.getLong(index + RESULT_SEQ_OFFSET, BYTE_ORDER);
+                received.add(result(
+                        buffer.getByte(index + RESULT_COMMAND_OFFSET),
+                        buffer.getInt(index + RESULT_CODE_OFFSET, BYTE_ORDER),
+                        lastResultSeq,
+                        buffer.getLong(index + RESULT_UID_OFFSET, BYTE_ORDER),
+                        buffer.getLong(index + RESULT_ORDER_ID_OFFSET, BYTE_ORDER),
+                        buffer.getLong(index + RESULT_PRICE_OFFSET, BYTE_ORDER),
+                        buffer.getLong(index + RESULT_SIZE_OFFSET, BYTE_ORDER),
+                        buffer.getInt(index + RESULT_SYMBOL_OFFSET, BYTE_ORDER),
+                        buffer.getInt(index + RESULT_USER_COOKIE_OFFSET, BYTE_ORDER),
+                        buffer.getByte(index + RESULT_ACTION_OFFSET),
+                        buffer.getLong(index + RESULT_TIMESTAMP_OFFSET, BYTE_ORDER)));
+                break;
+
+            case MSG_TYPE_TRADE: {
+                final long seq = buffer.getLong(index + TRADE_SEQ_OFFSET, BYTE_ORDER);
+                tradeMessages.addToValue(seq, 1);
+                final String header = tradeHeader(
+                        seq,
+                        buffer.getLong(index + TRADE_TAKER_ORDER_ID_OFFSET, BYTE_ORDER),
+                        buffer.getLong(index + TRADE_TAKER_UID_OFFSET, BYTE_ORDER),
+                        buffer.getByte(index + TRADE_TAKER_ACTION_OFFSET),
+                        buffer.getLong(index + TRADE_TOTAL_VOLUME_OFFSET, BYTE_ORDER),
+                        buffer.getByte(index + TRADE_TAKER_COMPLETED_OFFSET) == 1,
+                        buffer.getInt(index + TRADE_SYMBOL_OFFSET, BYTE_ORDER),
+                        buffer.getLong(index + TRADE_TIMESTAMP_OFFSET, BYTE_ORDER));
+                final int tradesNum = buffer.getInt(index + TRADE_TRADES_NUM_OFFSET, BYTE_ORDER);
+                for (int i = 0; i < tradesNum; i++) {
+                    final int offset = index + TRADE_HEADER_LENGTH + i * TRADE_ENTRY_LENGTH;
+                    received.add(trade(header,
+                            buffer.getLong(offset + TRADE_ENTRY_MAKER_ORDER_ID_OFFSET, BYTE_ORDER),
+                            buffer.getLong(offset + TRADE_ENTRY_MAKER_UID_OFFSET, BYTE_ORDER),
+                            buffer.getLong(offset + TRADE_ENTRY_PRICE_OFFSET, BYTE_ORDER),
+                            buffer.getLong(offset + TRADE_ENTRY_VOLUME_OFFSET, BYTE_ORDER),
+                            buffer.getByte(offset + TRADE_ENTRY_MAKER_COMPLETED_OFFSET) == 1));
+                }
+                break;
+            }
+
+            case MSG_TYPE_REDUCE:
+                received.add(reduce(
+                        buffer.getLong(index + REDUCE_SEQ_OFFSET, BYTE_ORDER),
+                        buffer.getLong(index + REDUCE_ORDER_ID_OFFSET, BYTE_ORDER),
+                        buffer.getLong(index + REDUCE_UID_OFFSET, BYTE_ORDER),
+                        buffer.getLong(index + REDUCE_PRICE_OFFSET, BYTE_ORDER),
+                        buffer.getLong(index + REDUCE_VOLUME_OFFSET, BYTE_ORDER),
+                        buffer.getByte(index + REDUCE_ORDER_COMPLETED_OFFSET) == 1,
+                        buffer.getInt(index + REDUCE_SYMBOL_OFFSET, BYTE_ORDER),
+                        buffer.getLong(index + REDUCE_TIMESTAMP_OFFSET, BYTE_ORDER)));
+                break;
+
+            case MSG_TYPE_REJECT:
+                received.add(reject(
+                        buffer.getLong(index + REJECT_SEQ_OFFSET, BYTE_ORDER),
+                        buffer.getLong(index + REJECT_ORDER_ID_OFFSET, BYTE_ORDER),
+                        buffer.getLong(index + REJECT_UID_OFFSET, BYTE_ORDER),
+                        buffer.getLong(index + REJECT_PRICE_OFFSET, BYTE_ORDER),
+                        buffer.getLong(index + REJECT_VOLUME_OFFSET, BYTE_ORDER),
+                        buffer.getInt(index + REJECT_SYMBOL_OFFSET, BYTE_ORDER),
+                        buffer.getLong(index + REJECT_TIMESTAMP_OFFSET, BYTE_ORDER)));
+                break;
+
+            case MSG_TYPE_ORDER_BOOK: {
+                final int askSize = buffer.getInt(index + ORDER_BOOK_ASK_SIZE_OFFSET, BYTE_ORDER);
+                final int bidSize = buffer.getInt(index + ORDER_BOOK_BID_SIZE_OFFSET, BYTE_ORDER);
+                received.add(orderBookHeader(
+                        buffer.getLong(index + ORDER_BOOK_SEQ_OFFSET, BYTE_ORDER),
+                        buffer.getInt(index + ORDER_BOOK_SYMBOL_OFFSET, BYTE_ORDER),
+                        buffer.getByte(index + ORDER_BOOK_REQUESTED_OFFSET) == 1,
+                        askSize,
+                        bidSize,
+                        buffer.getLong(index + ORDER_BOOK_TIMESTAMP_OFFSET, BYTE_ORDER)));
+                for (int i = 0; i < askSize + bidSize; i++) {
+                    final int offset = index + ORDER_BOOK_HEADER_LENGTH + i * LEVEL_LENGTH;
+                    received.add(level("BL", i < askSize,
+                            buffer.getLong(offset + LEVEL_PRICE_OFFSET, BYTE_ORDER),
+                            buffer.getLong(offset + LEVEL_VOLUME_OFFSET, BYTE_ORDER),
+                            buffer.getInt(offset + LEVEL_ORDERS_OFFSET, BYTE_ORDER)));
+                }
+                break;
+            }
+
+            case MSG_TYPE_ORDER_BOOK_UPDATE: {
+                final long seq = buffer.getLong(index + ORDER_BOOK_UPDATE_SEQ_OFFSET, BYTE_ORDER);
+                updateMessages.addToValue(seq, 1);
+                final String header = "U seq=" + seq
+                        + " symbol=" + buffer.getInt(index + ORDER_BOOK_UPDATE_SYMBOL_OFFSET, BYTE_ORDER)
+                        + " ts=" + buffer.getLong(index + ORDER_BOOK_UPDATE_TIMESTAMP_OFFSET, BYTE_ORDER);
+                final int size = buffer.getInt(index + ORDER_BOOK_UPDATE_SIZE_OFFSET, BYTE_ORDER);
+                for (int i = 0; i < size; i++) {
+                    final int offset = index + ORDER_BOOK_UPDATE_HEADER_LENGTH + i * LEVEL_LENGTH;
+                    received.add(header + " " + level("UL", buffer.getByte(offset + LEVEL_IS_ASK_OFFSET) == 1,
+                            buffer.getLong(offset + LEVEL_PRICE_OFFSET, BYTE_ORDER),
+                            buffer.getLong(offset + LEVEL_VOLUME_OFFSET, BYTE_ORDER),
+                            buffer.getInt(offset + LEVEL_ORDERS_OFFSET, BYTE_ORDER)));
+                }
+                break;
+            }
+
+            default:
+                throw new IllegalStateException("Unknown message type " + msgTypeId);
+        }
+    }
+
+    /**
+     * Collects events in the same textual form as decoded messages (one line per trade and per price level)
+     */
+    private final class ExpectedEventsHandler implements IFlyweightEventsHandler {
+
+        private long seq;
+
+        @Override
+        public void commandResult(final CommandResultView result) {
+            seq = result.getSeq();
+            if (result.getCommandType() == OrderCommandType.NOP) {
+                return;
+            }
+            expected.add(result(result.getCommandType().getCode(), result.getResultCode().getCode(), seq, result.getUid(), result.getOrderId(),
+                    result.getPrice(), result.getSize(), result.getSymbol(), result.getUserCookie(),
+                    result.getAction() != null ? result.getAction().getCode() : NOT_SET, result.getTimestamp()));
+        }
+
+        @Override
+        public void tradeEvent(final TradeEventView tradeEvent) {
+            final String header = tradeHeader(seq, tradeEvent.getTakerOrderId(), tradeEvent.getTakerUid(),
+                    tradeEvent.getTakerAction().getCode(), tradeEvent.getTotalVolume(), tradeEvent.isTakerOrderCompleted(),
+                    tradeEvent.getSymbol(), tradeEvent.getTimestamp());
+            while (tradeEvent.nextTrade()) {
+                expected.add(trade(header, tradeEvent.getMakerOrderId(), tradeEvent.getMakerUid(), tradeEvent.getPrice(),
+                        tradeEvent.getVolume(), tradeEvent.isMakerOrderCompleted()));
+            }
+        }
+
+        @Override
+        public void rejectEvent(final RejectEventView rejectEvent) {
+            expected.add(reject(seq, rejectEvent.getOrderId(), rejectEvent.getUid(), rejectEvent.getPrice(),
+                    rejectEvent.getRejectedVolume(), rejectEvent.getSymbol(), rejectEvent.getTimestamp()));
+        }
+
+        @Override
+        public void reduceEvent(final ReduceEventView reduceEvent) {
+            expected.add(reduce(seq, reduceEvent.getOrderId(), reduceEvent.getUid(), reduceEvent.getPrice(),
+                    reduceEvent.getReducedVolume(), reduceEvent.isOrderCompleted(), reduceEvent.getSymbol(), reduceEvent.getTimestamp()));
+        }
+
+        @Override
+        public void orderBook(final OrderBookView orderBook) {
+            // deep snapshots are truncated by egress
+            final int askSize = Math.min(orderBook.getAskSize(), orderBookMaxLevels);
+            final int bidSize = Math.min(orderBook.getBidSize(), orderBookMaxLevels);
+            expected.add(orderBookHeader(seq, orderBook.getSymbol(), orderBook.isRequested(), askSize, bidSize, orderBook.getTimestamp()));
+            for (int i = 0; i < askSize; i++) {
+                expected.add(level("BL", true, orderBook.getAskPrice(i), orderBook.getAskVolume(i), orderBook.getAskOrders(i)));
+            }
+            for (int i = 0; i < bidSize; i++) {
+                expected.add(level("BL", false, orderBook.getBidPrice(i), orderBook.getBidVolume(i), orderBook.getBidOrders(i)));
+            }
+        }
+
+        @Override
+        public void orderBookUpdate(final OrderBookUpdateView orderBookUpdate) {
+            final String header = "U seq=" + seq + " symbol=" + orderBookUpdate.getSymbol() + " ts=" + orderBookUpdate.getTimestamp();
+            for (int i = 0; i < orderBookUpdate.getSize(); i++) {
+                expected.add(header + " " + level("UL", orderBookUpdate.isAsk(i), orderBookUpdate.getPrice(i),
+                        orderBookUpdate.getVolume(i), orderBookUpdate.getOrders(i)));
+            }
+        }
+    }
+
+    private static String result(final byte command, final int resultCode, final long seq,
+                                 final long uid, final long orderId, final long price, final long size, final int symbol,
+                                 final int userCookie, final byte action, final long timestamp) {
+        return "R " + command + " " + resultCode + " seq=" + seq + " uid=" + uid + " orderId=" + orderId + " price=" + price
+                + " size=" + size + " symbol=" + symbol + " cookie=" + userCookie + " action=" + action + " ts=" + timestamp;
+    }
+
+    private static String tradeHeader(final long seq, final long takerOrderId, final long takerUid, final byte takerAction,
+                                      final long totalVolume, final boolean takerCompleted, final int symbol, final long timestamp) {
+        return "T seq=" + seq + " taker=" + takerOrderId + "/" + takerUid + " action=" + takerAction + " total=" + totalVolume
+                + " completed=" + takerCompleted + " symbol=" + symbol + " ts=" + timestamp;
+    }
+
+    private static String trade(final String header, final long makerOrderId, final long makerUid, final long price,
+                                final long volume, final boolean makerCompleted) {
+        return header + " maker=" + makerOrderId + "/" + makerUid + " price=" + price + " volume=" + volume + " makerCompleted=" + makerCompleted;
+    }
+
+    private static String reduce(final long seq, final long orderId, final long uid, final long price, final long volume,
+                                 final boolean completed, final int symbol, final long timestamp) {
+        return "D seq=" + seq + " order=" + orderId + "/" + uid + " price=" + price + " volume=" + volume
+                + " completed=" + completed + " symbol=" + symbol + " ts=" + timestamp;
+    }
+
+    private static String reject(final long seq, final long orderId, final long uid, final long price, final long volume,
+                                 final int symbol, final long timestamp) {
+        return "J seq=" + seq + " order=" + orderId + "/" + uid + " price=" + price + " volume=" + volume
+                + " symbol=" + symbol + " ts=" + timestamp;
+    }
+
+    private static String orderBookHeader(final long seq, final int symbol, final boolean requested, final int askSize,
+                                          final int bidSize, final long timestamp) {
+        return "B seq=" + seq + " symbol=" + symbol + " requested=" + requested + " asks=" + askSize + " bids=" + bidSize + " ts=" + timestamp;
+    }
+
+    private static String level(final String prefix, final boolean ask, final long price, final long volume, final int orders) {
+        return prefix + " " + (ask ? "ask" : "bid") + " price=" + price + " volume=" + volume + " orders=" + orders;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.tests.integration;
+
+import exchange.core2.core.common.MarginLevel;
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.api.ApiMoveOrder;
+import exchange.core2.core.common.api.ApiPersistState;
+import exchange.core2.core.common.api.ApiPlaceOrder;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.config.InitialStateConfiguration;
+import exchange.core2.core.common.config.MarginMonitorConfiguration;
+import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.core.common.config.SerializationConfiguration;
+import exchange.core2.tests.util.ExchangeTestContainer;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static exchange.core2.core.common.OrderType.GTC;
+import static exchange.core2.core.common.OrderType.IOC;
+import static exchange.core2.tests.util.TestConstants.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.core.Is.is;
+
+/**
+ * Margin level events: price of futures contract is moved by maker orders (matching engine attaches top of book,
+ * risk engine re-evaluates all position holders), margin monitor state is rebuilt after loading snapshot.
+ */
+@Slf4j
+public final class ITMarginMonitor {
+
+    private static final long MAKER_UID = UID_2;
+
+    // long 1@10000 in EUR_USD (margin 2200) with 3000 USD balance
+    private static final long BALANCE = 3_000L;
+
+    private final ConcurrentLinkedQueue<String> events = new ConcurrentLinkedQueue<>();
+
+    private final MarginMonitorConfiguration marginMonitorCfg = MarginMonitorConfiguration.createDefaultConfig(
+            (uid, currency, level, equity, requiredMargin) -> events.add(event(uid, level, equity)));
+
+    @Test
+    @Timeout(30)
+    public void shouldEmitMarginEventsOnPriceChangeAndAfterSnapshotLoad() throws Exception {
+
+        final PerformanceConfiguration perfCfg = PerformanceConfiguration.baseBuilder().build();
+        final String exchangeId = ExchangeTestContainer.timeBasedExchangeId();
+        final long stateId;
+
+        try (final ExchangeTestContainer container = ExchangeTestContainer.create(
+                perfCfg, InitialStateConfiguration.cleanStart(exchangeId), SerializationConfiguration.DISK_SNAPSHOT_ONLY, marginMonitorCfg)) {
+
+            container.addSymbol(SYMBOLSPEC_EUR_USD);
+            container.createUserWithMoney(MAKER_UID, CURRENECY_USD, 1_000_000_000L);
+            container.createUserWithMoney(UID_1, CURRENECY_USD, BALANCE);
+            container.createUserWithMoney(UID_3, CURRENECY_USD, BALANCE);
+
+            // both users open long position 1@10000
+            container.submitCommandSync(order(MAKER_UID, 101L, OrderAction.ASK, GTC, 10_000L, 2L), CommandResultCode.SUCCESS);
+            container.submitCommandSync(order(UID_1, 102L, OrderAction.BID, IOC, 10_000L, 1L), CommandResultCode.SUCCESS);
+            container.submitCommandSync(order(UID_3, 103L, OrderAction.BID, IOC, 10_000L, 1L), CommandResultCode.SUCCESS);
+
+            // best bid 10000 - no profit, equity 3000 covers required margin 2200
+            container.submitCommandSync(order(MAKER_UID, 104L, OrderAction.BID, GTC, 10_000L, 1L), CommandResultCode.SUCCESS);
+            flushRiskRelease(container);
+            assertThat(events, empty());
+
+            // best bid 9000 - equity 2000 is below required margin
+            moveMakerBid(container, 104L, 9_000L);
+            assertEvents(container, event(UID_1, MarginLevel.MARGIN_CALL, 2_000L), event(UID_3, MarginLevel.MARGIN_CALL, 2_000L));
+
+            // best bid 8000 - equity 1000 is below half of required margin
+            moveMakerBid(container, 104L, 8_000L);
+            assertEvents(container, event(UID_1, MarginLevel.LIQUIDATION, 1_000L), event(UID_3, MarginLevel.LIQUIDATION, 1_000L));
+
+            stateId = System.currentTimeMillis() * 1000;
+            container.submitCommandSync(ApiPersistState.builder().dumpId(stateId).build(), CommandResultCode.SUCCESS);
+        }
+
+        try (final ExchangeTestContainer container = ExchangeTestContainer.create(
+                perfCfg, InitialStateConfiguration.fromSnapshotOnly(exchangeId, stateId, 0), SerializationConfiguration.DISK_SNAPSHOT_ONLY, marginMonitorCfg)) {
+
+            // initial margin level of accounts is reported after loading snapshot
+            assertEvents(container, event(UID_1, MarginLevel.LIQUIDATION, 1_000L), event(UID_3, MarginLevel.LIQUIDATION, 1_000L));
+
+            // position holders are restored - price change re-evaluates both accounts
+            moveMakerBid(container, 104L, 9_500L);
+            assertEvents(container, event(UID_1, MarginLevel.NORMAL, 2_500L), event(UID_3, MarginLevel.NORMAL, 2_500L));
+
+            moveMakerBid(container, 104L, 9_000L);
+            assertEvents(container, event(UID_1, MarginLevel.MARGIN_CALL, 2_000L), event(UID_3, MarginLevel.MARGIN_CALL, 2_000L));
+
+            // same best bid - no events
+            container.submitCommandSync(order(MAKER_UID, 105L, OrderAction.BID, GTC, 9_000L, 1L), CommandResultCode.SUCCESS);
+            flushRiskRelease(container);
+            assertThat(events, empty());
+
+            // closed position is not monitored anymore (loss 1000 is realized)
+            container.submitCommandSync(order(UID_1, 106L, OrderAction.ASK, IOC, 9_000L, 1L), CommandResultCode.SUCCESS);
+            assertEvents(container, event(UID_1, MarginLevel.NORMAL, BALANCE - 1_000L));
+
+            moveMakerBid(container, 105L, 8_000L);
+            assertEvents(container, event(UID_3, MarginLevel.LIQUIDATION, 1_000L));
+        }
+    }
+
+    private static void moveMakerBid(final ExchangeTestContainer container, final long orderId, final long price) {
+        container.submitCommandSync(ApiMoveOrder.builder().uid(MAKER_UID).orderId(orderId).newPrice(price).symbol(SYMBOL_MARGIN).build(),
+                CommandResultCode.SUCCESS);
+    }
+
+    private void assertEvents(final ExchangeTestContainer container, final String... expected) {
+        flushRiskRelease(container);
+        final List<String> received = new ArrayList<>(events);
+        events.clear();
+        assertThat(received, containsInAnyOrder(expected));
+    }
+
+    // events are emitted by risk release stage (R2), it is running in parallel with results handler
+    // binary query starts new events group, so R2 of all previous commands is completed before query is processed
+    private static void flushRiskRelease(final ExchangeTestContainer container) {
+        container.totalBalanceReport();
+    }
+
+    private static String event(final long uid, final MarginLevel level, final long equity) {
+        return uid + ":" + level + ":" + equity;
+    }
+
+    private static ApiPlaceOrder order(final long uid, final long orderId, final OrderAction action,
+                                       final OrderType orderType, final long price, final long size) {
+        return ApiPlaceOrder.builder()
+                .uid(uid)
+                .orderId(orderId)
+                .price(price)
+                .reservePrice(price)
+                .size(size)
+                .action(action)
+                .orderType(orderType)
+                .symbol(SYMBOL_MARGIN)
+                .build();
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.tests.integration;
+
+import exchange.core2.core.common.L2MarketData;
+import exchange.core2.core.common.MatcherTradeEvent;
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.PositionDirection;
+import exchange.core2.core.common.api.ApiPersistState;
+import exchange.core2.core.common.api.ApiPlaceOrder;
+import exchange.core2.core.common.api.reports.SingleUserReportResult;
+import exchange.core2.core.common.api.reports.TotalCurrencyBalanceReportResult;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.config.InitialStateConfiguration;
+import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.core.common.config.SerializationConfiguration;
+import exchange.core2.core.processors.OffHeapUserProfileService;
+import exchange.core2.core.processors.journaling.DiskSerializationProcessorConfiguration;
+import exchange.core2.tests.util.ExchangeTestContainer;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+/**
+ * Loading snapshot written by previous version (whole module state in single LZ4 stream, shard mask in the header,
+ * user profiles inside risk engine state, symbol specifications without order book settings).
+ * <p>
+ * Snapshot in test resources: 2 risk engines, 2 matching engines, exchange pair 40 (EUR/USD) and futures contract 41 (USD),
+ * users 1001..1004 with 10M USD and 100K EUR each, then orders:
+ * <pre>
+ * 1 - 1001 GTC ASK 40 11000 x 5
+ * 2 - 1002 GTC BID 40 10900 x 7
+ * 3 - 1003 GTC BID 40 10950 x 3
+ * 4 - 1004 IOC BID 40 11000 x 2 (matched with order 1)
+ * 5 - 1002 GTC ASK 41 2000 x 10
+ * 6 - 1003 IOC BID 41 2000 x 4 (matched with order 5)
+ * 7 - 1004 GTC BID 41 1990 x 6
+ * </pre>
+ */
+@Slf4j
+public final class ITSnapshotPreviousFormat {
+
+    private static final String RESOURCE_EXCHANGE_ID = "EC_PREVIOUS";
+    private static final long SNAPSHOT_ID = 1L;
+
+    private static final int SYMBOL_EXCHANGE = 40;
+    private static final int SYMBOL_FUTURES = 41;
+
+    private static final int CURRENCY_USD = 840;
+    private static final int CURRENCY_EUR = 978;
+
+    @Test
+    @Timeout(30)
+    public void shouldLoadPreviousFormatSnapshot() throws Exception {
+        loadAndContinue(PerformanceConfiguration.baseBuilder()
+                        .riskEnginesNum(2)
+                        .matchingEnginesNum(2)
+                        .build(),
+                SerializationConfiguration.DISK_SNAPSHOT_ONLY);
+    }
+
+    @Test
+    @Timeout(30)
+    public void shouldLoadPreviousFormatSnapshotOffHeapProfiles() throws Exception {
+        loadAndContinue(PerformanceConfiguration.baseBuilder()
+                        .riskEnginesNum(2)
+                        .matchingEnginesNum(2)
+                        .userProfileServiceFactory(() -> new OffHeapUserProfileService(2, 16, 1))
+                        .build(),
+                SerializationConfiguration.DISK_SNAPSHOT_ONLY_CHUNKED);
+    }
+
+    private void loadAndContinue(final PerformanceConfiguration perfCfg,
+                                 final SerializationConfiguration serializationCfg) throws Exception {
+
+        final String exchangeId = ExchangeTestContainer.timeBasedExchangeId();
+        copySnapshotFiles(exchangeId);
+
+        final long newSnapshotId = 2L;
+
+        try (final ExchangeTestContainer container = ExchangeTestContainer.create(
+                perfCfg, InitialStateConfiguration.fromSnapshotOnly(exchangeId, SNAPSHOT_ID, 0), serializationCfg)) {
+
+            // state captured by previous version right after persisting
+            checkUser(container, 1001L, 10_219_990L, 99_500L);
+            checkUser(container, 1002L, 9_236_930L, 100_000L);
+            checkUser(container, 1003L, 9_671_470L, 100_000L);
+            checkUser(container, 1004L, 9_779_980L, 100_200L);
+
+            assertThat(container.getUserProfile(1001L).getOrders().get(SYMBOL_EXCHANGE).get(0).orderId, is(1L));
+            assertThat(container.getUserProfile(1002L).getOrders().get(SYMBOL_FUTURES).get(0).filled, is(4L));
+
+            final SingleUserReportResult.Position longPosition = container.getUserProfile(1003L).getPositions().get(SYMBOL_FUTURES);
+            assertThat(longPosition.direction, is(PositionDirection.LONG));
+            assertThat(longPosition.openVolume, is(4L));
+            assertThat(longPosition.openPriceSum, is(8_000L));
+            final SingleUserReportResult.Position shortPosition = container.getUserProfile(1002L).getPositions().get(SYMBOL_FUTURES);
+            assertThat(shortPosition.direction, is(PositionDirection.SHORT));
+            assertThat(shortPosition.openVolume, is(4L));
+            assertThat(shortPosition.pendingSellSize, is(6L));
+            assertThat(container.getUserProfile(1004L).getPositions().get(SYMBOL_FUTURES).pendingBuySize, is(6L));
+
+            final TotalCurrencyBalanceReportResult totalBalance = container.totalBalanceReport();
+            assertThat(totalBalance.getAccountBalances().get(CURRENCY_USD), is(38_908_370L));
+            assertThat(totalBalance.getAccountBalances().get(CURRENCY_EUR), is(399_700L));
+            assertThat(totalBalance.getFees().get(CURRENCY_USD), is(30L));
+            assertThat(totalBalance.isGlobalBalancesAllZero(), is(true));
+
+            checkOrderBook(container.requestCurrentOrderBook(SYMBOL_EXCHANGE), new long[]{11_000, 3}, new long[]{10_950, 3, 10_900, 7});
+            checkOrderBook(container.requestCurrentOrderBook(SYMBOL_FUTURES), new long[]{2_000, 6}, new long[]{1_990, 6});
+
+            // orders of loaded order books are matched
+            container.submitCommandSync(placeOrder(1004L, 8L, SYMBOL_EXCHANGE, OrderAction.BID, 11_000L, 3L), cmd -> {
+                assertThat(cmd.resultCode, is(CommandResultCode.SUCCESS));
+                checkTrade(cmd.matcherEvent, 1L, 1001L, 3L, true);
+            });
+            container.submitCommandSync(placeOrder(1003L, 9L, SYMBOL_FUTURES, OrderAction.ASK, 1_990L, 4L), cmd -> {
+                assertThat(cmd.resultCode, is(CommandResultCode.SUCCESS));
+                checkTrade(cmd.matcherEvent, 7L, 1004L, 4L, false);
+            });
+
+            checkAfterTrades(container);
+
+            // migrated to current format
+            container.submitCommandSync(ApiPersistState.builder().dumpId(newSnapshotId).build(), CommandResultCode.SUCCESS);
+        }
+
+        try (final ExchangeTestContainer container = ExchangeTestContainer.create(
+                perfCfg, InitialStateConfiguration.fromSnapshotOnly(exchangeId, newSnapshotId, 0), serializationCfg)) {
+
+            checkAfterTrades(container);
+        }
+    }
+
+    private static void checkAfterTrades(final ExchangeTestContainer container) throws Exception {
+
+        checkUser(container, 1001L, 10_549_975L, 99_500L);
+        checkUser(container, 1004L, 9_449_950L, 100_500L);
+        assertThat(container.getUserProfile(1001L).getOrders().isEmpty(), is(true));
+        assertThat(container.getUserProfile(1003L).getPositions().isEmpty(), is(true));
+        assertThat(container.getUserProfile(1004L).getPositions().get(SYMBOL_FUTURES).openVolume, is(4L));
+        assertThat(container.totalBalanceReport().isGlobalBalancesAllZero(), is(true));
+
+        checkOrderBook(container.requestCurrentOrderBook(SYMBOL_EXCHANGE), new long[0], new long[]{10_950, 3, 10_900, 7});
+        checkOrderBook(container.requestCurrentOrderBook(SYMBOL_FUTURES), new long[]{2_000, 6}, new long[]{1_990, 2});
+    }
+
+    private static void checkUser(final ExchangeTestContainer container, final long uid, final long usd, final long eur) throws Exception {
+        final SingleUserReportResult profile = container.getUserProfile(uid);
+        assertThat(profile.getQueryExecutionStatus(), is(SingleUserReportResult.QueryExecutionStatus.OK));
+        assertThat("uid=" + uid, profile.getAccounts().get(CURRENCY_USD), is(usd));
+        assertThat("uid=" + uid, profile.getAccounts().get(CURRENCY_EUR), is(eur));
+    }
+
+    // price, volume pairs
+    private static void checkOrderBook(final L2MarketData orderBook, final long[] asks, final long[] bids) {
+        assertThat(orderBook.askSize, is(asks.length / 2));
+        for (int i = 0; i < orderBook.askSize; i++) {
+            assertThat(orderBook.askPrices[i], is(asks[i * 2]));
+            assertThat(orderBook.askVolumes[i], is(asks[i * 2 + 1]));
+        }
+        assertThat(orderBook.bidSize, is(bids.length / 2));
+        for (int i = 0; i < orderBook.bidSize; i++) {
+            assertThat(orderBook.bidPrices[i], is(bids[i * 2]));
+            assertThat(orderBook.bidVolumes[i], is(bids[i * 2 + 1]));
+        }
+    }
+
+    private static void checkTrade(final MatcherTradeEvent trade, final long makerOrderId, final long makerUid, final long size,
+                                   final boolean makerOrderCompleted) {
+        assertThat(trade.matchedOrderId, is(makerOrderId));
+        assertThat(trade.matchedOrderUid, is(makerUid));
+        assertThat(trade.size, is(size));
+        assertThat(trade.matchedOrderCompleted, is(makerOrderCompleted));
+    }
+
+    private static ApiPlaceOrder placeOrder(final long uid, final long orderId, final int symbol, final OrderAction action,
+                                            final long price, final long size) {
+        return ApiPlaceOrder.builder()
+                .uid(uid)
+                .orderId(orderId)
+                .symbol(symbol)
+                .action(action)
+                .orderType(OrderType.IOC)
+                .price(price)
+                .reservePrice(price)
+                .size(size)
+                .build();
+    }
+
+    private static void copySnapshotFiles(final String exchangeId) throws Exception {
+        final Path folder = Paths.get(DiskSerializationProcessorConfiguration.DEFAULT_FOLDER);
+        Files.createDirectories(folder);
+        for (final String module : new String[]{"RE0", "RE1", "ME0", "ME1"}) {
+            final String suffix = "_snapshot_" + SNAPSHOT_ID + "_" + module + ".ecs";
+            try (final InputStream is = ITSnapshotPreviousFormat.class.getResourceAsStream("/exchange/core2/tests/snapshots/" + RESOURCE_EXCHANGE_ID + suffix)) {
+                Files.copy(is, folder.resolve(exchangeId + suffix));
+            }
+        }
+    }
+}
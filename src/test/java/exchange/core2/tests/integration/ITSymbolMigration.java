@@ -0,0 +1,221 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.tests.integration;
+
+import exchange.core2.core.ExchangeApi;
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.api.ApiCommand;
+import exchange.core2.core.common.api.ApiPlaceOrder;
+import exchange.core2.core.common.api.binary.BatchAssignSymbolShardsCommand;
+import exchange.core2.core.common.api.binary.BatchMigrateSymbolsCommand;
+import exchange.core2.core.common.api.reports.ShardsLoadReportQuery;
+import exchange.core2.core.common.api.reports.ShardsLoadReportResult;
+import exchange.core2.core.common.api.reports.StateHashReportQuery;
+import exchange.core2.core.common.api.reports.StateHashReportResult;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.core.orderbook.IOrderBook;
+import exchange.core2.core.orderbook.OrderBookNaiveImpl;
+import exchange.core2.core.processors.sharding.IShardingPolicy;
+import exchange.core2.core.processors.sharding.ModuloShardingPolicy;
+import exchange.core2.core.processors.sharding.SymbolShardsTable;
+import exchange.core2.tests.util.*;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.collections.impl.map.mutable.primitive.IntIntHashMap;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Slf4j
+public final class ITSymbolMigration {
+
+    private static final int MATCHING_ENGINES = 3;
+
+    /**
+     * Two hottest symbols from different shards swap their shards in the middle of the commands stream.
+     * Final state (state hash of every submodule) must be the same as if symbols were assigned to the new shards from the beginning.
+     */
+    @Test
+    @Timeout(120)
+    public void shouldMigrateLiveOrderBooks() throws Exception {
+
+        final PerformanceConfiguration perfCfg = PerformanceConfiguration.baseBuilder()
+                .matchingEnginesNum(MATCHING_ENGINES)
+                .riskEnginesNum(2)
+                .symbolShardingPolicyFactory(SymbolShardsTable.factory(ModuloShardingPolicy::new))
+                .build();
+
+        final ExchangeTestContainer.TestDataFutures testDataFutures = ExchangeTestContainer.prepareTestDataAsync(
+                TestDataParameters.builder()
+                        .totalTransactionsNumber(100_000)
+                        .targetOrderBookOrdersTotal(5_000)
+                        .numAccounts(2_000)
+                        .currenciesAllowed(TestConstants.ALL_CURRENCIES)
+                        .numSymbols(20)
+                        .allowedSymbolTypes(ExchangeTestContainer.AllowedSymbolTypes.BOTH)
+                        .preFillMode(TestOrdersGeneratorConfig.PreFillMode.ORDERS_NUMBER)
+                        .build(),
+                1);
+
+        final Map<Integer, TestOrdersGenerator.GenResult> genResults = testDataFutures.getGenResult().join().getGenResults();
+        final List<ApiCommand> apiCommandsBenchmark = testDataFutures.getGenResult().join().getApiCommandsBenchmark().join();
+
+        // two hottest symbols belonging to different shards
+        final IShardingPolicy initialPolicy = new ModuloShardingPolicy(MATCHING_ENGINES);
+        final List<Integer> symbolsByPopularity = genResults.entrySet().stream()
+                .sorted(Comparator.comparingInt((Map.Entry<Integer, TestOrdersGenerator.GenResult> e) -> e.getValue().getCommandsBenchmark().size()).reversed())
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+        final int symbol1 = symbolsByPopularity.get(0);
+        final int shard1 = initialPolicy.shardOf(symbol1);
+        final int symbol2 = symbolsByPopularity.stream().filter(s -> initialPolicy.shardOf(s) != shard1).findFirst().orElseThrow(IllegalStateException::new);
+        final int shard2 = initialPolicy.shardOf(symbol2);
+        final IntIntHashMap targetShards = IntIntHashMap.newWithKeysValues(symbol1, shard2, symbol2, shard1);
+        log.debug("Migrating symbols (symbol -> target shard): {}", targetShards);
+
+        final Map<StateHashReportResult.SubmoduleKey, Integer> migratedStateHashes;
+        try (final ExchangeTestContainer container = ExchangeTestContainer.create(perfCfg)) {
+            container.loadSymbolsUsersAndPrefillOrdersNoLog(testDataFutures);
+
+            final ExchangeApi api = container.getApi();
+            final int half = apiCommandsBenchmark.size() / 2;
+
+            // migration command is published without waiting - order books are migrated while pipeline is full
+            apiCommandsBenchmark.subList(0, half).forEach(api::submitCommand);
+            final CompletableFuture<CommandResultCode> migrationResult = api.submitBinaryDataAsync(new BatchMigrateSymbolsCommand(targetShards));
+            api.submitCommandsSync(apiCommandsBenchmark.subList(half, apiCommandsBenchmark.size()));
+            assertThat(migrationResult.get(), is(CommandResultCode.SUCCESS));
+
+            // commands after migration are processed by target shards
+            final ShardsLoadReportResult shardsLoad = api.processReport(new ShardsLoadReportQuery(), 0).get();
+            assertThat(shardsLoad.getShardsSymbolCommands().get(shard1).containsKey(symbol1), is(false));
+            assertThat(shardsLoad.getShardsSymbolCommands().get(shard2).get(symbol1), greaterThan(0L));
+            assertThat(shardsLoad.getShardsSymbolCommands().get(shard2).containsKey(symbol2), is(false));
+            assertThat(shardsLoad.getShardsSymbolCommands().get(shard1).get(symbol2), greaterThan(0L));
+            log.debug("Shards utilisation: {}", shardsLoad);
+
+            assertTrue(container.totalBalanceReport().isGlobalBalancesAllZero());
+            genResults.forEach((symbol, genResult) -> assertEquals(genResult.getFinalOrderBookSnapshot(), container.requestCurrentOrderBook(symbol)));
+
+            migratedStateHashes = requestStateHashes(container);
+        }
+
+        // reference: symbols are assigned to target shards before they are added
+        try (final ExchangeTestContainer container = ExchangeTestContainer.create(perfCfg)) {
+            container.sendBinaryDataCommandSync(new BatchAssignSymbolShardsCommand(targetShards), 5000);
+            container.loadSymbolsUsersAndPrefillOrdersNoLog(testDataFutures);
+            container.getApi().submitCommandsSync(apiCommandsBenchmark);
+
+            assertThat(requestStateHashes(container), is(migratedStateHashes));
+        }
+    }
+
+    /**
+     * Source shard fails to serialize order book of one symbol: its migration is aborted (order book and routing are not changed),
+     * another symbol is migrated, and both shards keep processing commands.
+     */
+    @Test
+    @Timeout(60)
+    public void shouldAbortMigrationIfOrderBookSerializationFails() throws Exception {
+
+        // both symbols belong to shard 1 initially
+        final PerformanceConfiguration perfCfg = PerformanceConfiguration.baseBuilder()
+                .matchingEnginesNum(2)
+                .symbolShardingPolicyFactory(SymbolShardsTable.factory(ModuloShardingPolicy::new))
+                .orderBookFactory(failingSerializationFactory(OrderBookNaiveImpl::new, TestConstants.SYMBOL_EXCHANGE))
+                .build();
+
+        try (final ExchangeTestContainer container = ExchangeTestContainer.create(perfCfg)) {
+            container.initBasicSymbols();
+            container.initBasicUsers();
+
+            final ExchangeApi api = container.getApi();
+            container.submitCommandSync(ApiPlaceOrder.builder().uid(TestConstants.UID_1).orderId(101).price(30_000).reservePrice(30_000)
+                    .size(7).action(OrderAction.BID).orderType(OrderType.GTC).symbol(TestConstants.SYMBOL_EXCHANGE).build(), CommandResultCode.SUCCESS);
+            container.submitCommandSync(ApiPlaceOrder.builder().uid(TestConstants.UID_1).orderId(102).price(1_600)
+                    .size(7).action(OrderAction.ASK).orderType(OrderType.GTC).symbol(TestConstants.SYMBOL_MARGIN).build(), CommandResultCode.SUCCESS);
+
+            final IntIntHashMap targetShards = IntIntHashMap.newWithKeysValues(TestConstants.SYMBOL_EXCHANGE, 0, TestConstants.SYMBOL_MARGIN, 0);
+            assertThat(api.submitBinaryDataAsync(new BatchMigrateSymbolsCommand(targetShards)).get(), is(CommandResultCode.SUCCESS));
+
+            // both shards are matching orders
+            container.submitCommandSync(ApiPlaceOrder.builder().uid(TestConstants.UID_2).orderId(201).price(30_000)
+                    .size(5).action(OrderAction.ASK).orderType(OrderType.IOC).symbol(TestConstants.SYMBOL_EXCHANGE).build(), CommandResultCode.SUCCESS);
+            container.submitCommandSync(ApiPlaceOrder.builder().uid(TestConstants.UID_2).orderId(202).price(1_700).reservePrice(1_700)
+                    .size(2).action(OrderAction.BID).orderType(OrderType.IOC).symbol(TestConstants.SYMBOL_MARGIN).build(), CommandResultCode.SUCCESS);
+            assertThat(container.requestCurrentOrderBook(TestConstants.SYMBOL_EXCHANGE).bidVolumes[0], is(2L));
+            assertThat(container.requestCurrentOrderBook(TestConstants.SYMBOL_MARGIN).askVolumes[0], is(5L));
+
+            final ShardsLoadReportResult shardsLoad = api.processReport(new ShardsLoadReportQuery(), 0).get();
+            assertThat(shardsLoad.getShardsSymbolCommands().get(1).get(TestConstants.SYMBOL_EXCHANGE), greaterThan(0L));
+            assertThat(shardsLoad.getShardsSymbolCommands().get(0).containsKey(TestConstants.SYMBOL_EXCHANGE), is(false));
+            assertThat(shardsLoad.getShardsSymbolCommands().get(0).get(TestConstants.SYMBOL_MARGIN), greaterThan(0L));
+            assertThat(shardsLoad.getShardsSymbolCommands().get(1).containsKey(TestConstants.SYMBOL_MARGIN), is(false));
+
+            // repeated migration fails again, then order book is still available on source shard
+            assertThat(api.submitBinaryDataAsync(new BatchMigrateSymbolsCommand(targetShards)).get(), is(CommandResultCode.SUCCESS));
+            container.submitCommandSync(ApiPlaceOrder.builder().uid(TestConstants.UID_2).orderId(203).price(30_000)
+                    .size(2).action(OrderAction.ASK).orderType(OrderType.IOC).symbol(TestConstants.SYMBOL_EXCHANGE).build(), CommandResultCode.SUCCESS);
+            assertThat(container.requestCurrentOrderBook(TestConstants.SYMBOL_EXCHANGE).bidSize, is(0));
+
+            assertTrue(container.totalBalanceReport().isGlobalBalancesAllZero());
+        }
+    }
+
+    // order books of the symbol throw exception on serialization
+    private static IOrderBook.OrderBookFactory failingSerializationFactory(final IOrderBook.OrderBookFactory factory, final int symbol) {
+        return (spec, pool, eventsHelper, loggingCfg) -> {
+            final IOrderBook orderBook = factory.create(spec, pool, eventsHelper, loggingCfg);
+            if (spec.symbolId != symbol) {
+                return orderBook;
+            }
+            return (IOrderBook) Proxy.newProxyInstance(IOrderBook.class.getClassLoader(), new Class<?>[]{IOrderBook.class}, (proxy, method, args) -> {
+                if (method.getName().equals("writeMarshallable")) {
+                    throw new IllegalStateException("Order book serialization failed");
+                }
+                try {
+                    return method.invoke(orderBook, args);
+                } catch (final InvocationTargetException ex) {
+                    throw ex.getCause();
+                }
+            });
+        };
+    }
+
+    private static Map<StateHashReportResult.SubmoduleKey, Integer> requestStateHashes(final ExchangeTestContainer container)
+            throws InterruptedException, ExecutionException {
+
+        // last price cache is updated from L2 snapshots requested by grouping processor every 10ms (depends on timing)
+        return container.getApi().processReport(new StateHashReportQuery(), 0).get().getHashCodes().entrySet().stream()
+                .filter(e -> e.getKey().submodule != StateHashReportResult.SubmoduleType.RISK_LAST_PRICE_CACHE)
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+    }
+}
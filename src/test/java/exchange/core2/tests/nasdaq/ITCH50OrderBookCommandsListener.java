@@ -0,0 +1,192 @@
+package exchange.core2.tests.nasdaq;
+
+import com.paritytrading.juncture.nasdaq.itch50.ITCH50;
+import com.paritytrading.juncture.nasdaq.itch50.ITCH50Listener;
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.cmd.OrderCommand;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.collections.impl.map.mutable.primitive.IntObjectHashMap;
+import org.eclipse.collections.impl.map.mutable.primitive.LongByteHashMap;
+import org.eclipse.collections.impl.set.mutable.primitive.IntHashSet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Converts ITCH50 order messages into order book commands (per symbol), so that the day can be replayed into order book implementations.
+ * <p>
+ * AddOrder -> GTC order, OrderExecuted/OrderCancel -> reduce, OrderDelete -> cancel, OrderReplace -> cancel + GTC order.
+ * Executions are replayed as reduce commands, because NASDAQ does not publish taker orders.
+ */
+@Slf4j
+public class ITCH50OrderBookCommandsListener implements ITCH50Listener {
+
+    private static final int NUM_USERS_MASK = (1 << 20) - 1;
+
+    private final IntHashSet symbols;
+    private final int maxCommandsPerSymbol;
+
+    @Getter
+    private final IntObjectHashMap<List<OrderCommand>> symbolCommands = new IntObjectHashMap<>();
+
+    // orderRef -> action code (required for replace)
+    private final LongByteHashMap orderActions = new LongByteHashMap();
+
+    public ITCH50OrderBookCommandsListener(final IntHashSet symbols, final int maxCommandsPerSymbol) {
+        this.symbols = symbols;
+        this.maxCommandsPerSymbol = maxCommandsPerSymbol;
+        symbols.forEach(symbol -> symbolCommands.put(symbol, new ArrayList<>()));
+    }
+
+    public long getTotalCommands() {
+        return symbolCommands.sumOfInt(List::size);
+    }
+
+    private boolean accept(final int stockLocate) {
+        return symbols.contains(stockLocate) && symbolCommands.get(stockLocate).size() < maxCommandsPerSymbol;
+    }
+
+    private void placeOrder(final int stockLocate, final long orderRef, final byte buySellIndicator, final long shares, final long price) {
+        final OrderAction action = buySellIndicator == ITCH50.SELL ? OrderAction.ASK : OrderAction.BID;
+        orderActions.put(orderRef, action.getCode());
+        final OrderCommand cmd = OrderCommand.newOrder(OrderType.GTC, orderRef, uid(orderRef), price, price, shares, action);
+        cmd.symbol = stockLocate;
+        symbolCommands.get(stockLocate).add(cmd);
+    }
+
+    private void reduceOrder(final int stockLocate, final long orderRef, final long shares) {
+        final OrderCommand cmd = OrderCommand.reduce(orderRef, uid(orderRef), shares);
+        cmd.symbol = stockLocate;
+        symbolCommands.get(stockLocate).add(cmd);
+    }
+
+    private void cancelOrder(final int stockLocate, final long orderRef) {
+        orderActions.remove(orderRef);
+        final OrderCommand cmd = OrderCommand.cancel(orderRef, uid(orderRef));
+        cmd.symbol = stockLocate;
+        symbolCommands.get(stockLocate).add(cmd);
+    }
+
+    private static long uid(final long orderRef) {
+        return NasdaqReader.hashToUid(orderRef, NUM_USERS_MASK);
+    }
+
+    @Override
+    public void addOrder(ITCH50.AddOrder message) {
+        if (accept(message.stockLocate)) {
+            placeOrder(message.stockLocate, message.orderReferenceNumber, message.buySellIndicator, message.shares, message.price);
+        }
+    }
+
+    @Override
+    public void addOrderMPID(ITCH50.AddOrderMPID message) {
+        if (accept(message.stockLocate)) {
+            placeOrder(message.stockLocate, message.orderReferenceNumber, message.buySellIndicator, message.shares, message.price);
+        }
+    }
+
+    @Override
+    public void orderExecuted(ITCH50.OrderExecuted message) {
+        if (accept(message.stockLocate)) {
+            reduceOrder(message.stockLocate, message.orderReferenceNumber, message.executedShares);
+        }
+    }
+
+    @Override
+    public void orderExecutedWithPrice(ITCH50.OrderExecutedWithPrice message) {
+        if (accept(message.stockLocate)) {
+            reduceOrder(message.stockLocate, message.orderReferenceNumber, message.executedShares);
+        }
+    }
+
+    @Override
+    public void orderCancel(ITCH50.OrderCancel message) {
+        if (accept(message.stockLocate)) {
+            reduceOrder(message.stockLocate, message.orderReferenceNumber, message.canceledShares);
+        }
+    }
+
+    @Override
+    public void orderDelete(ITCH50.OrderDelete message) {
+        if (accept(message.stockLocate)) {
+            cancelOrder(message.stockLocate, message.orderReferenceNumber);
+        }
+    }
+
+    @Override
+    public void orderReplace(ITCH50.OrderReplace message) {
+        if (accept(message.stockLocate)) {
+            final long originalRef = message.originalOrderReferenceNumber;
+            final byte actionCode = orderActions.getIfAbsent(originalRef, (byte) -1);
+            cancelOrder(message.stockLocate, originalRef);
+            if (actionCode != -1) {
+                final byte buySellIndicator = OrderAction.of(actionCode) == OrderAction.ASK ? ITCH50.SELL : ITCH50.BUY;
+                placeOrder(message.stockLocate, message.newOrderReferenceNumber, buySellIndicator, message.shares, message.price);
+            }
+        }
+    }
+
+    // ----------------- not related to order books ----------
+
+    @Override
+    public void systemEvent(ITCH50.SystemEvent message) {
+    }
+
+    @Override
+    public void stockDirectory(ITCH50.StockDirectory message) {
+    }
+
+    @Override
+    public void stockTradingAction(ITCH50.StockTradingAction message) {
+    }
+
+    @Override
+    public void regSHORestriction(ITCH50.RegSHORestriction message) {
+    }
+
+    @Override
+    public void marketParticipantPosition(ITCH50.MarketParticipantPosition message) {
+    }
+
+    @Override
+    public void mwcbDeclineLevel(ITCH50.MWCBDeclineLevel message) {
+    }
+
+    @Override
+    public void mwcbStatus(ITCH50.MWCBStatus message) {
+    }
+
+    @Override
+    public void ipoQuotingPeriodUpdate(ITCH50.IPOQuotingPeriodUpdate message) {
+    }
+
+    @Override
+    public void luldAuctionCollar(ITCH50.LULDAuctionCollar message) {
+    }
+
+    @Override
+    public void operationalHalt(ITCH50.OperationalHalt message) {
+    }
+
+    @Override
+    public void trade(ITCH50.Trade message) {
+    }
+
+    @Override
+    public void crossTrade(ITCH50.CrossTrade message) {
+    }
+
+    @Override
+    public void brokenTrade(ITCH50.BrokenTrade message) {
+    }
+
+    @Override
+    public void noii(ITCH50.NOII message) {
+    }
+
+    @Override
+    public void rpii(ITCH50.RPII message) {
+    }
+}
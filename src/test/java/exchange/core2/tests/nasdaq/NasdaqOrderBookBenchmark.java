@@ -0,0 +1,130 @@
+package exchange.core2.tests.nasdaq;
+
+import com.paritytrading.juncture.nasdaq.itch50.ITCH50Parser;
+import com.paritytrading.nassau.util.BinaryFILE;
+import exchange.core2.collections.objpool.ObjectsPool;
+import exchange.core2.core.common.CoreSymbolSpecification;
+import exchange.core2.core.common.SymbolType;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.config.LoggingConfiguration;
+import exchange.core2.core.orderbook.IOrderBook;
+import exchange.core2.core.orderbook.OrderBookEventsHelper;
+import exchange.core2.tests.util.TestConstants;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.collections.impl.map.mutable.primitive.IntIntHashMap;
+import org.eclipse.collections.impl.set.mutable.primitive.IntHashSet;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Replays NASDAQ ITCH50 day (most active symbols) into different order book implementations.
+ * Price tick for each symbol is taken from the price statistics (used by price ladder implementation).
+ */
+@Slf4j
+public class NasdaqOrderBookBenchmark {
+
+    private static final String PATHNAME = "../../nasdaq/01302020.NASDAQ_ITCH50";
+
+    private static final int SYMBOLS_NUM = 32;
+    private static final int MAX_COMMANDS_PER_SYMBOL = 2_000_000;
+    private static final int ITERATIONS = 8;
+
+    private static final List<IOrderBook.OrderBookImplType> IMPLEMENTATIONS = Arrays.asList(
+            IOrderBook.OrderBookImplType.NAIVE,
+            IOrderBook.OrderBookImplType.DIRECT,
+            IOrderBook.OrderBookImplType.PRICE_LADDER);
+
+    @Test
+    public void benchmarkOrderBooks() throws Exception {
+
+        final File file = new File(PATHNAME);
+
+        // first pass - find most active symbols and their price steps
+        final ITCH50StatListener statListener = new ITCH50StatListener();
+        BinaryFILE.read(file, new ITCH50Parser(statListener));
+
+        final List<ITCH50StatListener.StockStat> topSymbols = statListener.getSymbolStat().values().stream()
+                .filter(stat -> stat.priceSample)
+                .sorted(Comparator.comparingInt((ITCH50StatListener.StockStat stat) -> stat.counter).reversed())
+                .limit(SYMBOLS_NUM)
+                .collect(Collectors.toList());
+
+        final IntHashSet symbols = new IntHashSet();
+        final IntIntHashMap priceSteps = new IntIntHashMap();
+        topSymbols.forEach(stat -> {
+            symbols.add(stat.stockLocate);
+            priceSteps.put(stat.stockLocate, stat.priceStep);
+            log.info("{} {}", statListener.getSymbolDescr().get(stat.stockLocate), stat);
+        });
+
+        // second pass - convert messages into order book commands
+        final ITCH50OrderBookCommandsListener commandsListener = new ITCH50OrderBookCommandsListener(symbols, MAX_COMMANDS_PER_SYMBOL);
+        BinaryFILE.read(file, new ITCH50Parser(commandsListener));
+        final long totalCommands = commandsListener.getTotalCommands();
+        log.info("Converted {} commands for {} symbols", totalCommands, symbols.size());
+
+        final Map<IOrderBook.OrderBookImplType, List<Float>> perfResults = new EnumMap<>(IOrderBook.OrderBookImplType.class);
+
+        for (int j = 0; j < ITERATIONS; j++) {
+
+            Map<Integer, Integer> referenceHashes = null;
+
+            for (final IOrderBook.OrderBookImplType type : IMPLEMENTATIONS) {
+
+                final Map<Integer, Integer> stateHashes = new HashMap<>();
+                final IOrderBook.OrderBookFactory factory = IOrderBook.factoryOf(type);
+                final OrderCommand workCmd = new OrderCommand();
+
+                long t = System.nanoTime();
+                for (final int symbol : symbols.toSortedArray()) {
+                    final IOrderBook orderBook = factory.create(
+                            createSymbolSpec(symbol, priceSteps.get(symbol)),
+                            ObjectsPool.createDefaultTestPool(),
+                            OrderBookEventsHelper.NON_POOLED_EVENTS_HELPER,
+                            LoggingConfiguration.DEFAULT);
+
+                    for (final OrderCommand cmd : commandsListener.getSymbolCommands().get(symbol)) {
+                        cmd.writeTo(workCmd);
+                        workCmd.resultCode = CommandResultCode.VALID_FOR_MATCHING_ENGINE;
+                        IOrderBook.processCommand(orderBook, workCmd);
+                    }
+                    stateHashes.put(symbol, orderBook.stateHash());
+                }
+                t = System.nanoTime() - t;
+
+                final float perfMt = (float) totalCommands * 1000.0f / (float) t;
+                perfResults.computeIfAbsent(type, k -> new ArrayList<>()).add(perfMt);
+                log.info("{}. {}: {} MT/s ({} ms)", j, type, perfMt, t / 1_000_000);
+
+                // all implementations must end up in the same state
+                if (referenceHashes == null) {
+                    referenceHashes = stateHashes;
+                } else {
+                    assertThat(stateHashes, is(referenceHashes));
+                }
+            }
+        }
+
+        perfResults.forEach((type, results) -> log.info("{} average: {} MT/s", type,
+                (float) results.stream().skip(ITERATIONS / 2).mapToDouble(x -> x).average().orElse(0)));
+    }
+
+    private static CoreSymbolSpecification createSymbolSpec(final int stockLocate, final int priceStep) {
+        return CoreSymbolSpecification.builder()
+                .symbolId(stockLocate)
+                .type(SymbolType.FUTURES_CONTRACT)
+                .baseCurrency(stockLocate + 10_000)
+                .quoteCurrency(TestConstants.CURRENECY_USD)
+                .baseScaleK(1)
+                .quoteScaleK(1)
+                .priceTick(priceStep)
+                .build();
+    }
+}
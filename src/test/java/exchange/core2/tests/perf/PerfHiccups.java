@@ -17,6 +17,8 @@ package exchange.core2.tests.perf;
 
 import exchange.core2.core.common.config.InitialStateConfiguration;
 import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.core.common.config.SerializationConfiguration;
+import exchange.core2.tests.util.ExchangeTestContainer;
 import exchange.core2.tests.util.TestDataParameters;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.Test;
@@ -42,5 +44,81 @@ public final class PerfHiccups {
                 3);
     }
 
+    /**
+     * Snapshot is created after every 1M commands, state is serialized and written on module threads
+     */
+    @Test
+    public void testHiccupMarginSnapshots() {
+        hiccupTestImpl(
+                PerformanceConfiguration.latencyPerformanceBuilder()
+                        .ringBufferSize(2 * 1024)
+                        .matchingEnginesNum(1)
+                        .riskEnginesNum(1)
+                        .msgsInGroupLimit(256)
+                        .build(),
+                TestDataParameters.singlePairMarginBuilder().build(),
+                InitialStateConfiguration.cleanStart(ExchangeTestContainer.timeBasedExchangeId()),
+                SerializationConfiguration.DISK_SNAPSHOT_ONLY,
+                1_000_000,
+                3);
+    }
+
+    /**
+     * Same as testHiccupMarginSnapshots, but module threads only capture state, compression and file I/O are done in background
+     */
+    @Test
+    public void testHiccupMarginSnapshotsAsync() {
+        hiccupTestImpl(
+                PerformanceConfiguration.latencyPerformanceBuilder()
+                        .ringBufferSize(2 * 1024)
+                        .matchingEnginesNum(1)
+                        .riskEnginesNum(1)
+                        .msgsInGroupLimit(256)
+                        .build(),
+                TestDataParameters.singlePairMarginBuilder().build(),
+                InitialStateConfiguration.cleanStart(ExchangeTestContainer.timeBasedExchangeId()),
+                SerializationConfiguration.DISK_SNAPSHOT_ONLY_ASYNC,
+                1_000_000,
+                3);
+    }
+
+    /**
+     * Journaling into small files (64MB), next journal file is created by journaling thread on rollover
+     */
+    @Test
+    public void testHiccupMarginJournalRollover() {
+        hiccupTestImpl(
+                PerformanceConfiguration.latencyPerformanceBuilder()
+                        .ringBufferSize(2 * 1024)
+                        .matchingEnginesNum(1)
+                        .riskEnginesNum(1)
+                        .msgsInGroupLimit(256)
+                        .build(),
+                TestDataParameters.singlePairMarginBuilder().build(),
+                InitialStateConfiguration.cleanStartJournaling(ExchangeTestContainer.timeBasedExchangeId()),
+                SerializationConfiguration.DISK_JOURNALING_SMALL_FILES,
+                0,
+                3);
+    }
+
+    /**
+     * Same as testHiccupMarginJournalRollover, but next journal files are created and zero-filled in background
+     */
+    @Test
+    public void testHiccupMarginJournalPreallocated() {
+        hiccupTestImpl(
+                PerformanceConfiguration.latencyPerformanceBuilder()
+                        .ringBufferSize(2 * 1024)
+                        .matchingEnginesNum(1)
+                        .riskEnginesNum(1)
+                        .msgsInGroupLimit(256)
+                        .build(),
+                TestDataParameters.singlePairMarginBuilder().build(),
+                InitialStateConfiguration.cleanStartJournaling(ExchangeTestContainer.timeBasedExchangeId()),
+                SerializationConfiguration.DISK_JOURNALING_PREALLOCATED,
+                0,
+                3);
+    }
+
 
 }
\ No newline at end of file
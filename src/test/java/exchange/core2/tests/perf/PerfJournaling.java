@@ -16,6 +16,7 @@
 package exchange.core2.tests.perf;
 
 import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.core.common.config.SerializationConfiguration;
 import exchange.core2.tests.util.*;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.Test;
@@ -50,6 +51,76 @@ public final class PerfJournaling {
                 10);
     }
 
+    @Test
+    public void testJournalingMarginV1Format() throws Exception {
+        JournalingTestsModule.journalingTestImpl(
+                PerformanceConfiguration.throughputPerformanceBuilder()
+                        .matchingEnginesNum(1)
+                        .riskEnginesNum(1)
+                        .build(),
+                TestDataParameters.singlePairMarginBuilder()
+                        .preFillMode(TestOrdersGeneratorConfig.PreFillMode.ORDERS_NUMBER_PLUS_QUARTER)
+                        .build(),
+                SerializationConfiguration.DISK_JOURNALING_V1,
+                10);
+    }
+
+    @Test
+    public void testJournalTailingMargin() throws Exception {
+        JournalingTestsModule.journalTailingTestImpl(
+                PerformanceConfiguration.throughputPerformanceBuilder()
+                        .matchingEnginesNum(1)
+                        .riskEnginesNum(1)
+                        .build(),
+                TestDataParameters.singlePairMarginBuilder()
+                        .preFillMode(TestOrdersGeneratorConfig.PreFillMode.ORDERS_NUMBER_PLUS_QUARTER)
+                        .build(),
+                SerializationConfiguration.DISK_JOURNALING_SMALL_FILES,
+                3);
+    }
+
+    @Test
+    public void testWarmStandbyMargin() throws Exception {
+        JournalingTestsModule.warmStandbyTestImpl(
+                PerformanceConfiguration.throughputPerformanceBuilder()
+                        .matchingEnginesNum(1)
+                        .riskEnginesNum(1)
+                        .build(),
+                TestDataParameters.singlePairMarginBuilder()
+                        .preFillMode(TestOrdersGeneratorConfig.PreFillMode.ORDERS_NUMBER_PLUS_QUARTER)
+                        .build(),
+                SerializationConfiguration.DISK_JOURNALING,
+                3);
+    }
+
+    @Test
+    public void testJournalingMarginMapped() throws Exception {
+        JournalingTestsModule.journalingTestImpl(
+                PerformanceConfiguration.throughputPerformanceBuilder()
+                        .matchingEnginesNum(1)
+                        .riskEnginesNum(1)
+                        .build(),
+                TestDataParameters.singlePairMarginBuilder()
+                        .preFillMode(TestOrdersGeneratorConfig.PreFillMode.ORDERS_NUMBER_PLUS_QUARTER)
+                        .build(),
+                SerializationConfiguration.DISK_JOURNALING_MAPPED,
+                10);
+    }
+
+    @Test
+    public void testJournalingExchangeMappedAsync() throws Exception {
+        JournalingTestsModule.journalingTestImpl(
+                PerformanceConfiguration.throughputPerformanceBuilder()
+                        .matchingEnginesNum(1)
+                        .riskEnginesNum(1)
+                        .build(),
+                TestDataParameters.singlePairExchangeBuilder()
+                        .preFillMode(TestOrdersGeneratorConfig.PreFillMode.ORDERS_NUMBER_PLUS_QUARTER)
+                        .build(),
+                SerializationConfiguration.DISK_JOURNALING_MAPPED_ASYNC,
+                10);
+    }
+
     @Test
     public void testJournalingMultiSymbolSmall() throws Exception {
         JournalingTestsModule.journalingTestImpl(
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.tests.perf;
+
+import exchange.core2.core.common.IngressMode;
+import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.tests.util.TestDataParameters;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+
+import static exchange.core2.tests.util.LatencyTestsModule.multiProducerLatencyTestImpl;
+
+/**
+ * Compares latency of MULTI_PRODUCER and SEQUENCED_SINGLE_PRODUCER ingress modes with 1, 4 and 16 gateway threads.
+ */
+@Slf4j
+public final class PerfLatencyIngress {
+
+    private static final int[] PRODUCERS = {1, 4, 16};
+    private static final int[] TARGET_TPS = {200_000, 500_000, 1_000_000, 2_000_000};
+
+    @Test
+    public void testLatencyMultiProducer() {
+        for (int producers : PRODUCERS) {
+            runTest(IngressMode.MULTI_PRODUCER, producers);
+        }
+    }
+
+    @Test
+    public void testLatencySequencedSingleProducer() {
+        for (int producers : PRODUCERS) {
+            runTest(IngressMode.SEQUENCED_SINGLE_PRODUCER, producers);
+        }
+    }
+
+    private static void runTest(final IngressMode ingressMode, final int producers) {
+        log.info("Ingress mode {}, {} producers", ingressMode, producers);
+        multiProducerLatencyTestImpl(
+                PerformanceConfiguration.latencyPerformanceBuilder()
+                        .ringBufferSize(2 * 1024)
+                        .matchingEnginesNum(1)
+                        .riskEnginesNum(1)
+                        .msgsInGroupLimit(256)
+                        .ingressMode(ingressMode)
+                        .build(),
+                TestDataParameters.singlePairExchangeBuilder().build(),
+                producers,
+                TARGET_TPS,
+                8);
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.tests.perf;
+
+import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.tests.util.TestDataParameters;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+
+import static exchange.core2.tests.util.LatencyTestsModule.egressLatencyTestImpl;
+import static exchange.core2.tests.util.LatencyTestsModule.ipcLatencyTestImpl;
+
+/**
+ * Latency of gateway running in separate process on the same host: commands are sent through shared memory ingress,
+ * results are received from shared memory broadcast.
+ * Compare with PerfLatency#testLatencyExchange (gateway in the same process).
+ * <p>
+ * Results stage latency with shared memory egress (trades, reduce/reject events and L2 updates are broadcast)
+ * should not depend on subscribers speed - slow subscriber is lapped.
+ */
+@Slf4j
+public final class PerfLatencyIpc {
+
+    private static final int[] TARGET_TPS = {200_000, 500_000, 1_000_000, 2_000_000};
+
+    @Test
+    public void testLatencyExchangeIpc() {
+        ipcLatencyTestImpl(
+                PerformanceConfiguration.latencyPerformanceBuilder()
+                        .ringBufferSize(2 * 1024)
+                        .matchingEnginesNum(1)
+                        .riskEnginesNum(1)
+                        .msgsInGroupLimit(256)
+                        .build(),
+                TestDataParameters.singlePairExchangeBuilder().build(),
+                TARGET_TPS,
+                8);
+    }
+
+    @Test
+    public void testResultsLatencyEgress() {
+        egressLatencyTestImpl(egressPerfCfg(), TestDataParameters.singlePairExchangeBuilder().build(), 0, TARGET_TPS, 8);
+    }
+
+    @Test
+    public void testResultsLatencyEgressSlowSubscriber() {
+        // 10us per message - much slower than exchange core
+        egressLatencyTestImpl(egressPerfCfg(), TestDataParameters.singlePairExchangeBuilder().build(), 10_000, TARGET_TPS, 8);
+    }
+
+    private static PerformanceConfiguration egressPerfCfg() {
+        return PerformanceConfiguration.latencyPerformanceBuilder()
+                .ringBufferSize(2 * 1024)
+                .matchingEnginesNum(1)
+                .riskEnginesNum(1)
+                .msgsInGroupLimit(256)
+                .sendL2DeltasForEveryCmd(true)
+                .build();
+    }
+}
@@ -64,6 +64,55 @@ public final class PerfLatencyJournaling {
                 6);
     }
 
+    /*
+     * -------------- Memory-mapped journal (compare with FileChannel journal above) -----------------
+     */
+
+    @Test
+    public void testLatencyMarginJournalingMapped() {
+        latencyTestImpl(
+                PerformanceConfiguration.latencyPerformanceBuilder()
+                        .ringBufferSize(32 * 1024)
+                        .matchingEnginesNum(1)
+                        .riskEnginesNum(1)
+                        .msgsInGroupLimit(256)
+                        .build(),
+                TestDataParameters.singlePairMarginBuilder().build(),
+                InitialStateConfiguration.cleanStartJournaling(ExchangeTestContainer.timeBasedExchangeId()),
+                SerializationConfiguration.DISK_JOURNALING_MAPPED,
+                6);
+    }
+
+    @Test
+    public void testLatencyMarginJournalingMappedAsync() {
+        latencyTestImpl(
+                PerformanceConfiguration.latencyPerformanceBuilder()
+                        .ringBufferSize(32 * 1024)
+                        .matchingEnginesNum(1)
+                        .riskEnginesNum(1)
+                        .msgsInGroupLimit(256)
+                        .build(),
+                TestDataParameters.singlePairMarginBuilder().build(),
+                InitialStateConfiguration.cleanStartJournaling(ExchangeTestContainer.timeBasedExchangeId()),
+                SerializationConfiguration.DISK_JOURNALING_MAPPED_ASYNC,
+                6);
+    }
+
+    @Test
+    public void testLatencyExchangeJournalingMapped() {
+        latencyTestImpl(
+                PerformanceConfiguration.latencyPerformanceBuilder()
+                        .ringBufferSize(32 * 1024)
+                        .matchingEnginesNum(1)
+                        .riskEnginesNum(1)
+                        .msgsInGroupLimit(256)
+                        .build(),
+                TestDataParameters.singlePairExchangeBuilder().build(),
+                InitialStateConfiguration.cleanStartJournaling(ExchangeTestContainer.timeBasedExchangeId()),
+                SerializationConfiguration.DISK_JOURNALING_MAPPED,
+                6);
+    }
+
     @Test
     public void testLatencyMultiSymbolMediumJournaling() {
         latencyTestImpl(
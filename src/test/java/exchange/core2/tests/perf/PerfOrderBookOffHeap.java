@@ -0,0 +1,144 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.tests.perf;
+
+import exchange.core2.collections.objpool.ObjectsPool;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.config.LoggingConfiguration;
+import exchange.core2.core.orderbook.IOrderBook;
+import exchange.core2.core.orderbook.OrderBookDirectImpl;
+import exchange.core2.core.orderbook.OrderBookEventsHelper;
+import exchange.core2.core.orderbook.OrderBookOffHeapImpl;
+import exchange.core2.tests.util.TestConstants;
+import exchange.core2.tests.util.TestOrdersGenerator;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+
+import static exchange.core2.core.common.OrderAction.ASK;
+import static exchange.core2.core.common.OrderAction.BID;
+import static exchange.core2.core.common.OrderType.GTC;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares {@link OrderBookDirectImpl} and {@link OrderBookOffHeapImpl}:
+ * memory used per resting order (heap + direct) and single-thread matching throughput.
+ */
+@Slf4j
+public final class PerfOrderBookOffHeap {
+
+    private static final int RESTING_ORDERS = 1_000_000;
+    private static final int ORDERS_PER_PRICE = 8;
+
+    @Test
+    public void testMemoryPerOrder() {
+
+        final double directHeap = measureMemoryPerOrder("Direct", OrderBookDirectImpl::new);
+        final double offHeapHeap = measureMemoryPerOrder("OffHeap", OrderBookOffHeapImpl::new);
+
+        // orders and buckets objects are not on heap anymore, only indexes
+        assertTrue(offHeapHeap < directHeap, () -> "off-heap order book uses " + offHeapHeap + " heap bytes per order");
+    }
+
+    @Test
+    public void testMatchingThroughput() {
+
+        final int numOrders = 3_000_000;
+        final TestOrdersGenerator.GenResult genResult = TestOrdersGenerator.generateCommands(
+                numOrders,
+                1000,
+                1000,
+                TestOrdersGenerator.UID_PLAIN_MAPPER,
+                0,
+                false,
+                false,
+                TestOrdersGenerator.createAsyncProgressLogger(numOrders),
+                101572685);
+
+        for (int j = 0; j < 8; j++) {
+            final float direct = benchmarkMtps(OrderBookDirectImpl::new, genResult);
+            final float offHeap = benchmarkMtps(OrderBookOffHeapImpl::new, genResult);
+            log.info("{}. Direct: {} MT/s OffHeap: {} MT/s", j, direct, offHeap);
+        }
+    }
+
+    private static float benchmarkMtps(final IOrderBook.OrderBookFactory factory, final TestOrdersGenerator.GenResult genResult) {
+        final IOrderBook orderBook = createOrderBook(factory);
+        final OrderCommand workCmd = new OrderCommand();
+        long t = System.nanoTime();
+        for (OrderCommand cmd : genResult.getCommands()) {
+            cmd.writeTo(workCmd);
+            workCmd.resultCode = CommandResultCode.VALID_FOR_MATCHING_ENGINE;
+            IOrderBook.processCommand(orderBook, workCmd);
+        }
+        t = System.nanoTime() - t;
+
+        orderBook.validateInternalState();
+        assertThat(orderBook.stateHash(), is(genResult.getFinalOrderbookHash()));
+        return (float) genResult.size() * 1000.0f / (float) t;
+    }
+
+    private static double measureMemoryPerOrder(final String name, final IOrderBook.OrderBookFactory factory) {
+
+        final long heapBefore = usedHeap();
+        final long directBefore = usedDirect();
+
+        final IOrderBook orderBook = createOrderBook(factory);
+        final OrderCommand cmd = new OrderCommand();
+        for (int i = 0; i < RESTING_ORDERS; i++) {
+            final boolean ask = (i & 1) == 0;
+            final long price = ask ? 20_000 + i / ORDERS_PER_PRICE : 10_000 - i / ORDERS_PER_PRICE;
+            OrderCommand.newOrder(GTC, i, 1 + i % 1000, price, price, 1 + i % 7, ask ? ASK : BID).writeTo(cmd);
+            cmd.resultCode = CommandResultCode.VALID_FOR_MATCHING_ENGINE;
+            IOrderBook.processCommand(orderBook, cmd);
+        }
+
+        final double heapPerOrder = (usedHeap() - heapBefore) / (double) RESTING_ORDERS;
+        final double directPerOrder = (usedDirect() - directBefore) / (double) RESTING_ORDERS;
+        assertThat(orderBook.getOrdersNum(ASK) + orderBook.getOrdersNum(BID), is(RESTING_ORDERS));
+
+        log.info("{}: heap {} bytes/order, direct {} bytes/order",
+                name, String.format("%.1f", heapPerOrder), String.format("%.1f", directPerOrder));
+        return heapPerOrder;
+    }
+
+    private static IOrderBook createOrderBook(final IOrderBook.OrderBookFactory factory) {
+        return factory.create(
+                TestConstants.SYMBOLSPEC_EUR_USD,
+                ObjectsPool.createDefaultTestPool(),
+                OrderBookEventsHelper.NON_POOLED_EVENTS_HELPER,
+                LoggingConfiguration.DEFAULT);
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long usedDirect() {
+        return ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class).stream()
+                .filter(pool -> pool.getName().equals("direct"))
+                .mapToLong(BufferPoolMXBean::getMemoryUsed)
+                .sum();
+    }
+}
@@ -16,6 +16,7 @@
 package exchange.core2.tests.perf;
 
 import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.core.common.config.SerializationConfiguration;
 import exchange.core2.tests.util.ExchangeTestContainer;
 import exchange.core2.tests.util.PersistenceTestsModule;
 import exchange.core2.tests.util.TestDataParameters;
@@ -49,6 +50,25 @@ public final class PerfPersistence {
                 10);
     }
 
+    /**
+     * Same as testPersistenceMargin, but snapshots are written asynchronously
+     */
+    @Test
+    public void testPersistenceMarginAsyncSnapshots() throws Exception {
+        PersistenceTestsModule.persistenceTestImpl(
+                PerformanceConfiguration.throughputPerformanceBuilder()
+                        .ringBufferSize(32 * 1024)
+                        .matchingEnginesNum(1)
+                        .riskEnginesNum(1)
+                        .msgsInGroupLimit(512)
+                        .build(),
+                TestDataParameters.singlePairMarginBuilder()
+                        .preFillMode(TestOrdersGeneratorConfig.PreFillMode.ORDERS_NUMBER_PLUS_QUARTER)
+                        .build(),
+                SerializationConfiguration.DISK_SNAPSHOT_ONLY_ASYNC,
+                10);
+    }
+
     @Test
     public void testPersistenceExchange() throws Exception {
         PersistenceTestsModule.persistenceTestImpl(
@@ -64,6 +84,78 @@ public final class PerfPersistence {
                 10);
     }
 
+    /**
+     * Recovery time (snapshot + journal replay): sequential replay vs fast replay
+     */
+    @Test
+    public void testRecoveryMargin() throws Exception {
+        PersistenceTestsModule.recoveryTestImpl(
+                PerformanceConfiguration.throughputPerformanceBuilder()
+                        .ringBufferSize(32 * 1024)
+                        .matchingEnginesNum(1)
+                        .riskEnginesNum(1)
+                        .msgsInGroupLimit(512)
+                        .build(),
+                TestDataParameters.singlePairMarginBuilder()
+                        .preFillMode(TestOrdersGeneratorConfig.PreFillMode.ORDERS_NUMBER_PLUS_QUARTER)
+                        .build(),
+                5);
+    }
+
+    /**
+     * Recovery from journal written in fixed size records format (v1)
+     */
+    @Test
+    public void testRecoveryMarginJournalV1() throws Exception {
+        PersistenceTestsModule.recoveryTestImpl(
+                PerformanceConfiguration.throughputPerformanceBuilder()
+                        .ringBufferSize(32 * 1024)
+                        .matchingEnginesNum(1)
+                        .riskEnginesNum(1)
+                        .msgsInGroupLimit(512)
+                        .build(),
+                TestDataParameters.singlePairMarginBuilder()
+                        .preFillMode(TestOrdersGeneratorConfig.PreFillMode.ORDERS_NUMBER_PLUS_QUARTER)
+                        .build(),
+                SerializationConfiguration.DISK_JOURNALING_V1,
+                5);
+    }
+
+    @Test
+    public void testRecoveryMultiSymbolMedium() throws Exception {
+        PersistenceTestsModule.recoveryTestImpl(
+                PerformanceConfiguration.throughputPerformanceBuilder()
+                        .ringBufferSize(32 * 1024)
+                        .matchingEnginesNum(4)
+                        .riskEnginesNum(2)
+                        .msgsInGroupLimit(1024)
+                        .build(),
+                TestDataParameters.mediumBuilder()
+                        .allowedSymbolTypes(ExchangeTestContainer.AllowedSymbolTypes.BOTH)
+                        .preFillMode(TestOrdersGeneratorConfig.PreFillMode.ORDERS_NUMBER_PLUS_QUARTER)
+                        .build(),
+                3);
+    }
+
+    /**
+     * Snapshot loading time: single LZ4 stream vs chunked format (parallel loading)
+     */
+    @Test
+    public void testSnapshotLoadMultiSymbolMedium() throws Exception {
+        PersistenceTestsModule.snapshotLoadTestImpl(
+                PerformanceConfiguration.throughputPerformanceBuilder()
+                        .ringBufferSize(32 * 1024)
+                        .matchingEnginesNum(4)
+                        .riskEnginesNum(2)
+                        .msgsInGroupLimit(1024)
+                        .build(),
+                TestDataParameters.mediumBuilder()
+                        .allowedSymbolTypes(ExchangeTestContainer.AllowedSymbolTypes.BOTH)
+                        .preFillMode(TestOrdersGeneratorConfig.PreFillMode.ORDERS_NUMBER_PLUS_QUARTER)
+                        .build(),
+                3);
+    }
+
     /**
      * This is serialization test for verifying "triple million" capability.
      * This test requires 10+ GiB free disk space, 16+ GiB of RAM and 12-threads CPU
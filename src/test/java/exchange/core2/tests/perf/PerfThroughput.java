@@ -85,6 +85,35 @@ public final class PerfThroughput {
                 50);
     }
 
+    /**
+     * Margin trading with many open positions per user:
+     * - 300 futures contracts with non-zero margins
+     * - 100 users, each holding positions in most of symbols
+     * - every order is checked against free margin of all user positions in the same currency
+     */
+    @Test
+    public void testThroughputMarginManyPositions() {
+        ThroughputTestsModule.throughputTestImpl(
+                PerformanceConfiguration.throughputPerformanceBuilder()
+                        .ringBufferSize(32 * 1024)
+                        .matchingEnginesNum(1)
+                        .riskEnginesNum(1)
+                        .build(),
+                TestDataParameters.builder()
+                        .totalTransactionsNumber(3_000_000)
+                        .targetOrderBookOrdersTotal(30_000)
+                        .numAccounts(100)
+                        .currenciesAllowed(TestConstants.CURRENCIES_FUTURES)
+                        .numSymbols(300)
+                        .allowedSymbolTypes(ExchangeTestContainer.AllowedSymbolTypes.FUTURES_CONTRACT)
+                        .preFillMode(TestOrdersGeneratorConfig.PreFillMode.ORDERS_NUMBER)
+                        .futuresMargin(true)
+                        .build(),
+                InitialStateConfiguration.CLEAN_TEST,
+                SerializationConfiguration.DEFAULT,
+                25);
+    }
+
     /**
      * This is medium load throughput test for verifying "triple million" capability:
      * * - 1M active users (3M currency accounts)
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.tests.perf;
+
+import exchange.core2.core.common.config.InitialStateConfiguration;
+import exchange.core2.core.common.config.LoggingConfiguration;
+import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.core.common.config.SerializationConfiguration;
+import exchange.core2.tests.util.ExchangeTestContainer;
+import exchange.core2.tests.util.TestDataParameters;
+import exchange.core2.tests.util.ThreadAllocationMeter;
+import exchange.core2.tests.util.ThroughputTestsModule;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Heap allocation of exchange core threads in steady state (MatcherTradeEvent pooling enabled).
+ * First iterations are warmup: events pool is filled, order books and risk engine maps are growing.
+ */
+@Slf4j
+public final class PerfThroughputAllocation {
+
+    private static final int ITERATIONS = 8;
+    private static final int WARMUP_ITERATIONS = 3;
+
+    // L2 snapshots requested every 10ms are still allocated
+    private static final double MAX_BYTES_PER_ORDER = 1.0;
+
+    @Test
+    public void testAllocationPerOrderExchange() {
+
+        final List<Double> bytesPerOrder = new ArrayList<>();
+
+        ThroughputTestsModule.throughputTestImpl(
+                PerformanceConfiguration.throughputPerformanceBuilder()
+                        .ringBufferSize(32 * 1024)
+                        .matchingEnginesNum(1)
+                        .riskEnginesNum(1)
+                        .msgsInGroupLimit(1024)
+                        .build(),
+                TestDataParameters.singlePairExchangeBuilder().build(),
+                InitialStateConfiguration.cleanStart(ExchangeTestContainer.timeBasedExchangeId()),
+                SerializationConfiguration.DEFAULT,
+                LoggingConfiguration.DEFAULT,
+                null,
+                (container, apiCommands) -> {
+                    final ThreadAllocationMeter meter = ThreadAllocationMeter.start();
+                    final float perfMt = container.benchmarkMtps(apiCommands);
+                    final double bytes = meter.allocatedBytes() / (double) apiCommands.size();
+                    log.info("Allocated {} bytes per order", String.format("%.3f", bytes));
+                    bytesPerOrder.add(bytes);
+                    return perfMt;
+                },
+                ITERATIONS);
+
+        final double steadyStateBytes = bytesPerOrder.stream()
+                .skip(WARMUP_ITERATIONS)
+                .mapToDouble(x -> x)
+                .average()
+                .orElse(0);
+
+        log.info("Steady state: {} bytes per order", String.format("%.3f", steadyStateBytes));
+        assertTrue(steadyStateBytes < MAX_BYTES_PER_ORDER, () -> "allocated " + steadyStateBytes + " bytes per order");
+    }
+}
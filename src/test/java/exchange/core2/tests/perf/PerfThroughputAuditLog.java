@@ -0,0 +1,106 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.tests.perf;
+
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.config.InitialStateConfiguration;
+import exchange.core2.core.common.config.LoggingConfiguration;
+import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.core.common.config.SerializationConfiguration;
+import exchange.core2.core.processors.audit.AuditLogConfiguration;
+import exchange.core2.core.processors.audit.AuditLogDecoder;
+import exchange.core2.tests.util.ExchangeTestContainer;
+import exchange.core2.tests.util.TestDataParameters;
+import exchange.core2.tests.util.ThroughputTestsModule;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.MessageFormat;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.function.ObjLongConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares throughput of the same workload:
+ * - no command logging
+ * - text logging of every command (MessageFormat + OrderCommand.toString, previous behaviour)
+ * - binary audit log
+ */
+@Slf4j
+public final class PerfThroughputAuditLog {
+
+    private static final ObjLongConsumer<OrderCommand> TEXT_LOGGER =
+            (cmd, seq) -> log.info(MessageFormat.format("Writelog - cmd: {0}, dSeq: {1}", cmd.toString(), seq));
+
+    @Test
+    public void testThroughputAuditLog() throws IOException {
+
+        final Path folder = Files.createTempDirectory("audit");
+
+        final LoggingConfiguration auditLoggingCfg = LoggingConfiguration.builder()
+                .loggingLevels(EnumSet.of(LoggingConfiguration.LoggingLevel.LOGGING_WARNINGS))
+                .auditLogCfg(AuditLogConfiguration.builder()
+                        .storageFolder(folder.toString())
+                        .ringBufferSize(8 * 1024 * 1024)
+                        .writeBufferSize(1024 * 1024)
+                        .fileMaxSize(256 * 1024 * 1024)
+                        .build())
+                .build();
+
+        final float noLogMt = runThroughput(LoggingConfiguration.DEFAULT, null);
+        final float textLogMt = runThroughput(LoggingConfiguration.DEFAULT, TEXT_LOGGER);
+        final float auditLogMt = runThroughput(auditLoggingCfg, null);
+
+        log.info("No logging: {} MT/s, text logging: {} MT/s, binary audit log: {} MT/s",
+                String.format("%.3f", noLogMt), String.format("%.3f", textLogMt), String.format("%.3f", auditLogMt));
+
+        final List<Path> files;
+        try (final Stream<Path> stream = Files.list(folder)) {
+            files = stream.sorted().collect(Collectors.toList());
+        }
+        assertTrue(!files.isEmpty());
+
+        long records = 0;
+        for (final Path file : files) {
+            records += AuditLogDecoder.decode(file, line -> {
+            });
+        }
+        log.info("Decoded {} audit records from {} files", records, files.size());
+        assertTrue(records > 0);
+    }
+
+    private static float runThroughput(final LoggingConfiguration loggingCfg, final ObjLongConsumer<OrderCommand> resultsConsumer) {
+        return ThroughputTestsModule.throughputTestImpl(
+                PerformanceConfiguration.throughputPerformanceBuilder()
+                        .ringBufferSize(32 * 1024)
+                        .matchingEnginesNum(1)
+                        .riskEnginesNum(1)
+                        .build(),
+                TestDataParameters.singlePairExchangeBuilder().build(),
+                InitialStateConfiguration.cleanStart(ExchangeTestContainer.timeBasedExchangeId()),
+                SerializationConfiguration.DEFAULT,
+                loggingCfg,
+                resultsConsumer,
+                10);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.tests.perf;
+
+import exchange.core2.core.common.api.ApiCommand;
+import exchange.core2.core.common.config.InitialStateConfiguration;
+import exchange.core2.core.common.config.LoggingConfiguration;
+import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.core.common.config.SerializationConfiguration;
+import exchange.core2.tests.util.ExchangeTestContainer;
+import exchange.core2.tests.util.TestDataParameters;
+import exchange.core2.tests.util.ThroughputTestsModule;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.function.BiFunction;
+
+/**
+ * Same workload as PerfThroughput, but commands are submitted in batches (one sequencer claim per batch).
+ */
+@Slf4j
+public final class PerfThroughputBatch {
+
+    private static final int BATCH_SIZE = 256;
+
+    @Test
+    public void testThroughputExchangeSingle() {
+        runExchange(ExchangeTestContainer::benchmarkMtps);
+    }
+
+    @Test
+    public void testThroughputExchangeBatch() {
+        runExchange((container, cmds) -> container.benchmarkMtpsBatch(cmds, BATCH_SIZE));
+    }
+
+    @Test
+    public void testThroughputExchangeOrdersBatch() {
+        runExchange((container, cmds) -> container.benchmarkMtpsOrdersBatch(cmds, BATCH_SIZE));
+    }
+
+    @Test
+    public void testThroughputMarginBatch() {
+        ThroughputTestsModule.throughputTestImpl(
+                PerformanceConfiguration.throughputPerformanceBuilder()
+                        .ringBufferSize(32 * 1024)
+                        .matchingEnginesNum(1)
+                        .riskEnginesNum(1)
+                        .build(),
+                TestDataParameters.singlePairMarginBuilder().build(),
+                InitialStateConfiguration.CLEAN_TEST,
+                SerializationConfiguration.DEFAULT,
+                LoggingConfiguration.DEFAULT,
+                null,
+                (container, cmds) -> container.benchmarkMtpsBatch(cmds, BATCH_SIZE),
+                50);
+    }
+
+    private static void runExchange(final BiFunction<ExchangeTestContainer, List<ApiCommand>, Float> benchmark) {
+        ThroughputTestsModule.throughputTestImpl(
+                PerformanceConfiguration.throughputPerformanceBuilder()
+                        .ringBufferSize(32 * 1024)
+                        .matchingEnginesNum(1)
+                        .riskEnginesNum(1)
+                        .build(),
+                TestDataParameters.singlePairExchangeBuilder().build(),
+                InitialStateConfiguration.CLEAN_TEST,
+                SerializationConfiguration.DEFAULT,
+                LoggingConfiguration.DEFAULT,
+                null,
+                benchmark,
+                50);
+    }
+}
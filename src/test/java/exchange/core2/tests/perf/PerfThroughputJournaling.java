@@ -30,7 +30,7 @@ public final class PerfThroughputJournaling {
     // TODO shutdown disruptor if test fails
 
     /**
-     * This is throughput test for simplified conditions
+     * This is throughput test for simplified conditions (journal fsync at the end of every batch)
      * - one symbol
      * - ~1K active users (2K currency accounts)
      * - 1K pending limit-orders (in one order book)
@@ -66,6 +66,72 @@ public final class PerfThroughputJournaling {
                 50);
     }
 
+    /**
+     * Same as testThroughputMargin, but journal is never fsync-ed (durability NONE)
+     */
+    @Test
+    public void testThroughputMarginNoSync() {
+        ThroughputTestsModule.throughputTestImpl(
+                PerformanceConfiguration.throughputPerformanceBuilder()
+                        .ringBufferSize(32 * 1024)
+                        .matchingEnginesNum(1)
+                        .riskEnginesNum(1)
+                        .msgsInGroupLimit(1536)
+                        .build(),
+                TestDataParameters.singlePairMarginBuilder().build(),
+                InitialStateConfiguration.cleanStartJournaling(ExchangeTestContainer.timeBasedExchangeId()),
+                SerializationConfiguration.DISK_JOURNALING_NO_SYNC,
+                50);
+    }
+
+    /**
+     * Same as testThroughputMargin, but journal is fsync-ed by group commit flusher
+     */
+    @Test
+    public void testThroughputMarginGroupCommit() {
+        ThroughputTestsModule.throughputTestImpl(
+                PerformanceConfiguration.throughputPerformanceBuilder()
+                        .ringBufferSize(32 * 1024)
+                        .matchingEnginesNum(1)
+                        .riskEnginesNum(1)
+                        .msgsInGroupLimit(1536)
+                        .build(),
+                TestDataParameters.singlePairMarginBuilder().build(),
+                InitialStateConfiguration.cleanStartJournaling(ExchangeTestContainer.timeBasedExchangeId()),
+                SerializationConfiguration.DISK_JOURNALING_GROUP_COMMIT,
+                50);
+    }
+
+    @Test
+    public void testThroughputExchangeNoSync() {
+        ThroughputTestsModule.throughputTestImpl(
+                PerformanceConfiguration.throughputPerformanceBuilder()
+                        .ringBufferSize(32 * 1024)
+                        .matchingEnginesNum(1)
+                        .riskEnginesNum(1)
+                        .msgsInGroupLimit(1536)
+                        .build(),
+                TestDataParameters.singlePairExchangeBuilder().build(),
+                InitialStateConfiguration.cleanStartJournaling(ExchangeTestContainer.timeBasedExchangeId()),
+                SerializationConfiguration.DISK_JOURNALING_NO_SYNC,
+                50);
+    }
+
+    @Test
+    public void testThroughputExchangeGroupCommit() {
+        ThroughputTestsModule.throughputTestImpl(
+                PerformanceConfiguration.throughputPerformanceBuilder()
+                        .ringBufferSize(32 * 1024)
+                        .matchingEnginesNum(1)
+                        .riskEnginesNum(1)
+                        .msgsInGroupLimit(1536)
+                        .build(),
+                TestDataParameters.singlePairExchangeBuilder().build(),
+                InitialStateConfiguration.cleanStartJournaling(ExchangeTestContainer.timeBasedExchangeId()),
+                SerializationConfiguration.DISK_JOURNALING_GROUP_COMMIT,
+                50);
+    }
+
     /**
      * This is medium load throughput test for verifying "triple million" capability:
      * * - 1M active users (3M currency accounts)
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.tests.perf;
+
+import exchange.core2.core.common.api.binary.BatchAssignSymbolShardsCommand;
+import exchange.core2.core.common.config.InitialStateConfiguration;
+import exchange.core2.core.common.config.LoggingConfiguration;
+import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.core.common.config.SerializationConfiguration;
+import exchange.core2.core.processors.sharding.ConsistentHashShardingPolicy;
+import exchange.core2.core.processors.sharding.IShardingPolicy;
+import exchange.core2.core.processors.sharding.ModuloShardingPolicy;
+import exchange.core2.core.processors.sharding.SymbolShardsTable;
+import exchange.core2.tests.util.*;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.collections.impl.map.mutable.primitive.IntIntHashMap;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Throughput with skewed symbol popularity (pareto distribution of commands between symbols, see TestOrdersGenerator)
+ * for different symbol sharding policies. Same number of matching engines and same commands in all tests:
+ * - modulo: 6 engines (not a power of 2);
+ * - consistent hash;
+ * - explicit table: 5 hottest symbols are pinned to dedicated matching engines, all other symbols share the last one.
+ * Expected load of each matching engine (share of benchmark commands) is logged before test.
+ */
+@Slf4j
+public final class PerfThroughputSharding {
+
+    private static final int MATCHING_ENGINES = 6;
+    private static final int HOT_SYMBOLS = 5;
+
+    @Test
+    public void testThroughputShardingModulo() {
+        throughputTestImpl(ModuloShardingPolicy::new, false);
+    }
+
+    @Test
+    public void testThroughputShardingConsistentHash() {
+        throughputTestImpl(ConsistentHashShardingPolicy::new, false);
+    }
+
+    @Test
+    public void testThroughputShardingHotSymbolsPinned() {
+        throughputTestImpl(SymbolShardsTable.factory(ModuloShardingPolicy::new), true);
+    }
+
+    private static void throughputTestImpl(final IShardingPolicy.ShardingPolicyFactory symbolShardingPolicyFactory,
+                                           final boolean pinHotSymbols) {
+
+        final TestDataParameters testDataParameters = TestDataParameters.builder()
+                .totalTransactionsNumber(3_000_000)
+                .targetOrderBookOrdersTotal(10_000)
+                .numAccounts(10_000)
+                .currenciesAllowed(TestConstants.ALL_CURRENCIES)
+                .numSymbols(100)
+                .allowedSymbolTypes(ExchangeTestContainer.AllowedSymbolTypes.BOTH)
+                .preFillMode(TestOrdersGeneratorConfig.PreFillMode.ORDERS_NUMBER)
+                .build();
+
+        // same seed as ThroughputTestsModule - data is generated twice, but it is deterministic
+        final Map<Integer, TestOrdersGenerator.GenResult> genResults = ExchangeTestContainer.prepareTestDataAsync(testDataParameters, 1)
+                .getGenResult().join().getGenResults();
+
+        final IntIntHashMap symbolShards = pinHotSymbols ? hotSymbolsTable(genResults) : null;
+        logShardsLoad(symbolShardingPolicyFactory, symbolShards, genResults);
+
+        ThroughputTestsModule.throughputTestImpl(
+                PerformanceConfiguration.throughputPerformanceBuilder()
+                        .ringBufferSize(32 * 1024)
+                        .matchingEnginesNum(MATCHING_ENGINES)
+                        .riskEnginesNum(2)
+                        .msgsInGroupLimit(1536)
+                        .symbolShardingPolicyFactory(symbolShardingPolicyFactory)
+                        .build(),
+                testDataParameters,
+                InitialStateConfiguration.CLEAN_TEST,
+                SerializationConfiguration.DEFAULT,
+                LoggingConfiguration.DEFAULT,
+                null,
+                ExchangeTestContainer::benchmarkMtps,
+                (container, testDataFutures) -> {
+                    // assignment must be done before symbols are added (table is cleared by reset)
+                    if (symbolShards != null) {
+                        container.sendBinaryDataCommandSync(new BatchAssignSymbolShardsCommand(symbolShards), 5000);
+                    }
+                },
+                25);
+    }
+
+    /*
+     * hottest symbols -> shards 0..HOT_SYMBOLS-1, all other symbols -> last shard
+     */
+    private static IntIntHashMap hotSymbolsTable(final Map<Integer, TestOrdersGenerator.GenResult> genResults) {
+        final List<Integer> symbolsByPopularity = genResults.entrySet().stream()
+                .sorted(Comparator.comparingInt((Map.Entry<Integer, TestOrdersGenerator.GenResult> e) -> e.getValue().getCommandsBenchmark().size()).reversed())
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+
+        final IntIntHashMap symbolShards = new IntIntHashMap();
+        for (int i = 0; i < symbolsByPopularity.size(); i++) {
+            symbolShards.put(symbolsByPopularity.get(i), Math.min(i, MATCHING_ENGINES - 1));
+        }
+        return symbolShards;
+    }
+
+    private static void logShardsLoad(final IShardingPolicy.ShardingPolicyFactory symbolShardingPolicyFactory,
+                                      final IntIntHashMap symbolShards,
+                                      final Map<Integer, TestOrdersGenerator.GenResult> genResults) {
+
+        final IShardingPolicy policy = symbolShardingPolicyFactory.create(MATCHING_ENGINES);
+        if (symbolShards != null) {
+            symbolShards.forEachKeyValue(((SymbolShardsTable) policy)::assign);
+        }
+
+        final long[] commandsPerShard = new long[MATCHING_ENGINES];
+        genResults.forEach((symbol, genResult) -> commandsPerShard[policy.shardOf(symbol)] += genResult.getCommandsBenchmark().size());
+        final long total = Arrays.stream(commandsPerShard).sum();
+
+        log.info("Matching engines load: {} (max {}%)",
+                Arrays.stream(commandsPerShard).mapToObj(c -> String.format("%.1f%%", c * 100.0 / total)).collect(Collectors.joining(" ")),
+                String.format("%.1f", Arrays.stream(commandsPerShard).max().orElse(0) * 100.0 / total));
+    }
+}
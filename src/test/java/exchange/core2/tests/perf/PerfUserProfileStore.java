@@ -0,0 +1,123 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.tests.perf;
+
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.processors.IUserProfileService;
+import exchange.core2.core.processors.OffHeapUserProfileService;
+import exchange.core2.core.processors.UserProfileService;
+import exchange.core2.tests.util.LatencyTools;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares {@link UserProfileService} and {@link OffHeapUserProfileService}:
+ * memory used per user (heap + direct) and latency of risk engine pre-processing operations
+ * (random user access, balance update, releasing profiles).
+ */
+@Slf4j
+public final class PerfUserProfileStore {
+
+    private static final int CURRENCIES_PER_USER = 2;
+    private static final int INLINE_ACCOUNTS = 4;
+    private static final int MAX_PROFILES_ON_HEAP = 100_000;
+    private static final int LATENCY_OPERATIONS = 5_000_000;
+
+    /*
+     * 10M users - both implementations (heap implementation requires ~8G heap)
+     */
+    @Test
+    public void testUserProfiles10M() {
+        final int usersNum = 10_000_000;
+
+        final double heapPerUser = measure("Heap", UserProfileService::new, usersNum);
+        final double offHeapPerUser = measure("OffHeap", () -> new OffHeapUserProfileService(INLINE_ACCOUNTS, usersNum, MAX_PROFILES_ON_HEAP), usersNum);
+
+        // profiles are not on heap anymore (except recently used ones)
+        assertTrue(offHeapPerUser < heapPerUser, () -> "off-heap store uses " + offHeapPerUser + " heap bytes per user");
+    }
+
+    /*
+     * 50M users - off-heap implementation only
+     */
+    @Test
+    public void testUserProfiles50MOffHeap() {
+        final int usersNum = 50_000_000;
+        measure("OffHeap", () -> new OffHeapUserProfileService(INLINE_ACCOUNTS, usersNum, MAX_PROFILES_ON_HEAP), usersNum);
+    }
+
+    private static double measure(final String name, final IUserProfileService.UserProfileServiceFactory factory, final int usersNum) {
+
+        final long heapBefore = usedHeap();
+        final long directBefore = usedDirect();
+
+        final IUserProfileService service = factory.create();
+        long t = System.nanoTime();
+        for (int uid = 1; uid <= usersNum; uid++) {
+            service.addEmptyUserProfile(uid);
+            for (int currency = 1; currency <= CURRENCIES_PER_USER; currency++) {
+                service.balanceAdjustment(uid, currency, 1_000_000L, currency);
+            }
+            service.releaseProfiles();
+        }
+        t = System.nanoTime() - t;
+
+        final double heapPerUser = (usedHeap() - heapBefore) / (double) usersNum;
+        final double directPerUser = (usedDirect() - directBefore) / (double) usersNum;
+        log.info("{}: {} users created in {}ms, heap {} bytes/user, direct {} bytes/user",
+                name, usersNum, t / 1_000_000, String.format("%.1f", heapPerUser), String.format("%.1f", directPerUser));
+
+        final Histogram histogram = new Histogram(60_000_000_000L, 3);
+        final Random rand = new Random(1L);
+        for (int i = 0; i < LATENCY_OPERATIONS; i++) {
+            // random access - worst case for off-heap store (profile is loaded to heap almost every time)
+            final long uid = 1 + rand.nextInt(usersNum);
+            final long txId = CURRENCIES_PER_USER + 1 + i;
+            final long t0 = System.nanoTime();
+            service.releaseProfiles();
+            final CommandResultCode resultCode = service.balanceAdjustment(uid, 1, -1L, txId);
+            histogram.recordValue(System.nanoTime() - t0);
+            assertThat(resultCode, is(CommandResultCode.SUCCESS));
+        }
+        log.info("{}: {} users, pre-process latency {}", name, usersNum, LatencyTools.createLatencyReportFast(histogram));
+
+        service.reset();
+        return heapPerUser;
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long usedDirect() {
+        return ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class).stream()
+                .filter(pool -> pool.getName().equals("direct"))
+                .mapToLong(BufferPoolMXBean::getMemoryUsed)
+                .sum();
+    }
+}
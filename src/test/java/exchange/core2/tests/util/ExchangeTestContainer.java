@@ -78,19 +78,46 @@ public final class ExchangeTestContainer implements AutoCloseable {
     public static ExchangeTestContainer create(final PerformanceConfiguration perfCfg) {
         return new ExchangeTestContainer(perfCfg,
                 InitialStateConfiguration.CLEAN_TEST,
-                SerializationConfiguration.DEFAULT);
+                SerializationConfiguration.DEFAULT,
+                LoggingConfiguration.DEFAULT,
+                null,
+                null);
+    }
+
+    public static ExchangeTestContainer create(final PerformanceConfiguration perfCfg,
+                                               final IpcConfiguration ipcCfg) {
+        return new ExchangeTestContainer(perfCfg,
+                InitialStateConfiguration.CLEAN_TEST,
+                SerializationConfiguration.DEFAULT,
+                LoggingConfiguration.DEFAULT,
+                ipcCfg,
+                null);
     }
 
     public static ExchangeTestContainer create(final PerformanceConfiguration perfCfg,
                                                final InitialStateConfiguration initStateCfg,
                                                final SerializationConfiguration serializationCfg) {
-        return new ExchangeTestContainer(perfCfg, initStateCfg, serializationCfg);
+        return new ExchangeTestContainer(perfCfg, initStateCfg, serializationCfg, LoggingConfiguration.DEFAULT, null, null);
+    }
+
+    public static ExchangeTestContainer create(final PerformanceConfiguration perfCfg,
+                                               final InitialStateConfiguration initStateCfg,
+                                               final SerializationConfiguration serializationCfg,
+                                               final LoggingConfiguration loggingCfg) {
+        return new ExchangeTestContainer(perfCfg, initStateCfg, serializationCfg, loggingCfg, null, null);
+    }
+
+    public static ExchangeTestContainer create(final PerformanceConfiguration perfCfg,
+                                               final InitialStateConfiguration initStateCfg,
+                                               final SerializationConfiguration serializationCfg,
+                                               final MarginMonitorConfiguration marginMonitorCfg) {
+        return new ExchangeTestContainer(perfCfg, initStateCfg, serializationCfg, LoggingConfiguration.DEFAULT, null, marginMonitorCfg);
     }
 
     public static TestDataFutures prepareTestDataAsync(TestDataParameters parameters, int seed) {
 
         final CompletableFuture<List<CoreSymbolSpecification>> coreSymbolSpecificationsFuture = CompletableFuture.supplyAsync(
-                () -> ExchangeTestContainer.generateRandomSymbols(parameters.numSymbols, parameters.currenciesAllowed, parameters.allowedSymbolTypes));
+                () -> ExchangeTestContainer.generateRandomSymbols(parameters.numSymbols, parameters.currenciesAllowed, parameters.allowedSymbolTypes, parameters.futuresMargin));
 
         final CompletableFuture<List<BitSet>> usersAccountsFuture = CompletableFuture.supplyAsync(
                 () -> UserCurrencyAccountsGenerator.generateUsers(parameters.numAccounts, parameters.currenciesAllowed));
@@ -125,7 +152,10 @@ public final class ExchangeTestContainer implements AutoCloseable {
 
     private ExchangeTestContainer(final PerformanceConfiguration perfCfg,
                                   final InitialStateConfiguration initStateCfg,
-                                  final SerializationConfiguration serializationCfg) {
+                                  final SerializationConfiguration serializationCfg,
+                                  final LoggingConfiguration loggingCfg,
+                                  final IpcConfiguration ipcCfg,
+                                  final MarginMonitorConfiguration marginMonitorCfg) {
 
         //log.debug("CREATING exchange container");
 
@@ -136,8 +166,10 @@ public final class ExchangeTestContainer implements AutoCloseable {
                 .performanceCfg(perfCfg)
                 .reportsQueriesCfg(ReportsQueriesConfiguration.createStandardConfig())
                 .ordersProcessingCfg(OrdersProcessingConfiguration.DEFAULT)
-                .loggingCfg(LoggingConfiguration.DEFAULT)
+                .loggingCfg(loggingCfg)
                 .serializationCfg(serializationCfg)
+                .ipcCfg(ipcCfg)
+                .marginMonitorCfg(marginMonitorCfg)
                 .build();
 
         this.exchangeCore = ExchangeCore.builder()
@@ -327,6 +359,13 @@ public final class ExchangeTestContainer implements AutoCloseable {
     public static List<CoreSymbolSpecification> generateRandomSymbols(final int num,
                                                                       final Collection<Integer> currenciesAllowed,
                                                                       final AllowedSymbolTypes allowedSymbolTypes) {
+        return generateRandomSymbols(num, currenciesAllowed, allowedSymbolTypes, false);
+    }
+
+    public static List<CoreSymbolSpecification> generateRandomSymbols(final int num,
+                                                                      final Collection<Integer> currenciesAllowed,
+                                                                      final AllowedSymbolTypes allowedSymbolTypes,
+                                                                      final boolean futuresMargin) {
         final Random random = new Random(1L);
 
         final Supplier<SymbolType> symbolTypeSupplier;
@@ -355,6 +394,9 @@ public final class ExchangeTestContainer implements AutoCloseable {
                 final SymbolType type = symbolTypeSupplier.get();
                 final long makerFee = random.nextInt(1000);
                 final long takerFee = makerFee + random.nextInt(500);
+                final boolean margin = futuresMargin && type == SymbolType.FUTURES_CONTRACT;
+                final long marginBuy = margin ? 1000 + random.nextInt(5000) : 0;
+                final long marginSell = margin ? marginBuy + random.nextInt(1000) : 0;
                 final CoreSymbolSpecification symbol = CoreSymbolSpecification.builder()
                         .symbolId(TestConstants.SYMBOL_AUTOGENERATED_RANGE_START + i)
                         .type(type)
@@ -363,7 +405,9 @@ public final class ExchangeTestContainer implements AutoCloseable {
                         .baseScaleK(100)
                         .quoteScaleK(10)
                         .takerFee(takerFee)
-                        .makerFee(makerFee) // TODO margins for futures?
+                        .makerFee(makerFee)
+                        .marginBuy(marginBuy)
+                        .marginSell(marginSell)
                         .build();
 
                 result.add(symbol);
@@ -448,6 +492,53 @@ public final class ExchangeTestContainer implements AutoCloseable {
         return apiCommandsBenchmark.size() / (float) tDuration / 1000.0f;
     }
 
+    public float benchmarkMtpsBatch(final List<ApiCommand> apiCommandsBenchmark, final int batchSize) {
+        final ApiCommand[] commands = apiCommandsBenchmark.toArray(new ApiCommand[0]);
+        final long tStart = System.currentTimeMillis();
+        for (int i = 0; i < commands.length; i += batchSize) {
+            api.submitCommandsBatch(commands, i, Math.min(i + batchSize, commands.length));
+        }
+        api.submitCommandAsync(ApiNop.builder().build()).join();
+        final long tDuration = System.currentTimeMillis() - tStart;
+        return commands.length / (float) tDuration / 1000.0f;
+    }
+
+    public float benchmarkMtpsOrdersBatch(final List<ApiCommand> apiCommandsBenchmark, final int batchSize) {
+        final List<ApiOrdersBatch> batches = convertToOrdersBatches(apiCommandsBenchmark, batchSize);
+        final long tStart = System.currentTimeMillis();
+        batches.forEach(api::submitOrdersBatch);
+        api.submitCommandAsync(ApiNop.builder().build()).join();
+        final long tDuration = System.currentTimeMillis() - tStart;
+        return apiCommandsBenchmark.size() / (float) tDuration / 1000.0f;
+    }
+
+    public static List<ApiOrdersBatch> convertToOrdersBatches(final List<ApiCommand> apiCommands, final int batchSize) {
+        final List<ApiOrdersBatch> batches = new ArrayList<>();
+        ApiOrdersBatch batch = null;
+        for (final ApiCommand cmd : apiCommands) {
+            if (batch == null || batch.isFull()) {
+                batch = new ApiOrdersBatch(batchSize);
+                batches.add(batch);
+            }
+            if (cmd instanceof ApiPlaceOrder) {
+                final ApiPlaceOrder c = (ApiPlaceOrder) cmd;
+                batch.addPlaceOrder(c.orderId, c.uid, c.symbol, c.price, c.reservePrice, c.size, c.action, c.orderType, c.userCookie, c.timestamp);
+            } else if (cmd instanceof ApiMoveOrder) {
+                final ApiMoveOrder c = (ApiMoveOrder) cmd;
+                batch.addMoveOrder(c.orderId, c.uid, c.symbol, c.newPrice, c.timestamp);
+            } else if (cmd instanceof ApiCancelOrder) {
+                final ApiCancelOrder c = (ApiCancelOrder) cmd;
+                batch.addCancelOrder(c.orderId, c.uid, c.symbol, c.timestamp);
+            } else if (cmd instanceof ApiReduceOrder) {
+                final ApiReduceOrder c = (ApiReduceOrder) cmd;
+                batch.addReduceOrder(c.orderId, c.uid, c.symbol, c.reduceSize, c.timestamp);
+            } else {
+                throw new IllegalArgumentException("Unsupported command type: " + cmd.getClass().getSimpleName());
+            }
+        }
+        return batches;
+    }
+
     @Override
     public void close() {
         exchangeCore.shutdown(3000, TimeUnit.MILLISECONDS);
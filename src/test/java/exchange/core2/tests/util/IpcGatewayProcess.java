@@ -0,0 +1,189 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.tests.util;
+
+import exchange.core2.core.common.api.ApiCancelOrder;
+import exchange.core2.core.common.api.ApiCommand;
+import exchange.core2.core.common.api.ApiMoveOrder;
+import exchange.core2.core.common.api.ApiPlaceOrder;
+import exchange.core2.core.common.api.ApiReduceOrder;
+import exchange.core2.core.processors.ipc.IpcGateway;
+import exchange.core2.core.processors.ipc.IpcMessages;
+import exchange.core2.core.processors.ipc.IpcResultsSubscriber;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * Gateway process for IPC latency test (see LatencyTestsModule.ipcLatencyTestImpl).
+ * <p>
+ * Generates same test data as exchange process, then for every iteration sends benchmark commands through shared memory ingress
+ * and measures latency of results received from shared memory broadcast (same host - System.nanoTime() is comparable).
+ * <p>
+ * Protocol (stdin/stdout): READY - test data generated; RUN tps - run iteration; RESULT ... - iteration completed; EXIT.
+ */
+@Slf4j
+public final class IpcGatewayProcess {
+
+    static final String READY = "READY";
+    static final String RUN = "RUN";
+    static final String RESULT = "RESULT";
+    static final String EXIT = "EXIT";
+
+    // results are not expected anymore (some were lost because subscriber was lapped)
+    private static final long RESULTS_TIMEOUT_NS = 1_000_000_000L;
+
+    private final IpcGateway gateway;
+    private final String egressFile;
+    private final List<ApiCommand> commands;
+
+    private IpcGatewayProcess(final IpcGateway gateway, final String egressFile, final List<ApiCommand> commands) {
+        this.gateway = gateway;
+        this.egressFile = egressFile;
+        this.commands = commands;
+    }
+
+    static String[] toArgs(final String ingressFile, final String egressFile, final TestDataParameters parameters) {
+        return new String[]{
+                ingressFile,
+                egressFile,
+                String.valueOf(parameters.totalTransactionsNumber),
+                String.valueOf(parameters.targetOrderBookOrdersTotal),
+                String.valueOf(parameters.numAccounts),
+                parameters.currenciesAllowed.stream().map(String::valueOf).collect(Collectors.joining(",")),
+                String.valueOf(parameters.numSymbols),
+                parameters.allowedSymbolTypes.name(),
+                parameters.preFillMode.name(),
+                String.valueOf(parameters.avalancheIOC),
+                String.valueOf(parameters.futuresMargin)};
+    }
+
+    public static void main(String[] args) throws IOException {
+
+        final Set<Integer> currencies = Arrays.stream(args[5].split(",")).map(Integer::valueOf).collect(Collectors.toSet());
+
+        final TestDataParameters parameters = TestDataParameters.builder()
+                .totalTransactionsNumber(Integer.parseInt(args[2]))
+                .targetOrderBookOrdersTotal(Integer.parseInt(args[3]))
+                .numAccounts(Integer.parseInt(args[4]))
+                .currenciesAllowed(currencies)
+                .numSymbols(Integer.parseInt(args[6]))
+                .allowedSymbolTypes(ExchangeTestContainer.AllowedSymbolTypes.valueOf(args[7]))
+                .preFillMode(TestOrdersGeneratorConfig.PreFillMode.valueOf(args[8]))
+                .avalancheIOC(Boolean.parseBoolean(args[9]))
+                .futuresMargin(Boolean.parseBoolean(args[10]))
+                .build();
+
+        // same seed as exchange process
+        final List<ApiCommand> commands = ExchangeTestContainer.prepareTestDataAsync(parameters, 1)
+                .genResult.join().getApiCommandsBenchmark().join();
+
+        try (final IpcGateway gateway = new IpcGateway(args[0])) {
+
+            final IpcGatewayProcess process = new IpcGatewayProcess(gateway, args[1], commands);
+            System.out.println(READY);
+            System.out.flush();
+
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+            String line;
+            while ((line = reader.readLine()) != null && line.startsWith(RUN)) {
+                final String result = process.runIteration(Integer.parseInt(line.substring(RUN.length()).trim()));
+                System.out.println(RESULT + " " + result);
+                System.out.flush();
+            }
+        }
+    }
+
+    private String runIteration(final int tps) {
+
+        final Histogram histogram = new Histogram(Integer.MAX_VALUE, 2);
+        final int expectedResults = commands.size();
+        final long[] lappedCount = new long[1];
+
+        try (final IpcResultsSubscriber subscriber = new IpcResultsSubscriber(egressFile)) {
+
+            final CompletableFuture<Integer> receiver = CompletableFuture.supplyAsync(() -> {
+                final int[] received = new int[1];
+                long lastReceivedNs = System.nanoTime();
+                while (received[0] < expectedResults) {
+                    final int polled = subscriber.poll((msgTypeId, buffer, index, length) -> {
+                        if (msgTypeId == IpcMessages.MSG_TYPE_RESULT) {
+                            final long latency = System.nanoTime() - buffer.getLong(index + IpcMessages.RESULT_TIMESTAMP_OFFSET, IpcMessages.BYTE_ORDER);
+                            histogram.recordValue(Math.min(latency, Integer.MAX_VALUE));
+                            received[0]++;
+                        }
+                    }, 1024);
+                    if (polled != 0) {
+                        lastReceivedNs = System.nanoTime();
+                    } else if (subscriber.getLappedCount() != 0 && System.nanoTime() - lastReceivedNs > RESULTS_TIMEOUT_NS) {
+                        break;
+                    }
+                }
+                lappedCount[0] = subscriber.getLappedCount();
+                return received[0];
+            });
+
+            final long nanosPerCmd = 1_000_000_000L / tps;
+            final long startTimeMs = System.currentTimeMillis();
+
+            long plannedTimestamp = System.nanoTime();
+
+            for (ApiCommand cmd : commands) {
+                while (System.nanoTime() < plannedTimestamp) {
+                    // spin until its time to send next command
+                }
+                while (!send(cmd, plannedTimestamp)) {
+                    // ingress ring is full
+                    Thread.yield();
+                }
+                plannedTimestamp += nanosPerCmd;
+            }
+
+            final int received = receiver.join();
+            final long processingTimeMs = System.currentTimeMillis() - startTimeMs;
+            final float perfMt = (float) expectedResults / (float) processingTimeMs / 1000.0f;
+
+            return String.format("%.3f MT/s received %d of %d (lapped %d times) %s",
+                    perfMt, received, expectedResults, lappedCount[0], LatencyTools.createLatencyReportFast(histogram));
+        }
+    }
+
+    private boolean send(final ApiCommand cmd, final long timestamp) {
+        if (cmd instanceof ApiPlaceOrder) {
+            final ApiPlaceOrder c = (ApiPlaceOrder) cmd;
+            return gateway.placeOrder(c.uid, c.orderId, c.price, c.reservePrice, c.size, c.action, c.orderType, c.symbol, c.userCookie, timestamp);
+        } else if (cmd instanceof ApiMoveOrder) {
+            final ApiMoveOrder c = (ApiMoveOrder) cmd;
+            return gateway.moveOrder(c.uid, c.orderId, c.newPrice, c.symbol, timestamp);
+        } else if (cmd instanceof ApiCancelOrder) {
+            final ApiCancelOrder c = (ApiCancelOrder) cmd;
+            return gateway.cancelOrder(c.uid, c.orderId, c.symbol, timestamp);
+        } else if (cmd instanceof ApiReduceOrder) {
+            final ApiReduceOrder c = (ApiReduceOrder) cmd;
+            return gateway.reduceOrder(c.uid, c.orderId, c.reduceSize, c.symbol, timestamp);
+        } else {
+            throw new IllegalArgumentException("Unsupported command type: " + cmd.getClass().getSimpleName());
+        }
+    }
+}
@@ -15,15 +15,30 @@
  */
 package exchange.core2.tests.util;
 
+import exchange.core2.core.ExchangeFollower;
 import exchange.core2.core.common.api.ApiPersistState;
+import exchange.core2.core.common.api.reports.StateHashReportQuery;
 import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.config.ExchangeConfiguration;
 import exchange.core2.core.common.config.InitialStateConfiguration;
+import exchange.core2.core.common.config.LoggingConfiguration;
+import exchange.core2.core.common.config.OrdersProcessingConfiguration;
 import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.core.common.config.ReportsQueriesConfiguration;
 import exchange.core2.core.common.config.SerializationConfiguration;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.cmd.OrderCommandType;
+import exchange.core2.core.processors.journaling.DiskSerializationProcessorConfiguration;
+import exchange.core2.core.processors.journaling.JournalTailer;
 import lombok.extern.slf4j.Slf4j;
+import org.eclipse.collections.impl.map.mutable.primitive.LongIntHashMap;
 import org.hamcrest.core.Is;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.ObjLongConsumer;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
@@ -37,6 +52,14 @@ public class JournalingTestsModule {
                                           final TestDataParameters testDataParameters,
                                           final int iterations) throws InterruptedException, ExecutionException {
 
+        journalingTestImpl(performanceConfiguration, testDataParameters, SerializationConfiguration.DISK_JOURNALING, iterations);
+    }
+
+    public static void journalingTestImpl(final PerformanceConfiguration performanceConfiguration,
+                                          final TestDataParameters testDataParameters,
+                                          final SerializationConfiguration serializationConfiguration,
+                                          final int iterations) throws InterruptedException, ExecutionException {
+
         for (int iteration = 0; iteration < iterations; iteration++) {
 
             log.debug(" ----------- journaling test --- iteration {} of {} ----", iteration, iterations);
@@ -52,7 +75,7 @@ public class JournalingTestsModule {
 
             final InitialStateConfiguration firstStartConfig = InitialStateConfiguration.cleanStartJournaling(exchangeId);
 
-            try (final ExchangeTestContainer container = ExchangeTestContainer.create(performanceConfiguration, firstStartConfig, SerializationConfiguration.DISK_JOURNALING)) {
+            try (final ExchangeTestContainer container = ExchangeTestContainer.create(performanceConfiguration, firstStartConfig, serializationConfiguration)) {
 
                 container.loadSymbolsUsersAndPrefillOrders(testDataFutures);
 
@@ -80,7 +103,7 @@ public class JournalingTestsModule {
 
             log.debug("Creating new exchange from persisted state...");
             final long tLoad = System.currentTimeMillis();
-            try (final ExchangeTestContainer recreatedContainer = ExchangeTestContainer.create(performanceConfiguration, fromSnapshotConfig, SerializationConfiguration.DISK_JOURNALING)) {
+            try (final ExchangeTestContainer recreatedContainer = ExchangeTestContainer.create(performanceConfiguration, fromSnapshotConfig, serializationConfiguration)) {
 
                 // simple sync query in order to wait until core is started to respond
                 recreatedContainer.totalBalanceReport();
@@ -98,4 +121,179 @@ public class JournalingTestsModule {
         }
 
     }
+
+    /**
+     * Primary exchange is writing journal, standby exchange (no journaling) is following it using JournalTailer.
+     * Snapshot is created in the middle, so tailer should switch to journal of the next snapshot.
+     * Standby state should be equal to primary state after all journal records are applied.
+     */
+    public static void journalTailingTestImpl(final PerformanceConfiguration performanceConfiguration,
+                                              final TestDataParameters testDataParameters,
+                                              final SerializationConfiguration serializationConfiguration,
+                                              final int iterations) throws InterruptedException, ExecutionException {
+
+        for (int iteration = 0; iteration < iterations; iteration++) {
+
+            log.debug(" ----------- journal tailing test --- iteration {} of {} ----", iteration, iterations);
+
+            final ExchangeTestContainer.TestDataFutures testDataFutures = ExchangeTestContainer.prepareTestDataAsync(testDataParameters, iteration);
+
+            final String exchangeId = ExchangeTestContainer.timeBasedExchangeId();
+            final String storageFolder = DiskSerializationProcessorConfiguration.DEFAULT_FOLDER;
+
+            try (final ExchangeTestContainer primary = ExchangeTestContainer.create(
+                    performanceConfiguration, InitialStateConfiguration.cleanStartJournaling(exchangeId), serializationConfiguration);
+                 final ExchangeTestContainer standby = ExchangeTestContainer.create(
+                         performanceConfiguration, InitialStateConfiguration.CLEAN_TEST, SerializationConfiguration.DEFAULT)) {
+
+                // journal records already contain events groups
+                standby.getApi().groupingControl(0, 0);
+
+                final ObjLongConsumer<OrderCommand> replicator = (cmd, seq) -> {
+                    if (cmd.command != OrderCommandType.PERSIST_STATE_MATCHING && cmd.command != OrderCommandType.PERSIST_STATE_RISK) {
+                        standby.getApi().publishCommandsBatch(1, slot -> copyJournalRecord(cmd, slot));
+                    }
+                };
+
+                final AtomicBoolean stopTailing = new AtomicBoolean(false);
+                final CompletableFuture<Long> tailing = CompletableFuture.supplyAsync(() -> {
+                    try (final JournalTailer tailer = new JournalTailer(storageFolder, exchangeId, 0L, 0L)) {
+                        while (!stopTailing.get()) {
+                            if (tailer.poll(replicator, 4096) == 0) {
+                                Thread.sleep(1);
+                            }
+                        }
+                        return tailer.getLastSeq();
+                    } catch (Exception ex) {
+                        throw new IllegalStateException(ex);
+                    }
+                });
+
+                primary.loadSymbolsUsersAndPrefillOrders(testDataFutures);
+
+                final long stateId = System.currentTimeMillis() * 1000 + iteration;
+                final CommandResultCode resultCode = primary.getApi().submitCommandAsync(ApiPersistState.builder().dumpId(stateId).build()).get();
+                assertThat(resultCode, is(CommandResultCode.SUCCESS));
+
+                log.info("Running commands on primary...");
+                final TestOrdersGenerator.MultiSymbolGenResult genResult = testDataFutures.genResult.get();
+                primary.getApi().submitCommandsSync(genResult.getApiCommandsBenchmark().join());
+
+                final long primaryStateHash = primary.requestStateHash();
+
+                // waiting until standby has applied all journal records
+                final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(60);
+                long standbyStateHash = standby.requestStateHash();
+                while (standbyStateHash != primaryStateHash && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(100);
+                    standbyStateHash = standby.requestStateHash();
+                }
+                stopTailing.set(true);
+                log.info("Standby followed journal until seq={}", tailing.get());
+
+                assertThat(standbyStateHash, is(primaryStateHash));
+                assertTrue(standby.totalBalanceReport().isGlobalBalancesAllZero());
+                log.info("Standby state is valid");
+            }
+        }
+    }
+
+    /**
+     * Follower exchange is applying journal of primary exchange.
+     * Follower is started after snapshot is created, so it should catch up and verify its state at snapshot point,
+     * then follow primary journal while benchmark commands are running. Promoted follower state should be equal to primary state.
+     */
+    public static void warmStandbyTestImpl(final PerformanceConfiguration performanceConfiguration,
+                                           final TestDataParameters testDataParameters,
+                                           final SerializationConfiguration serializationConfiguration,
+                                           final int iterations) throws InterruptedException, ExecutionException {
+
+        for (int iteration = 0; iteration < iterations; iteration++) {
+
+            log.debug(" ----------- warm standby test --- iteration {} of {} ----", iteration, iterations);
+
+            final ExchangeTestContainer.TestDataFutures testDataFutures = ExchangeTestContainer.prepareTestDataAsync(testDataParameters, iteration);
+
+            final String exchangeId = ExchangeTestContainer.timeBasedExchangeId();
+            final LongIntHashMap leaderStateHashes = new LongIntHashMap();
+
+            final ExchangeConfiguration followerConfiguration = ExchangeConfiguration.defaultBuilder()
+                    .initStateCfg(InitialStateConfiguration.CLEAN_TEST)
+                    .performanceCfg(performanceConfiguration)
+                    .reportsQueriesCfg(ReportsQueriesConfiguration.createStandardConfig())
+                    .ordersProcessingCfg(OrdersProcessingConfiguration.DEFAULT)
+                    .loggingCfg(LoggingConfiguration.DEFAULT)
+                    .serializationCfg(SerializationConfiguration.DEFAULT)
+                    .build();
+
+            try (final ExchangeTestContainer primary = ExchangeTestContainer.create(
+                    performanceConfiguration, InitialStateConfiguration.cleanStartJournaling(exchangeId), serializationConfiguration);
+                 final ExchangeFollower follower = ExchangeFollower.builder()
+                         .resultsConsumer((cmd, seq) -> {
+                         })
+                         .exchangeConfiguration(followerConfiguration)
+                         .leaderStorageFolder(DiskSerializationProcessorConfiguration.DEFAULT_FOLDER)
+                         .leaderExchangeId(exchangeId)
+                         .leaderStateHashes(snapshotId -> {
+                             synchronized (leaderStateHashes) {
+                                 return leaderStateHashes.containsKey(snapshotId) ? leaderStateHashes.get(snapshotId) : null;
+                             }
+                         })
+                         .build()) {
+
+                primary.loadSymbolsUsersAndPrefillOrders(testDataFutures);
+
+                final long stateId = System.currentTimeMillis() * 1000 + iteration;
+                final CommandResultCode resultCode = primary.getApi().submitCommandAsync(ApiPersistState.builder().dumpId(stateId).build()).get();
+                assertThat(resultCode, is(CommandResultCode.SUCCESS));
+                final int snapshotStateHash = primary.requestStateHash();
+                synchronized (leaderStateHashes) {
+                    leaderStateHashes.put(stateId, snapshotStateHash);
+                }
+
+                follower.startup();
+
+                log.info("Running commands on primary...");
+                final TestOrdersGenerator.MultiSymbolGenResult genResult = testDataFutures.genResult.get();
+                final CompletableFuture<Void> benchmark = CompletableFuture.runAsync(
+                        () -> primary.getApi().submitCommandsSync(genResult.getApiCommandsBenchmark().join()));
+
+                long maxLagSeq = 0;
+                long maxLagNs = 0;
+                while (!benchmark.isDone()) {
+                    maxLagSeq = Math.max(maxLagSeq, follower.getLagSeq());
+                    maxLagNs = Math.max(maxLagNs, follower.getLagNs());
+                    Thread.sleep(1);
+                }
+                benchmark.get();
+                log.info("Max replication lag: {} sequences, {}us", maxLagSeq, maxLagNs / 1000);
+
+                final int primaryStateHash = primary.requestStateHash();
+
+                // waiting until follower has read all journal records
+                final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(60);
+                while (follower.getApi().processReport(new StateHashReportQuery(), 0).get().getStateHash() != primaryStateHash
+                        && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(100);
+                }
+
+                assertThat(follower.getLastVerifiedSnapshotId(), is(stateId));
+                assertThat(follower.getStateHashMismatches(), is(0));
+
+                follower.promote();
+                assertThat(follower.getLagSeq(), is(0L));
+                assertThat(follower.getLagNs(), is(0L));
+                assertThat(follower.getApi().processReport(new StateHashReportQuery(), 0).get().getStateHash(), is(primaryStateHash));
+                log.info("Promoted follower state is valid (applied seq={})", follower.getAppliedSeq());
+            }
+        }
+    }
+
+    private static void copyJournalRecord(final OrderCommand cmd, final OrderCommand slot) {
+        cmd.writeTo(slot);
+        slot.serviceFlags = cmd.serviceFlags;
+        slot.eventsGroup = cmd.eventsGroup;
+        slot.userCookie = cmd.userCookie;
+        slot.resultCode = CommandResultCode.NEW;
+    }
 }
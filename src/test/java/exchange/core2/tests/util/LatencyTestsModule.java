@@ -16,17 +16,24 @@
 package exchange.core2.tests.util;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import exchange.core2.core.ExchangeApi;
 import exchange.core2.core.common.MatcherTradeEvent;
 import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.api.ApiCancelOrder;
 import exchange.core2.core.common.api.ApiCommand;
 import exchange.core2.core.common.api.ApiMoveOrder;
+import exchange.core2.core.common.api.ApiPersistState;
 import exchange.core2.core.common.api.ApiPlaceOrder;
+import exchange.core2.core.common.api.ApiReduceOrder;
 import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.cmd.OrderCommandType;
 import exchange.core2.core.common.config.InitialStateConfiguration;
+import exchange.core2.core.common.config.IpcConfiguration;
 import exchange.core2.core.common.config.PerformanceConfiguration;
 import exchange.core2.core.common.config.SerializationConfiguration;
+import exchange.core2.core.processors.ipc.IpcResultsSubscriber;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.HdrHistogram.Histogram;
@@ -35,14 +42,26 @@ import org.agrona.collections.MutableInteger;
 import org.agrona.collections.MutableLong;
 import org.eclipse.collections.impl.map.mutable.primitive.LongLongHashMap;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.file.Paths;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiFunction;
 import java.util.function.Function;
@@ -154,6 +173,342 @@ public class LatencyTestsModule {
         }
     }
 
+    /**
+     * Latency test with multiple gateway threads submitting commands concurrently.
+     * Commands are split between producers by uid, so each user's commands keep their order.
+     * Interleaving of different producers is not deterministic, so final order books are not compared.
+     */
+    public static void multiProducerLatencyTestImpl(final PerformanceConfiguration performanceCfg,
+                                                    final TestDataParameters testDataParameters,
+                                                    final int producersNum,
+                                                    final int[] targetTpsLevels,
+                                                    final int warmupCycles) {
+
+        final int warmupTps = 1_000_000;
+
+        final ExchangeTestContainer.TestDataFutures testDataFutures = ExchangeTestContainer.prepareTestDataAsync(testDataParameters, 1);
+
+        try (final ExchangeTestContainer container = ExchangeTestContainer.create(performanceCfg)) {
+
+            final ExchangeApi api = container.getApi();
+            final SingleWriterRecorder hdrRecorder = new SingleWriterRecorder(Integer.MAX_VALUE, 2);
+
+            final ExecutorService producers = Executors.newFixedThreadPool(producersNum);
+
+            final BiFunction<Integer, Boolean, Histogram> testIteration = (tps, warmup) -> {
+                try {
+                    container.loadSymbolsUsersAndPrefillOrdersNoLog(testDataFutures);
+
+                    final TestOrdersGenerator.MultiSymbolGenResult genResult = testDataFutures.genResult.join();
+
+                    final List<List<ApiCommand>> producerCommands = new ArrayList<>(producersNum);
+                    IntStream.range(0, producersNum).forEach(i -> producerCommands.add(new ArrayList<>()));
+                    genResult.getApiCommandsBenchmark().join().forEach(cmd -> producerCommands.get((int) (uidOf(cmd) % producersNum)).add(cmd));
+
+                    final CountDownLatch latchBenchmark = new CountDownLatch(genResult.getBenchmarkCommandsSize());
+
+                    container.setConsumer((cmd, seq) -> {
+                        final long latency = System.nanoTime() - cmd.timestamp;
+                        hdrRecorder.recordValue(Math.min(latency, Integer.MAX_VALUE));
+                        latchBenchmark.countDown();
+                    });
+
+                    // every producer sends its commands with the same rate, planned timestamps are staggered
+                    final long nanosPerCmd = 1_000_000_000L / tps;
+                    final long nanosPerProducerCmd = nanosPerCmd * producersNum;
+                    final long startTimeMs = System.currentTimeMillis();
+                    final long startNs = System.nanoTime() + 1_000_000;
+
+                    final List<Future<?>> futures = new ArrayList<>(producersNum);
+                    for (int i = 0; i < producersNum; i++) {
+                        final List<ApiCommand> commands = producerCommands.get(i);
+                        final long firstTimestamp = startNs + nanosPerCmd * i;
+                        futures.add(producers.submit(() -> {
+                            long plannedTimestamp = firstTimestamp;
+                            for (ApiCommand cmd : commands) {
+                                while (System.nanoTime() < plannedTimestamp) {
+                                    // spin until its time to send next command
+                                }
+                                cmd.timestamp = plannedTimestamp;
+                                api.submitCommand(cmd);
+                                plannedTimestamp += nanosPerProducerCmd;
+                            }
+                        }));
+                    }
+
+                    for (Future<?> future : futures) {
+                        future.get();
+                    }
+
+                    latchBenchmark.await();
+                    container.setConsumer((cmd, seq) -> {
+                    });
+
+                    final long processingTimeMs = System.currentTimeMillis() - startTimeMs;
+                    final float perfMt = (float) genResult.getBenchmarkCommandsSize() / (float) processingTimeMs / 1000.0f;
+                    final Histogram histogram = hdrRecorder.getIntervalHistogram();
+                    if (!warmup) {
+                        log.info("{} producers {} {}", producersNum, String.format("%.3f MT/s", perfMt), LatencyTools.createLatencyReportFast(histogram));
+                    }
+
+                    assertTrue(container.totalBalanceReport().isGlobalBalancesAllZero());
+
+                    container.resetExchangeCore();
+
+                    System.gc();
+                    Thread.sleep(500);
+
+                    return histogram;
+
+                } catch (InterruptedException | ExecutionException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            };
+
+            try {
+                container.executeTestingThread(() -> {
+                    log.debug("Warming up {} cycles...", warmupCycles);
+                    IntStream.range(0, warmupCycles)
+                            .forEach(i -> testIteration.apply(warmupTps, true));
+                    log.debug("Warmup done, starting tests");
+
+                    Arrays.stream(targetTpsLevels).forEach(tps -> testIteration.apply(tps, false));
+                    return true;
+                });
+            } finally {
+                producers.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Latency test with gateway running in separate process (same host).
+     * Gateway process sends commands through shared memory ingress and receives results from shared memory broadcast,
+     * latency is measured by gateway process (see {@link IpcGatewayProcess}).
+     * Commands are sent by single gateway thread, so final order books are compared.
+     */
+    public static void ipcLatencyTestImpl(final PerformanceConfiguration performanceCfg,
+                                          final TestDataParameters testDataParameters,
+                                          final int[] targetTpsLevels,
+                                          final int warmupCycles) {
+
+        final int warmupTps = 1_000_000;
+
+        final ExchangeTestContainer.TestDataFutures testDataFutures = ExchangeTestContainer.prepareTestDataAsync(testDataParameters, 1);
+
+        final IpcConfiguration ipcCfg = IpcConfiguration.createDefaultConfig(ExchangeTestContainer.timeBasedExchangeId());
+
+        try (final ExchangeTestContainer container = ExchangeTestContainer.create(performanceCfg, ipcCfg)) {
+
+            final List<String> command = new ArrayList<>();
+            command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(IpcGatewayProcess.class.getName());
+            command.addAll(Arrays.asList(IpcGatewayProcess.toArgs(ipcCfg.getIngressFile(), ipcCfg.getEgressFile(), testDataParameters)));
+
+            final Process gatewayProcess = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+
+            try (final BufferedReader reader = new BufferedReader(new InputStreamReader(gatewayProcess.getInputStream()));
+                 final PrintWriter writer = new PrintWriter(gatewayProcess.getOutputStream(), true)) {
+
+                final Function<String, String> awaitGateway = response -> {
+                    try {
+                        String line;
+                        while ((line = reader.readLine()) != null) {
+                            if (line.startsWith(response)) {
+                                return line.substring(response.length()).trim();
+                            }
+                            log.debug("gateway: {}", line);
+                        }
+                        throw new IllegalStateException("Gateway process terminated");
+                    } catch (IOException ex) {
+                        throw new IllegalStateException(ex);
+                    }
+                };
+
+                awaitGateway.apply(IpcGatewayProcess.READY);
+
+                final BiFunction<Integer, Boolean, Boolean> testIteration = (tps, warmup) -> {
+                    try {
+                        container.loadSymbolsUsersAndPrefillOrdersNoLog(testDataFutures);
+
+                        writer.println(IpcGatewayProcess.RUN + " " + tps);
+                        final String result = awaitGateway.apply(IpcGatewayProcess.RESULT);
+                        if (!warmup) {
+                            log.info("{}", result);
+                        }
+
+                        // single gateway thread - commands are executed same way
+                        testDataFutures.coreSymbolSpecifications.join().forEach(
+                                symbol -> assertEquals(
+                                        testDataFutures.getGenResult().join().getGenResults().get(symbol.symbolId).getFinalOrderBookSnapshot(),
+                                        container.requestCurrentOrderBook(symbol.symbolId)));
+
+                        assertTrue(container.totalBalanceReport().isGlobalBalancesAllZero());
+
+                        container.resetExchangeCore();
+
+                        System.gc();
+                        Thread.sleep(500);
+                        return true;
+
+                    } catch (InterruptedException ex) {
+                        throw new IllegalStateException(ex);
+                    }
+                };
+
+                log.debug("Warming up {} cycles...", warmupCycles);
+                IntStream.range(0, warmupCycles).forEach(i -> testIteration.apply(warmupTps, true));
+                log.debug("Warmup done, starting tests");
+
+                Arrays.stream(targetTpsLevels).forEach(tps -> testIteration.apply(tps, false));
+
+                writer.println(IpcGatewayProcess.EXIT);
+                gatewayProcess.waitFor(10, TimeUnit.SECONDS);
+
+            } finally {
+                gatewayProcess.destroy();
+            }
+
+        } catch (IOException | InterruptedException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Results stage latency with shared memory egress enabled.
+     * Optional slow subscriber (same process, separate thread) reads egress messages spending given time per message,
+     * transmitter should lap it instead of delaying results stage.
+     *
+     * @param slowSubscriberNsPerMsg - time spent by subscriber per message (0 - no subscriber)
+     */
+    public static void egressLatencyTestImpl(final PerformanceConfiguration performanceCfg,
+                                             final TestDataParameters testDataParameters,
+                                             final long slowSubscriberNsPerMsg,
+                                             final int[] targetTpsLevels,
+                                             final int warmupCycles) {
+
+        final int warmupTps = 1_000_000;
+
+        final ExchangeTestContainer.TestDataFutures testDataFutures = ExchangeTestContainer.prepareTestDataAsync(testDataParameters, 1);
+
+        final IpcConfiguration ipcCfg = IpcConfiguration.createDefaultConfig(ExchangeTestContainer.timeBasedExchangeId());
+
+        try (final ExchangeTestContainer container = ExchangeTestContainer.create(performanceCfg, ipcCfg)) {
+
+            final ExchangeApi api = container.getApi();
+            final SingleWriterRecorder hdrRecorder = new SingleWriterRecorder(Integer.MAX_VALUE, 2);
+
+            final AtomicBoolean subscriberActive = new AtomicBoolean(true);
+            final ExecutorService subscriberExecutor = Executors.newSingleThreadExecutor();
+            final Future<String> subscriberStats = slowSubscriberNsPerMsg == 0
+                    ? CompletableFuture.completedFuture("no subscriber")
+                    : subscriberExecutor.submit(() -> {
+                try (final IpcResultsSubscriber subscriber = new IpcResultsSubscriber(ipcCfg.getEgressFile())) {
+                    long received = 0;
+                    while (subscriberActive.get()) {
+                        if (subscriber.poll((msgTypeId, buffer, index, length) -> {
+                            final long t = System.nanoTime() + slowSubscriberNsPerMsg;
+                            while (System.nanoTime() < t) {
+                                // slow processing
+                            }
+                        }, 1) == 1) {
+                            received++;
+                        }
+                    }
+                    return String.format("slow subscriber received %d messages, lapped %d times", received, subscriber.getLappedCount());
+                }
+            });
+            subscriberExecutor.shutdown();
+
+            final BiFunction<Integer, Boolean, Boolean> testIteration = (tps, warmup) -> {
+                try {
+                    container.loadSymbolsUsersAndPrefillOrdersNoLog(testDataFutures);
+
+                    final TestOrdersGenerator.MultiSymbolGenResult genResult = testDataFutures.genResult.join();
+
+                    final CountDownLatch latchBenchmark = new CountDownLatch(genResult.getBenchmarkCommandsSize());
+
+                    container.setConsumer((cmd, seq) -> {
+                        final long latency = System.nanoTime() - cmd.timestamp;
+                        hdrRecorder.recordValue(Math.min(latency, Integer.MAX_VALUE));
+                        latchBenchmark.countDown();
+                    });
+
+                    final int nanosPerCmd = 1_000_000_000 / tps;
+                    final long startTimeMs = System.currentTimeMillis();
+
+                    long plannedTimestamp = System.nanoTime();
+
+                    for (ApiCommand cmd : genResult.getApiCommandsBenchmark().join()) {
+                        while (System.nanoTime() < plannedTimestamp) {
+                            // spin until its time to send next command
+                        }
+                        cmd.timestamp = plannedTimestamp;
+                        api.submitCommand(cmd);
+                        plannedTimestamp += nanosPerCmd;
+                    }
+
+                    latchBenchmark.await();
+                    container.setConsumer((cmd, seq) -> {
+                    });
+
+                    final long processingTimeMs = System.currentTimeMillis() - startTimeMs;
+                    final float perfMt = (float) genResult.getBenchmarkCommandsSize() / (float) processingTimeMs / 1000.0f;
+                    final Histogram histogram = hdrRecorder.getIntervalHistogram();
+                    if (!warmup) {
+                        log.info("{} {}", String.format("%.3f MT/s", perfMt), LatencyTools.createLatencyReportFast(histogram));
+                    }
+
+                    assertTrue(container.totalBalanceReport().isGlobalBalancesAllZero());
+
+                    container.resetExchangeCore();
+
+                    System.gc();
+                    Thread.sleep(500);
+                    return true;
+
+                } catch (InterruptedException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            };
+
+            try {
+                container.executeTestingThread(() -> {
+                    log.debug("Warming up {} cycles...", warmupCycles);
+                    IntStream.range(0, warmupCycles)
+                            .forEach(i -> testIteration.apply(warmupTps, true));
+                    log.debug("Warmup done, starting tests");
+
+                    Arrays.stream(targetTpsLevels).forEach(tps -> testIteration.apply(tps, false));
+                    return true;
+                });
+            } finally {
+                subscriberActive.set(false);
+                try {
+                    log.info("{}", subscriberStats.get());
+                } catch (InterruptedException | ExecutionException ex) {
+                    log.warn("Slow subscriber failed", ex);
+                }
+            }
+        }
+    }
+
+    private static long uidOf(final ApiCommand cmd) {
+        if (cmd instanceof ApiPlaceOrder) {
+            return ((ApiPlaceOrder) cmd).uid;
+        } else if (cmd instanceof ApiMoveOrder) {
+            return ((ApiMoveOrder) cmd).uid;
+        } else if (cmd instanceof ApiCancelOrder) {
+            return ((ApiCancelOrder) cmd).uid;
+        } else if (cmd instanceof ApiReduceOrder) {
+            return ((ApiReduceOrder) cmd).uid;
+        } else {
+            return 0;
+        }
+    }
+
     public static void individualLatencyTest(final PerformanceConfiguration performanceConfiguration,
                                              final TestDataParameters testDataParameters,
                                              final InitialStateConfiguration initialStateConfiguration) {
@@ -315,6 +670,21 @@ public class LatencyTestsModule {
                                       final InitialStateConfiguration initialStateConfiguration,
                                       final int warmupCycles) {
 
+        hiccupTestImpl(performanceConfiguration, testDataParameters, initialStateConfiguration, SerializationConfiguration.DEFAULT, 0, warmupCycles);
+    }
+
+    /**
+     * Hiccups test with periodic snapshots
+     *
+     * @param snapshotEveryCommands - submit ApiPersistState after every N benchmark commands (0 - no snapshots)
+     */
+    public static void hiccupTestImpl(final PerformanceConfiguration performanceConfiguration,
+                                      final TestDataParameters testDataParameters,
+                                      final InitialStateConfiguration initialStateConfiguration,
+                                      final SerializationConfiguration serializationConfiguration,
+                                      final int snapshotEveryCommands,
+                                      final int warmupCycles) {
+
         final int targetTps = 500_000; // transactions per second
 
         // will print each occurrence if latency>0.2ms
@@ -322,10 +692,12 @@ public class LatencyTestsModule {
 
         final ExchangeTestContainer.TestDataFutures testDataFutures = ExchangeTestContainer.prepareTestDataAsync(testDataParameters, 1);
 
-        try (final ExchangeTestContainer container = ExchangeTestContainer.create(performanceConfiguration, initialStateConfiguration, SerializationConfiguration.DEFAULT)) {
+        try (final ExchangeTestContainer container = ExchangeTestContainer.create(performanceConfiguration, initialStateConfiguration, serializationConfiguration)) {
 
             final ExchangeApi api = container.getApi();
 
+            final MutableLong nextSnapshotId = new MutableLong(System.currentTimeMillis() * 1000);
+
             final IntFunction<TreeMap<ZonedDateTime, Long>> testIteration = tps -> {
                 try {
                     container.loadSymbolsUsersAndPrefillOrdersNoLog(testDataFutures);
@@ -349,7 +721,9 @@ public class LatencyTestsModule {
                             hiccupTimestampsNs.put(cmd.timestamp, diffNs);
                             nextHiccupAcceptTimestampNs.value = cmd.timestamp + diffNs;
                         }
-                        latchBenchmark.countDown();
+                        if (cmd.command != OrderCommandType.PERSIST_STATE_MATCHING && cmd.command != OrderCommandType.PERSIST_STATE_RISK) {
+                            latchBenchmark.countDown();
+                        }
                     });
 
                     final long startTimeNs = System.nanoTime();
@@ -357,6 +731,7 @@ public class LatencyTestsModule {
                     final int nanosPerCmd = 1_000_000_000 / tps;
 
                     long plannedTimestamp = System.nanoTime();
+                    int commandsCounter = 0;
 
                     for (final ApiCommand cmd : genResult.getApiCommandsBenchmark().join()) {
                         // spin until its time to send next command
@@ -365,6 +740,12 @@ public class LatencyTestsModule {
                         cmd.timestamp = plannedTimestamp;
                         api.submitCommand(cmd);
                         plannedTimestamp += nanosPerCmd;
+
+                        if (snapshotEveryCommands != 0 && ++commandsCounter % snapshotEveryCommands == 0) {
+                            final ApiPersistState persistState = ApiPersistState.builder().dumpId(nextSnapshotId.value++).build();
+                            persistState.timestamp = System.nanoTime();
+                            api.submitCommand(persistState);
+                        }
                     }
 
                     latchBenchmark.await();
@@ -408,7 +789,7 @@ public class LatencyTestsModule {
                             if (res.isEmpty()) {
                                 log.debug("no hiccups");
                             } else {
-                                log.debug("------------------ {} hiccups -------------------", res.size());
+                                log.debug("------------------ {} hiccups (max {}µs) -------------------", res.size(), res.values().stream().mapToLong(x -> x).max().orElse(0) / 1000);
                                 res.forEach((timestamp, delay) -> log.debug("{}: {}µs", timestamp.toLocalTime(), delay / 1000));
                             }
                         });
@@ -41,6 +41,14 @@ public class PersistenceTestsModule {
                                            final TestDataParameters testDataParameters,
                                            final int iterations) throws InterruptedException, ExecutionException {
 
+        persistenceTestImpl(performanceConfiguration, testDataParameters, SerializationConfiguration.DISK_SNAPSHOT_ONLY, iterations);
+    }
+
+    public static void persistenceTestImpl(final PerformanceConfiguration performanceConfiguration,
+                                           final TestDataParameters testDataParameters,
+                                           final SerializationConfiguration serializationConfiguration,
+                                           final int iterations) throws InterruptedException, ExecutionException {
+
         for (int iteration = 0; iteration < iterations; iteration++) {
 
             log.debug(" ----------- persistence test --- iteration {} of {} ----", iteration, iterations);
@@ -57,7 +65,7 @@ public class PersistenceTestsModule {
             final long originalPrefillStateHash;
             final float originalPerfMt;
 
-            try (final ExchangeTestContainer container = ExchangeTestContainer.create(performanceConfiguration, firstStartConfig, SerializationConfiguration.DISK_SNAPSHOT_ONLY)) {
+            try (final ExchangeTestContainer container = ExchangeTestContainer.create(performanceConfiguration, firstStartConfig, serializationConfiguration)) {
 
                 container.loadSymbolsUsersAndPrefillOrders(testDataFutures);
 
@@ -93,7 +101,7 @@ public class PersistenceTestsModule {
 
             log.debug("Creating new exchange from persisted state...");
             final long tLoad = System.currentTimeMillis();
-            try (final ExchangeTestContainer recreatedContainer = ExchangeTestContainer.create(performanceConfiguration, fromSnapshotConfig, SerializationConfiguration.DISK_SNAPSHOT_ONLY)) {
+            try (final ExchangeTestContainer recreatedContainer = ExchangeTestContainer.create(performanceConfiguration, fromSnapshotConfig, serializationConfiguration)) {
 
                 // simple sync query in order to wait until core is started to respond
                 recreatedContainer.totalBalanceReport();
@@ -125,6 +133,143 @@ public class PersistenceTestsModule {
     }
 
 
+    /**
+     * Recovery time test: journal is written once (snapshot + benchmark commands),
+     * then exchange is recovered with sequential replay and with fast replay (state hash is compared).
+     */
+    public static void recoveryTestImpl(final PerformanceConfiguration performanceConfiguration,
+                                        final TestDataParameters testDataParameters,
+                                        final int iterations) throws InterruptedException, ExecutionException {
+
+        recoveryTestImpl(performanceConfiguration, testDataParameters, SerializationConfiguration.DISK_JOURNALING, iterations);
+    }
+
+    /**
+     * @param journalingConfiguration - configuration for writing journal (recovery is always done with current format)
+     */
+    public static void recoveryTestImpl(final PerformanceConfiguration performanceConfiguration,
+                                        final TestDataParameters testDataParameters,
+                                        final SerializationConfiguration journalingConfiguration,
+                                        final int iterations) throws InterruptedException, ExecutionException {
+
+        for (int iteration = 0; iteration < iterations; iteration++) {
+
+            log.debug(" ----------- recovery test --- iteration {} of {} ----", iteration, iterations);
+
+            final ExchangeTestContainer.TestDataFutures testDataFutures = ExchangeTestContainer.prepareTestDataAsync(testDataParameters, iteration);
+
+            final String exchangeId = ExchangeTestContainer.timeBasedExchangeId();
+            final long stateId;
+            final long originalFinalStateHash;
+
+            try (final ExchangeTestContainer container = ExchangeTestContainer.create(performanceConfiguration, InitialStateConfiguration.cleanStartJournaling(exchangeId), journalingConfiguration)) {
+
+                container.loadSymbolsUsersAndPrefillOrders(testDataFutures);
+
+                stateId = System.currentTimeMillis() * 1000 + iteration;
+                final CommandResultCode resultCode = container.getApi().submitCommandAsync(ApiPersistState.builder().dumpId(stateId).build()).get();
+                assertThat(resultCode, Is.is(CommandResultCode.SUCCESS));
+
+                log.info("Running commands on original state (journaling)...");
+                container.getApi().submitCommandsSync(testDataFutures.genResult.get().getApiCommandsBenchmark().join());
+                originalFinalStateHash = container.requestStateHash();
+            }
+
+            final InitialStateConfiguration fromJournalConfig = InitialStateConfiguration.lastKnownStateFromJournal(exchangeId, stateId, 0L);
+
+            final float sequentialTimeSec = recoverAndCheck(performanceConfiguration, fromJournalConfig, SerializationConfiguration.DISK_JOURNALING, originalFinalStateHash);
+            final float fastTimeSec = recoverAndCheck(performanceConfiguration, fromJournalConfig, SerializationConfiguration.DISK_JOURNALING_FAST_REPLAY, originalFinalStateHash);
+
+            log.info("{}. recovery time: sequential {}s, fast {}s ({}x)", iteration,
+                    String.format("%.3f", sequentialTimeSec), String.format("%.3f", fastTimeSec), String.format("%.2f", sequentialTimeSec / fastTimeSec));
+
+            System.gc();
+            Thread.sleep(200);
+        }
+    }
+
+    /**
+     * Snapshot loading time test: same state is stored in single stream format and in chunked format,
+     * then exchange is loaded from both snapshots (state hash is compared).
+     */
+    public static void snapshotLoadTestImpl(final PerformanceConfiguration performanceConfiguration,
+                                            final TestDataParameters testDataParameters,
+                                            final int iterations) throws InterruptedException, ExecutionException {
+
+        for (int iteration = 0; iteration < iterations; iteration++) {
+
+            log.debug(" ----------- snapshot load test --- iteration {} of {} ----", iteration, iterations);
+
+            final ExchangeTestContainer.TestDataFutures testDataFutures = ExchangeTestContainer.prepareTestDataAsync(testDataParameters, iteration);
+
+            final String exchangeId = ExchangeTestContainer.timeBasedExchangeId();
+            final long stateId = System.currentTimeMillis() * 1000 + iteration * 2;
+            final long stateIdChunked = stateId + 1;
+
+            final long stateHash = createSnapshot(performanceConfiguration, testDataFutures, exchangeId, stateId, SerializationConfiguration.DISK_SNAPSHOT_ONLY);
+            final long stateHashChunked = createSnapshot(performanceConfiguration, testDataFutures, exchangeId, stateIdChunked, SerializationConfiguration.DISK_SNAPSHOT_ONLY_CHUNKED);
+            assertThat(stateHashChunked, is(stateHash));
+
+            System.gc();
+            Thread.sleep(200);
+
+            final float singleStreamTimeSec = recoverAndCheck(
+                    performanceConfiguration,
+                    InitialStateConfiguration.fromSnapshotOnly(exchangeId, stateId, 0),
+                    SerializationConfiguration.DISK_SNAPSHOT_ONLY,
+                    stateHash);
+
+            final float chunkedTimeSec = recoverAndCheck(
+                    performanceConfiguration,
+                    InitialStateConfiguration.fromSnapshotOnly(exchangeId, stateIdChunked, 0),
+                    SerializationConfiguration.DISK_SNAPSHOT_ONLY_CHUNKED,
+                    stateHash);
+
+            log.info("{}. snapshot load+start time: single stream {}s, chunked {}s ({}x)", iteration,
+                    String.format("%.3f", singleStreamTimeSec), String.format("%.3f", chunkedTimeSec), String.format("%.2f", singleStreamTimeSec / chunkedTimeSec));
+
+            System.gc();
+            Thread.sleep(200);
+        }
+    }
+
+    private static long createSnapshot(final PerformanceConfiguration performanceConfiguration,
+                                       final ExchangeTestContainer.TestDataFutures testDataFutures,
+                                       final String exchangeId,
+                                       final long stateId,
+                                       final SerializationConfiguration serializationConfiguration) throws InterruptedException, ExecutionException {
+
+        try (final ExchangeTestContainer container = ExchangeTestContainer.create(performanceConfiguration, InitialStateConfiguration.cleanStart(exchangeId), serializationConfiguration)) {
+
+            container.loadSymbolsUsersAndPrefillOrders(testDataFutures);
+
+            try (ExecutionTime ignore = new ExecutionTime(t -> log.debug("Snapshot {} created in {}", stateId, t))) {
+                final CommandResultCode resultCode = container.getApi().submitCommandAsync(ApiPersistState.builder().dumpId(stateId).build()).get();
+                assertThat(resultCode, Is.is(CommandResultCode.SUCCESS));
+            }
+
+            return container.requestStateHash();
+        }
+    }
+
+    private static float recoverAndCheck(final PerformanceConfiguration performanceConfiguration,
+                                         final InitialStateConfiguration initialStateConfiguration,
+                                         final SerializationConfiguration serializationConfiguration,
+                                         final long expectedStateHash) throws InterruptedException, ExecutionException {
+
+        final long tLoad = System.currentTimeMillis();
+        try (final ExchangeTestContainer container = ExchangeTestContainer.create(performanceConfiguration, initialStateConfiguration, serializationConfiguration)) {
+
+            // simple sync query in order to wait until core is started and journal is replayed
+            container.totalBalanceReport();
+            final float loadTimeSec = (float) (System.currentTimeMillis() - tLoad) / 1000.0f;
+
+            assertThat(container.requestStateHash(), is(expectedStateHash));
+            assertTrue(container.totalBalanceReport().isGlobalBalancesAllZero());
+            return loadTimeSec;
+        }
+    }
+
     private static final Consumer<? super Object> IGNORING_CONSUMER = x -> {
     };
 
@@ -16,6 +16,8 @@ public class TestDataParameters {
     public final ExchangeTestContainer.AllowedSymbolTypes allowedSymbolTypes;
     public final TestOrdersGeneratorConfig.PreFillMode preFillMode;
     public final boolean avalancheIOC;
+    // generate futures contracts with non-zero margins (otherwise margin is never checked by risk engine)
+    public final boolean futuresMargin;
 
     public static TestDataParameters.TestDataParametersBuilder singlePairMarginBuilder() {
         return TestDataParameters.builder()
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.tests.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Measures heap allocated by all threads except the calling one (exchange core threads for a benchmark thread).
+ * Threads terminated during measurement are not counted.
+ */
+@Slf4j
+public final class ThreadAllocationMeter {
+
+    private final com.sun.management.ThreadMXBean threadMXBean;
+    private final long ownThreadId;
+    private final Map<Long, Long> startBytes = new HashMap<>();
+
+    private ThreadAllocationMeter() {
+        this.threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        this.ownThreadId = Thread.currentThread().getId();
+
+        final long[] ids = threadMXBean.getAllThreadIds();
+        final long[] bytes = threadMXBean.getThreadAllocatedBytes(ids);
+        for (int i = 0; i < ids.length; i++) {
+            startBytes.put(ids[i], bytes[i]);
+        }
+    }
+
+    public static ThreadAllocationMeter start() {
+        return new ThreadAllocationMeter();
+    }
+
+    /**
+     * @return bytes allocated since start by all live threads except the one created this meter
+     */
+    public long allocatedBytes() {
+        final long[] ids = threadMXBean.getAllThreadIds();
+        final long[] bytes = threadMXBean.getThreadAllocatedBytes(ids);
+        long total = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] != ownThreadId && bytes[i] != -1) {
+                total += bytes[i] - startBytes.getOrDefault(ids[i], 0L);
+            }
+        }
+        return total;
+    }
+}
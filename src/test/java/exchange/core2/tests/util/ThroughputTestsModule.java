@@ -18,11 +18,18 @@ package exchange.core2.tests.util;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import exchange.core2.core.common.api.ApiCommand;
+import exchange.core2.core.common.cmd.OrderCommand;
 import exchange.core2.core.common.config.InitialStateConfiguration;
+import exchange.core2.core.common.config.LoggingConfiguration;
 import exchange.core2.core.common.config.PerformanceConfiguration;
 import exchange.core2.core.common.config.SerializationConfiguration;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.ObjLongConsumer;
 import java.util.stream.IntStream;
 
 
@@ -35,16 +42,63 @@ public class ThroughputTestsModule {
                                           final SerializationConfiguration serializationCfg,
                                           final int iterations) {
 
+        throughputTestImpl(performanceCfg, testDataParameters, initialStateCfg, serializationCfg, LoggingConfiguration.DEFAULT, null, iterations);
+    }
+
+    public static float throughputTestImpl(final PerformanceConfiguration performanceCfg,
+                                           final TestDataParameters testDataParameters,
+                                           final InitialStateConfiguration initialStateCfg,
+                                           final SerializationConfiguration serializationCfg,
+                                           final LoggingConfiguration loggingCfg,
+                                           final ObjLongConsumer<OrderCommand> resultsConsumer,
+                                           final int iterations) {
+
+        return throughputTestImpl(performanceCfg, testDataParameters, initialStateCfg, serializationCfg, loggingCfg, resultsConsumer,
+                ExchangeTestContainer::benchmarkMtps, iterations);
+    }
+
+    public static float throughputTestImpl(final PerformanceConfiguration performanceCfg,
+                                           final TestDataParameters testDataParameters,
+                                           final InitialStateConfiguration initialStateCfg,
+                                           final SerializationConfiguration serializationCfg,
+                                           final LoggingConfiguration loggingCfg,
+                                           final ObjLongConsumer<OrderCommand> resultsConsumer,
+                                           final BiFunction<ExchangeTestContainer, List<ApiCommand>, Float> benchmark,
+                                           final int iterations) {
+
+        return throughputTestImpl(performanceCfg, testDataParameters, initialStateCfg, serializationCfg, loggingCfg, resultsConsumer,
+                benchmark, (container, testDataFutures) -> {
+                }, iterations);
+    }
+
+    /**
+     * @param beforeLoad called before symbols, users and pre-fill orders are loaded (every iteration, core is reset after each one)
+     */
+    public static float throughputTestImpl(final PerformanceConfiguration performanceCfg,
+                                           final TestDataParameters testDataParameters,
+                                           final InitialStateConfiguration initialStateCfg,
+                                           final SerializationConfiguration serializationCfg,
+                                           final LoggingConfiguration loggingCfg,
+                                           final ObjLongConsumer<OrderCommand> resultsConsumer,
+                                           final BiFunction<ExchangeTestContainer, List<ApiCommand>, Float> benchmark,
+                                           final BiConsumer<ExchangeTestContainer, ExchangeTestContainer.TestDataFutures> beforeLoad,
+                                           final int iterations) {
+
         final ExchangeTestContainer.TestDataFutures testDataFutures = ExchangeTestContainer.prepareTestDataAsync(testDataParameters, 1);
 
-        try (final ExchangeTestContainer container = ExchangeTestContainer.create(performanceCfg, initialStateCfg, serializationCfg)) {
+        try (final ExchangeTestContainer container = ExchangeTestContainer.create(performanceCfg, initialStateCfg, serializationCfg, loggingCfg)) {
+
+            if (resultsConsumer != null) {
+                container.setConsumer(resultsConsumer);
+            }
 
             final float avgMt = container.executeTestingThread(
                     () -> (float) IntStream.range(0, iterations)
                             .mapToObj(j -> {
+                                beforeLoad.accept(container, testDataFutures);
                                 container.loadSymbolsUsersAndPrefillOrdersNoLog(testDataFutures);
 
-                                final float perfMt = container.benchmarkMtps(testDataFutures.getGenResult().join().apiCommandsBenchmark.join());
+                                final float perfMt = benchmark.apply(container, testDataFutures.getGenResult().join().apiCommandsBenchmark.join());
                                 log.info("{}. {} MT/s", j, String.format("%.3f", perfMt));
 
                                 assertTrue(container.totalBalanceReport().isGlobalBalancesAllZero());
@@ -67,6 +121,7 @@ public class ThroughputTestsModule {
                             .average().orElse(0));
 
             log.info("Average: {} MT/s", avgMt);
+            return avgMt;
         }
     }
 